@@ -0,0 +1,281 @@
+package ch.eldeskar.ttrss.api.benchmarks;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.APISession;
+import ch.eldeskar.ttrss.api.SessionManager;
+import ch.eldeskar.ttrss.api.testing.FakeServer;
+import ch.eldeskar.ttrss.api.transport.HttpClientTransport;
+import ch.eldeskar.ttrss.api.transport.LimitingTransport;
+import ch.eldeskar.ttrss.api.transport.Transport;
+import ch.eldeskar.ttrss.api.transport.URLConnectionTransport;
+
+/**
+ * Runs a mixed workload through {@link APISession} from many threads and
+ * reports throughput and latency percentiles per op. Without --url it starts a
+ * {@link FakeServer} in the same JVM.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar ch.eldeskar.ttrss.api.benchmarks.LoadDriver --threads 32 --duration 30
+ * </pre>
+ *
+ * Options, with their defaults:
+ *
+ * <pre>
+ * --url URL              api url of a real server, starts a fake server if missing
+ * --user admin           login of the real server
+ * --password password
+ * --threads 16           concurrent callers
+ * --sessions 4           sessions opened by the callers
+ * --duration 20          measured seconds
+ * --warmup 5             seconds before measuring
+ * --mix headlines=50,counters=25,update=15,article=5,tree=5
+ * --page 60              headlines per getHeadlines
+ * --content true         show_content for getHeadlines
+ * --transport httpclient httpclient or urlconnection
+ * --limit false          wrap the transport in a LimitingTransport
+ * --categories 5         fake server: categories
+ * --feeds 20             fake server: feeds per category
+ * --articles 200         fake server: articles per feed
+ * --workers 8            fake server: worker threads
+ * --latency 0-0          fake server: latency range in milliseconds
+ * --errors 0             fake server: share of requests answered with 503
+ * </pre>
+ *
+ */
+public class LoadDriver {
+
+	private static final String[] OPS = { "headlines", "counters", "update", "article", "tree" };
+
+	private final Map<String, String> options = new LinkedHashMap<>();
+	private final int[] weights = new int[OPS.length];
+	private int feeds;
+	private int maxArticleId;
+
+	public static void main(String[] args) throws Exception {
+		LoadDriver driver = new LoadDriver();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (!args[i].startsWith("--")) {
+				throw new IllegalArgumentException("Unexpected argument " + args[i]);
+			}
+			driver.options.put(args[i].substring(2), args[i + 1]);
+		}
+		driver.run();
+	}
+
+	private String option(String name, String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+
+	private int intOption(String name, int defaultValue) {
+		return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+	}
+
+	private void run() throws Exception {
+		for (String entry : option("mix", "headlines=50,counters=25,update=15,article=5,tree=5").split(",")) {
+			String[] pair = entry.split("=");
+			int index = Arrays.asList(OPS).indexOf(pair[0].trim());
+			if (index < 0) {
+				throw new IllegalArgumentException("Unknown op " + pair[0] + ", known are " + Arrays.toString(OPS));
+			}
+			weights[index] = Integer.parseInt(pair[1].trim());
+		}
+
+		FakeServer fake = null;
+		URL url;
+		String user = option("user", "admin");
+		String password = option("password", "password");
+		if (options.containsKey("url")) {
+			url = new URL(options.get("url"));
+		} else {
+			fake = new FakeServer(intOption("categories", 5), intOption("feeds", 20), intOption("articles", 200));
+			fake.setCredentials(user, password);
+			fake.setWorkers(intOption("workers", 8));
+			String[] latency = option("latency", "0-0").split("-");
+			fake.setLatency(Duration.ofMillis(Long.parseLong(latency[0])),
+					Duration.ofMillis(Long.parseLong(latency[latency.length - 1])));
+			fake.setHttpErrorRate(Double.parseDouble(option("errors", "0")), 503);
+			url = fake.start();
+		}
+
+		Transport transport = "urlconnection".equals(option("transport", "httpclient")) ? new URLConnectionTransport()
+				: new HttpClientTransport();
+		if (Boolean.parseBoolean(option("limit", "false"))) {
+			transport = new LimitingTransport(transport);
+		}
+		int threads = intOption("threads", 16);
+		try (SessionManager manager = new SessionManager(new APISession(transport), url, user, password,
+				intOption("sessions", 4))) {
+			JSONObject config = manager.execute((api, u, sid) -> api.getConfig(u, sid, ""));
+			feeds = ((JSONObject) config.get("content")).optInt("num_feeds", 1);
+			JSONObject latest = manager.execute(
+					(api, u, sid) -> api.getHeadlines(u, sid, ",\"feed_id\":-4,\"limit\":1,\"view_mode\":\"all_articles\""));
+			maxArticleId = latest.getJSONArray("content").getJSONObject(0).getInt("id");
+
+			System.out.printf(Locale.ROOT, "%s, %d threads, %d feeds, %d articles, mix %s%n", url, threads, feeds,
+					maxArticleId, option("mix", "headlines=50,counters=25,update=15,article=5,tree=5"));
+			long warmup = intOption("warmup", 5) * 1_000_000_000L;
+			long duration = intOption("duration", 20) * 1_000_000_000L;
+			long start = System.nanoTime();
+			long measureFrom = start + warmup;
+			long end = measureFrom + duration;
+
+			List<Recorder> recorders = new ArrayList<>();
+			CountDownLatch done = new CountDownLatch(threads);
+			for (int t = 0; t < threads; t++) {
+				Recorder recorder = new Recorder();
+				recorders.add(recorder);
+				Thread thread = new Thread(() -> {
+					try {
+						work(manager, recorder, measureFrom, end);
+					} finally {
+						done.countDown();
+					}
+				}, "LoadDriver-" + t);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			done.await();
+			report(recorders, duration);
+		} finally {
+			if (fake != null) {
+				fake.close();
+			}
+			if (transport instanceof LimitingTransport) {
+				((LimitingTransport) transport).close();
+			}
+		}
+	}
+
+	private void work(SessionManager manager, Recorder recorder, long measureFrom, long end) {
+		int total = Arrays.stream(weights).sum();
+		boolean content = Boolean.parseBoolean(option("content", "true"));
+		int page = intOption("page", 60);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long now;
+		while ((now = System.nanoTime()) < end) {
+			int pick = random.nextInt(total);
+			int op = 0;
+			while (pick >= weights[op]) {
+				pick -= weights[op++];
+			}
+			long started = now;
+			boolean failed = false;
+			try {
+				switch (OPS[op]) {
+				case "headlines":
+					int feed = random.nextInt(5) == 0 ? -4 : 1 + random.nextInt(feeds);
+					manager.execute((api, u, sid) -> api.getHeadlineList(u, sid, ",\"feed_id\":" + feed + ",\"limit\":"
+							+ page + ",\"skip\":" + page * random.nextInt(3) + ",\"show_content\":" + content));
+					break;
+				case "counters":
+					manager.execute((api, u, sid) -> api.getCounterList(u, sid, ",\"output_mode\":\"flc\""));
+					break;
+				case "update":
+					int article = 1 + random.nextInt(maxArticleId);
+					manager.execute((api, u, sid) -> check(api.updateArticle(u, sid, String.valueOf(article),
+							APISession.MODE_TOGGLE, APISession.FIELD_UNREAD)));
+					break;
+				case "article":
+					StringBuilder ids = new StringBuilder();
+					for (int i = 0; i < 10; i++) {
+						ids.append(i == 0 ? "" : ",").append(1 + random.nextInt(maxArticleId));
+					}
+					manager.execute((api, u, sid) -> api.getArticleList(u, sid, ids.toString()));
+					break;
+				default:
+					manager.execute((api, u, sid) -> check(api.getFeedTree(u, sid, false)));
+				}
+			} catch (IOException | RuntimeException e) {
+				failed = true;
+			}
+			long finished = System.nanoTime();
+			if (started >= measureFrom && finished <= end) {
+				recorder.record(op, finished - started, failed);
+			}
+		}
+	}
+
+	private static JSONObject check(JSONObject response) throws IOException {
+		if (response.optInt("status") != 0) {
+			throw new IOException(response.toString());
+		}
+		return response;
+	}
+
+	private void report(List<Recorder> recorders, long duration) {
+		System.out.printf(Locale.ROOT, "%-10s %9s %7s %9s %9s %9s %9s %9s%n", "op", "calls", "errors", "calls/s",
+				"p50 ms", "p99 ms", "p999 ms", "max ms");
+		long[] all = new long[0];
+		int allErrors = 0;
+		for (int op = 0; op < OPS.length; op++) {
+			int count = 0;
+			int errors = 0;
+			for (Recorder recorder : recorders) {
+				count += recorder.counts[op];
+				errors += recorder.errors[op];
+			}
+			long[] latencies = new long[count];
+			int position = 0;
+			for (Recorder recorder : recorders) {
+				System.arraycopy(recorder.latencies[op], 0, latencies, position, recorder.counts[op]);
+				position += recorder.counts[op];
+			}
+			if (count > 0) {
+				print(OPS[op], latencies, errors, duration);
+			}
+			long[] merged = Arrays.copyOf(all, all.length + count);
+			System.arraycopy(latencies, 0, merged, all.length, count);
+			all = merged;
+			allErrors += errors;
+		}
+		print("total", all, allErrors, duration);
+	}
+
+	private static void print(String name, long[] latencies, int errors, long duration) {
+		Arrays.sort(latencies);
+		System.out.printf(Locale.ROOT, "%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", name, latencies.length, errors,
+				latencies.length * 1e9 / duration, percentile(latencies, 0.5), percentile(latencies, 0.99),
+				percentile(latencies, 0.999), latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6);
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+
+	/**
+	 * Latencies of one caller thread, so recording needs no synchronization.
+	 */
+	private static final class Recorder {
+
+		final long[][] latencies = new long[OPS.length][1024];
+		final int[] counts = new int[OPS.length];
+		final int[] errors = new int[OPS.length];
+
+		void record(int op, long nanos, boolean failed) {
+			if (counts[op] == latencies[op].length) {
+				latencies[op] = Arrays.copyOf(latencies[op], counts[op] * 2);
+			}
+			latencies[op][counts[op]++] = nanos;
+			if (failed) {
+				errors[op]++;
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package ch.eldeskar.ttrss.api.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds getHeadlines responses shaped like the ones of a real TT-RSS server,
+ * including escaped slashes, unicode escapes and numbers sent as strings.
+ *
+ */
+final class Payloads {
+
+	private static final String PARAGRAPH = "<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod "
+			+ "tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud "
+			+ "exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat. Z\\u00fcrich \\u2013 "
+			+ "<a href=\\\"https:\\/\\/example.com\\/article\\\">read more<\\/a><\\/p>";
+
+	private Payloads() {
+	}
+
+	/**
+	 * @param int     items amount of headlines
+	 * @param boolean showContent whether every headline carries its content, as
+	 *                with show_content=true
+	 * @return byte[] UTF-8 encoded response
+	 */
+	static byte[] headlines(int items, boolean showContent) {
+		StringBuilder json = new StringBuilder(items * (showContent ? 3000 : 800));
+		json.append("{\"seq\":0,\"status\":0,\"content\":[");
+		for (int i = 0; i < items; i++) {
+			int id = 100000 + i;
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append("{\"id\":").append(id);
+			json.append(",\"guid\":\"SHA1:5a1b3c").append(id).append("e2f9d8c7b6a5\"");
+			json.append(",\"unread\":").append(i % 3 != 0);
+			json.append(",\"marked\":").append(i % 7 == 0);
+			json.append(",\"published\":false");
+			json.append(",\"updated\":").append(1571000000L + i * 60L);
+			json.append(",\"is_updated\":false");
+			json.append(",\"title\":\"Headline number ").append(i).append(" \\u2013 something happened\"");
+			json.append(",\"link\":\"https:\\/\\/news.example.com\\/2019\\/10\\/").append(id).append("\\/\"");
+			json.append(",\"feed_id\":\"").append(10 + i % 25).append('"');
+			json.append(",\"tags\":[\"news\",\"world\"]");
+			json.append(",\"labels\":[]");
+			json.append(",\"feed_title\":\"Example News ").append(i % 25).append('"');
+			json.append(",\"comments_count\":").append(i % 11);
+			json.append(",\"comments_link\":\"\"");
+			json.append(",\"always_display_attachments\":false");
+			json.append(",\"author\":\"Jane Doe\"");
+			json.append(",\"score\":0");
+			json.append(",\"note\":null");
+			json.append(",\"lang\":\"en\"");
+			if (showContent) {
+				json.append(",\"content\":\"");
+				for (int p = 0; p < 6; p++) {
+					json.append(PARAGRAPH);
+				}
+				json.append('"');
+				json.append(",\"attachments\":[{\"id\":\"").append(id).append("\",\"content_url\":\"https:\\/\\/news.example.com\\/img\\/")
+						.append(id).append(".jpg\",\"content_type\":\"image\\/jpeg\",\"post_id\":\"").append(id)
+						.append("\",\"title\":\"\",\"duration\":\"\",\"width\":\"0\",\"height\":\"0\"}]");
+			} else {
+				json.append(",\"attachments\":[]");
+			}
+			json.append('}');
+		}
+		json.append("]}");
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
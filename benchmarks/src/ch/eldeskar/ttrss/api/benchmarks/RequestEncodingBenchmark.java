@@ -0,0 +1,201 @@
+package ch.eldeskar.ttrss.api.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.eldeskar.ttrss.api.APIRequest;
+
+/**
+ * Compares the cost of encoding a request body with {@link APIRequest} against
+ * the way APISession built requests before: concatenating a JSON string,
+ * parsing it into a JSONObject and serializing it again. Every request shape
+ * sent by APISession has a pair, the legacy variant of catchupFeed, which had
+ * no implementation before, is written in the same style.
+ * 
+ * Run with -prof gc to see the allocations per call.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestEncodingBenchmark {
+
+	private final String session_id = "d2f5c1e8a9b04a7f8e6b3c2d1a0f9e8d";
+	private final String parameters = ",\"feed_id\":-4,\"limit\":200,\"skip\":400,\"show_content\":true,\"view_mode\":\"unread\"";
+	private final String feedParameters = ",\"cat_id\":-3,\"unread_only\":true,\"limit\":0,\"include_nested\":true";
+	private final String categoryParameters = ",\"unread_only\":true,\"enable_nested\":true,\"include_empty\":false";
+	private final String feedUrl = "https://example.org/blog/feed/?type=atom&lang=de";
+
+	@Benchmark
+	public byte[] getHeadlinesLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"" + "getHeadlines" + "\"" + parameters + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getHeadlines() {
+		return APIRequest.create("getHeadlines", session_id).raw(parameters).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getArticleLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"getArticle\",\"article_id\":\"" + "1234,1235,1236" + "\"}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getArticle() {
+		return APIRequest.create("getArticle", session_id).param("article_id", "1234,1235,1236").toByteArray();
+	}
+
+	@Benchmark
+	public byte[] updateArticleLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"" + "updateArticle" + "\""
+				+ ",\"article_ids\":\"1234,1235,1236\",\"mode\":0,\"field\":2" + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] updateArticle() {
+		return APIRequest.create("updateArticle", session_id).param("article_ids", "1234,1235,1236").param("mode", 0)
+				.param("field", 2).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] setArticleLabelLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"" + "setArticleLabel" + "\""
+				+ ",\"article_ids\":\"1234,1235,1236\",\"label_id\":-1025,\"assign\":true" + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] setArticleLabel() {
+		return APIRequest.create("setArticleLabel", session_id).param("article_ids", "1234,1235,1236")
+				.param("label_id", -1025).param("assign", true).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getCountersLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"" + "getCounters" + "\"" + ",\"output_mode\":\"flc\"" + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getCounters() {
+		return APIRequest.create("getCounters", session_id).param("output_mode", "flc").toByteArray();
+	}
+
+	@Benchmark
+	public byte[] loginLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"op\":\"login\",\"user\":\"" + "admin" + "\",\"password\":\"" + "correct horse battery" + "\"}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] login() {
+		return APIRequest.create("login", null).param("user", "admin").param("password", "correct horse battery")
+				.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getFeedsLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"" + "getFeeds" + "\"" + feedParameters + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getFeeds() {
+		return APIRequest.create("getFeeds", session_id).raw(feedParameters).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getCategoriesLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"" + "getCategories" + "\"" + categoryParameters + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getCategories() {
+		return APIRequest.create("getCategories", session_id).raw(categoryParameters).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getFeedTreeLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"getFeedTree\",\"include_empty\":\"" + false + "\"}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getFeedTree() {
+		return APIRequest.create("getFeedTree", session_id).param("include_empty", false).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getConfigLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"" + "getConfig" + "\"}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getConfig() {
+		return APIRequest.create("getConfig", session_id).toByteArray();
+	}
+
+	@Benchmark
+	public byte[] getLabelsLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"getLabels\",\"article_id\":\"" + "1234" + "\"}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] getLabels() {
+		return APIRequest.create("getLabels", session_id).param("article_id", "1234").toByteArray();
+	}
+
+	@Benchmark
+	public byte[] subscribeToFeedLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"subscribeToFeed\",\"feed_url\":\""
+				+ feedUrl + "\",\"category_id\":\"" + "12" + "\"}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] subscribeToFeed() {
+		return APIRequest.create("subscribeToFeed", session_id).param("feed_url", feedUrl).param("category_id", "12")
+				.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] catchupFeedLegacy() throws UnsupportedEncodingException {
+		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"catchupFeed\",\"feed_id\":" + 42
+				+ ",\"is_cat\":" + false + "}");
+		return request.toString().getBytes("utf-8");
+	}
+
+	@Benchmark
+	public byte[] catchupFeed() {
+		return APIRequest.create("catchupFeed", session_id).param("feed_id", 42).param("is_cat", false).toByteArray();
+	}
+}
@@ -0,0 +1,108 @@
+package ch.eldeskar.ttrss.api.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.eldeskar.ttrss.api.APISession;
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.transport.Transport;
+
+/**
+ * Measures decoding getHeadlines responses without any network. The legacy
+ * benchmark is the read loop APISession used before: reading line by line into
+ * a StringBuilder and building a JSONObject from the string. The others go
+ * through APISession with a transport that serves the response from memory.
+ * 
+ * Run with -prof gc to see the allocations per call.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseParsingBenchmark {
+
+	@Param({ "10", "200" })
+	private int items;
+
+	@Param({ "false", "true" })
+	private boolean showContent;
+
+	private final String session_id = "d2f5c1e8a9b04a7f8e6b3c2d1a0f9e8d";
+	private byte[] payload;
+	private APISession session;
+	private URL url;
+
+	@Setup
+	public void setup() throws IOException {
+		payload = Payloads.headlines(items, showContent);
+		session = new APISession(new Transport() {
+			@Override
+			public InputStream post(URL url, byte[] body) {
+				return new ByteArrayInputStream(payload);
+			}
+
+			@Override
+			public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+				return CompletableFuture.completedFuture(payload);
+			}
+		});
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	@Benchmark
+	public JSONObject legacy() throws IOException {
+		try (BufferedReader bufferedReader = new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(payload), "utf-8"))) {
+			StringBuilder response = new StringBuilder();
+			String responseLine = null;
+			while ((responseLine = bufferedReader.readLine()) != null) {
+				response.append(responseLine.trim());
+			}
+			return new JSONObject(response.toString());
+		}
+	}
+
+	@Benchmark
+	public JSONObject jsonObject() throws IOException {
+		return session.getHeadlines(url, session_id, "");
+	}
+
+	@Benchmark
+	public List<Headline> headlineList() throws IOException {
+		return session.getHeadlineList(url, session_id, "");
+	}
+
+	@Benchmark
+	public int forEachHeadline(Blackhole blackhole) throws IOException {
+		return session.forEachHeadline(url, session_id, "", blackhole::consume);
+	}
+
+	@Benchmark
+	public int forEachHeadlineContent(Blackhole blackhole) throws IOException {
+		return session.forEachHeadline(url, session_id, "", headline -> blackhole.consume(headline.getContent()));
+	}
+}
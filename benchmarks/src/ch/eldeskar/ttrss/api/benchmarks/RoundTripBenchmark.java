@@ -0,0 +1,159 @@
+package ch.eldeskar.ttrss.api.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ch.eldeskar.ttrss.api.APISession;
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.transport.HttpClientTransport;
+import ch.eldeskar.ttrss.api.transport.URLConnectionTransport;
+
+/**
+ * Full getHeadlines calls against an in-process HTTP server which answers
+ * every request with the same prepared response. The server gzips the
+ * response if the client accepts it and gzip is true. The legacy benchmark
+ * repeats what APISession did before transports were pluggable.
+ * 
+ * Run with -prof gc to see the allocations per call. Only the benchmark thread
+ * is counted, so the async benchmark, which decodes on the threads of the
+ * HttpClient, looks cheaper than it is.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+
+	@Param({ "10", "200" })
+	private int items;
+
+	@Param({ "false", "true" })
+	private boolean showContent;
+
+	@Param({ "false", "true" })
+	private boolean gzip;
+
+	private final String session_id = "d2f5c1e8a9b04a7f8e6b3c2d1a0f9e8d";
+	private final String parameters = ",\"feed_id\":-4,\"limit\":200,\"show_content\":true";
+	private HttpServer server;
+	private ExecutorService executor;
+	private URL url;
+	private APISession httpClient;
+	private APISession urlConnection;
+
+	@Setup
+	public void setup() throws IOException {
+		byte[] payload = Payloads.headlines(items, showContent);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(payload);
+		}
+		byte[] gzipped = compressed.toByteArray();
+		// small gzipped responses would otherwise wait for the delayed ACK of the
+		// client
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		executor = Executors.newFixedThreadPool(4);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/tt-rss/api/", exchange -> {
+			try (InputStream in = exchange.getRequestBody()) {
+				in.readAllBytes();
+			}
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			byte[] body = payload;
+			if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				body = gzipped;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "text/json");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		url = new URL("http://localhost:" + server.getAddress().getPort() + "/tt-rss/api/");
+		httpClient = new APISession(new HttpClientTransport());
+		urlConnection = new APISession(new URLConnectionTransport());
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public JSONObject legacy() throws IOException {
+		JSONObject request = new JSONObject(
+				"{\"sid\":\"" + session_id + "\",\"op\":\"" + "getHeadlines" + "\"" + parameters + "}");
+		HttpURLConnection connecction = (HttpURLConnection) url.openConnection();
+		connecction.setDoOutput(true);
+		String jsonInputString = request.toString();
+		try (OutputStream os = connecction.getOutputStream()) {
+			byte[] input = jsonInputString.getBytes("utf-8");
+			os.write(input, 0, input.length);
+			try (BufferedReader bufferedReader = new BufferedReader(
+					new InputStreamReader(connecction.getInputStream(), "utf-8"))) {
+				StringBuilder response = new StringBuilder();
+				String responseLine = null;
+				while ((responseLine = bufferedReader.readLine()) != null) {
+					response.append(responseLine.trim());
+				}
+				return new JSONObject(response.toString());
+			}
+		}
+	}
+
+	@Benchmark
+	public JSONObject urlConnection() throws IOException {
+		return urlConnection.getHeadlines(url, session_id, parameters);
+	}
+
+	@Benchmark
+	public JSONObject httpClient() throws IOException {
+		return httpClient.getHeadlines(url, session_id, parameters);
+	}
+
+	@Benchmark
+	public JSONObject httpClientAsync() {
+		return httpClient.getHeadlinesAsync(url, session_id, parameters).join();
+	}
+
+	@Benchmark
+	public List<Headline> httpClientHeadlineList() throws IOException {
+		return httpClient.getHeadlineList(url, session_id, parameters);
+	}
+}
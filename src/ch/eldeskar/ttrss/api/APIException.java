@@ -0,0 +1,32 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the TT-RSS server answered a request with an error status, e.g.
+ * {"seq":0,"status":1,"content":{"error":"NOT_LOGGED_IN"}}
+ *
+ */
+public class APIException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String error;
+
+	/**
+	 * @param String op api method which failed
+	 * @param String error error code returned by the server, e.g. NOT_LOGGED_IN
+	 */
+	public APIException(String op, String error) {
+		super(op + " failed: " + error);
+		this.error = error;
+	}
+
+	/**
+	 * @return String error code returned by the server, e.g. NOT_LOGGED_IN,
+	 *         LOGIN_ERROR, API_DISABLED or INCORRECT_USAGE
+	 */
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,231 @@
+package ch.eldeskar.ttrss.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Builds the JSON body of an API request. Properties are encoded to UTF-8 and
+ * written straight into a byte buffer which is reused by later requests of the
+ * same thread, so apart from the finished body no intermediate strings or JSON
+ * objects are created. Strings are escaped according to RFC 8259.
+ * 
+ * A request object is meant to be used once by a single thread:
+ * 
+ * <pre>
+ * byte[] body = APIRequest.create("getHeadlines", session_id).param("feed_id", 12).param("show_content", true)
+ * 		.toByteArray();
+ * </pre>
+ * 
+ * A request which is abandoned before toByteArray, e.g. because of an
+ * exception, does not block the buffer of its thread, the next request simply
+ * uses a new one.
+ *
+ */
+public final class APIRequest {
+
+	private static final int MAX_REUSED_BUFFER = 64 * 1024;
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final ThreadLocal<APIRequest> CACHED = new ThreadLocal<>();
+
+	private byte[] buffer = new byte[256];
+	private int count;
+	private String op;
+	private boolean inUse;
+
+	private APIRequest() {
+	}
+
+	/**
+	 * Starts a new request for the given api method.
+	 * 
+	 * @param String op api method, e.g. getHeadlines
+	 * @param String session_id session id, null for requests which do not need a
+	 *               session like login
+	 * @return APIRequest
+	 */
+	public static APIRequest create(String op, String session_id) {
+		APIRequest request = CACHED.get();
+		if (request == null) {
+			request = new APIRequest();
+			CACHED.set(request);
+		} else if (request.inUse) {
+			// still building, or abandoned before toByteArray, the new request takes over the cache
+			request = new APIRequest();
+			CACHED.set(request);
+		}
+		request.inUse = true;
+		request.count = 0;
+		request.op = op;
+		request.writeByte('{');
+		if (session_id != null) {
+			request.param("sid", session_id);
+		}
+		return request.param("op", op);
+	}
+
+	/**
+	 * @return String api method of this request
+	 */
+	public String getOp() {
+		return op;
+	}
+
+	public APIRequest param(String name, String value) {
+		writeName(name);
+		if (value == null) {
+			writeAscii("null");
+		} else {
+			writeString(value);
+		}
+		return this;
+	}
+
+	public APIRequest param(String name, long value) {
+		writeName(name);
+		writeAscii(Long.toString(value));
+		return this;
+	}
+
+	public APIRequest param(String name, boolean value) {
+		writeName(name);
+		writeAscii(value ? "true" : "false");
+		return this;
+	}
+
+	/**
+	 * Appends already encoded properties, like the parameters string accepted by
+	 * many {@link APISession} methods. The fragment has to start with a comma,
+	 * e.g. ,"feed_id":12,"limit":10
+	 * 
+	 * The fragment is sent verbatim, it is neither parsed nor validated. It must
+	 * be strict JSON: names and strings in double quotes, control characters
+	 * escaped, no trailing comma and no comments. Values taken from user input
+	 * should be added with the param methods instead, which escape them.
+	 * 
+	 * @param String fragment JSON properties, copied without escaping
+	 * @return APIRequest
+	 */
+	public APIRequest raw(String fragment) {
+		if (fragment != null) {
+			writeUtf8(fragment, false);
+		}
+		return this;
+	}
+
+	/**
+	 * Closes the JSON object and returns the encoded body. The request must not be
+	 * used afterwards.
+	 * 
+	 * @return byte[] UTF-8 encoded request body
+	 */
+	public byte[] toByteArray() {
+		try {
+			writeByte('}');
+			return Arrays.copyOf(buffer, count);
+		} finally {
+			if (buffer.length > MAX_REUSED_BUFFER) {
+				buffer = new byte[256];
+			}
+			inUse = false;
+		}
+	}
+
+	private void writeName(String name) {
+		if (count > 1) {
+			writeByte(',');
+		}
+		writeString(name);
+		writeByte(':');
+	}
+
+	private void writeString(String value) {
+		writeByte('"');
+		writeUtf8(value, true);
+		writeByte('"');
+	}
+
+	private void writeAscii(String value) {
+		int length = value.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			buffer[count++] = (byte) value.charAt(i);
+		}
+	}
+
+	private void writeUtf8(String value, boolean escape) {
+		int length = value.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (escape && (c < 0x20 || c == '"' || c == '\\')) {
+					writeEscaped(c);
+				} else {
+					writeByte(c);
+				}
+			} else if (c < 0x800) {
+				ensureCapacity(2);
+				buffer[count++] = (byte) (0xc0 | (c >> 6));
+				buffer[count++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				ensureCapacity(4);
+				buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				writeByte('?');
+			} else {
+				ensureCapacity(3);
+				buffer[count++] = (byte) (0xe0 | (c >> 12));
+				buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[count++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	private void writeEscaped(char c) {
+		ensureCapacity(6);
+		buffer[count++] = '\\';
+		switch (c) {
+		case '"':
+		case '\\':
+			buffer[count++] = (byte) c;
+			break;
+		case '\n':
+			buffer[count++] = 'n';
+			break;
+		case '\r':
+			buffer[count++] = 'r';
+			break;
+		case '\t':
+			buffer[count++] = 't';
+			break;
+		case '\b':
+			buffer[count++] = 'b';
+			break;
+		case '\f':
+			buffer[count++] = 'f';
+			break;
+		default:
+			buffer[count++] = 'u';
+			buffer[count++] = '0';
+			buffer[count++] = '0';
+			buffer[count++] = HEX[c >> 4];
+			buffer[count++] = HEX[c & 0xf];
+		}
+	}
+
+	private void writeByte(int b) {
+		ensureCapacity(1);
+		buffer[count++] = (byte) b;
+	}
+
+	private void ensureCapacity(int additional) {
+		if (count + additional > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + additional));
+		}
+	}
+}
@@ -1,14 +1,32 @@
 package ch.eldeskar.ttrss.api;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.json.JSONObject;
 
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+import ch.eldeskar.ttrss.api.metrics.MetricsListener;
+import ch.eldeskar.ttrss.api.model.Category;
+import ch.eldeskar.ttrss.api.model.Counter;
+import ch.eldeskar.ttrss.api.model.Feed;
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.model.Label;
+import ch.eldeskar.ttrss.api.transport.HttpClientTransport;
+import ch.eldeskar.ttrss.api.transport.Transport;
+
 /**
  * This class handles all the API calls to a TT-RSS server. this version was
  * written for version 1.5.8 of the TT-RSS server More information about the
@@ -16,12 +34,84 @@ import org.json.JSONObject;
  * 
  * @see <a href="https://tt-rss.org">https://tt-rss.org<a\>
  * 
+ * Every method is available in a blocking and in an asynchronous version, the
+ * asynchronous ones end with Async and return a CompletableFuture. How the
+ * requests get to the server is decided by the {@link Transport}, by default
+ * a {@link HttpClientTransport} is used which keeps connections alive between
+ * requests. A session object holds no login state and can be shared between
+ * threads.
+ * 
  * @author Eldeskar
  * @version 0.0.1
  *
  */
 public class APISession {
 
+	/** updateArticle mode: set the field to false */
+	public static final int MODE_FALSE = 0;
+	/** updateArticle mode: set the field to true */
+	public static final int MODE_TRUE = 1;
+	/** updateArticle mode: toggle the field */
+	public static final int MODE_TOGGLE = 2;
+
+	/** updateArticle field: starred */
+	public static final int FIELD_STARRED = 0;
+	/** updateArticle field: published */
+	public static final int FIELD_PUBLISHED = 1;
+	/** updateArticle field: unread */
+	public static final int FIELD_UNREAD = 2;
+	/** updateArticle field: article note, requires the data parameter */
+	public static final int FIELD_NOTE = 3;
+
+	private final Transport transport;
+	private volatile MetricsListener metricsListener;
+	private final Map<String, Integer> apiLevels = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a session which uses a {@link HttpClientTransport} with its own
+	 * connection pool.
+	 */
+	public APISession() {
+		this(new HttpClientTransport());
+	}
+
+	/**
+	 * Creates a session which sends all requests over the given transport.
+	 * 
+	 * @param Transport transport
+	 */
+	public APISession(Transport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * @return Transport used by this session
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets a listener which receives the timings, byte counts and errors of every
+	 * call, e.g. a {@link ch.eldeskar.ttrss.api.metrics.MetricsRecorder}. Calls
+	 * are also reported as Flight Recorder event
+	 * {@link ch.eldeskar.ttrss.api.metrics.APICallEvent}. While there is neither
+	 * a listener nor a recording the calls are not measured.
+	 * 
+	 * The connect time is only measured by
+	 * {@link ch.eldeskar.ttrss.api.transport.URLConnectionTransport}, the default
+	 * {@link HttpClientTransport} cannot tell it and reports -1.
+	 * 
+	 * @param MetricsListener listener null removes the listener
+	 */
+	public void setMetricsListener(MetricsListener listener) {
+		this.metricsListener = listener;
+	}
+
+	public MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
 	/**
 	 * This method returns an abstracted integer API version level, increased with
 	 * each API functionality change. This is the proper way to detect host API
@@ -33,8 +123,20 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getApiLevel(URL url, String session_id) throws IOException {
-		JSONObject getApiLevel = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"getApiLevel\"}");
-		return sendRequest(url, getApiLevel);
+		APIRequest request = APIRequest.create("getApiLevel", session_id);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #getApiLevel(URL, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getApiLevelAsync(URL url, String session_id) {
+		APIRequest request = APIRequest.create("getApiLevel", session_id);
+		return sendRequestAsync(url, request);
 	}
 
 	/**
@@ -48,8 +150,20 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getVersion(URL url, String session_id) throws IOException {
-		JSONObject getApiLevel = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"getApiLevel\"}");
-		return sendRequest(url, getApiLevel);
+		APIRequest request = APIRequest.create("getVersion", session_id);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #getVersion(URL, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getVersionAsync(URL url, String session_id) {
+		APIRequest request = APIRequest.create("getVersion", session_id);
+		return sendRequestAsync(url, request);
 	}
 
 	/**
@@ -75,9 +189,21 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject login(URL url, String user, String password) throws IOException {
-		JSONObject request = new JSONObject(
-				"{\"op\":\"login\",\"user\":\"" + user + "\",\"password\":\"" + password + "\"}");
-		return sendRequest(url, request);
+		APIRequest request = APIRequest.create("login", null).param("user", user).param("password", password);
+		return rememberApiLevel(url, sendRequest(url, request));
+	}
+
+	/**
+	 * Asynchronous version of {@link #login(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String user
+	 * @param String password
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> loginAsync(URL url, String user, String password) {
+		APIRequest request = APIRequest.create("login", null).param("user", user).param("password", password);
+		return sendRequestAsync(url, request).thenApply(response -> rememberApiLevel(url, response));
 	}
 
 	/**
@@ -91,10 +217,22 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject logout(URL url, String session_id) throws IOException {
-		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"logout\"}");
+		APIRequest request = APIRequest.create("logout", session_id);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #logout(URL, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> logoutAsync(URL url, String session_id) {
+		APIRequest request = APIRequest.create("logout", session_id);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * This method returns a status message with boolean value showing whether your
 	 * client (e.g. specific session ID) is currently logged in.
@@ -105,10 +243,22 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject isLoggedIn(URL url, String session_id) throws IOException {
-		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"isLoggedIn\"}");
+		APIRequest request = APIRequest.create("isLoggedIn", session_id);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #isLoggedIn(URL, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> isLoggedInAsync(URL url, String session_id) {
+		APIRequest request = APIRequest.create("isLoggedIn", session_id);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * This method returns an integer value of currently unread articles.
 	 * 
@@ -118,10 +268,22 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getUnread(URL url, String session_id) throws IOException {
-		JSONObject request = new JSONObject("{\"sid\":\"" + session_id + "\",\"op\":\"getUnread\"}");
+		APIRequest request = APIRequest.create("getUnread", session_id);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getUnread(URL, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getUnreadAsync(URL url, String session_id) {
+		APIRequest request = APIRequest.create("getUnread", session_id);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * This method required version: version:1.5.0
 	 * 
@@ -141,10 +303,55 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getCounters(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "getCounters", parameters);
+		APIRequest request = APIRequest.create("getCounters", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getCounters(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getCountersAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("getCounters", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Typed version of {@link #getCounters(URL, String, String)}, the counters are
+	 * decoded directly from the response stream.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return List of counters
+	 * @throws IOException
+	 */
+	public List<Counter> getCounterList(URL url, String session_id, String parameters) throws IOException {
+		List<Counter> counters = new ArrayList<>();
+		APIRequest request = APIRequest.create("getCounters", session_id).raw(parameters);
+		streamContent(url, request, reader -> counters.add(Counter.read(reader)));
+		return counters;
+	}
+
+	/**
+	 * Asynchronous version of {@link #getCounterList(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the list of counters
+	 */
+	public CompletableFuture<List<Counter>> getCounterListAsync(URL url, String session_id, String parameters) {
+		List<Counter> counters = new ArrayList<>();
+		APIRequest request = APIRequest.create("getCounters", session_id).raw(parameters);
+		return streamContentAsync(url, request, reader -> counters.add(Counter.read(reader)))
+				.thenApply(count -> counters);
+	}
+
 	/**
 	 * 
 	 * This method returns JSON-encoded list of feeds. The list includes category
@@ -177,10 +384,40 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getFeeds(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "getFeeds", parameters);
+		APIRequest request = APIRequest.create("getFeeds", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getFeeds(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getFeedsAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("getFeeds", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Typed version of {@link #getFeeds(URL, String, String)}, the feeds are
+	 * decoded directly from the response stream.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return List of feeds
+	 * @throws IOException
+	 */
+	public List<Feed> getFeedList(URL url, String session_id, String parameters) throws IOException {
+		List<Feed> feeds = new ArrayList<>();
+		APIRequest request = APIRequest.create("getFeeds", session_id).raw(parameters);
+		streamContent(url, request, reader -> feeds.add(Feed.read(reader)));
+		return feeds;
+	}
+
 	/**
 	 * this method returns JSON-encoded list of categories with unread counts.
 	 * 
@@ -201,10 +438,40 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getCategories(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "getCategories", parameters);
+		APIRequest request = APIRequest.create("getCategories", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getCategories(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getCategoriesAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("getCategories", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Typed version of {@link #getCategories(URL, String, String)}, the
+	 * categories are decoded directly from the response stream.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return List of categories
+	 * @throws IOException
+	 */
+	public List<Category> getCategoryList(URL url, String session_id, String parameters) throws IOException {
+		List<Category> categories = new ArrayList<>();
+		APIRequest request = APIRequest.create("getCategories", session_id).raw(parameters);
+		streamContent(url, request, reader -> categories.add(Category.read(reader)));
+		return categories;
+	}
+
 	/**
 	 * Returns JSON-encoded list of headlines.
 	 * 
@@ -249,10 +516,167 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getHeadlines(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "getHeadlines", parameters);
+		APIRequest request = APIRequest.create("getHeadlines", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getHeadlines(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getHeadlinesAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("getHeadlines", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Streaming version of {@link #getHeadlines(URL, String, String)}. Every
+	 * headline is passed to the consumer as soon as it has been read from the
+	 * connection, so only one headline at a time is held in memory. This is the
+	 * preferred way to load large pages with show_content.
+	 * 
+	 * include_header is not supported by this method.
+	 * 
+	 * @param URL                  url
+	 * @param String               session_id
+	 * @param String               parameters
+	 * @param Consumer<JSONObject> consumer receives the headlines in the order of
+	 *                             the response
+	 * @return int amount of headlines received
+	 * @throws IOException
+	 */
+	public int getHeadlines(URL url, String session_id, String parameters, Consumer<JSONObject> consumer)
+			throws IOException {
+		APIRequest request = APIRequest.create("getHeadlines", session_id).raw(parameters);
+		return streamContent(url, request, reader -> consumer.accept(reader.readObject()));
+	}
+
+	/**
+	 * Typed version of {@link #getHeadlines(URL, String, String)}, the headlines
+	 * are decoded directly from the response stream. Content and excerpt are
+	 * decoded when they are accessed.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return List of headlines
+	 * @throws IOException
+	 */
+	public List<Headline> getHeadlineList(URL url, String session_id, String parameters) throws IOException {
+		List<Headline> headlines = new ArrayList<>();
+		forEachHeadline(url, session_id, parameters, headlines::add);
+		return headlines;
+	}
+
+	/**
+	 * Asynchronous version of {@link #getHeadlineList(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the list of headlines
+	 */
+	public CompletableFuture<List<Headline>> getHeadlineListAsync(URL url, String session_id, String parameters) {
+		List<Headline> headlines = new ArrayList<>();
+		APIRequest request = APIRequest.create("getHeadlines", session_id).raw(parameters);
+		return streamContentAsync(url, request, reader -> headlines.add(Headline.read(reader)))
+				.thenApply(count -> headlines);
+	}
+
+	/**
+	 * Typed streaming version of {@link #getHeadlines(URL, String, String)}.
+	 * Every headline is decoded and passed to the consumer as soon as it has been
+	 * read from the connection.
+	 * 
+	 * include_header is not supported by this method.
+	 * 
+	 * @param URL                url
+	 * @param String             session_id
+	 * @param String             parameters
+	 * @param Consumer<Headline> consumer receives the headlines in the order of
+	 *                           the response
+	 * @return int amount of headlines received
+	 * @throws IOException
+	 */
+	public int forEachHeadline(URL url, String session_id, String parameters, Consumer<Headline> consumer)
+			throws IOException {
+		APIRequest request = APIRequest.create("getHeadlines", session_id).raw(parameters);
+		return streamContent(url, request, reader -> consumer.accept(Headline.read(reader)));
+	}
+
+	/**
+	 * Returns all headlines matching the parameters, loading them page by page
+	 * while they are consumed. The page size is the maximum the server allows for
+	 * its API level, see {@link #getPageSize(URL, String)}.
+	 * 
+	 * The parameters must not contain skip or limit, these are set by the pager.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters e.g. ,"feed_id":12,"view_mode":"unread"
+	 * @return HeadlinePager iterating over all headlines
+	 * @throws IOException
+	 */
+	public HeadlinePager getHeadlinePager(URL url, String session_id, String parameters) throws IOException {
+		return getHeadlinePager(url, session_id, parameters, getPageSize(url, session_id));
+	}
+
+	/**
+	 * Returns the maximum amount of headlines the server returns for one
+	 * getHeadlines request. The API level is remembered per server: it is taken
+	 * from the response of login if the server sends it, otherwise getApiLevel is
+	 * requested the first time.
+	 * 
+	 * @param URL    url
+	 * @param String session_id used if getApiLevel has to be requested
+	 * @return int page size, see {@link HeadlinePager#pageSizeFor(int)}
+	 * @throws IOException
+	 */
+	public int getPageSize(URL url, String session_id) throws IOException {
+		Integer level = apiLevels.get(url.toExternalForm());
+		if (level == null) {
+			JSONObject content = (JSONObject) content(getApiLevel(url, session_id), "getApiLevel");
+			level = content.optInt("level");
+			apiLevels.put(url.toExternalForm(), level);
+		}
+		return HeadlinePager.pageSizeFor(level);
+	}
+
+	/**
+	 * Same as {@link #getHeadlinePager(URL, String, String)} with a known page
+	 * size, e.g. from the api_level returned by login.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters e.g. ,"feed_id":12,"view_mode":"unread"
+	 * @param int    pageSize see {@link HeadlinePager#pageSizeFor(int)}
+	 * @return HeadlinePager iterating over all headlines
+	 */
+	public HeadlinePager getHeadlinePager(URL url, String session_id, String parameters, int pageSize) {
+		return new HeadlinePager(this, url, session_id, parameters, pageSize);
+	}
+
+	/**
+	 * Typed version of {@link #getHeadlinePager(URL, String, String, int)}, the
+	 * headlines of every page are decoded directly from the response.
+	 * 
+	 * include_header is not supported by this method.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters e.g. ,"feed_id":12,"view_mode":"unread"
+	 * @param int    pageSize see {@link HeadlinePager#pageSizeFor(int)}
+	 * @return Pager iterating over all headlines
+	 */
+	public Pager<Headline> getHeadlineListPager(URL url, String session_id, String parameters, int pageSize) {
+		return new Pager<>(pageSize, skip -> getHeadlineListAsync(url, session_id,
+				parameters + ",\"limit\":" + pageSize + ",\"skip\":" + skip), Headline::getId);
+	}
+
 	/**
 	 * This method update information on specified articles.
 	 * 
@@ -278,10 +702,59 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject updateArticle(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "updateArticle", parameters);
+		APIRequest request = APIRequest.create("updateArticle", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #updateArticle(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> updateArticleAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("updateArticle", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Same as {@link #updateArticle(URL, String, String)} with typed parameters.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_ids comma-separated list of article IDs
+	 * @param int    mode 0 - set to false, 1 - set to true, 2 - toggle
+	 * @param int    field 0 - starred, 1 - published, 2 - unread
+	 * @return JSONObject Response of the server. Example:
+	 *         {"status":"OK","updated":1}
+	 * @throws IOException
+	 */
+	public JSONObject updateArticle(URL url, String session_id, String article_ids, int mode, int field)
+			throws IOException {
+		APIRequest request = APIRequest.create("updateArticle", session_id).param("article_ids", article_ids)
+				.param("mode", mode).param("field", field);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #updateArticle(URL, String, String, int, int)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_ids comma-separated list of article IDs
+	 * @param int    mode 0 - set to false, 1 - set to true, 2 - toggle
+	 * @param int    field 0 - starred, 1 - published, 2 - unread
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> updateArticleAsync(URL url, String session_id, String article_ids, int mode,
+			int field) {
+		APIRequest request = APIRequest.create("updateArticle", session_id).param("article_ids", article_ids)
+				.param("mode", mode).param("field", field);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * This method requests JSON-encoded article object with specific ID.
 	 * 
@@ -295,11 +768,72 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getArticle(URL url, String session_id, String article_Id) throws IOException {
-		JSONObject request = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"getArticle\",\"article_id\":\"" + article_Id + "\"}");
+		APIRequest request = APIRequest.create("getArticle", session_id).param("article_id", article_Id);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getArticle(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_Id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getArticleAsync(URL url, String session_id, String article_Id) {
+		APIRequest request = APIRequest.create("getArticle", session_id).param("article_id", article_Id);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Streaming version of {@link #getArticle(URL, String, String)}, every
+	 * article is passed to the consumer as soon as it has been read from the
+	 * connection.
+	 * 
+	 * @param URL                  url
+	 * @param String               session_id
+	 * @param String               article_Id comma-separated list of article IDs
+	 * @param Consumer<JSONObject> consumer receives the articles
+	 * @return int amount of articles received
+	 * @throws IOException
+	 */
+	public int getArticle(URL url, String session_id, String article_Id, Consumer<JSONObject> consumer)
+			throws IOException {
+		APIRequest request = APIRequest.create("getArticle", session_id).param("article_id", article_Id);
+		return streamContent(url, request, reader -> consumer.accept(reader.readObject()));
+	}
+
+	/**
+	 * Typed version of {@link #getArticle(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_Id comma-separated list of article IDs
+	 * @return List of articles
+	 * @throws IOException
+	 */
+	public List<Headline> getArticleList(URL url, String session_id, String article_Id) throws IOException {
+		List<Headline> articles = new ArrayList<>();
+		APIRequest request = APIRequest.create("getArticle", session_id).param("article_id", article_Id);
+		streamContent(url, request, reader -> articles.add(Headline.read(reader)));
+		return articles;
+	}
+
+	/**
+	 * Asynchronous version of {@link #getArticleList(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_Id comma-separated list of article IDs
+	 * @return CompletableFuture with the list of articles
+	 */
+	public CompletableFuture<List<Headline>> getArticleListAsync(URL url, String session_id, String article_Id) {
+		List<Headline> articles = new ArrayList<>();
+		APIRequest request = APIRequest.create("getArticle", session_id).param("article_id", article_Id);
+		return streamContentAsync(url, request, reader -> articles.add(Headline.read(reader)))
+				.thenApply(count -> articles);
+	}
+
 	/**
 	 * This method returns tt-rss configuration parameters:
 	 * 
@@ -315,10 +849,23 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getConfig(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "getConfig", parameters);
+		APIRequest request = APIRequest.create("getConfig", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getConfig(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getConfigAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("getConfig", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * Tries to update specified feed. This operation is not performed in the
 	 * background, so it might take considerable time and, potentially, be aborted
@@ -335,9 +882,21 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject updateFeed(URL url, String session_id, String feed_Id) throws IOException {
-		JSONObject updateFeed = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"updateFeed\"\"feed_id\":\"" + feed_Id + "\"}");
-		return sendRequest(url, updateFeed);
+		APIRequest request = APIRequest.create("updateFeed", session_id).param("feed_id", feed_Id);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #updateFeed(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String feed_Id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> updateFeedAsync(URL url, String session_id, String feed_Id) {
+		APIRequest request = APIRequest.create("updateFeed", session_id).param("feed_id", feed_Id);
+		return sendRequestAsync(url, request);
 	}
 
 	/**
@@ -351,11 +910,23 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getPref(URL url, String session_id, String pref_name) throws IOException {
-		JSONObject request = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"getPref\"\"pref_name\":\"" + pref_name + "\"}");
+		APIRequest request = APIRequest.create("getPref", session_id).param("pref_name", pref_name);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getPref(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String pref_name
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getPrefAsync(URL url, String session_id, String pref_name) {
+		APIRequest request = APIRequest.create("getPref", session_id).param("pref_name", pref_name);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * Required version: version:1.4.3
 	 * 
@@ -369,14 +940,36 @@ public class APISession {
 	 * 
 	 * {"status":"OK"}
 	 * 
-	 * @param URL    url
-	 * @param String session_id
+	 * See {@link CatchupPlanner} to mark a set of articles as read with as few
+	 * requests as possible.
+	 * 
+	 * @param URL     url
+	 * @param String  session_id
+	 * @param int     feed_id feed or category id, special feeds like -4 are
+	 *                allowed
+	 * @param boolean is_cat true if feed_id is a category
 	 * @return JSONObject Response of the server. Example:
 	 * @throws IOException
 	 */
-	public JSONObject catchupFeed(URL url, String session_id) throws IOException {
-		// TODO catchupFeed
-		return null;
+	public JSONObject catchupFeed(URL url, String session_id, int feed_id, boolean is_cat) throws IOException {
+		APIRequest request = APIRequest.create("catchupFeed", session_id).param("feed_id", feed_id).param("is_cat",
+				is_cat);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #catchupFeed(URL, String, int, boolean)}.
+	 * 
+	 * @param URL     url
+	 * @param String  session_id
+	 * @param int     feed_id
+	 * @param boolean is_cat
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> catchupFeedAsync(URL url, String session_id, int feed_id, boolean is_cat) {
+		APIRequest request = APIRequest.create("catchupFeed", session_id).param("feed_id", feed_id).param("is_cat",
+				is_cat);
+		return sendRequestAsync(url, request);
 	}
 
 	/**
@@ -405,11 +998,39 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getLabels(URL url, String session_id, String article_Id) throws IOException {
-		JSONObject request = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"getLabels\",\"article_Id\":\"" + article_Id + "\"}");
+		APIRequest request = APIRequest.create("getLabels", session_id).param("article_id", article_Id);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #getLabels(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_Id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getLabelsAsync(URL url, String session_id, String article_Id) {
+		APIRequest request = APIRequest.create("getLabels", session_id).param("article_id", article_Id);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Typed version of {@link #getLabels(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String article_Id
+	 * @return List of labels
+	 * @throws IOException
+	 */
+	public List<Label> getLabelList(URL url, String session_id, String article_Id) throws IOException {
+		List<Label> labels = new ArrayList<>();
+		APIRequest request = APIRequest.create("getLabels", session_id).param("article_id", article_Id);
+		streamContent(url, request, reader -> labels.add(Label.read(reader)));
+		return labels;
+	}
+
 	/**
 	 * Assigns article_ids to specified label.
 	 * 
@@ -429,10 +1050,61 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject setArticleLabel(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "setArticleLabel", parameters);
+		APIRequest request = APIRequest.create("setArticleLabel", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #setArticleLabel(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> setArticleLabelAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("setArticleLabel", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Same as {@link #setArticleLabel(URL, String, String)} with typed
+	 * parameters.
+	 * 
+	 * @param URL     url
+	 * @param String  session_id
+	 * @param String  article_ids comma-separated list of article IDs
+	 * @param int     label_id label id, as returned in getLabels
+	 * @param boolean assign assign or remove label
+	 * @return JSONObject Response of the server. Example:
+	 *         {"status":"OK","updated":1}
+	 * @throws IOException
+	 */
+	public JSONObject setArticleLabel(URL url, String session_id, String article_ids, int label_id, boolean assign)
+			throws IOException {
+		APIRequest request = APIRequest.create("setArticleLabel", session_id).param("article_ids", article_ids)
+				.param("label_id", label_id).param("assign", assign);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of
+	 * {@link #setArticleLabel(URL, String, String, int, boolean)}.
+	 * 
+	 * @param URL     url
+	 * @param String  session_id
+	 * @param String  article_ids comma-separated list of article IDs
+	 * @param int     label_id label id, as returned in getLabels
+	 * @param boolean assign assign or remove label
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> setArticleLabelAsync(URL url, String session_id, String article_ids,
+			int label_id, boolean assign) {
+		APIRequest request = APIRequest.create("setArticleLabel", session_id).param("article_ids", article_ids)
+				.param("label_id", label_id).param("assign", assign);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * Creates an article with specified data in the Published feed.
 	 * 
@@ -447,10 +1119,23 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject shareToPublished(URL url, String session_id, String parameters) throws IOException {
-		JSONObject request = createJSONParamString(session_id, "shareToPublished", parameters);
+		APIRequest request = APIRequest.create("shareToPublished", session_id).raw(parameters);
 		return sendRequest(url, request);
 	}
 
+	/**
+	 * Asynchronous version of {@link #shareToPublished(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String parameters
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> shareToPublishedAsync(URL url, String session_id, String parameters) {
+		APIRequest request = APIRequest.create("shareToPublished", session_id).raw(parameters);
+		return sendRequestAsync(url, request);
+	}
+
 	/**
 	 * @param URL    url
 	 * @param String session_id
@@ -459,19 +1144,50 @@ public class APISession {
 	 */
 	public JSONObject subscribeToFeed(URL url, String session_id, String feed_url, String category_id)
 			throws IOException {
-		JSONObject subscribeToFeed = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"subscribeToFeed\",\"session_id\":\"" + session_id
-						+ "\",\"feed_url\":\"" + feed_url + "\"\",\"category_id\":\"" + category_id + "\"\"}");
-		return sendRequest(url, subscribeToFeed);
+		APIRequest request = APIRequest.create("subscribeToFeed", session_id).param("feed_url", feed_url)
+				.param("category_id", category_id);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #subscribeToFeed(URL, String, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String feed_url
+	 * @param String category_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> subscribeToFeedAsync(URL url, String session_id, String feed_url,
+			String category_id) {
+		APIRequest request = APIRequest.create("subscribeToFeed", session_id).param("feed_url", feed_url)
+				.param("category_id", category_id);
+		return sendRequestAsync(url, request);
 	}
 
 	public JSONObject subscribeToFeed(URL url, String session_id, String feed_url, String category_id, String login,
 			String password) throws IOException {
-		JSONObject subscribeToFeed = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"subscribeToFeed\",\"session_id\":\"" + session_id
-						+ "\",\"feed_url\":\"" + feed_url + "\"\",\"category_id\":\"" + category_id + "\"\",\"login\":\"" + login
-						+ "\"\",\"password\":\"" + password + "\"\"}");
-		return sendRequest(url, subscribeToFeed);
+		APIRequest request = APIRequest.create("subscribeToFeed", session_id).param("feed_url", feed_url)
+				.param("category_id", category_id).param("login", login).param("password", password);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #subscribeToFeed(URL, String, String, String, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String feed_url
+	 * @param String category_id
+	 * @param String login
+	 * @param String password
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> subscribeToFeedAsync(URL url, String session_id, String feed_url,
+			String category_id, String login, String password) {
+		APIRequest request = APIRequest.create("subscribeToFeed", session_id).param("feed_url", feed_url)
+				.param("category_id", category_id).param("login", login).param("password", password);
+		return sendRequestAsync(url, request);
 	}
 
 	/**
@@ -487,9 +1203,21 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject unsubscribeFeed(URL url, String session_id, String feed_id) throws IOException {
-		JSONObject unsubscribeFeed = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"unsubscribeFeed\",\"feed_id\":\"" + feed_id + "\"}");
-		return sendRequest(url, unsubscribeFeed);
+		APIRequest request = APIRequest.create("unsubscribeFeed", session_id).param("feed_id", feed_id);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #unsubscribeFeed(URL, String, String)}.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 * @param String feed_id
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> unsubscribeFeedAsync(URL url, String session_id, String feed_id) {
+		APIRequest request = APIRequest.create("unsubscribeFeed", session_id).param("feed_id", feed_id);
+		return sendRequestAsync(url, request);
 	}
 
 	/**
@@ -505,36 +1233,172 @@ public class APISession {
 	 * @throws IOException
 	 */
 	public JSONObject getFeedTree(URL url, String session_id, boolean includeEmpty) throws IOException {
-		JSONObject getFeedTree = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"getFeedTree\",\"include_empty\":\"" + includeEmpty + "\"}");
-		return sendRequest(url, getFeedTree);
-	}
-
-	private JSONObject createJSONParamString(String session_id, String apiMethodName, String parameters) {
-		JSONObject jsonObject = new JSONObject(
-				"{\"sid\":\"" + session_id + "\",\"op\":\"" + apiMethodName + "\"" + parameters + "}");
-		return jsonObject;
-	}
-
-	private JSONObject sendRequest(URL url, JSONObject request) throws IOException {
-		HttpURLConnection connecction = (HttpURLConnection) url.openConnection();
-		// connecction.setRequestMethod("POST");
-		// connecction.setRequestProperty("Content-Type", "application/json; utf-8");
-		// connecction.setRequestProperty("Accept", "application/json");
-		connecction.setDoOutput(true);
-		String jsonInputString = request.toString();
-		try (OutputStream os = connecction.getOutputStream()) {
-			byte[] input = jsonInputString.getBytes("utf-8");
-			os.write(input, 0, input.length);
-			try (BufferedReader bufferedReader = new BufferedReader(
-					new InputStreamReader(connecction.getInputStream(), "utf-8"))) {
-				StringBuilder response = new StringBuilder();
-				String responseLine = null;
-				while ((responseLine = bufferedReader.readLine()) != null) {
-					response.append(responseLine.trim());
+		APIRequest request = APIRequest.create("getFeedTree", session_id).param("include_empty", includeEmpty);
+		return sendRequest(url, request);
+	}
+
+	/**
+	 * Asynchronous version of {@link #getFeedTree(URL, String, boolean)}.
+	 * 
+	 * @param URL     url
+	 * @param String  session_id
+	 * @param boolean includeEmpty
+	 * @return CompletableFuture with the response of the server
+	 */
+	public CompletableFuture<JSONObject> getFeedTreeAsync(URL url, String session_id, boolean includeEmpty) {
+		APIRequest request = APIRequest.create("getFeedTree", session_id).param("include_empty", includeEmpty);
+		return sendRequestAsync(url, request);
+	}
+
+	/**
+	 * Sends the request and passes every element of the content array to the
+	 * handler while the response is still being received.
+	 */
+	private int streamContent(URL url, APIRequest request, ElementHandler handler) throws IOException {
+		String op = request.getOp();
+		byte[] input = request.toByteArray();
+		CallTimer timer = CallTimer.start(metricsListener, op, url, input.length, false);
+		if (timer == null) {
+			return readContent(transport.post(url, input), op, handler);
+		}
+		try {
+			int count = readContent(timer.received(transport.post(url, input)), op, handler);
+			timer.completed(count, null);
+			return count;
+		} catch (IOException | RuntimeException e) {
+			timer.completed(null, e);
+			throw e;
+		}
+	}
+
+	private int readContent(InputStream in, String op, ElementHandler handler) throws IOException {
+		try (JSONStreamReader reader = new JSONStreamReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			int status = 0;
+			int count = 0;
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if ("status".equals(name)) {
+					status = reader.nextInt();
+				} else if ("content".equals(name)) {
+					if (status != 0 || reader.peek() != JSONStreamReader.Token.BEGIN_ARRAY) {
+						throw new APIException(op, error(reader.readValue()));
+					}
+					reader.beginArray();
+					while (reader.hasNext()) {
+						handler.handle(reader);
+						count++;
+					}
+					reader.endArray();
+				} else {
+					reader.skipValue();
 				}
-				return new JSONObject(response.toString());
+			}
+			reader.endObject();
+			return count;
+		}
+	}
+
+	/**
+	 * Asynchronous version of streamContent, the elements are decoded once the
+	 * whole response has been received.
+	 */
+	private CompletableFuture<Integer> streamContentAsync(URL url, APIRequest request, ElementHandler handler) {
+		String op = request.getOp();
+		byte[] input = request.toByteArray();
+		CallTimer timer = CallTimer.start(metricsListener, op, url, input.length, true);
+		CompletableFuture<Integer> future = transport.postAsync(url, input).thenApply(body -> {
+			if (timer != null) {
+				timer.received(body);
+			}
+			try {
+				return readContent(new ByteArrayInputStream(body), op, handler);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		return timer == null ? future : future.whenComplete(timer::completed);
+	}
+
+	private JSONObject sendRequest(URL url, APIRequest request) throws IOException {
+		// the request may be reused by the thread once it has been serialized
+		String op = request.getOp();
+		byte[] input = request.toByteArray();
+		CallTimer timer = CallTimer.start(metricsListener, op, url, input.length, false);
+		if (timer == null) {
+			try (InputStream in = transport.post(url, input)) {
+				return readResponse(new InputStreamReader(in, StandardCharsets.UTF_8));
 			}
 		}
+		try {
+			JSONObject response;
+			try (InputStream in = timer.received(transport.post(url, input))) {
+				response = readResponse(new InputStreamReader(in, StandardCharsets.UTF_8));
+			}
+			timer.completed(response, null);
+			return response;
+		} catch (IOException | RuntimeException e) {
+			timer.completed(null, e);
+			throw e;
+		}
+	}
+
+	private CompletableFuture<JSONObject> sendRequestAsync(URL url, APIRequest request) {
+		String op = request.getOp();
+		byte[] input = request.toByteArray();
+		CallTimer timer = CallTimer.start(metricsListener, op, url, input.length, true);
+		CompletableFuture<JSONObject> future = transport.postAsync(url, input).thenApply(body -> {
+			if (timer != null) {
+				timer.received(body);
+			}
+			try {
+				return readResponse(new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		return timer == null ? future : future.whenComplete(timer::completed);
+	}
+
+	/**
+	 * Unwraps the content of a server response.
+	 * 
+	 * @param JSONObject response {"seq":0,"status":0,"content":...}
+	 * @param String     op api method which has been called, used in the error
+	 *                   message
+	 * @return Object content of the response, a JSONObject or a JSONArray
+	 * @throws APIException if the status of the response is not 0
+	 */
+	private JSONObject rememberApiLevel(URL url, JSONObject response) {
+		Object content = response.opt("content");
+		if (response.optInt("status") == 0 && content instanceof JSONObject && ((JSONObject) content).has("api_level")) {
+			apiLevels.put(url.toExternalForm(), ((JSONObject) content).optInt("api_level"));
+		}
+		return response;
+	}
+
+	static Object content(JSONObject response, String op) throws APIException {
+		Object content = response.opt("content");
+		if (response.optInt("status") != 0) {
+			throw new APIException(op, error(content));
+		}
+		return content;
+	}
+
+	private static String error(Object content) {
+		return content instanceof JSONObject ? ((JSONObject) content).optString("error", "UNKNOWN") : "UNKNOWN";
+	}
+
+	private JSONObject readResponse(Reader reader) throws IOException {
+		try (JSONStreamReader jsonReader = new JSONStreamReader(reader)) {
+			return jsonReader.readObject();
+		}
+	}
+
+	/**
+	 * Reads one element of a streamed content array.
+	 */
+	private interface ElementHandler {
+		void handle(JSONStreamReader reader) throws IOException;
 	}
 }
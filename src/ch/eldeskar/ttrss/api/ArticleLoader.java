@@ -0,0 +1,241 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ch.eldeskar.ttrss.api.model.Headline;
+
+/**
+ * Loads articles with getArticle, combining the requests of all callers. Ids
+ * requested within a short window are collected and loaded with as few
+ * requests as possible, each request asks for up to chunkSize comma-separated
+ * ids (supported since version:1.5.0). All chunks are requested concurrently.
+ * 
+ * An id which is already being loaded is not requested again, the caller gets
+ * the same future as the first caller.
+ *
+ */
+public class ArticleLoader implements Closeable {
+
+	private final APISession session;
+	private final URL url;
+	private final String session_id;
+	private final long windowNanos;
+	private final int chunkSize;
+	private final ScheduledExecutorService scheduler;
+	private final boolean ownScheduler;
+
+	private final Map<Integer, CompletableFuture<Headline>> inFlight = new HashMap<>();
+	private List<Integer> pending = new ArrayList<>();
+	private ScheduledFuture<?> scheduledDispatch;
+	private boolean closed;
+
+	/**
+	 * Creates a loader with its own scheduler thread.
+	 * 
+	 * @param APISession session
+	 * @param URL        url
+	 * @param String     session_id
+	 * @param Duration   window time to wait for more ids after the first one
+	 * @param int        chunkSize maximum amount of ids per request
+	 */
+	public ArticleLoader(APISession session, URL url, String session_id, Duration window, int chunkSize) {
+		this(session, url, session_id, window, chunkSize, Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "ArticleLoader");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Creates a loader which schedules its requests on the given executor. The
+	 * executor is not shut down when the loader is closed.
+	 * 
+	 * @param APISession               session
+	 * @param URL                      url
+	 * @param String                   session_id
+	 * @param Duration                 window time to wait for more ids after the
+	 *                                 first one
+	 * @param int                      chunkSize maximum amount of ids per request
+	 * @param ScheduledExecutorService scheduler
+	 */
+	public ArticleLoader(APISession session, URL url, String session_id, Duration window, int chunkSize,
+			ScheduledExecutorService scheduler) {
+		this(session, url, session_id, window, chunkSize, scheduler, false);
+	}
+
+	private ArticleLoader(APISession session, URL url, String session_id, Duration window, int chunkSize,
+			ScheduledExecutorService scheduler, boolean ownScheduler) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		this.session = session;
+		this.url = url;
+		this.session_id = session_id;
+		this.windowNanos = window.toNanos();
+		this.chunkSize = chunkSize;
+		this.scheduler = scheduler;
+		this.ownScheduler = ownScheduler;
+	}
+
+	/**
+	 * @param int articleId
+	 * @return CompletableFuture with the article, completes with null if the
+	 *         server did not return the article, fails with an IOException after
+	 *         {@link #close()}
+	 */
+	public CompletableFuture<Headline> load(int articleId) {
+		List<Integer> chunk = null;
+		List<Integer> rejected = null;
+		RejectedExecutionException rejection = null;
+		CompletableFuture<Headline> future;
+		synchronized (this) {
+			if (closed) {
+				return CompletableFuture.failedFuture(new IOException("ArticleLoader is closed"));
+			}
+			future = inFlight.get(articleId);
+			if (future != null) {
+				return future;
+			}
+			future = new CompletableFuture<>();
+			inFlight.put(articleId, future);
+			pending.add(articleId);
+			if (pending.size() >= chunkSize) {
+				chunk = pending;
+				pending = new ArrayList<>();
+			} else if (scheduledDispatch == null) {
+				try {
+					scheduledDispatch = scheduler.schedule(this::dispatch, windowNanos, TimeUnit.NANOSECONDS);
+				} catch (RejectedExecutionException e) {
+					// e.g. a shared scheduler which has been shut down
+					rejected = pending;
+					pending = new ArrayList<>();
+					rejection = e;
+				}
+			}
+		}
+		if (chunk != null) {
+			request(chunk);
+		}
+		if (rejected != null) {
+			complete(rejected, null, new IOException("Could not schedule the request", rejection));
+		}
+		return future;
+	}
+
+	/**
+	 * Loads several articles.
+	 * 
+	 * @param Collection<Integer> articleIds
+	 * @return CompletableFuture with the articles in the order of the ids,
+	 *         articles which the server did not return are left out
+	 */
+	public CompletableFuture<List<Headline>> loadAll(Collection<Integer> articleIds) {
+		List<CompletableFuture<Headline>> futures = new ArrayList<>(articleIds.size());
+		for (int articleId : articleIds) {
+			futures.add(load(articleId));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			List<Headline> articles = new ArrayList<>(futures.size());
+			for (CompletableFuture<Headline> future : futures) {
+				Headline article = future.join();
+				if (article != null) {
+					articles.add(article);
+				}
+			}
+			return articles;
+		});
+	}
+
+	/**
+	 * Requests all collected ids now instead of waiting for the window to end.
+	 */
+	public void dispatch() {
+		List<Integer> ids;
+		synchronized (this) {
+			if (scheduledDispatch != null) {
+				scheduledDispatch.cancel(false);
+				scheduledDispatch = null;
+			}
+			ids = pending;
+			pending = new ArrayList<>();
+		}
+		for (int i = 0; i < ids.size(); i += chunkSize) {
+			request(ids.subList(i, Math.min(i + chunkSize, ids.size())));
+		}
+	}
+
+	/**
+	 * Requests the pending ids and stops the scheduler if it is owned by this
+	 * loader. Later calls of {@link #load(int)} fail.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		dispatch();
+		if (ownScheduler) {
+			scheduler.shutdown();
+		}
+	}
+
+	private void request(List<Integer> ids) {
+		StringBuilder articleIds = new StringBuilder();
+		for (int id : ids) {
+			if (articleIds.length() > 0) {
+				articleIds.append(',');
+			}
+			articleIds.append(id);
+		}
+		session.getArticleListAsync(url, session_id, articleIds.toString())
+				.whenComplete((articles, error) -> complete(ids, articles, unwrap(error)));
+	}
+
+	private void complete(List<Integer> ids, List<Headline> articles, Throwable error) {
+		Map<Integer, Headline> byId = new HashMap<>();
+		if (articles != null) {
+			for (Headline article : articles) {
+				byId.put(article.getId(), article);
+			}
+		}
+		for (int id : ids) {
+			CompletableFuture<Headline> future;
+			synchronized (this) {
+				future = inFlight.remove(id);
+			}
+			if (future == null) {
+				continue;
+			}
+			if (error != null) {
+				future.completeExceptionally(error);
+			} else {
+				future.complete(byId.get(id));
+			}
+		}
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException
+				|| error instanceof UncheckedIOException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+}
@@ -0,0 +1,380 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+
+/**
+ * Collects single article updates (updateArticle and setArticleLabel) and
+ * sends them to the server in batches, using the comma-separated article_ids
+ * parameter. Pending updates are sent when maxBatchSize updates have been
+ * collected or maxDelay after the first pending update, whatever happens
+ * first.
+ * 
+ * Updates of the same article and field which have not been sent yet are
+ * merged: setting a field replaces earlier pending updates, two toggles cancel
+ * each other out and a toggle after a set inverts the set. Label updates of the
+ * same article and label are replaced by the latest one.
+ * 
+ * A flush is only sent once the requests of the previous flush have completed,
+ * so a later update of an article never overtakes an earlier one.
+ * 
+ * The future returned for an update completes with the updated count of the
+ * request it was sent with, or with 0 if the update was cancelled out. The
+ * server only reports the total of a request, so all updates sent together
+ * receive the same count, not their own share. If the request fails or the
+ * response cannot be read, all of them fail.
+ *
+ */
+public class ArticleUpdateBatcher implements Closeable {
+
+	private final APISession session;
+	private final URL url;
+	private final String session_id;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final ScheduledExecutorService scheduler;
+	private final boolean ownScheduler;
+
+	private Map<Long, PendingUpdate> updates = new LinkedHashMap<>();
+	private Map<Long, PendingLabel> labels = new LinkedHashMap<>();
+	private ScheduledFuture<?> scheduledFlush;
+	private CompletableFuture<Void> lastFlush = CompletableFuture.completedFuture(null);
+	private boolean closed;
+
+	/**
+	 * Creates a batcher with its own scheduler thread.
+	 * 
+	 * @param APISession session
+	 * @param URL        url
+	 * @param String     session_id
+	 * @param int        maxBatchSize amount of pending updates which triggers a
+	 *                   flush
+	 * @param Duration   maxDelay maximum time an update waits before it is sent
+	 */
+	public ArticleUpdateBatcher(APISession session, URL url, String session_id, int maxBatchSize, Duration maxDelay) {
+		this(session, url, session_id, maxBatchSize, maxDelay, Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "ArticleUpdateBatcher");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Creates a batcher which schedules its flushes on the given executor. The
+	 * executor is not shut down when the batcher is closed.
+	 * 
+	 * @param APISession               session
+	 * @param URL                      url
+	 * @param String                   session_id
+	 * @param int                      maxBatchSize amount of pending updates which
+	 *                                 triggers a flush
+	 * @param Duration                 maxDelay maximum time an update waits before
+	 *                                 it is sent
+	 * @param ScheduledExecutorService scheduler
+	 */
+	public ArticleUpdateBatcher(APISession session, URL url, String session_id, int maxBatchSize, Duration maxDelay,
+			ScheduledExecutorService scheduler) {
+		this(session, url, session_id, maxBatchSize, maxDelay, scheduler, false);
+	}
+
+	private ArticleUpdateBatcher(APISession session, URL url, String session_id, int maxBatchSize, Duration maxDelay,
+			ScheduledExecutorService scheduler, boolean ownScheduler) {
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+		}
+		this.session = session;
+		this.url = url;
+		this.session_id = session_id;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = maxDelay.toNanos();
+		this.scheduler = scheduler;
+		this.ownScheduler = ownScheduler;
+	}
+
+	/**
+	 * Queues an updateArticle operation for a single article.
+	 * 
+	 * @param int articleId
+	 * @param int mode {@link APISession#MODE_FALSE}, {@link APISession#MODE_TRUE}
+	 *            or {@link APISession#MODE_TOGGLE}
+	 * @param int field {@link APISession#FIELD_STARRED},
+	 *            {@link APISession#FIELD_PUBLISHED} or
+	 *            {@link APISession#FIELD_UNREAD}, notes cannot be batched
+	 * @return CompletableFuture with the updated count of the batch
+	 */
+	public CompletableFuture<Integer> updateArticle(int articleId, int mode, int field) {
+		if (field < APISession.FIELD_STARRED || field > APISession.FIELD_UNREAD) {
+			throw new IllegalArgumentException("Field cannot be batched: " + field);
+		}
+		if (mode < APISession.MODE_FALSE || mode > APISession.MODE_TOGGLE) {
+			throw new IllegalArgumentException("Invalid mode: " + mode);
+		}
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		List<CompletableFuture<Integer>> cancelled = null;
+		boolean flush;
+		synchronized (this) {
+			checkOpen();
+			long key = key(field, articleId);
+			PendingUpdate pending = updates.get(key);
+			if (pending == null) {
+				updates.put(key, new PendingUpdate(articleId, field, mode, future));
+			} else if (mode != APISession.MODE_TOGGLE) {
+				pending.mode = mode;
+				pending.callers.add(future);
+			} else if (pending.mode == APISession.MODE_TOGGLE) {
+				updates.remove(key);
+				cancelled = pending.callers;
+				cancelled.add(future);
+			} else {
+				pending.mode = pending.mode == APISession.MODE_TRUE ? APISession.MODE_FALSE : APISession.MODE_TRUE;
+				pending.callers.add(future);
+			}
+			flush = scheduleFlush();
+		}
+		complete(cancelled, 0);
+		if (flush) {
+			flush();
+		}
+		return future;
+	}
+
+	/**
+	 * Queues a setArticleLabel operation for a single article.
+	 * 
+	 * @param int     articleId
+	 * @param int     labelId label id, as returned in getLabels
+	 * @param boolean assign assign or remove the label
+	 * @return CompletableFuture with the updated count of the batch
+	 */
+	public CompletableFuture<Integer> setArticleLabel(int articleId, int labelId, boolean assign) {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		boolean flush;
+		synchronized (this) {
+			checkOpen();
+			long key = key(labelId, articleId);
+			PendingLabel pending = labels.get(key);
+			if (pending == null) {
+				labels.put(key, new PendingLabel(articleId, labelId, assign, future));
+			} else {
+				pending.assign = assign;
+				pending.callers.add(future);
+			}
+			flush = scheduleFlush();
+		}
+		if (flush) {
+			flush();
+		}
+		return future;
+	}
+
+	/**
+	 * Sends all pending updates as soon as the requests of the previous flush
+	 * have completed.
+	 * 
+	 * @return CompletableFuture which completes when all requests of this flush
+	 *         and the previous ones have completed
+	 */
+	public CompletableFuture<Void> flush() {
+		Map<Long, PendingUpdate> flushUpdates;
+		Map<Long, PendingLabel> flushLabels;
+		CompletableFuture<Void> previous;
+		CompletableFuture<Void> flushed = new CompletableFuture<>();
+		synchronized (this) {
+			if (scheduledFlush != null) {
+				scheduledFlush.cancel(false);
+				scheduledFlush = null;
+			}
+			if (updates.isEmpty() && labels.isEmpty()) {
+				return lastFlush;
+			}
+			flushUpdates = updates;
+			flushLabels = labels;
+			updates = new LinkedHashMap<>();
+			labels = new LinkedHashMap<>();
+			previous = lastFlush;
+			lastFlush = flushed;
+		}
+		// a failed flush does not stop the following ones, its callers have failed
+		previous.whenComplete((result, error) -> send(flushUpdates, flushLabels).whenComplete((sent, failure) -> {
+			if (failure == null) {
+				flushed.complete(null);
+			} else {
+				flushed.completeExceptionally(failure);
+			}
+		}));
+		return flushed;
+	}
+
+	private CompletableFuture<Void> send(Map<Long, PendingUpdate> flushUpdates, Map<Long, PendingLabel> flushLabels) {
+		Map<Long, Batch> batches = new LinkedHashMap<>();
+		for (PendingUpdate pending : flushUpdates.values()) {
+			batches.computeIfAbsent(key(pending.field, pending.mode), k -> new Batch()).add(pending.articleId,
+					pending.callers);
+		}
+		List<CompletableFuture<?>> requests = new ArrayList<>();
+		for (Map.Entry<Long, Batch> entry : batches.entrySet()) {
+			int field = (int) (entry.getKey() >> 32);
+			int mode = entry.getKey().intValue();
+			Batch batch = entry.getValue();
+			requests.add(batch.send(session.updateArticleAsync(url, session_id, batch.articleIds(), mode, field),
+					"updateArticle"));
+		}
+
+		batches.clear();
+		for (PendingLabel pending : flushLabels.values()) {
+			batches.computeIfAbsent(key(pending.labelId, pending.assign ? 1 : 0), k -> new Batch())
+					.add(pending.articleId, pending.callers);
+		}
+		for (Map.Entry<Long, Batch> entry : batches.entrySet()) {
+			int labelId = (int) (entry.getKey() >> 32);
+			boolean assign = entry.getKey().intValue() == 1;
+			Batch batch = entry.getValue();
+			requests.add(batch.send(session.setArticleLabelAsync(url, session_id, batch.articleIds(), labelId, assign),
+					"setArticleLabel"));
+		}
+		return CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * @return int amount of updates which have not been sent yet
+	 */
+	public synchronized int getPendingCount() {
+		return updates.size() + labels.size();
+	}
+
+	/**
+	 * Sends all pending updates and stops accepting new ones. Does not wait for
+	 * the requests to complete, use the future returned by {@link #flush()} for
+	 * that.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		CompletableFuture<Void> flushed = flush();
+		if (ownScheduler) {
+			flushed.whenComplete((result, error) -> scheduler.shutdown());
+		}
+	}
+
+	/**
+	 * Schedules the timed flush for the first pending update.
+	 * 
+	 * @return boolean true if the batch is full and has to be flushed now
+	 */
+	private boolean scheduleFlush() {
+		int pending = updates.size() + labels.size();
+		if (pending >= maxBatchSize) {
+			return true;
+		}
+		if (pending > 0 && scheduledFlush == null) {
+			scheduledFlush = scheduler.schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+		}
+		return false;
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("ArticleUpdateBatcher is closed");
+		}
+	}
+
+	private static long key(int high, int low) {
+		return ((long) high << 32) | (low & 0xffffffffL);
+	}
+
+	private static void complete(List<CompletableFuture<Integer>> futures, int updated) {
+		if (futures != null) {
+			for (CompletableFuture<Integer> future : futures) {
+				future.complete(updated);
+			}
+		}
+	}
+
+	private static class PendingUpdate {
+		final int articleId;
+		final int field;
+		int mode;
+		final List<CompletableFuture<Integer>> callers = new ArrayList<>(1);
+
+		PendingUpdate(int articleId, int field, int mode, CompletableFuture<Integer> caller) {
+			this.articleId = articleId;
+			this.field = field;
+			this.mode = mode;
+			callers.add(caller);
+		}
+	}
+
+	private static class PendingLabel {
+		final int articleId;
+		final int labelId;
+		boolean assign;
+		final List<CompletableFuture<Integer>> callers = new ArrayList<>(1);
+
+		PendingLabel(int articleId, int labelId, boolean assign, CompletableFuture<Integer> caller) {
+			this.articleId = articleId;
+			this.labelId = labelId;
+			this.assign = assign;
+			callers.add(caller);
+		}
+	}
+
+	/**
+	 * Articles which are sent with the same request.
+	 */
+	private static class Batch {
+		private final StringBuilder articleIds = new StringBuilder();
+		private final List<CompletableFuture<Integer>> callers = new ArrayList<>();
+
+		void add(int articleId, List<CompletableFuture<Integer>> articleCallers) {
+			if (articleIds.length() > 0) {
+				articleIds.append(',');
+			}
+			articleIds.append(articleId);
+			callers.addAll(articleCallers);
+		}
+
+		String articleIds() {
+			return articleIds.toString();
+		}
+
+		CompletableFuture<JSONObject> send(CompletableFuture<JSONObject> request, String op) {
+			return request.whenComplete((response, error) -> {
+				if (error == null) {
+					try {
+						Object content = APISession.content(response, op);
+						if (!(content instanceof JSONObject)) {
+							throw new IOException("Unexpected " + op + " response: " + content);
+						}
+						complete(callers, ((JSONObject) content).optInt("updated"));
+						return;
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				for (CompletableFuture<Integer> caller : callers) {
+					caller.completeExceptionally(cause);
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,571 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.transport.HttpClientTransport;
+import ch.eldeskar.ttrss.api.transport.Transport;
+
+/**
+ * APISession which caches the responses of getFeeds, getCategories,
+ * getFeedTree, getConfig and getCounters. Every operation has its own time to
+ * live, the cache holds at most maxEntries responses and evicts the least
+ * recently used one when it is full. Error responses are not cached.
+ * 
+ * The cached feeds, categories, feed tree and counters of a session are dropped
+ * when getConfig reports a different num_feeds than before, and after
+ * subscribeToFeed or unsubscribeFeed has been called through this session. A
+ * response of a request which was already running when the cache of its
+ * session was dropped is returned, but not cached.
+ * 
+ * Only the JSONObject methods are cached. The typed methods getFeedList,
+ * getCategoryList and getCounterList stream the response into objects and
+ * always go to the server.
+ * 
+ * Identical requests of a session which miss the cache while one of them is
+ * already on its way to the server wait for its response instead of sending
+ * their own, synchronous and asynchronous calls alike. Requests made after the
+ * cache of the session has been dropped do not wait for requests sent before.
+ * 
+ * Cached responses are shared between callers and must not be modified.
+ *
+ */
+public class CachingAPISession extends APISession {
+
+	private static final String[] FEED_LIST_OPS = { "getFeeds", "getCategories", "getFeedTree", "getCounters" };
+
+	private final int maxEntries;
+	private final Map<String, Long> timeToLive = new HashMap<>();
+	private final Map<Key, CacheEntry> entries;
+	private final Map<Key, CompletableFuture<JSONObject>> inFlight = new HashMap<>();
+	private final Map<String, Integer> numFeeds = new HashMap<>();
+	private final Map<String, Long> generations = new HashMap<>();
+	private long generation;
+	private final Map<String, long[]> counts = new HashMap<>();
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * Creates a cache with the default transport.
+	 * 
+	 * @param int maxEntries maximum amount of cached responses
+	 */
+	public CachingAPISession(int maxEntries) {
+		this(new HttpClientTransport(), maxEntries);
+	}
+
+	/**
+	 * Creates a cache which sends requests over the given transport. Default time
+	 * to live: getCounters 10 seconds, getConfig 1 minute, getFeeds, getCategories
+	 * and getFeedTree 5 minutes.
+	 * 
+	 * @param Transport transport
+	 * @param int       maxEntries maximum amount of cached responses
+	 */
+	public CachingAPISession(Transport transport, int maxEntries) {
+		super(transport);
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+		}
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+				if (size() > CachingAPISession.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		setTimeToLive("getCounters", Duration.ofSeconds(10));
+		setTimeToLive("getConfig", Duration.ofMinutes(1));
+		setTimeToLive("getFeeds", Duration.ofMinutes(5));
+		setTimeToLive("getCategories", Duration.ofMinutes(5));
+		setTimeToLive("getFeedTree", Duration.ofMinutes(5));
+	}
+
+	/**
+	 * Changes how long the responses of an operation are cached. A zero duration
+	 * disables caching for the operation.
+	 * 
+	 * @param String   op getFeeds, getCategories, getFeedTree, getConfig or
+	 *                 getCounters
+	 * @param Duration ttl
+	 */
+	public synchronized void setTimeToLive(String op, Duration ttl) {
+		timeToLive.put(op, ttl.toNanos());
+	}
+
+	/**
+	 * Drops all cached responses.
+	 */
+	public synchronized void invalidateAll() {
+		invalidations += entries.size();
+		entries.clear();
+		inFlight.clear();
+		generation++;
+	}
+
+	/**
+	 * Drops the cached feeds, categories, feed tree and counters of a session.
+	 * 
+	 * @param URL    url
+	 * @param String session_id
+	 */
+	public synchronized void invalidateFeeds(URL url, String session_id) {
+		String account = account(url, session_id);
+		generations.merge(account, 1L, Long::sum);
+		for (Iterator<Key> it = entries.keySet().iterator(); it.hasNext();) {
+			Key key = it.next();
+			if (key.account.equals(account) && isFeedListOp(key.op)) {
+				it.remove();
+				invalidations++;
+			}
+		}
+		inFlight.keySet().removeIf(key -> key.account.equals(account) && isFeedListOp(key.op));
+	}
+
+	/**
+	 * @return Statistics snapshot of the hit and miss counts
+	 */
+	public synchronized Statistics getStatistics() {
+		Map<String, long[]> copy = new HashMap<>();
+		for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+			copy.put(entry.getKey(), entry.getValue().clone());
+		}
+		return new Statistics(copy, entries.size(), evictions, invalidations);
+	}
+
+	@Override
+	public JSONObject getCounters(URL url, String session_id, String parameters) throws IOException {
+		Key key = new Key(url, session_id, "getCounters", parameters);
+		return read(key, () -> super.getCounters(url, session_id, parameters));
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getCountersAsync(URL url, String session_id, String parameters) {
+		Key key = new Key(url, session_id, "getCounters", parameters);
+		return readAsync(key, () -> super.getCountersAsync(url, session_id, parameters));
+	}
+
+	@Override
+	public JSONObject getFeeds(URL url, String session_id, String parameters) throws IOException {
+		Key key = new Key(url, session_id, "getFeeds", parameters);
+		return read(key, () -> super.getFeeds(url, session_id, parameters));
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getFeedsAsync(URL url, String session_id, String parameters) {
+		Key key = new Key(url, session_id, "getFeeds", parameters);
+		return readAsync(key, () -> super.getFeedsAsync(url, session_id, parameters));
+	}
+
+	@Override
+	public JSONObject getCategories(URL url, String session_id, String parameters) throws IOException {
+		Key key = new Key(url, session_id, "getCategories", parameters);
+		return read(key, () -> super.getCategories(url, session_id, parameters));
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getCategoriesAsync(URL url, String session_id, String parameters) {
+		Key key = new Key(url, session_id, "getCategories", parameters);
+		return readAsync(key, () -> super.getCategoriesAsync(url, session_id, parameters));
+	}
+
+	@Override
+	public JSONObject getFeedTree(URL url, String session_id, boolean includeEmpty) throws IOException {
+		Key key = new Key(url, session_id, "getFeedTree", String.valueOf(includeEmpty));
+		return read(key, () -> super.getFeedTree(url, session_id, includeEmpty));
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getFeedTreeAsync(URL url, String session_id, boolean includeEmpty) {
+		Key key = new Key(url, session_id, "getFeedTree", String.valueOf(includeEmpty));
+		return readAsync(key, () -> super.getFeedTreeAsync(url, session_id, includeEmpty));
+	}
+
+	@Override
+	public JSONObject getConfig(URL url, String session_id, String parameters) throws IOException {
+		Key key = new Key(url, session_id, "getConfig", parameters);
+		return read(key, () -> super.getConfig(url, session_id, parameters));
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> getConfigAsync(URL url, String session_id, String parameters) {
+		Key key = new Key(url, session_id, "getConfig", parameters);
+		return readAsync(key, () -> super.getConfigAsync(url, session_id, parameters));
+	}
+
+	@Override
+	public JSONObject subscribeToFeed(URL url, String session_id, String feed_url, String category_id)
+			throws IOException {
+		try {
+			return super.subscribeToFeed(url, session_id, feed_url, category_id);
+		} finally {
+			invalidateFeeds(url, session_id);
+		}
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> subscribeToFeedAsync(URL url, String session_id, String feed_url,
+			String category_id) {
+		return super.subscribeToFeedAsync(url, session_id, feed_url, category_id)
+				.whenComplete((response, error) -> invalidateFeeds(url, session_id));
+	}
+
+	@Override
+	public JSONObject subscribeToFeed(URL url, String session_id, String feed_url, String category_id, String login,
+			String password) throws IOException {
+		try {
+			return super.subscribeToFeed(url, session_id, feed_url, category_id, login, password);
+		} finally {
+			invalidateFeeds(url, session_id);
+		}
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> subscribeToFeedAsync(URL url, String session_id, String feed_url,
+			String category_id, String login, String password) {
+		return super.subscribeToFeedAsync(url, session_id, feed_url, category_id, login, password)
+				.whenComplete((response, error) -> invalidateFeeds(url, session_id));
+	}
+
+	@Override
+	public JSONObject unsubscribeFeed(URL url, String session_id, String feed_id) throws IOException {
+		try {
+			return super.unsubscribeFeed(url, session_id, feed_id);
+		} finally {
+			invalidateFeeds(url, session_id);
+		}
+	}
+
+	@Override
+	public CompletableFuture<JSONObject> unsubscribeFeedAsync(URL url, String session_id, String feed_id) {
+		return super.unsubscribeFeedAsync(url, session_id, feed_id)
+				.whenComplete((response, error) -> invalidateFeeds(url, session_id));
+	}
+
+	private interface Request {
+		JSONObject send() throws IOException;
+	}
+
+	private JSONObject read(Key key, Request request) throws IOException {
+		CompletableFuture<JSONObject> flight;
+		boolean leader = false;
+		long generation;
+		synchronized (this) {
+			generation = generation(key);
+			JSONObject cached = lookup(key);
+			if (cached != null) {
+				return cached;
+			}
+			flight = inFlight.get(key);
+			if (flight == null) {
+				flight = new CompletableFuture<>();
+				inFlight.put(key, flight);
+				leader = true;
+			} else {
+				count(key)[3]++;
+			}
+		}
+		if (!leader) {
+			try {
+				return flight.copy().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + key.op);
+			} catch (ExecutionException e) {
+				throw asIOException(e.getCause());
+			}
+		}
+		JSONObject response = null;
+		Throwable error = null;
+		try {
+			response = store(key, request.send(), generation);
+			return response;
+		} catch (Throwable e) {
+			error = e;
+			throw e;
+		} finally {
+			// also on an Error, the followers must not wait forever
+			complete(key, flight, response, error);
+		}
+	}
+
+	private CompletableFuture<JSONObject> readAsync(Key key, Supplier<CompletableFuture<JSONObject>> request) {
+		CompletableFuture<JSONObject> flight;
+		long generation;
+		synchronized (this) {
+			generation = generation(key);
+			JSONObject cached = lookup(key);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached);
+			}
+			flight = inFlight.get(key);
+			if (flight != null) {
+				count(key)[3]++;
+				return flight.copy();
+			}
+			flight = new CompletableFuture<>();
+			inFlight.put(key, flight);
+		}
+		CompletableFuture<JSONObject> leader = flight;
+		CompletableFuture<JSONObject> sent;
+		try {
+			sent = request.get();
+		} catch (RuntimeException | Error e) {
+			sent = CompletableFuture.failedFuture(e);
+		}
+		sent.thenApply(response -> store(key, response, generation)).whenComplete((response, error) -> complete(key, leader,
+				response, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+		return leader.copy();
+	}
+
+	private void complete(Key key, CompletableFuture<JSONObject> flight, JSONObject response, Throwable error) {
+		synchronized (this) {
+			inFlight.remove(key, flight);
+		}
+		if (error != null) {
+			flight.completeExceptionally(error);
+		} else {
+			flight.complete(response);
+		}
+	}
+
+	private static IOException asIOException(Throwable error) {
+		if (error instanceof IOException) {
+			return (IOException) error;
+		}
+		if (error instanceof RuntimeException) {
+			throw (RuntimeException) error;
+		}
+		return new IOException(error);
+	}
+
+	private long[] count(Key key) {
+		return counts.computeIfAbsent(key.op, op -> new long[4]);
+	}
+
+	private JSONObject lookup(Key key) {
+		long[] count = count(key);
+		CacheEntry entry = entries.get(key);
+		if (entry != null && System.nanoTime() - entry.expires < 0) {
+			count[0]++;
+			return entry.response;
+		}
+		if (entry != null) {
+			entries.remove(key);
+			count[2]++;
+		}
+		if (!inFlight.containsKey(key)) {
+			count[1]++;
+		}
+		return null;
+	}
+
+	/**
+	 * @return long changes whenever the cached responses of the session of the
+	 *         key are dropped
+	 */
+	private long generation(Key key) {
+		return generation + generations.getOrDefault(key.account, 0L);
+	}
+
+	/**
+	 * Caches the response unless the cache of its session has been dropped since
+	 * the request was sent, the response may be older than the drop.
+	 */
+	private JSONObject store(Key key, JSONObject response, long generation) {
+		if (response.optInt("status") != 0) {
+			return response;
+		}
+		boolean feedsChanged = false;
+		synchronized (this) {
+			if ("getConfig".equals(key.op)) {
+				Object content = response.opt("content");
+				if (content instanceof JSONObject && ((JSONObject) content).has("num_feeds")) {
+					int feeds = ((JSONObject) content).optInt("num_feeds");
+					Integer previous = numFeeds.put(key.account, feeds);
+					feedsChanged = previous != null && previous != feeds;
+				}
+			}
+			long ttl = timeToLive.getOrDefault(key.op, 0L);
+			if (ttl > 0 && generation(key) == generation) {
+				entries.put(key, new CacheEntry(response, System.nanoTime() + ttl));
+			}
+		}
+		if (feedsChanged) {
+			invalidateFeeds(key.url, key.session_id);
+		}
+		return response;
+	}
+
+	private static boolean isFeedListOp(String op) {
+		for (String feedListOp : FEED_LIST_OPS) {
+			if (feedListOp.equals(op)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String account(URL url, String session_id) {
+		return url.toExternalForm() + ' ' + session_id;
+	}
+
+	private static final class Key {
+		final URL url;
+		final String session_id;
+		final String account;
+		final String op;
+		final String parameters;
+
+		Key(URL url, String session_id, String op, String parameters) {
+			this.url = url;
+			this.session_id = session_id;
+			this.account = account(url, session_id);
+			this.op = op;
+			this.parameters = parameters == null ? "" : parameters;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return account.equals(other.account) && op.equals(other.op) && parameters.equals(other.parameters);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(account, op, parameters);
+		}
+	}
+
+	private static final class CacheEntry {
+		final JSONObject response;
+		final long expires;
+
+		CacheEntry(JSONObject response, long expires) {
+			this.response = response;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Hit and miss counts of the cache at the time
+	 * {@link CachingAPISession#getStatistics()} was called.
+	 */
+	public static final class Statistics {
+		private final Map<String, long[]> counts;
+		private final int size;
+		private final long evictions;
+		private final long invalidations;
+
+		Statistics(Map<String, long[]> counts, int size, long evictions, long invalidations) {
+			this.counts = counts;
+			this.size = size;
+			this.evictions = evictions;
+			this.invalidations = invalidations;
+		}
+
+		/**
+		 * @param String op
+		 * @return long requests of the operation served from the cache
+		 */
+		public long getHits(String op) {
+			return counts.getOrDefault(op, new long[4])[0];
+		}
+
+		/**
+		 * @param String op
+		 * @return long requests of the operation which went to the server
+		 */
+		public long getMisses(String op) {
+			return counts.getOrDefault(op, new long[4])[1];
+		}
+
+		/**
+		 * @param String op
+		 * @return long cached responses of the operation which expired
+		 */
+		public long getExpirations(String op) {
+			return counts.getOrDefault(op, new long[4])[2];
+		}
+
+		/**
+		 * @param String op
+		 * @return long requests of the operation which waited for an identical
+		 *         request already in flight
+		 */
+		public long getCollapsed(String op) {
+			return counts.getOrDefault(op, new long[4])[3];
+		}
+
+		public long getHits() {
+			return counts.values().stream().mapToLong(count -> count[0]).sum();
+		}
+
+		public long getMisses() {
+			return counts.values().stream().mapToLong(count -> count[1]).sum();
+		}
+
+		public long getCollapsed() {
+			return counts.values().stream().mapToLong(count -> count[3]).sum();
+		}
+
+		/**
+		 * @return double hits / (hits + misses), 0 if there were no requests
+		 */
+		public double getHitRate() {
+			long hits = getHits();
+			long total = hits + getMisses();
+			return total == 0 ? 0 : (double) hits / total;
+		}
+
+		/**
+		 * @return int amount of cached responses
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return long responses removed because the cache was full
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return long responses removed because of invalidation
+		 */
+		public long getInvalidations() {
+			return invalidations;
+		}
+
+		@Override
+		public String toString() {
+			return "Statistics [hits=" + getHits() + ", misses=" + getMisses() + ", collapsed=" + getCollapsed()
+					+ ", size=" + size + ", evictions="
+					+ evictions + ", invalidations=" + invalidations + "]";
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.concurrent.CompletionException;
+
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.metrics.APICallEvent;
+import ch.eldeskar.ttrss.api.metrics.CallMetrics;
+import ch.eldeskar.ttrss.api.metrics.MetricsListener;
+import ch.eldeskar.ttrss.api.transport.ConnectTiming;
+
+/**
+ * Measures one call of {@link APISession} and hands the result to the metrics
+ * listener and to Flight Recorder. Only created while one of them is active,
+ * otherwise calls run without any instrumentation.
+ *
+ */
+final class CallTimer {
+
+	private final MetricsListener listener;
+	private final APICallEvent event;
+	private final String op;
+	private final URL url;
+	private final boolean async;
+	private final long requestBytes;
+	private final long start = System.nanoTime();
+	private long received;
+	private long connectNanos = -1;
+	private long responseBytes;
+	private TimingInputStream stream;
+
+	private CallTimer(MetricsListener listener, APICallEvent event, String op, URL url, boolean async,
+			long requestBytes) {
+		this.listener = listener;
+		this.event = event;
+		this.op = op;
+		this.url = url;
+		this.async = async;
+		this.requestBytes = requestBytes;
+	}
+
+	/**
+	 * @return CallTimer null if neither a listener is set nor the Flight Recorder
+	 *         event is enabled
+	 */
+	static CallTimer start(MetricsListener listener, String op, URL url, int requestBytes, boolean async) {
+		APICallEvent event = new APICallEvent();
+		if (!event.isEnabled()) {
+			if (listener == null) {
+				return null;
+			}
+			event = null;
+		} else {
+			event.begin();
+		}
+		return new CallTimer(listener, event, op, url, async, requestBytes);
+	}
+
+	/**
+	 * Called when the response headers arrived.
+	 * 
+	 * @return InputStream the response body, which measures the time spent
+	 *         waiting for data
+	 */
+	InputStream received(InputStream in) {
+		received = System.nanoTime();
+		if (in instanceof ConnectTiming) {
+			connectNanos = ((ConnectTiming) in).getConnectNanos();
+		}
+		stream = new TimingInputStream(in);
+		return stream;
+	}
+
+	/**
+	 * Called when the body of an asynchronous call arrived.
+	 */
+	void received(byte[] body) {
+		received = System.nanoTime();
+		responseBytes = body.length;
+	}
+
+	/**
+	 * Called when the call finished, successful or not.
+	 * 
+	 * @param Object    result of the call, a response with an error status counts
+	 *                  as failed call
+	 * @param Throwable error null if the call succeeded
+	 */
+	void completed(Object result, Throwable error) {
+		if (error != null) {
+			finish(error(error));
+		} else if (result instanceof JSONObject && ((JSONObject) result).optInt("status") != 0) {
+			Object content = ((JSONObject) result).opt("content");
+			finish(content instanceof JSONObject ? ((JSONObject) content).optString("error", "UNKNOWN") : "UNKNOWN");
+		} else {
+			finish(null);
+		}
+	}
+
+	private void finish(String error) {
+		long end = System.nanoTime();
+		long timeToFirstByte = -1;
+		long read = 0;
+		long parse = 0;
+		if (received != 0) {
+			if (async) {
+				read = received - start;
+			} else {
+				timeToFirstByte = received - start;
+				read = stream.readNanos;
+				responseBytes = stream.bytes;
+			}
+			parse = end - received - (async ? 0 : read);
+		}
+		if (listener != null) {
+			listener.onCall(new CallMetrics(op, url, async, connectNanos, timeToFirstByte, read, parse, end - start,
+					requestBytes, responseBytes, error));
+		}
+		if (event != null) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.op = op;
+				event.url = url.toExternalForm();
+				event.async = async;
+				event.connect = connectNanos;
+				event.timeToFirstByte = timeToFirstByte;
+				event.read = read;
+				event.parse = parse;
+				event.requestBytes = requestBytes;
+				event.responseBytes = responseBytes;
+				event.error = error;
+				event.commit();
+			}
+		}
+	}
+
+	private static String error(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof UncheckedIOException)
+				&& error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error instanceof APIException ? ((APIException) error).getError() : error.getClass().getSimpleName();
+	}
+
+	/**
+	 * Counts the bytes and the time spent in read calls, which is the time spent
+	 * waiting for the network. The rest of the time after the headers is
+	 * decoding.
+	 */
+	private static final class TimingInputStream extends FilterInputStream {
+
+		long readNanos;
+		long bytes;
+
+		TimingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int b = in.read();
+			readNanos += System.nanoTime() - start;
+			if (b >= 0) {
+				bytes++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			int n = in.read(b, off, len);
+			readNanos += System.nanoTime() - start;
+			if (n > 0) {
+				bytes += n;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.store.ArticleStore;
+
+/**
+ * Marks a set of articles as read with as few requests as possible. A feed
+ * whose unread articles are all in the set is caught up with one catchupFeed,
+ * a category whose feeds are all caught up with one catchupFeed for the
+ * category. The remaining articles are marked with updateArticle, chunkSize
+ * ids per request.
+ *
+ * Which articles of a feed are unread is taken from the {@link ArticleStore},
+ * the unread count of the server from the {@link FeedTreeIndex}. A feed is
+ * only caught up if the set contains every unread article of the store and at
+ * least as many as the server counts, so articles the client has not seen yet
+ * stay unread. The counters of the index should therefore be refreshed right
+ * before planning, e.g. with
+ * {@link FeedTreeIndex#updateCounters(APISession, URL, String)}.
+ *
+ * Right before a catchupFeed the plan asks the server for unread articles
+ * above the high-water mark of the store which are not in the set. If there
+ * are any, the store is behind and the articles of the step are marked with
+ * updateArticle instead. After every step the marked articles are flagged as
+ * read in the store, so the next plan does not count them as unread.
+ *
+ * <pre>
+ * CatchupPlanner planner = new CatchupPlanner(store, index);
+ * index.updateCounters(session, url, sid);
+ * CatchupPlanner.Plan plan = planner.plan(articleIds);
+ * plan.execute(sessions);
+ * </pre>
+ *
+ */
+public class CatchupPlanner {
+
+	private static final int DEFAULT_CHUNK_SIZE = 2000;
+	private static final int[] NONE = new int[0];
+
+	private final ArticleStore store;
+	private final FeedTreeIndex tree;
+	private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * @param ArticleStore  store local articles, tells which articles of a feed
+	 *                      are unread
+	 * @param FeedTreeIndex tree feeds, categories and unread counts of the server
+	 */
+	public CatchupPlanner(ArticleStore store, FeedTreeIndex tree) {
+		this.store = store;
+		this.tree = tree;
+	}
+
+	/**
+	 * @param int chunkSize article ids per updateArticle request, 2000 by default
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * @param int[] articleIds articles to mark as read
+	 * @return Plan the requests to send
+	 * @throws IOException if the store could not be read
+	 */
+	public Plan plan(int[] articleIds) throws IOException {
+		int chunkSize = this.chunkSize;
+		int[] ids = Arrays.stream(articleIds).distinct().sorted().toArray();
+		Map<Integer, int[]> unread = store.getUnreadIds();
+		Map<Integer, List<Integer>> byFeed = new TreeMap<>();
+		List<Integer> rest = new ArrayList<>();
+		for (int id : ids) {
+			int feedId = store.getFeedId(id);
+			if (feedId > 0 && tree.getFeed(feedId) != null) {
+				byFeed.computeIfAbsent(feedId, key -> new ArrayList<>()).add(id);
+			} else {
+				rest.add(id);
+			}
+		}
+
+		Map<Integer, int[]> covered = new TreeMap<>();
+		for (Map.Entry<Integer, List<Integer>> entry : byFeed.entrySet()) {
+			int feedId = entry.getKey();
+			int[] local = unread.getOrDefault(feedId, NONE);
+			int requested = 0;
+			for (int id : entry.getValue()) {
+				if (Arrays.binarySearch(local, id) >= 0) {
+					requested++;
+				}
+			}
+			if (requested > 0 && requested == local.length && tree.getFeed(feedId).getUnread() <= requested) {
+				covered.put(feedId, entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+			} else {
+				rest.addAll(entry.getValue());
+			}
+		}
+
+		List<Step> steps = new ArrayList<>();
+		Set<Integer> done = new HashSet<>();
+		for (FeedTreeIndex.Node root : tree.getRoots()) {
+			if (root.isCategory()) {
+				catchupCategories(root, covered, unread, steps, done);
+			}
+		}
+		for (Map.Entry<Integer, int[]> entry : covered.entrySet()) {
+			if (!done.contains(entry.getKey())) {
+				steps.add(new Step(Step.Kind.CATCHUP_FEED, entry.getKey(), entry.getValue(),
+						highWaterMark(entry.getKey()), chunkSize));
+			}
+		}
+		Collections.sort(rest);
+		for (int from = 0; from < rest.size(); from += chunkSize) {
+			int[] chunk = rest.subList(from, Math.min(rest.size(), from + chunkSize)).stream()
+					.mapToInt(Integer::intValue).toArray();
+			steps.add(new Step(Step.Kind.UPDATE_ARTICLES, 0, chunk, 0, chunkSize));
+		}
+		return new Plan(store, steps);
+	}
+
+	/**
+	 * @return int id up to which the store has every article of the feed, either
+	 *         from syncing the feed or from syncing all articles
+	 */
+	private int highWaterMark(int feedId) {
+		return Math.max(store.getHighWaterMark(feedId), store.getHighWaterMark(-4));
+	}
+
+	/**
+	 * @return int lowest high-water mark of the feeds below the category
+	 */
+	private int highWaterMark(FeedTreeIndex.Node category) {
+		int min = Integer.MAX_VALUE;
+		for (FeedTreeIndex.Node child : category.getChildren()) {
+			min = Math.min(min, child.isCategory() ? highWaterMark(child) : highWaterMark(child.getId()));
+		}
+		return min;
+	}
+
+	/**
+	 * Catches up the topmost categories whose feeds are all covered.
+	 */
+	private void catchupCategories(FeedTreeIndex.Node category, Map<Integer, int[]> covered,
+			Map<Integer, int[]> unread, List<Step> steps, Set<Integer> done) {
+		if (category.getId() >= 0 && isComplete(category, covered, unread)) {
+			List<Integer> feeds = feedsBelow(category, covered);
+			int[] articles = feeds.stream().flatMapToInt(feedId -> Arrays.stream(covered.get(feedId))).sorted()
+					.toArray();
+			if (articles.length > 0) {
+				done.addAll(feeds);
+				steps.add(new Step(Step.Kind.CATCHUP_CATEGORY, category.getId(), articles, highWaterMark(category),
+						chunkSize));
+				return;
+			}
+		}
+		for (FeedTreeIndex.Node child : category.getChildren()) {
+			if (child.isCategory()) {
+				catchupCategories(child, covered, unread, steps, done);
+			}
+		}
+	}
+
+	/**
+	 * @return boolean true if every feed below the category is either covered or
+	 *         has no unread articles, neither on the server nor in the store
+	 */
+	private static boolean isComplete(FeedTreeIndex.Node category, Map<Integer, int[]> covered,
+			Map<Integer, int[]> unread) {
+		for (FeedTreeIndex.Node child : category.getChildren()) {
+			if (child.isCategory()) {
+				if (!isComplete(child, covered, unread)) {
+					return false;
+				}
+			} else if (!covered.containsKey(child.getId())
+					&& (child.getUnread() > 0 || unread.containsKey(child.getId()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<Integer> feedsBelow(FeedTreeIndex.Node category, Map<Integer, int[]> covered) {
+		List<Integer> feeds = new ArrayList<>();
+		for (FeedTreeIndex.Node child : category.getChildren()) {
+			if (child.isCategory()) {
+				feeds.addAll(feedsBelow(child, covered));
+			} else if (covered.containsKey(child.getId())) {
+				feeds.add(child.getId());
+			}
+		}
+		return feeds;
+	}
+
+	/**
+	 * The requests planned for a set of articles, catchupFeed requests first.
+	 */
+	public static final class Plan {
+
+		private final ArticleStore store;
+		private final List<Step> steps;
+
+		Plan(ArticleStore store, List<Step> steps) {
+			this.store = store;
+			this.steps = Collections.unmodifiableList(steps);
+		}
+
+		public List<Step> getSteps() {
+			return steps;
+		}
+
+		/**
+		 * @return int articles of the set marked by the plan
+		 */
+		public int getArticleCount() {
+			return steps.stream().mapToInt(Step::getArticleCount).sum();
+		}
+
+		/**
+		 * Sends the requests one after the other and flags the marked articles as
+		 * read in the store. The unread counts of the {@link FeedTreeIndex} are
+		 * not changed, refresh them afterwards.
+		 *
+		 * @param SessionManager sessions
+		 * @throws IOException if a request failed, the following ones are not sent
+		 */
+		public void execute(SessionManager sessions) throws IOException {
+			for (Step step : steps) {
+				sessions.execute(step::send);
+				store.setUnread(step.articleIds, false);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Plan [requests=" + steps.size() + ", articles=" + getArticleCount() + ", steps=" + steps + "]";
+		}
+	}
+
+	/**
+	 * One request of a plan.
+	 */
+	public static final class Step {
+
+		public enum Kind {
+			/**
+			 * catchupFeed for a feed.
+			 */
+			CATCHUP_FEED,
+			/**
+			 * catchupFeed for a category and its sub categories.
+			 */
+			CATCHUP_CATEGORY,
+			/**
+			 * updateArticle setting unread to false.
+			 */
+			UPDATE_ARTICLES
+		}
+
+		private final Kind kind;
+		private final int id;
+		private final int[] articleIds;
+		private final int sinceId;
+		private final int chunkSize;
+
+		Step(Kind kind, int id, int[] articleIds, int sinceId, int chunkSize) {
+			this.kind = kind;
+			this.id = id;
+			this.articleIds = articleIds;
+			this.sinceId = sinceId;
+			this.chunkSize = chunkSize;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return int feed or category id, 0 for UPDATE_ARTICLES
+		 */
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * @return int[] articles of the set marked by this step, sorted
+		 */
+		public int[] getArticleIds() {
+			return articleIds.clone();
+		}
+
+		/**
+		 * @return int articles of the set marked by this step
+		 */
+		public int getArticleCount() {
+			return articleIds.length;
+		}
+
+		/**
+		 * Sends catchupFeed if the server has no unread articles above the
+		 * high-water mark which are missing in the set, otherwise updateArticle
+		 * for the articles of the step.
+		 */
+		JSONObject send(APISession session, URL url, String session_id) throws IOException {
+			JSONObject response = null;
+			if (kind != Kind.UPDATE_ARTICLES && !hasUnseenArticles(session, url, session_id)) {
+				response = session.catchupFeed(url, session_id, id, kind == Kind.CATCHUP_CATEGORY);
+				APISession.content(response, "catchupFeed");
+				return response;
+			}
+			for (int from = 0; from < articleIds.length; from += chunkSize) {
+				StringBuilder ids = new StringBuilder(chunkSize * 8);
+				for (int i = from; i < Math.min(articleIds.length, from + chunkSize); i++) {
+					ids.append(i == from ? "" : ",").append(articleIds[i]);
+				}
+				response = session.updateArticle(url, session_id, ids.toString(), APISession.MODE_FALSE,
+						APISession.FIELD_UNREAD);
+				APISession.content(response, "updateArticle");
+			}
+			return response;
+		}
+
+		/**
+		 * Pages through the unread articles above the high-water mark. A page
+		 * holds at most one article more than the step, so usually a single
+		 * request answers the question.
+		 */
+		private boolean hasUnseenArticles(APISession session, URL url, String session_id) throws IOException {
+			String parameters = ",\"feed_id\":" + id + ",\"is_cat\":" + (kind == Kind.CATCHUP_CATEGORY)
+					+ ",\"include_nested\":true,\"view_mode\":\"unread\",\"since_id\":" + sinceId;
+			int pageSize = Math.min(session.getPageSize(url, session_id), articleIds.length + 1);
+			try (HeadlinePager pager = session.getHeadlinePager(url, session_id, parameters, pageSize)) {
+				while (pager.hasNext()) {
+					if (Arrays.binarySearch(articleIds, pager.next().optInt("id")) < 0) {
+						return true;
+					}
+				}
+				return false;
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return kind + (kind == Kind.UPDATE_ARTICLES ? "" : " " + id) + " (" + articleIds.length + ")";
+		}
+	}
+}
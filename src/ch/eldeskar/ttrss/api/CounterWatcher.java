@@ -0,0 +1,314 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ch.eldeskar.ttrss.api.model.Counter;
+
+/**
+ * Polls the counters of one account and tells the listeners which feed,
+ * category, label and global counters changed. Any number of listeners share
+ * one poll, instead of every view polling getCounters on its own.
+ *
+ * The interval adapts to the account: after a poll which found changes the
+ * next one follows after the minimum interval, every poll without changes
+ * stretches the interval by half up to the maximum. Failed polls double it.
+ * Polling starts with the first listener and stops when the last one is
+ * removed.
+ *
+ * {@link #poll()} polls at once. Calls while a poll is in flight, scheduled or
+ * not, share its result instead of sending another request.
+ *
+ * The request is sent asynchronously, the scheduler only times the polls and
+ * never waits for the server. Listeners are called on the thread which
+ * completed the poll. Exceptions thrown by listeners are ignored, the other
+ * listeners are still called.
+ *
+ */
+public class CounterWatcher implements Closeable {
+
+	private static final String PARAMETERS = ",\"output_mode\":\"flc\"";
+
+	/**
+	 * Receives the changes found by the polls.
+	 */
+	public interface Listener {
+		/**
+		 * @param List<Counter> changed counters which are new or whose counter,
+		 *                      aux counter or marked counter differs from the
+		 *                      previous poll
+		 */
+		void countersChanged(List<Counter> changed);
+
+		/**
+		 * @param List<Counter> removed counters of the previous poll which are
+		 *                      missing now, e.g. of an unsubscribed feed or a
+		 *                      deleted label
+		 */
+		default void countersRemoved(List<Counter> removed) {
+		}
+
+		/**
+		 * @param IOException error of a failed poll, polling continues
+		 */
+		default void pollFailed(IOException error) {
+		}
+	}
+
+	private final SessionManager sessions;
+	private final long minIntervalNanos;
+	private final long maxIntervalNanos;
+	private final ScheduledExecutorService scheduler;
+	private final boolean ownScheduler;
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private Map<String, Counter> counters = Collections.emptyMap();
+	private CompletableFuture<List<Counter>> inFlight;
+	private ScheduledFuture<?> next;
+	private long intervalNanos;
+	private boolean closed;
+
+	/**
+	 * Creates a watcher polling between every 2 and every 60 seconds on its own
+	 * daemon thread.
+	 *
+	 * @param SessionManager sessions
+	 */
+	public CounterWatcher(SessionManager sessions) {
+		this(sessions, Duration.ofSeconds(2), Duration.ofSeconds(60), Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "CounterWatcher");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Creates a watcher which polls on the given scheduler. The scheduler is not
+	 * shut down when the watcher is closed.
+	 *
+	 * @param SessionManager           sessions
+	 * @param Duration                 minInterval
+	 * @param Duration                 maxInterval
+	 * @param ScheduledExecutorService scheduler
+	 */
+	public CounterWatcher(SessionManager sessions, Duration minInterval, Duration maxInterval,
+			ScheduledExecutorService scheduler) {
+		this(sessions, minInterval, maxInterval, scheduler, false);
+	}
+
+	private CounterWatcher(SessionManager sessions, Duration minInterval, Duration maxInterval,
+			ScheduledExecutorService scheduler, boolean ownScheduler) {
+		if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0) {
+			throw new IllegalArgumentException("Invalid interval " + minInterval + " - " + maxInterval);
+		}
+		this.sessions = sessions;
+		this.minIntervalNanos = minInterval.toNanos();
+		this.maxIntervalNanos = maxInterval.toNanos();
+		this.scheduler = scheduler;
+		this.ownScheduler = ownScheduler;
+		this.intervalNanos = minIntervalNanos;
+	}
+
+	/**
+	 * Adds a listener. If counters have already been polled, the listener
+	 * receives all of them at once on the calling thread. The first listener
+	 * starts polling.
+	 *
+	 * @param Listener listener
+	 */
+	public void addListener(Listener listener) {
+		List<Counter> current;
+		boolean start;
+		synchronized (this) {
+			listeners.add(listener);
+			current = new ArrayList<>(counters.values());
+			start = listeners.size() == 1 && inFlight == null && !closed;
+		}
+		if (!current.isEmpty()) {
+			listener.countersChanged(Collections.unmodifiableList(current));
+		}
+		if (start) {
+			poll();
+		}
+	}
+
+	/**
+	 * Removes a listener. Polling stops with the last one.
+	 *
+	 * @param Listener listener
+	 */
+	public synchronized void removeListener(Listener listener) {
+		listeners.remove(listener);
+		if (listeners.isEmpty() && next != null) {
+			next.cancel(false);
+			next = null;
+		}
+	}
+
+	/**
+	 * Polls the counters now, or joins the poll in flight.
+	 *
+	 * @return CompletableFuture<List<Counter>> the changed counters
+	 */
+	public CompletableFuture<List<Counter>> poll() {
+		CompletableFuture<List<Counter>> poll;
+		synchronized (this) {
+			if (closed) {
+				return CompletableFuture.failedFuture(new IOException("CounterWatcher is closed"));
+			}
+			if (inFlight != null) {
+				return inFlight.copy();
+			}
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+			// assigned before the request is sent, it may complete before executeAsync returns
+			poll = new CompletableFuture<>();
+			inFlight = poll;
+		}
+		sessions.executeAsync((api, url, sid) -> api.getCounterListAsync(url, sid, PARAMETERS))
+				.whenComplete((polled, error) -> completed(poll, polled, error));
+		return poll.copy();
+	}
+
+	private void completed(CompletableFuture<List<Counter>> poll, List<Counter> polled, Throwable error) {
+		List<Counter> changed = new ArrayList<>();
+		List<Counter> removed = new ArrayList<>();
+		IOException failure = null;
+		synchronized (this) {
+			if (inFlight == poll) {
+				inFlight = null;
+			}
+			if (error != null) {
+				failure = toIOException(error);
+				intervalNanos = Math.min(maxIntervalNanos, intervalNanos * 2);
+			} else {
+				Map<String, Counter> current = new HashMap<>();
+				for (Counter counter : polled) {
+					String key = key(counter);
+					current.put(key, counter);
+					Counter previous = counters.get(key);
+					if (previous == null || previous.getCounter() != counter.getCounter()
+							|| previous.getAuxCounter() != counter.getAuxCounter()
+							|| previous.getMarkedCounter() != counter.getMarkedCounter()) {
+						changed.add(counter);
+					}
+				}
+				for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+					if (!current.containsKey(entry.getKey())) {
+						removed.add(entry.getValue());
+					}
+				}
+				counters = current;
+				intervalNanos = changed.isEmpty() && removed.isEmpty()
+						? Math.min(maxIntervalNanos, intervalNanos + intervalNanos / 2)
+						: minIntervalNanos;
+			}
+			if (!listeners.isEmpty() && !closed) {
+				try {
+					next = scheduler.schedule(this::poll, intervalNanos, TimeUnit.NANOSECONDS);
+				} catch (RejectedExecutionException e) {
+					// the scheduler has been shut down, polling stops
+				}
+			}
+		}
+		for (Listener listener : listeners) {
+			try {
+				if (failure != null) {
+					listener.pollFailed(failure);
+				} else {
+					if (!removed.isEmpty()) {
+						listener.countersRemoved(Collections.unmodifiableList(removed));
+					}
+					if (!changed.isEmpty()) {
+						listener.countersChanged(Collections.unmodifiableList(changed));
+					}
+				}
+			} catch (RuntimeException e) {
+				// a failing listener must not stop the others or the polling
+			}
+		}
+		if (failure != null) {
+			poll.completeExceptionally(failure);
+		} else {
+			poll.complete(Collections.unmodifiableList(changed));
+		}
+	}
+
+	private static IOException toIOException(Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause instanceof UncheckedIOException) {
+			return ((UncheckedIOException) cause).getCause();
+		}
+		return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+	}
+
+	private static String key(Counter counter) {
+		return counter.getKind() == Counter.Kind.GLOBAL ? "GLOBAL:" + counter.getName()
+				: counter.getKind() + ":" + counter.getId();
+	}
+
+	/**
+	 * @return List<Counter> the counters of the last successful poll
+	 */
+	public synchronized List<Counter> getCounters() {
+		return Collections.unmodifiableList(new ArrayList<>(counters.values()));
+	}
+
+	/**
+	 * @param Counter.Kind kind
+	 * @param int          id feed, category or label feed id
+	 * @return Counter the counter of the last successful poll, null if unknown
+	 */
+	public synchronized Counter getCounter(Counter.Kind kind, int id) {
+		return counters.get(kind + ":" + id);
+	}
+
+	/**
+	 * @return int global-unread of the last successful poll, 0 if unknown
+	 */
+	public synchronized int getUnread() {
+		Counter unread = counters.get("GLOBAL:global-unread");
+		return unread == null ? 0 : unread.getCounter();
+	}
+
+	/**
+	 * @return Duration time between the last poll and the next one
+	 */
+	public synchronized Duration getInterval() {
+		return Duration.ofNanos(intervalNanos);
+	}
+
+	/**
+	 * Stops polling. The scheduler is shut down if it was created by this
+	 * watcher.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+		}
+		if (ownScheduler) {
+			scheduler.shutdown();
+		}
+	}
+}
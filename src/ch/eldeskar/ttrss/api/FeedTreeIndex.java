@@ -0,0 +1,291 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.model.Counter;
+import ch.eldeskar.ttrss.api.model.Label;
+
+/**
+ * In-memory index of the feed tree of an account, built from one getFeedTree
+ * response. Feeds and categories are found by id in constant time, including
+ * the special feeds (-1 starred, -4 all articles, ...) and the label feeds
+ * (-11 - label id), and know their parent and children.
+ *
+ * Unread counts of categories are the sums of their feeds and sub categories.
+ * They are kept up to date locally from getCounters, so refreshing badges
+ * takes one counters call instead of rebuilding the tree:
+ *
+ * <pre>
+ * FeedTreeIndex index = FeedTreeIndex.load(session, url, sid);
+ * ...
+ * for (FeedTreeIndex.Node changed : index.updateCounters(session, url, sid)) {
+ * 	updateBadge(changed.getId(), changed.isCategory(), changed.getUnread());
+ * }
+ * </pre>
+ *
+ * Special feeds overlap the real feeds, their counts are therefore not added
+ * to the Special category.
+ *
+ */
+public final class FeedTreeIndex {
+
+	private final Map<Integer, Node> feeds = new HashMap<>();
+	private final Map<Integer, Node> categories = new HashMap<>();
+	private final List<Node> roots = new ArrayList<>();
+
+	private FeedTreeIndex() {
+	}
+
+	/**
+	 * @param APISession session
+	 * @param URL        url
+	 * @param String     session_id
+	 * @return FeedTreeIndex index of the current feed tree, without empty
+	 *         categories
+	 * @throws IOException
+	 */
+	public static FeedTreeIndex load(APISession session, URL url, String session_id) throws IOException {
+		return of(session.getFeedTree(url, session_id, false));
+	}
+
+	/**
+	 * @param JSONObject response of getFeedTree
+	 * @return FeedTreeIndex
+	 * @throws APIException if the response is an error
+	 */
+	public static FeedTreeIndex of(JSONObject response) throws APIException {
+		JSONObject content = (JSONObject) APISession.content(response, "getFeedTree");
+		FeedTreeIndex index = new FeedTreeIndex();
+		JSONArray items = content.getJSONObject("categories").optJSONArray("items");
+		if (items != null) {
+			for (int i = 0; i < items.length(); i++) {
+				Node node = index.add(items.getJSONObject(i), null);
+				if (node != null) {
+					index.roots.add(node);
+				}
+			}
+		}
+		for (Node root : index.roots) {
+			root.rollUp();
+		}
+		return index;
+	}
+
+	private Node add(JSONObject item, Node parent) {
+		String id = item.optString("id");
+		boolean category = id.startsWith("CAT:");
+		if (!category && !id.startsWith("FEED:")) {
+			return null;
+		}
+		int bareId = item.has("bare_id") ? item.getInt("bare_id") : Integer.parseInt(id.substring(id.indexOf(':') + 1));
+		Node node = new Node(category, bareId, item.optString("name"), parent, item.optInt("unread"));
+		(category ? categories : feeds).put(bareId, node);
+		JSONArray items = item.optJSONArray("items");
+		if (items != null) {
+			for (int i = 0; i < items.length(); i++) {
+				Node child = add(items.getJSONObject(i), node);
+				if (child != null) {
+					node.children.add(child);
+				}
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @param int id feed id, special feeds and label feeds included
+	 * @return Node the feed, null if it is not in the tree
+	 */
+	public Node getFeed(int id) {
+		return feeds.get(id);
+	}
+
+	/**
+	 * @param int labelId id of the label as returned by getLabels
+	 * @return Node the feed of the label, null if it is not in the tree
+	 */
+	public Node getLabelFeed(int labelId) {
+		return feeds.get(Label.toFeedId(labelId));
+	}
+
+	/**
+	 * @param int id category id, -1 is the Special and -2 the Labels category
+	 * @return Node the category, null if it is not in the tree
+	 */
+	public Node getCategory(int id) {
+		return categories.get(id);
+	}
+
+	/**
+	 * @return Collection<Node> all feeds, special and label feeds included
+	 */
+	public Collection<Node> getFeeds() {
+		return Collections.unmodifiableCollection(feeds.values());
+	}
+
+	/**
+	 * @return Collection<Node> all categories
+	 */
+	public Collection<Node> getCategories() {
+		return Collections.unmodifiableCollection(categories.values());
+	}
+
+	/**
+	 * @return List<Node> the top level of the tree in the order of the server
+	 */
+	public List<Node> getRoots() {
+		return Collections.unmodifiableList(roots);
+	}
+
+	/**
+	 * Takes over the feed and label counters and adjusts the sums of the
+	 * categories above them. Category counters of the server are ignored, the
+	 * sums are computed locally.
+	 *
+	 * @param Collection<Counter> counters as returned by getCounterList
+	 * @return Set<Node> feeds and categories whose unread count changed
+	 */
+	public synchronized Set<Node> applyCounters(Collection<Counter> counters) {
+		Set<Node> changed = new LinkedHashSet<>();
+		for (Counter counter : counters) {
+			if (counter.getKind() != Counter.Kind.FEED && counter.getKind() != Counter.Kind.LABEL) {
+				continue;
+			}
+			Node feed = feeds.get(counter.getId());
+			if (feed == null) {
+				continue;
+			}
+			int delta = counter.getCounter() - feed.unread;
+			if (delta == 0) {
+				continue;
+			}
+			feed.unread = counter.getCounter();
+			changed.add(feed);
+			if (feed.isSpecial()) {
+				continue;
+			}
+			for (Node category = feed.parent; category != null; category = category.parent) {
+				category.unread += delta;
+				changed.add(category);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Loads the feed and label counters and applies them.
+	 *
+	 * @param APISession session
+	 * @param URL        url
+	 * @param String     session_id
+	 * @return Set<Node> feeds and categories whose unread count changed
+	 * @throws IOException
+	 */
+	public Set<Node> updateCounters(APISession session, URL url, String session_id) throws IOException {
+		return applyCounters(session.getCounterList(url, session_id, ",\"output_mode\":\"fl\""));
+	}
+
+	/**
+	 * A feed or a category of the tree.
+	 */
+	public static final class Node {
+
+		private final boolean category;
+		private final int id;
+		private final String name;
+		private final Node parent;
+		private final List<Node> children = new ArrayList<>();
+		private volatile int unread;
+
+		private Node(boolean category, int id, String name, Node parent, int unread) {
+			this.category = category;
+			this.id = id;
+			this.name = name;
+			this.parent = parent;
+			this.unread = unread;
+		}
+
+		private int rollUp() {
+			if (category) {
+				int sum = 0;
+				for (Node child : children) {
+					int childUnread = child.rollUp();
+					if (!child.isSpecial()) {
+						sum += childUnread;
+					}
+				}
+				unread = sum;
+			}
+			return unread;
+		}
+
+		public boolean isCategory() {
+			return category;
+		}
+
+		/**
+		 * @return int feed or category id
+		 */
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Node the category containing this node, null on the top level
+		 */
+		public Node getParent() {
+			return parent;
+		}
+
+		/**
+		 * @return List<Node> feeds and sub categories, empty for feeds
+		 */
+		public List<Node> getChildren() {
+			return Collections.unmodifiableList(children);
+		}
+
+		/**
+		 * @return int unread articles of the feed, or of all feeds below the
+		 *         category
+		 */
+		public int getUnread() {
+			return unread;
+		}
+
+		/**
+		 * @return boolean true for the special feeds like starred or all articles,
+		 *         which overlap the real feeds
+		 */
+		public boolean isSpecial() {
+			return !category && id <= 0 && id >= Label.toFeedId(0) + 1;
+		}
+
+		/**
+		 * @return boolean true for the feed of a label
+		 */
+		public boolean isLabel() {
+			return !category && id <= Label.toFeedId(0);
+		}
+
+		@Override
+		public String toString() {
+			return (category ? "CAT:" : "FEED:") + id + " " + name + " (" + unread + ")";
+		}
+	}
+}
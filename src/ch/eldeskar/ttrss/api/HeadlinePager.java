@@ -0,0 +1,84 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Iterates over all headlines returned by getHeadlines, one page after the
+ * other, see {@link Pager}.
+ *
+ * Pages are requested with skip and limit, the parameters given to the pager
+ * must therefore not contain these two.
+ *
+ */
+public class HeadlinePager extends Pager<JSONObject> {
+
+	/**
+	 * Maximum amount of headlines the server returns before API level 6.
+	 */
+	public static final int PAGE_SIZE_LEGACY = 60;
+
+	/**
+	 * Maximum amount of headlines the server returns since API level 6.
+	 */
+	public static final int PAGE_SIZE = 200;
+
+	/**
+	 * @param APISession session
+	 * @param URL        url
+	 * @param String     session_id
+	 * @param String     parameters additional getHeadlines parameters, e.g.
+	 *                   ,"feed_id":12,"view_mode":"unread"
+	 * @param int        pageSize amount of headlines per request, should be the
+	 *                   server cap
+	 */
+	public HeadlinePager(APISession session, URL url, String session_id, String parameters, int pageSize) {
+		super(pageSize, skip -> requestPage(session, url, session_id, parameters, pageSize, skip),
+				headline -> headline.optInt("id", -1));
+	}
+
+	/**
+	 * Returns the amount of headlines the server returns at most for one request.
+	 *
+	 * @param int apiLevel as returned by getApiLevel or login
+	 * @return int page size
+	 */
+	public static int pageSizeFor(int apiLevel) {
+		return apiLevel >= 6 ? PAGE_SIZE : PAGE_SIZE_LEGACY;
+	}
+
+	private static CompletableFuture<List<JSONObject>> requestPage(APISession session, URL url, String session_id,
+			String parameters, int pageSize, int skip) {
+		return session.getHeadlinesAsync(url, session_id,
+				(parameters == null ? "" : parameters) + ",\"limit\":" + pageSize + ",\"skip\":" + skip)
+				.thenApply(response -> {
+					try {
+						return headlines(APISession.content(response, "getHeadlines"));
+					} catch (APIException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	/**
+	 * With include_header the content is [header, [articles]] instead of
+	 * [articles].
+	 */
+	private static List<JSONObject> headlines(Object content) {
+		JSONArray array = (JSONArray) content;
+		if (array.length() == 2 && array.opt(1) instanceof JSONArray) {
+			array = array.getJSONArray(1);
+		}
+		List<JSONObject> headlines = new ArrayList<>(array.length());
+		for (int i = 0; i < array.length(); i++) {
+			headlines.add(array.getJSONObject(i));
+		}
+		return headlines;
+	}
+}
@@ -0,0 +1,145 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the items of a request which is answered page by page, like
+ * getHeadlines with skip and limit. As soon as a full page arrives the next
+ * one is requested, so the following page is usually already there when the
+ * current one has been consumed. The iteration ends with the first page that
+ * is not full.
+ *
+ * Items which move to the next page because new items arrived in the meantime
+ * are only returned once.
+ *
+ * Iterator methods throw an UncheckedIOException if a page could not be
+ * loaded. Close the pager if you stop before the end, so the prefetched page is
+ * discarded. A request which has already been sent is not aborted, the server
+ * still answers it and the response is dropped.
+ *
+ * @see APISession#getHeadlinePager(java.net.URL, String, String)
+ * @see APISession#getHeadlineListPager(java.net.URL, String, String, int)
+ *
+ */
+public class Pager<T> implements Iterator<T>, Closeable {
+
+	private final int pageSize;
+	private final IntFunction<CompletableFuture<List<T>>> pages;
+	private final ToIntFunction<T> ids;
+
+	private CompletableFuture<List<T>> nextPage;
+	private List<T> page;
+	private int index;
+	private int skip;
+	private Set<Integer> previousIds = new HashSet<>();
+	private Set<Integer> currentIds = new HashSet<>();
+	private T next;
+
+	/**
+	 * Requests the first page right away.
+	 *
+	 * @param int              pageSize items per request, should be the server
+	 *                         cap
+	 * @param IntFunction      pages requests the page which starts at the given
+	 *                         skip
+	 * @param ToIntFunction<T> ids id of an item, items with id -1 are always
+	 *                         returned
+	 */
+	public Pager(int pageSize, IntFunction<CompletableFuture<List<T>>> pages, ToIntFunction<T> ids) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+		}
+		this.pageSize = pageSize;
+		this.pages = pages;
+		this.ids = ids;
+		this.nextPage = pages.apply(0);
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (next == null) {
+			if (page != null && index < page.size()) {
+				T item = page.get(index++);
+				int id = ids.applyAsInt(item);
+				if (id == -1 || currentIds.add(id) && !previousIds.contains(id)) {
+					next = item;
+				}
+			} else if (nextPage != null) {
+				page = awaitPage();
+				index = 0;
+				previousIds = currentIds;
+				currentIds = new HashSet<>();
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		T item = next;
+		next = null;
+		return item;
+	}
+
+	/**
+	 * @return Stream over the remaining items, closing the stream closes the
+	 *         pager
+	 */
+	public Stream<T> stream() {
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * Cancels the future of the prefetched page, if any. The transports cannot
+	 * abort a request once it is sent, so the request keeps running until the
+	 * server answers and its response is discarded.
+	 */
+	@Override
+	public void close() {
+		if (nextPage != null) {
+			nextPage.cancel(true);
+			nextPage = null;
+		}
+		page = null;
+	}
+
+	private List<T> awaitPage() {
+		List<T> items;
+		try {
+			items = nextPage.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UncheckedIOException(new IOException("Interrupted while waiting for the next page", e));
+		} catch (ExecutionException e) {
+			nextPage = null;
+			Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+			throw new UncheckedIOException(
+					cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause));
+		}
+		skip += items.size();
+		nextPage = items.size() >= pageSize ? pages.apply(skip) : null;
+		return items;
+	}
+}
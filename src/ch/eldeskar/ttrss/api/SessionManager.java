@@ -0,0 +1,347 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import org.json.JSONObject;
+
+/**
+ * Manages the server sessions of one account. Callers do not deal with session
+ * ids, they pass a call which gets a valid session id:
+ * 
+ * <pre>
+ * JSONObject headlines = manager.execute((api, url, sid) -> api.getHeadlines(url, sid, ",\"feed_id\":-4"));
+ * </pre>
+ * 
+ * Sessions are created lazily with login, one at a time, and only when all
+ * existing sessions are busy. At most maxSessions sessions are opened, further
+ * calls wait until a session is released. TT-RSS handles the requests of one
+ * session one after the other, so a few sessions allow requests of the same
+ * account to run in parallel.
+ * 
+ * If the server answers NOT_LOGGED_IN, either as error response or as
+ * {@link APIException}, the session is logged in again and the call is
+ * repeated once.
+ *
+ */
+public class SessionManager implements Closeable {
+
+	private static final String NOT_LOGGED_IN = "NOT_LOGGED_IN";
+
+	/**
+	 * A blocking call which needs a session.
+	 */
+	public interface SessionCall<T> {
+		T call(APISession session, URL url, String session_id) throws IOException;
+	}
+
+	/**
+	 * An asynchronous call which needs a session. The session is released when
+	 * the returned future completes.
+	 */
+	public interface AsyncSessionCall<T> {
+		CompletableFuture<T> call(APISession session, URL url, String session_id);
+	}
+
+	private final APISession session;
+	private final URL url;
+	private final String user;
+	private final String password;
+	private final int maxSessions;
+
+	private final Deque<PooledSession> idle = new ArrayDeque<>();
+	private final Deque<CompletableFuture<PooledSession>> waiters = new ArrayDeque<>();
+	private final List<PooledSession> all = new ArrayList<>();
+	private boolean loginInProgress;
+	private volatile int apiLevel = -1;
+	private boolean closed;
+
+	/**
+	 * @param APISession session used for all requests
+	 * @param URL        url
+	 * @param String     user login name
+	 * @param String     password
+	 * @param int        maxSessions maximum amount of sessions opened for this
+	 *                   account
+	 */
+	public SessionManager(APISession session, URL url, String user, String password, int maxSessions) {
+		if (maxSessions <= 0) {
+			throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+		}
+		this.session = session;
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxSessions = maxSessions;
+	}
+
+	public APISession getSession() {
+		return session;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * Returns the API level of the server. It is taken from the login response
+	 * (version:1.6.0 and above), older servers are asked with getApiLevel once.
+	 * 
+	 * @return int api level
+	 * @throws IOException
+	 */
+	public int getApiLevel() throws IOException {
+		if (apiLevel < 0) {
+			JSONObject response = execute((api, url, sid) -> api.getApiLevel(url, sid));
+			apiLevel = ((JSONObject) APISession.content(response, "getApiLevel")).optInt("level");
+		}
+		return apiLevel;
+	}
+
+	/**
+	 * Runs the call with a session of this account, logging in first if
+	 * necessary.
+	 * 
+	 * @param SessionCall<T> call
+	 * @return T result of the call
+	 * @throws IOException
+	 */
+	public <T> T execute(SessionCall<T> call) throws IOException {
+		PooledSession pooled = await(acquire());
+		try {
+			T result;
+			try {
+				result = call.call(session, url, pooled.session_id);
+				if (!isNotLoggedIn(result)) {
+					return result;
+				}
+			} catch (IOException | RuntimeException e) {
+				// also wrapped, e.g. in the UncheckedIOException of a HeadlinePager
+				if (!isNotLoggedIn(e)) {
+					throw e;
+				}
+			}
+			login(pooled);
+			return call.call(session, url, pooled.session_id);
+		} finally {
+			release(pooled);
+		}
+	}
+
+	/**
+	 * Asynchronous version of {@link #execute(SessionCall)}. Does not block while
+	 * waiting for a free session or for the login.
+	 * 
+	 * @param AsyncSessionCall<T> call
+	 * @return CompletableFuture with the result of the call
+	 */
+	public <T> CompletableFuture<T> executeAsync(AsyncSessionCall<T> call) {
+		return acquire().thenCompose(pooled -> invoke(call, pooled).handle((result, error) -> {
+			if (error == null ? !isNotLoggedIn(result) : !isNotLoggedIn(error)) {
+				return error == null ? CompletableFuture.completedFuture(result)
+						: CompletableFuture.<T>failedFuture(unwrap(error));
+			}
+			return loginAsync(pooled).thenCompose(ignored -> invoke(call, pooled));
+		}).thenCompose(future -> future).whenComplete((result, error) -> release(pooled)));
+	}
+
+	private <T> CompletableFuture<T> invoke(AsyncSessionCall<T> call, PooledSession pooled) {
+		try {
+			return call.call(session, url, pooled.session_id);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Logs out all idle sessions and fails calls which are still waiting for a
+	 * session.
+	 */
+	@Override
+	public void close() {
+		List<PooledSession> logout;
+		List<CompletableFuture<PooledSession>> waiting;
+		synchronized (this) {
+			closed = true;
+			logout = new ArrayList<>(idle);
+			idle.clear();
+			all.removeAll(logout);
+			waiting = new ArrayList<>(waiters);
+			waiters.clear();
+		}
+		for (CompletableFuture<PooledSession> waiter : waiting) {
+			waiter.completeExceptionally(new IOException("SessionManager is closed"));
+		}
+		for (PooledSession pooled : logout) {
+			session.logoutAsync(url, pooled.session_id);
+		}
+	}
+
+	/**
+	 * @return int amount of sessions which are logged in
+	 */
+	public synchronized int getSessionCount() {
+		return all.size();
+	}
+
+	private CompletableFuture<PooledSession> acquire() {
+		CompletableFuture<PooledSession> future = new CompletableFuture<>();
+		boolean create = false;
+		synchronized (this) {
+			if (closed) {
+				return CompletableFuture.failedFuture(new IOException("SessionManager is closed"));
+			}
+			PooledSession pooled = idle.pollFirst();
+			if (pooled != null) {
+				future.complete(pooled);
+				return future;
+			}
+			waiters.addLast(future);
+			if (!loginInProgress && all.size() < maxSessions) {
+				loginInProgress = true;
+				create = true;
+			}
+		}
+		if (create) {
+			createSession();
+		}
+		return future;
+	}
+
+	/**
+	 * Logs in a new session and hands it to the first waiting caller. Only one
+	 * login runs at a time, so a burst of calls on startup does not cause a burst
+	 * of logins.
+	 */
+	private void createSession() {
+		PooledSession pooled = new PooledSession();
+		loginAsync(pooled).whenComplete((ignored, error) -> {
+			List<CompletableFuture<PooledSession>> failed = new ArrayList<>();
+			synchronized (this) {
+				loginInProgress = false;
+				if (error == null) {
+					all.add(pooled);
+				} else if (all.isEmpty()) {
+					// nobody will release a session, so the waiting calls fail as well
+					failed.addAll(waiters);
+					waiters.clear();
+				}
+			}
+			for (CompletableFuture<PooledSession> waiter : failed) {
+				waiter.completeExceptionally(unwrap(error));
+			}
+			if (error == null) {
+				release(pooled);
+				boolean createAnother;
+				synchronized (this) {
+					createAnother = !closed && !loginInProgress && !waiters.isEmpty() && all.size() < maxSessions;
+					loginInProgress |= createAnother;
+				}
+				if (createAnother) {
+					createSession();
+				}
+			}
+		});
+	}
+
+	private void release(PooledSession pooled) {
+		CompletableFuture<PooledSession> waiter;
+		synchronized (this) {
+			if (closed) {
+				all.remove(pooled);
+				waiter = null;
+			} else {
+				waiter = waiters.pollFirst();
+				if (waiter == null) {
+					idle.addFirst(pooled);
+				}
+			}
+		}
+		if (waiter != null) {
+			if (!waiter.complete(pooled)) {
+				release(pooled);
+			}
+		} else if (closed) {
+			session.logoutAsync(url, pooled.session_id);
+		}
+	}
+
+	private void login(PooledSession pooled) throws IOException {
+		handleLogin(pooled, session.login(url, user, password));
+	}
+
+	private CompletableFuture<Void> loginAsync(PooledSession pooled) {
+		return session.loginAsync(url, user, password).thenAccept(response -> {
+			try {
+				handleLogin(pooled, response);
+			} catch (APIException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	private void handleLogin(PooledSession pooled, JSONObject response) throws APIException {
+		JSONObject content = (JSONObject) APISession.content(response, "login");
+		pooled.session_id = content.getString("session_id");
+		if (content.has("api_level")) {
+			apiLevel = content.getInt("api_level");
+		}
+	}
+
+	private static boolean isNotLoggedIn(Object result) {
+		if (result instanceof JSONObject) {
+			JSONObject response = (JSONObject) result;
+			Object content = response.opt("content");
+			return response.optInt("status") != 0 && content instanceof JSONObject
+					&& NOT_LOGGED_IN.equals(((JSONObject) content).optString("error"));
+		}
+		if (result instanceof Throwable) {
+			Throwable cause = unwrap((Throwable) result);
+			return cause instanceof APIException && NOT_LOGGED_IN.equals(((APIException) cause).getError());
+		}
+		return false;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException
+				|| error instanceof UncheckedIOException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	private PooledSession await(CompletableFuture<PooledSession> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			if (!future.cancel(false) && !future.isCompletedExceptionally()) {
+				// the session was handed over before the cancel, nobody else will release it
+				release(future.join());
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a session");
+		} catch (ExecutionException e) {
+			Throwable cause = unwrap(e);
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private static class PooledSession {
+		volatile String session_id;
+	}
+}
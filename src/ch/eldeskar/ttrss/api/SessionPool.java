@@ -0,0 +1,126 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Holds one {@link SessionManager} per account, an account being the pair of
+ * server url and user name. Applications serving several accounts share the
+ * {@link APISession} and its transport, while the logins stay separate.
+ * 
+ * {@link #getWatcher(URL, String, String)} gives all views of an account the
+ * same {@link CounterWatcher}, so the counters are polled once per account.
+ *
+ */
+public class SessionPool implements Closeable {
+
+	private final APISession session;
+	private final int maxSessionsPerAccount;
+	private final Map<String, SessionManager> managers = new ConcurrentHashMap<>();
+	private final Map<String, CounterWatcher> watchers = new ConcurrentHashMap<>();
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param APISession session used for all accounts
+	 * @param int        maxSessionsPerAccount
+	 */
+	public SessionPool(APISession session, int maxSessionsPerAccount) {
+		if (maxSessionsPerAccount <= 0) {
+			throw new IllegalArgumentException("maxSessionsPerAccount must be positive: " + maxSessionsPerAccount);
+		}
+		this.session = session;
+		this.maxSessionsPerAccount = maxSessionsPerAccount;
+	}
+
+	/**
+	 * Returns the manager of the account, creating it on first use. No login is
+	 * done until the first call.
+	 * 
+	 * @param URL    url
+	 * @param String user
+	 * @param String password
+	 * @return SessionManager
+	 */
+	public SessionManager get(URL url, String user, String password) {
+		return managers.computeIfAbsent(url.toExternalForm() + '\n' + user,
+				key -> new SessionManager(session, url, user, password, maxSessionsPerAccount));
+	}
+
+	/**
+	 * Returns the counter watcher of the account, creating it on first use.
+	 * Watchers poll between every 2 and every 60 seconds on a scheduler shared by
+	 * all accounts.
+	 * 
+	 * @param URL    url
+	 * @param String user
+	 * @param String password
+	 * @return CounterWatcher
+	 */
+	public CounterWatcher getWatcher(URL url, String user, String password) {
+		SessionManager manager = get(url, user, password);
+		return watchers.computeIfAbsent(url.toExternalForm() + '\n' + user, key -> new CounterWatcher(manager,
+				Duration.ofSeconds(2), Duration.ofSeconds(60), scheduler()));
+	}
+
+	private synchronized ScheduledExecutorService scheduler() {
+		if (scheduler == null) {
+			scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+					r -> {
+						Thread thread = new Thread(r, "SessionPool-CounterWatcher");
+						thread.setDaemon(true);
+						return thread;
+					});
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Closes and forgets the manager and the watcher of the account, e.g. when
+	 * the password changed.
+	 * 
+	 * @param URL    url
+	 * @param String user
+	 */
+	public void remove(URL url, String user) {
+		CounterWatcher watcher = watchers.remove(url.toExternalForm() + '\n' + user);
+		if (watcher != null) {
+			watcher.close();
+		}
+		SessionManager manager = managers.remove(url.toExternalForm() + '\n' + user);
+		if (manager != null) {
+			manager.close();
+		}
+	}
+
+	public Collection<SessionManager> getManagers() {
+		return managers.values();
+	}
+
+	@Override
+	public void close() {
+		List<CounterWatcher> stopping = new ArrayList<>(watchers.values());
+		watchers.clear();
+		for (CounterWatcher watcher : stopping) {
+			watcher.close();
+		}
+		synchronized (this) {
+			if (scheduler != null) {
+				scheduler.shutdown();
+				scheduler = null;
+			}
+		}
+		List<SessionManager> closing = new ArrayList<>(managers.values());
+		managers.clear();
+		for (SessionManager manager : closing) {
+			manager.close();
+		}
+	}
+}
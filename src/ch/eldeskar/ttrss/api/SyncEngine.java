@@ -0,0 +1,361 @@
+package ch.eldeskar.ttrss.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import ch.eldeskar.ttrss.api.model.Counter;
+import ch.eldeskar.ttrss.api.model.Headline;
+
+/**
+ * Synchronizes all feeds of an account in parallel. A sync reads the feed tree
+ * and the counters, skips feeds whose counters did not change since the last
+ * sync of this engine and loads the headlines of the remaining feeds with up to
+ * maxInFlight requests at once. Feeds with more unread articles are loaded
+ * first.
+ *
+ * The headlines are handed to the consumer on the calling thread, feed by feed
+ * in the order of the priority and within a feed in the order of the server.
+ * A feed is passed on as soon as it and all feeds before it are complete, so
+ * the consumer works while later feeds are still loading. The workers load at
+ * most 2 * maxInFlight feeds ahead of the consumer, a slow consumer therefore
+ * does not pile up the headlines of the whole account. A feed is released as
+ * soon as the consumer has received it.
+ *
+ * TT-RSS handles the requests of one session one after the other, the
+ * {@link SessionManager} should therefore be allowed about as many sessions as
+ * requests may be in flight.
+ *
+ */
+public class SyncEngine implements Closeable {
+
+	private static final String DEFAULT_PARAMETERS = ",\"view_mode\":\"all_articles\",\"show_content\":true";
+
+	private final SessionManager sessions;
+	private final int maxInFlight;
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+	private final Map<Integer, FeedState> states = new ConcurrentHashMap<>();
+	private volatile String parameters = DEFAULT_PARAMETERS;
+
+	/**
+	 * Creates an engine with its own pool of maxInFlight daemon threads.
+	 *
+	 * @param SessionManager sessions
+	 * @param int            maxInFlight maximum amount of concurrent requests
+	 */
+	public SyncEngine(SessionManager sessions, int maxInFlight) {
+		this(sessions, maxInFlight, Executors.newFixedThreadPool(maxInFlight, r -> {
+			Thread thread = new Thread(r, "SyncEngine");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Creates an engine which loads and decodes the feeds on the given executor.
+	 * The workers block while they wait for the server and for the consumer, use
+	 * an executor with up to maxInFlight threads for blocking tasks, not a
+	 * ForkJoinPool. The executor is not shut down when the engine is closed.
+	 *
+	 * @param SessionManager sessions
+	 * @param int            maxInFlight maximum amount of concurrent requests
+	 * @param Executor       executor
+	 */
+	public SyncEngine(SessionManager sessions, int maxInFlight, Executor executor) {
+		this(sessions, maxInFlight, executor, false);
+	}
+
+	private SyncEngine(SessionManager sessions, int maxInFlight, Executor executor, boolean ownExecutor) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+		}
+		this.sessions = sessions;
+		this.maxInFlight = maxInFlight;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+	}
+
+	/**
+	 * @param String parameters additional getHeadlines parameters, by default
+	 *               ,"view_mode":"all_articles","show_content":true. feed_id,
+	 *               since_id, limit and skip are set by the engine.
+	 */
+	public void setParameters(String parameters) {
+		this.parameters = parameters == null ? "" : parameters;
+	}
+
+	/**
+	 * Forgets the counters and highest article ids of the previous syncs, the
+	 * next sync loads every feed completely.
+	 */
+	public void reset() {
+		states.clear();
+	}
+
+	/**
+	 * Loads the headlines of all changed feeds. Only headlines newer than the
+	 * newest one of the previous sync of a feed are loaded.
+	 *
+	 * @param Consumer<Headline> consumer receives the headlines on the calling
+	 *                           thread
+	 * @return SyncResult what has been done
+	 * @throws IOException if the feed tree or the counters could not be loaded,
+	 *                     failures of single feeds are reported in the result
+	 */
+	public SyncResult sync(Consumer<Headline> consumer) throws IOException {
+		long start = System.nanoTime();
+		List<Integer> feedIds = new ArrayList<>();
+		FeedTreeIndex tree = sessions.execute(FeedTreeIndex::load);
+		for (FeedTreeIndex.Node feed : tree.getFeeds()) {
+			if (feed.getId() > 0) {
+				feedIds.add(feed.getId());
+			}
+		}
+		Map<Integer, Counter> counters = new HashMap<>();
+		for (Counter counter : sessions
+				.execute((api, url, sid) -> api.getCounterList(url, sid, ",\"output_mode\":\"f\""))) {
+			if (counter.getKind() == Counter.Kind.FEED && counter.getId() > 0) {
+				counters.put(counter.getId(), counter);
+			}
+		}
+		states.keySet().retainAll(new HashSet<>(feedIds));
+
+		List<FeedTask> tasks = new ArrayList<>();
+		int skipped = 0;
+		for (int feedId : feedIds) {
+			Counter counter = counters.get(feedId);
+			FeedState state = states.get(feedId);
+			if (state != null && counter != null && state.unread == counter.getCounter()
+					&& Objects.equals(state.updated, counter.getUpdated())) {
+				skipped++;
+			} else {
+				tasks.add(new FeedTask(feedId, counter, state == null ? 0 : state.maxId));
+			}
+		}
+		tasks.sort(Comparator.comparingInt((FeedTask task) -> -task.unread).thenComparingInt(task -> task.feedId));
+
+		int pageSize = HeadlinePager.pageSizeFor(sessions.getApiLevel());
+		String parameters = this.parameters;
+		// a worker takes the next feed only with a permit, the consumer returns it
+		// once it has received the feed
+		Semaphore ahead = new Semaphore(2 * maxInFlight);
+		AtomicInteger next = new AtomicInteger();
+		for (int i = 0; i < Math.min(maxInFlight, tasks.size()); i++) {
+			executor.execute(() -> work(tasks, next, ahead, pageSize, parameters));
+		}
+
+		Map<Integer, IOException> failures = new LinkedHashMap<>();
+		int headlines = 0;
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				FeedTask task = tasks.get(i);
+				List<Headline> loaded;
+				try {
+					loaded = task.result.get();
+				} catch (ExecutionException e) {
+					failures.put(task.feedId, e.getCause() instanceof IOException ? (IOException) e.getCause()
+							: new IOException(e.getCause()));
+					continue;
+				} finally {
+					// the workers never read a task again once it is done
+					tasks.set(i, null);
+					ahead.release();
+				}
+				int maxId = task.sinceId;
+				for (Headline headline : loaded) {
+					consumer.accept(headline);
+					maxId = Math.max(maxId, headline.getId());
+				}
+				headlines += loaded.size();
+				states.put(task.feedId, new FeedState(task.unread, task.updated, maxId));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Sync was interrupted");
+		} finally {
+			// stops the workers if the consumer failed
+			for (FeedTask task : tasks) {
+				if (task != null) {
+					task.result.cancel(false);
+				}
+			}
+			ahead.release(tasks.size());
+		}
+		return new SyncResult(feedIds.size(), skipped, tasks.size() - failures.size(), headlines, failures,
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Loads one feed after the other. The permit is taken before the index, so
+	 * the feeds holding permits are always the oldest ones not yet received by
+	 * the consumer.
+	 */
+	private void work(List<FeedTask> tasks, AtomicInteger next, Semaphore ahead, int pageSize, String parameters) {
+		while (true) {
+			try {
+				ahead.acquire();
+			} catch (InterruptedException e) {
+				// fails the remaining feeds, acquire keeps throwing
+				Thread.currentThread().interrupt();
+			}
+			int index = next.getAndIncrement();
+			if (index >= tasks.size()) {
+				return;
+			}
+			FeedTask task = tasks.get(index);
+			if (Thread.currentThread().isInterrupted()) {
+				task.result.completeExceptionally(new InterruptedIOException("Sync was interrupted"));
+			} else if (!task.result.isDone()) {
+				try {
+					task.result.complete(load(task, pageSize, parameters));
+				} catch (IOException | RuntimeException e) {
+					task.result.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	private List<Headline> load(FeedTask task, int pageSize, String parameters) throws IOException {
+		String feed = ",\"feed_id\":" + task.feedId + ",\"since_id\":" + task.sinceId + parameters;
+		return sessions.execute((api, url, sid) -> {
+			List<Headline> headlines = new ArrayList<>();
+			try (Pager<Headline> pager = api.getHeadlineListPager(url, sid, feed, pageSize)) {
+				while (!task.result.isCancelled() && pager.hasNext()) {
+					headlines.add(pager.next());
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return headlines;
+		});
+	}
+
+	/**
+	 * Shuts the executor down if it was created by this engine.
+	 */
+	@Override
+	public void close() {
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+
+	private static final class FeedTask {
+
+		final int feedId;
+		final int unread;
+		final String updated;
+		final int sinceId;
+		final CompletableFuture<List<Headline>> result = new CompletableFuture<>();
+
+		FeedTask(int feedId, Counter counter, int sinceId) {
+			this.feedId = feedId;
+			this.unread = counter == null ? 0 : counter.getCounter();
+			this.updated = counter == null ? null : counter.getUpdated();
+			this.sinceId = sinceId;
+		}
+	}
+
+	private static final class FeedState {
+
+		final int unread;
+		final String updated;
+		final int maxId;
+
+		FeedState(int unread, String updated, int maxId) {
+			this.unread = unread;
+			this.updated = updated;
+			this.maxId = maxId;
+		}
+	}
+
+	/**
+	 * Summary of one sync.
+	 */
+	public static final class SyncResult {
+
+		private final int feeds;
+		private final int skipped;
+		private final int synced;
+		private final int headlines;
+		private final Map<Integer, IOException> failures;
+		private final long durationNanos;
+
+		SyncResult(int feeds, int skipped, int synced, int headlines, Map<Integer, IOException> failures,
+				long durationNanos) {
+			this.feeds = feeds;
+			this.skipped = skipped;
+			this.synced = synced;
+			this.headlines = headlines;
+			this.failures = Collections.unmodifiableMap(failures);
+			this.durationNanos = durationNanos;
+		}
+
+		/**
+		 * @return int feeds in the feed tree
+		 */
+		public int getFeeds() {
+			return feeds;
+		}
+
+		/**
+		 * @return int feeds which were not loaded because their counters did not
+		 *         change
+		 */
+		public int getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * @return int feeds which were loaded
+		 */
+		public int getSynced() {
+			return synced;
+		}
+
+		/**
+		 * @return int headlines passed to the consumer
+		 */
+		public int getHeadlines() {
+			return headlines;
+		}
+
+		/**
+		 * @return Map<Integer, IOException> feeds which could not be loaded, they
+		 *         are loaded again by the next sync
+		 */
+		public Map<Integer, IOException> getFailures() {
+			return failures;
+		}
+
+		public long getDurationNanos() {
+			return durationNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "SyncResult [feeds=" + feeds + ", skipped=" + skipped + ", synced=" + synced + ", headlines="
+					+ headlines + ", failures=" + failures.size() + ", duration=" + durationNanos / 1_000_000 + "ms]";
+		}
+	}
+}
@@ -0,0 +1,624 @@
+package ch.eldeskar.ttrss.api.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Pull parser which reads a JSON document token by token from a Reader. Only
+ * the characters of the current token are held in memory, so large responses
+ * can be processed element by element while they arrive from the server.
+ * 
+ * TT-RSS is not consistent about types, many numbers and booleans are returned
+ * as strings (e.g. {"unread":"992"}). The nextInt, nextLong and nextBoolean
+ * methods therefore accept both forms.
+ * 
+ * Syntax errors are reported as {@link JSONException}, like org.json does.
+ *
+ */
+public class JSONStreamReader implements Closeable {
+
+	/**
+	 * Token types returned by {@link JSONStreamReader#peek()}.
+	 */
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private static final int EMPTY_DOCUMENT = 0;
+	private static final int NONEMPTY_DOCUMENT = 1;
+	private static final int EMPTY_ARRAY = 2;
+	private static final int NONEMPTY_ARRAY = 3;
+	private static final int EMPTY_OBJECT = 4;
+	private static final int DANGLING_NAME = 5;
+	private static final int NONEMPTY_OBJECT = 6;
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int pos;
+	private int limit;
+
+	private int[] stack = new int[32];
+	private int stackSize = 1;
+
+	private Token peeked;
+	private boolean peekedBoolean;
+	private String peekedNumber;
+	private final StringBuilder builder = new StringBuilder();
+
+	/**
+	 * @param Reader reader to read the JSON document from, ideally unbuffered as
+	 *               this class does its own buffering
+	 */
+	public JSONStreamReader(Reader reader) {
+		this.reader = reader;
+		stack[0] = EMPTY_DOCUMENT;
+	}
+
+	/**
+	 * @return Token type of the next token without consuming it
+	 * @throws IOException
+	 */
+	public Token peek() throws IOException {
+		if (peeked == null) {
+			peeked = doPeek();
+		}
+		return peeked;
+	}
+
+	/**
+	 * @return boolean true if the current array or object has another element
+	 * @throws IOException
+	 */
+	public boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		push(EMPTY_OBJECT);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		stackSize--;
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		push(EMPTY_ARRAY);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		stackSize--;
+	}
+
+	/**
+	 * @return String name of the next property of the current object
+	 * @throws IOException
+	 */
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		return readString();
+	}
+
+	/**
+	 * @return String the next string value, numbers and booleans are returned in
+	 *         their textual form, null as null
+	 * @throws IOException
+	 */
+	public String nextString() throws IOException {
+		switch (peek()) {
+		case STRING:
+			peeked = null;
+			return readString();
+		case NUMBER:
+			peeked = null;
+			return peekedNumber;
+		case BOOLEAN:
+			peeked = null;
+			return String.valueOf(peekedBoolean);
+		case NULL:
+			peeked = null;
+			return null;
+		default:
+			throw syntaxError("Expected a string but was " + peeked);
+		}
+	}
+
+	/**
+	 * Reads the next string value without resolving escape sequences. Use
+	 * {@link #unescape(CharSequence)} to decode it later.
+	 * 
+	 * @return String the raw characters between the quotes, or null
+	 * @throws IOException
+	 */
+	public String nextRawString() throws IOException {
+		if (peek() == Token.NULL) {
+			peeked = null;
+			return null;
+		}
+		if (peeked != Token.STRING) {
+			return nextString();
+		}
+		peeked = null;
+		return readRawString();
+	}
+
+	public long nextLong() throws IOException {
+		String value = nextNumber();
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			try {
+				return (long) Double.parseDouble(value);
+			} catch (NumberFormatException e2) {
+				throw syntaxError("Expected a number but was \"" + value + "\"");
+			}
+		}
+	}
+
+	public int nextInt() throws IOException {
+		long value = nextLong();
+		if ((int) value != value) {
+			throw syntaxError("Number out of int range: " + value);
+		}
+		return (int) value;
+	}
+
+	public double nextDouble() throws IOException {
+		String value = nextNumber();
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw syntaxError("Expected a number but was \"" + value + "\"");
+		}
+	}
+
+	/**
+	 * @return boolean the next boolean, also accepts the strings "true", "t" and
+	 *         "1" and numbers other than 0
+	 * @throws IOException
+	 */
+	public boolean nextBoolean() throws IOException {
+		switch (peek()) {
+		case BOOLEAN:
+			peeked = null;
+			return peekedBoolean;
+		case NUMBER:
+			peeked = null;
+			return Double.parseDouble(peekedNumber) != 0;
+		case STRING:
+			peeked = null;
+			String value = readString();
+			return "true".equals(value) || "t".equals(value) || "1".equals(value);
+		case NULL:
+			peeked = null;
+			return false;
+		default:
+			throw syntaxError("Expected a boolean but was " + peeked);
+		}
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+	}
+
+	/**
+	 * Skips the next value, including all nested values of an array or object.
+	 * 
+	 * @throws IOException
+	 */
+	public void skipValue() throws IOException {
+		int depth = 0;
+		do {
+			switch (peek()) {
+			case BEGIN_OBJECT:
+				beginObject();
+				depth++;
+				break;
+			case BEGIN_ARRAY:
+				beginArray();
+				depth++;
+				break;
+			case END_OBJECT:
+				endObject();
+				depth--;
+				break;
+			case END_ARRAY:
+				endArray();
+				depth--;
+				break;
+			case NAME:
+			case STRING:
+				peeked = null;
+				readRawString();
+				break;
+			case END_DOCUMENT:
+				throw syntaxError("Unexpected end of document");
+			default:
+				peeked = null;
+				break;
+			}
+		} while (depth > 0);
+	}
+
+	/**
+	 * Reads the next value into the org.json object model.
+	 * 
+	 * @return Object a JSONObject, JSONArray, String, Number, Boolean or
+	 *         JSONObject.NULL
+	 * @throws IOException
+	 */
+	public Object readValue() throws IOException {
+		switch (peek()) {
+		case BEGIN_OBJECT:
+			return readObject();
+		case BEGIN_ARRAY:
+			return readArray();
+		case STRING:
+			return nextString();
+		case NUMBER:
+			peeked = null;
+			return JSONObject.stringToValue(peekedNumber);
+		case BOOLEAN:
+			return nextBoolean();
+		case NULL:
+			peeked = null;
+			return JSONObject.NULL;
+		default:
+			throw syntaxError("Expected a value but was " + peeked);
+		}
+	}
+
+	public JSONObject readObject() throws IOException {
+		JSONObject object = new JSONObject();
+		beginObject();
+		while (hasNext()) {
+			String name = nextName();
+			object.put(name, readValue());
+		}
+		endObject();
+		return object;
+	}
+
+	public JSONArray readArray() throws IOException {
+		JSONArray array = new JSONArray();
+		beginArray();
+		while (hasNext()) {
+			array.put(readValue());
+		}
+		endArray();
+		return array;
+	}
+
+	@Override
+	public void close() throws IOException {
+		peeked = null;
+		stackSize = 0;
+		reader.close();
+	}
+
+	/**
+	 * Resolves the escape sequences of a string returned by
+	 * {@link #nextRawString()}.
+	 * 
+	 * @param CharSequence raw string content without the quotes
+	 * @return String decoded string
+	 */
+	public static String unescape(CharSequence raw) {
+		if (raw == null) {
+			return null;
+		}
+		int length = raw.length();
+		int backslash = -1;
+		for (int i = 0; i < length; i++) {
+			if (raw.charAt(i) == '\\') {
+				backslash = i;
+				break;
+			}
+		}
+		if (backslash == -1) {
+			return raw.toString();
+		}
+		StringBuilder result = new StringBuilder(length);
+		result.append(raw, 0, backslash);
+		for (int i = backslash; i < length; i++) {
+			char c = raw.charAt(i);
+			if (c != '\\') {
+				result.append(c);
+				continue;
+			}
+			if (++i == length) {
+				throw new JSONException("Unterminated escape sequence");
+			}
+			c = raw.charAt(i);
+			if (c == 'u') {
+				if (i + 4 >= length) {
+					throw new JSONException("Unterminated escape sequence");
+				}
+				result.append((char) parseHex(raw, i + 1));
+				i += 4;
+			} else {
+				result.append(unescapeChar(c));
+			}
+		}
+		return result.toString();
+	}
+
+	private String nextNumber() throws IOException {
+		switch (peek()) {
+		case NUMBER:
+			peeked = null;
+			return peekedNumber;
+		case STRING:
+			peeked = null;
+			return readString();
+		default:
+			throw syntaxError("Expected a number but was " + peeked);
+		}
+	}
+
+	private void expect(Token token) throws IOException {
+		if (peek() != token) {
+			throw syntaxError("Expected " + token + " but was " + peeked);
+		}
+		peeked = null;
+	}
+
+	private void push(int scope) {
+		if (stackSize == stack.length) {
+			int[] newStack = new int[stackSize * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+		stack[stackSize++] = scope;
+	}
+
+	private Token doPeek() throws IOException {
+		if (stackSize == 0) {
+			throw new IllegalStateException("JSONStreamReader is closed");
+		}
+		int scope = stack[stackSize - 1];
+		if (scope == EMPTY_ARRAY) {
+			stack[stackSize - 1] = NONEMPTY_ARRAY;
+		} else if (scope == NONEMPTY_ARRAY) {
+			int c = nextNonWhitespace();
+			if (c == ']') {
+				return Token.END_ARRAY;
+			} else if (c != ',') {
+				throw syntaxError("Expected ',' or ']'");
+			}
+		} else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+			stack[stackSize - 1] = DANGLING_NAME;
+			int c = nextNonWhitespace();
+			if (scope == NONEMPTY_OBJECT) {
+				if (c == '}') {
+					return Token.END_OBJECT;
+				} else if (c != ',') {
+					throw syntaxError("Expected ',' or '}'");
+				}
+				c = nextNonWhitespace();
+			} else if (c == '}') {
+				return Token.END_OBJECT;
+			}
+			if (c != '"') {
+				throw syntaxError("Expected a property name");
+			}
+			return Token.NAME;
+		} else if (scope == DANGLING_NAME) {
+			stack[stackSize - 1] = NONEMPTY_OBJECT;
+			if (nextNonWhitespace() != ':') {
+				throw syntaxError("Expected ':'");
+			}
+		} else if (scope == EMPTY_DOCUMENT) {
+			stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+		} else if (scope == NONEMPTY_DOCUMENT) {
+			if (skipWhitespace() == -1) {
+				return Token.END_DOCUMENT;
+			}
+			throw syntaxError("Unexpected data after the end of the document");
+		}
+
+		int c = nextNonWhitespace();
+		switch (c) {
+		case ']':
+			if (scope == EMPTY_ARRAY) {
+				return Token.END_ARRAY;
+			}
+			throw syntaxError("Unexpected ']'");
+		case '{':
+			return Token.BEGIN_OBJECT;
+		case '[':
+			return Token.BEGIN_ARRAY;
+		case '"':
+			return Token.STRING;
+		case 't':
+		case 'f':
+		case 'n':
+			pos--;
+			String literal = readWhile("abcdefghijklmnopqrstuvwxyz");
+			if ("true".equals(literal) || "false".equals(literal)) {
+				peekedBoolean = "true".equals(literal);
+				return Token.BOOLEAN;
+			} else if ("null".equals(literal)) {
+				return Token.NULL;
+			}
+			throw syntaxError("Unexpected literal " + literal);
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				pos--;
+				peekedNumber = readWhile("0123456789+-.eE");
+				return Token.NUMBER;
+			}
+			throw syntaxError("Unexpected character '" + (char) c + "'");
+		}
+	}
+
+	private String readWhile(String allowed) throws IOException {
+		builder.setLength(0);
+		while (pos < limit || fill()) {
+			char c = buffer[pos];
+			if (allowed.indexOf(c) == -1) {
+				break;
+			}
+			builder.append(c);
+			pos++;
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Reads a string whose opening quote has already been consumed.
+	 */
+	private String readString() throws IOException {
+		builder.setLength(0);
+		while (true) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					builder.append(buffer, start, pos - 1 - start);
+					return builder.toString();
+				} else if (c == '\\') {
+					builder.append(buffer, start, pos - 1 - start);
+					builder.append(readEscape());
+					start = pos;
+				}
+			}
+			builder.append(buffer, start, pos - start);
+			if (!fill()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	/**
+	 * Reads a string whose opening quote has already been consumed, leaving the
+	 * escape sequences as they are.
+	 */
+	private String readRawString() throws IOException {
+		builder.setLength(0);
+		while (true) {
+			int start = pos;
+			while (pos < limit) {
+				char c = buffer[pos++];
+				if (c == '"') {
+					builder.append(buffer, start, pos - 1 - start);
+					return builder.toString();
+				} else if (c == '\\') {
+					if (pos == limit) {
+						builder.append(buffer, start, pos - start);
+						if (!fill()) {
+							throw syntaxError("Unterminated string");
+						}
+						start = pos;
+					}
+					pos++;
+				}
+			}
+			builder.append(buffer, start, pos - start);
+			if (!fill()) {
+				throw syntaxError("Unterminated string");
+			}
+		}
+	}
+
+	private char readEscape() throws IOException {
+		if (pos == limit && !fill()) {
+			throw syntaxError("Unterminated escape sequence");
+		}
+		char c = buffer[pos++];
+		if (c != 'u') {
+			return unescapeChar(c);
+		}
+		char[] hex = new char[4];
+		for (int i = 0; i < 4; i++) {
+			if (pos == limit && !fill()) {
+				throw syntaxError("Unterminated escape sequence");
+			}
+			hex[i] = buffer[pos++];
+		}
+		return (char) parseHex(new String(hex), 0);
+	}
+
+	private static char unescapeChar(char c) {
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case '"':
+		case '\\':
+		case '/':
+		case '\'':
+			return c;
+		default:
+			throw new JSONException("Invalid escape sequence \\" + c);
+		}
+	}
+
+	private static int parseHex(CharSequence chars, int start) {
+		int value = 0;
+		for (int i = start; i < start + 4; i++) {
+			int digit = Character.digit(chars.charAt(i), 16);
+			if (digit == -1) {
+				throw new JSONException("Invalid unicode escape sequence");
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	private int nextNonWhitespace() throws IOException {
+		int c = skipWhitespace();
+		if (c == -1) {
+			throw syntaxError("Unexpected end of document");
+		}
+		pos++;
+		return c;
+	}
+
+	/**
+	 * @return the next character which is not whitespace without consuming it,
+	 *         or -1 at the end of the input
+	 */
+	private int skipWhitespace() throws IOException {
+		while (pos < limit || fill()) {
+			char c = buffer[pos];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+	private boolean fill() throws IOException {
+		int read = reader.read(buffer, 0, buffer.length);
+		if (read <= 0) {
+			pos = 0;
+			limit = 0;
+			return false;
+		}
+		pos = 0;
+		limit = read;
+		return true;
+	}
+
+	private JSONException syntaxError(String message) {
+		return new JSONException(message + " at position " + pos + " of the current buffer");
+	}
+}
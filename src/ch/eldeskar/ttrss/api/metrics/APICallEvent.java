@@ -0,0 +1,62 @@
+package ch.eldeskar.ttrss.api.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event written for every api call while a recording with the
+ * event enabled is running, e.g. with
+ * -XX:StartFlightRecording:settings=profile. Without a recording the calls are
+ * not instrumented at all.
+ *
+ */
+@Name("ch.eldeskar.ttrss.api.Call")
+@Label("TT-RSS API Call")
+@Category({ "TT-RSS", "API" })
+@Description("A call to the TT-RSS api, split into the phases of the request")
+@StackTrace(false)
+public final class APICallEvent extends Event {
+
+	@Label("Operation")
+	public String op;
+
+	@Label("URL")
+	public String url;
+
+	@Label("Asynchronous")
+	public boolean async;
+
+	@Label("Connect")
+	@Description("Time to open the connection, -1 if the transport does not report it")
+	@Timespan(Timespan.NANOSECONDS)
+	public long connect;
+
+	@Label("Time To First Byte")
+	@Timespan(Timespan.NANOSECONDS)
+	public long timeToFirstByte;
+
+	@Label("Read")
+	@Timespan(Timespan.NANOSECONDS)
+	public long read;
+
+	@Label("Parse")
+	@Timespan(Timespan.NANOSECONDS)
+	public long parse;
+
+	@Label("Request Size")
+	@DataAmount
+	public long requestBytes;
+
+	@Label("Response Size")
+	@DataAmount
+	public long responseBytes;
+
+	@Label("Error")
+	public String error;
+}
@@ -0,0 +1,132 @@
+package ch.eldeskar.ttrss.api.metrics;
+
+import java.net.URL;
+
+/**
+ * Measurements of one api call. All times are in nanoseconds.
+ * 
+ * A blocking call is split into the time until the response headers arrived
+ * (time to first byte, which includes connecting), the time spent waiting for
+ * the body and the time spent decoding it. Streaming calls decode while
+ * reading, so the parse time also includes the consumer that received the
+ * elements. Asynchronous calls receive the body as a whole, for them the time
+ * to first byte is unknown and the read time covers the whole exchange.
+ * 
+ * The connect time is only known with
+ * {@link ch.eldeskar.ttrss.api.transport.URLConnectionTransport}.
+ * {@link java.net.http.HttpClient} does not expose it, with the default
+ * {@link ch.eldeskar.ttrss.api.transport.HttpClientTransport} it is always -1.
+ *
+ */
+public final class CallMetrics {
+
+	private final String op;
+	private final URL url;
+	private final boolean async;
+	private final long connectNanos;
+	private final long timeToFirstByteNanos;
+	private final long readNanos;
+	private final long parseNanos;
+	private final long totalNanos;
+	private final long requestBytes;
+	private final long responseBytes;
+	private final String error;
+
+	/**
+	 * @param String  op
+	 * @param URL     url
+	 * @param boolean async
+	 * @param long    connectNanos -1 if the transport does not report it
+	 * @param long    timeToFirstByteNanos -1 if unknown
+	 * @param long    readNanos
+	 * @param long    parseNanos
+	 * @param long    totalNanos
+	 * @param long    requestBytes
+	 * @param long    responseBytes
+	 * @param String  error null if the call succeeded
+	 */
+	public CallMetrics(String op, URL url, boolean async, long connectNanos, long timeToFirstByteNanos, long readNanos,
+			long parseNanos, long totalNanos, long requestBytes, long responseBytes, String error) {
+		this.op = op;
+		this.url = url;
+		this.async = async;
+		this.connectNanos = connectNanos;
+		this.timeToFirstByteNanos = timeToFirstByteNanos;
+		this.readNanos = readNanos;
+		this.parseNanos = parseNanos;
+		this.totalNanos = totalNanos;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.error = error;
+	}
+
+	public String getOp() {
+		return op;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	public boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * @return long time to open the connection, 0 if an open connection was
+	 *         reused, -1 if the transport does not report it, which is always the
+	 *         case with HttpClientTransport
+	 */
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+
+	/**
+	 * @return long time from sending the request until the response headers
+	 *         arrived, -1 for asynchronous calls
+	 */
+	public long getTimeToFirstByteNanos() {
+		return timeToFirstByteNanos;
+	}
+
+	public long getReadNanos() {
+		return readNanos;
+	}
+
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return long size of the JSON request
+	 */
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return long size of the JSON response which was read, after decompression
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @return String error code of the api (e.g. NOT_LOGGED_IN) or the simple
+	 *         class name of the exception, null if the call succeeded
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "CallMetrics [op=" + op + ", total=" + totalNanos / 1000 + "us"
+				+ (timeToFirstByteNanos >= 0 ? ", ttfb=" + timeToFirstByteNanos / 1000 + "us" : "") + ", read=" + readNanos / 1000 + "us, parse=" + parseNanos / 1000 + "us, bytes=" + requestBytes + "/"
+				+ responseBytes + (error != null ? ", error=" + error : "") + "]";
+	}
+}
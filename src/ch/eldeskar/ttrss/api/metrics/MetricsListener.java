@@ -0,0 +1,17 @@
+package ch.eldeskar.ttrss.api.metrics;
+
+/**
+ * Receives the measurements of every call made through an
+ * {@link ch.eldeskar.ttrss.api.APISession} it is registered with. The listener
+ * is called on the thread which finished the call, for asynchronous calls
+ * usually a thread of the transport, so it has to be fast and thread safe.
+ *
+ */
+@FunctionalInterface
+public interface MetricsListener {
+
+	/**
+	 * @param CallMetrics metrics of the finished call
+	 */
+	void onCall(CallMetrics metrics);
+}
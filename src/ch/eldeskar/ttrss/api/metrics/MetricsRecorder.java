@@ -0,0 +1,156 @@
+package ch.eldeskar.ttrss.api.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener which keeps latency histograms, byte and error counts per op.
+ * 
+ * <pre>
+ * MetricsRecorder metrics = new MetricsRecorder();
+ * session.setMetricsListener(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ *
+ */
+public class MetricsRecorder implements MetricsListener {
+
+	/**
+	 * The phases of a call, see {@link CallMetrics}. CONNECT stays empty with
+	 * transports which do not report it, like the default HttpClientTransport.
+	 */
+	public enum Phase {
+		CONNECT, TIME_TO_FIRST_BYTE, READ, PARSE, TOTAL
+	}
+
+	private final Map<String, OpMetrics> ops = new ConcurrentHashMap<>();
+
+	@Override
+	public void onCall(CallMetrics metrics) {
+		ops.computeIfAbsent(metrics.getOp(), OpMetrics::new).record(metrics);
+	}
+
+	/**
+	 * @return Set<String> ops which have been called
+	 */
+	public Set<String> getOps() {
+		return Collections.unmodifiableSet(new TreeSet<>(ops.keySet()));
+	}
+
+	/**
+	 * @param String op
+	 * @return OpMetrics metrics of the op, null if it has not been called
+	 */
+	public OpMetrics get(String op) {
+		return ops.get(op);
+	}
+
+	public void reset() {
+		ops.clear();
+	}
+
+	/**
+	 * @return String one line per op with calls, errors, bytes and the p50/p99
+	 *         of every phase in milliseconds
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(String.format(Locale.ROOT, "%-16s %8s %6s %10s %10s",
+				"op", "calls", "errors", "sent", "received"));
+		for (Phase phase : Phase.values()) {
+			builder.append(String.format(Locale.ROOT, " %19s", phase.name().toLowerCase(Locale.ROOT) + " p50/p99"));
+		}
+		for (String op : getOps()) {
+			OpMetrics metrics = ops.get(op);
+			builder.append(String.format(Locale.ROOT, "%n%-16s %8d %6d %10d %10d", op, metrics.getCount(),
+					metrics.getErrors(), metrics.getRequestBytes(), metrics.getResponseBytes()));
+			for (Phase phase : Phase.values()) {
+				Histogram histogram = metrics.getHistogram(phase);
+				builder.append(histogram.getCount() == 0 ? String.format(Locale.ROOT, " %19s", "-")
+						: String.format(Locale.ROOT, " %9.2f/%9.2f", histogram.getPercentile(0.5) / 1e6,
+								histogram.getPercentile(0.99) / 1e6));
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Metrics of one op.
+	 */
+	public static final class OpMetrics {
+
+		private final String op;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final LongAdder requestBytes = new LongAdder();
+		private final LongAdder responseBytes = new LongAdder();
+		private final Map<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+		private final Map<Phase, Histogram> histograms = new EnumMap<>(Phase.class);
+
+		OpMetrics(String op) {
+			this.op = op;
+			for (Phase phase : Phase.values()) {
+				histograms.put(phase, new Histogram());
+			}
+		}
+
+		void record(CallMetrics metrics) {
+			count.increment();
+			requestBytes.add(metrics.getRequestBytes());
+			responseBytes.add(metrics.getResponseBytes());
+			if (metrics.getError() != null) {
+				errors.increment();
+				errorCounts.computeIfAbsent(metrics.getError(), key -> new LongAdder()).increment();
+			}
+			histograms.get(Phase.CONNECT).record(metrics.getConnectNanos());
+			histograms.get(Phase.TIME_TO_FIRST_BYTE).record(metrics.getTimeToFirstByteNanos());
+			histograms.get(Phase.READ).record(metrics.getReadNanos());
+			histograms.get(Phase.PARSE).record(metrics.getParseNanos());
+			histograms.get(Phase.TOTAL).record(metrics.getTotalNanos());
+		}
+
+		public String getOp() {
+			return op;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		/**
+		 * @return Map<String, Long> amount of failed calls per error code
+		 */
+		public Map<String, Long> getErrorCounts() {
+			Map<String, Long> result = new ConcurrentHashMap<>();
+			errorCounts.forEach((error, counter) -> result.put(error, counter.sum()));
+			return result;
+		}
+
+		public long getRequestBytes() {
+			return requestBytes.sum();
+		}
+
+		public long getResponseBytes() {
+			return responseBytes.sum();
+		}
+
+		/**
+		 * @param Phase phase
+		 * @return Histogram durations of the phase in nanoseconds
+		 */
+		public Histogram getHistogram(Phase phase) {
+			return histograms.get(phase);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * An attachment (e.g. an enclosure) of an article, as returned by getArticle
+ * and by getHeadlines with include_attachments.
+ *
+ */
+public final class Attachment {
+
+	private int id;
+	private int postId;
+	private String contentUrl;
+	private String contentType;
+	private String title;
+	private int duration;
+	private int width;
+	private int height;
+
+	private Attachment() {
+	}
+
+	/**
+	 * Reads an attachment object from the reader.
+	 * 
+	 * @param JSONStreamReader reader positioned before the attachment object
+	 * @return Attachment
+	 * @throws IOException
+	 */
+	public static Attachment read(JSONStreamReader reader) throws IOException {
+		Attachment attachment = new Attachment();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				attachment.id = reader.nextInt();
+				break;
+			case "post_id":
+				attachment.postId = reader.nextInt();
+				break;
+			case "content_url":
+				attachment.contentUrl = reader.nextString();
+				break;
+			case "content_type":
+				attachment.contentType = reader.nextString();
+				break;
+			case "title":
+				attachment.title = reader.nextString();
+				break;
+			case "duration":
+				attachment.duration = Model.nextIntOrZero(reader);
+				break;
+			case "width":
+				attachment.width = Model.nextIntOrZero(reader);
+				break;
+			case "height":
+				attachment.height = Model.nextIntOrZero(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return attachment;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return int id of the article this attachment belongs to
+	 */
+	public int getPostId() {
+		return postId;
+	}
+
+	public String getContentUrl() {
+		return contentUrl;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * @return int duration in seconds, 0 if unknown
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString() {
+		return "Attachment [id=" + id + ", contentUrl=" + contentUrl + ", contentType=" + contentType + "]";
+	}
+}
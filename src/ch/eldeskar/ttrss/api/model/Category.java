@@ -0,0 +1,75 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * A category as returned by getCategories.
+ *
+ */
+public final class Category {
+
+	private int id;
+	private String title;
+	private int unread;
+	private int orderId;
+
+	private Category() {
+	}
+
+	/**
+	 * @param JSONStreamReader reader positioned before the category object
+	 * @return Category
+	 * @throws IOException
+	 */
+	public static Category read(JSONStreamReader reader) throws IOException {
+		Category category = new Category();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				category.id = reader.nextInt();
+				break;
+			case "title":
+				category.title = reader.nextString();
+				break;
+			case "unread":
+				category.unread = Model.nextIntOrZero(reader);
+				break;
+			case "order_id":
+				category.orderId = Model.nextIntOrZero(reader);
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return category;
+	}
+
+	/**
+	 * @return int category id, 0 is Uncategorized, negative ids are special
+	 *         categories
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public int getUnread() {
+		return unread;
+	}
+
+	public int getOrderId() {
+		return orderId;
+	}
+
+	@Override
+	public String toString() {
+		return "Category [id=" + id + ", title=" + title + ", unread=" + unread + "]";
+	}
+}
@@ -0,0 +1,154 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * One entry returned by getCounters.
+ *
+ */
+public final class Counter {
+
+	/**
+	 * What a counter belongs to.
+	 */
+	public enum Kind {
+		/**
+		 * A feed, including the special feeds like -4 all articles.
+		 */
+		FEED,
+		/**
+		 * A category.
+		 */
+		CATEGORY,
+		/**
+		 * A label, the id is the label feed id (below -10).
+		 */
+		LABEL,
+		/**
+		 * A global counter such as global-unread or subscribed-feeds, see
+		 * {@link Counter#getName()}.
+		 */
+		GLOBAL
+	}
+
+	private Kind kind = Kind.FEED;
+	private int id;
+	private String name;
+	private int counter;
+	private int auxCounter;
+	private int markedCounter;
+	private String updated;
+
+	private Counter() {
+	}
+
+	/**
+	 * @param JSONStreamReader reader positioned before the counter object
+	 * @return Counter
+	 * @throws IOException
+	 */
+	public static Counter read(JSONStreamReader reader) throws IOException {
+		Counter counter = new Counter();
+		String kind = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				if (reader.peek() == JSONStreamReader.Token.NUMBER) {
+					counter.id = reader.nextInt();
+				} else {
+					counter.name = reader.nextString();
+				}
+				break;
+			case "kind":
+				kind = reader.nextString();
+				break;
+			case "counter":
+				counter.counter = Model.nextIntOrZero(reader);
+				break;
+			case "auxcounter":
+				counter.auxCounter = Model.nextIntOrZero(reader);
+				break;
+			case "markedcounter":
+				counter.markedCounter = Model.nextIntOrZero(reader);
+				break;
+			case "updated":
+				if (reader.peek() == JSONStreamReader.Token.STRING) {
+					counter.updated = reader.nextString();
+				} else {
+					reader.skipValue();
+				}
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (counter.name != null) {
+			try {
+				counter.id = Integer.parseInt(counter.name);
+				counter.name = null;
+			} catch (NumberFormatException e) {
+				counter.kind = Kind.GLOBAL;
+			}
+		}
+		if (counter.kind != Kind.GLOBAL) {
+			if ("cat".equals(kind)) {
+				counter.kind = Kind.CATEGORY;
+			} else if (counter.id < -10) {
+				counter.kind = Kind.LABEL;
+			}
+		}
+		return counter;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return int feed, category or label feed id, 0 for global counters
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return String name of a global counter, e.g. global-unread, null for
+	 *         other kinds
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return int unread articles
+	 */
+	public int getCounter() {
+		return counter;
+	}
+
+	public int getAuxCounter() {
+		return auxCounter;
+	}
+
+	public int getMarkedCounter() {
+		return markedCounter;
+	}
+
+	/**
+	 * @return String time of the last update of a feed as formatted by the server,
+	 *         null for other kinds
+	 */
+	public String getUpdated() {
+		return updated;
+	}
+
+	@Override
+	public String toString() {
+		return "Counter [kind=" + kind + ", id=" + (name != null ? name : String.valueOf(id)) + ", counter=" + counter
+				+ "]";
+	}
+}
@@ -0,0 +1,119 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * A feed as returned by getFeeds. With include_nested child categories are
+ * returned as feeds too, see {@link #isCategory()}.
+ *
+ */
+public final class Feed {
+
+	private int id;
+	private String title;
+	private String feedUrl;
+	private int unread;
+	private boolean hasIcon;
+	private int catId;
+	private long lastUpdated;
+	private int orderId;
+	private boolean isCat;
+
+	private Feed() {
+	}
+
+	/**
+	 * @param JSONStreamReader reader positioned before the feed object
+	 * @return Feed
+	 * @throws IOException
+	 */
+	public static Feed read(JSONStreamReader reader) throws IOException {
+		Feed feed = new Feed();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				feed.id = reader.nextInt();
+				break;
+			case "title":
+				feed.title = reader.nextString();
+				break;
+			case "feed_url":
+				feed.feedUrl = reader.nextString();
+				break;
+			case "unread":
+				feed.unread = Model.nextIntOrZero(reader);
+				break;
+			case "has_icon":
+				feed.hasIcon = reader.nextBoolean();
+				break;
+			case "cat_id":
+				feed.catId = Model.nextIntOrZero(reader);
+				break;
+			case "last_updated":
+				feed.lastUpdated = reader.nextLong();
+				break;
+			case "order_id":
+				feed.orderId = Model.nextIntOrZero(reader);
+				break;
+			case "is_cat":
+				feed.isCat = reader.nextBoolean();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return feed;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getFeedUrl() {
+		return feedUrl;
+	}
+
+	public int getUnread() {
+		return unread;
+	}
+
+	public boolean hasIcon() {
+		return hasIcon;
+	}
+
+	public int getCatId() {
+		return catId;
+	}
+
+	/**
+	 * @return long unix timestamp of the last update in seconds
+	 */
+	public long getLastUpdated() {
+		return lastUpdated;
+	}
+
+	public int getOrderId() {
+		return orderId;
+	}
+
+	/**
+	 * @return boolean true if this entry is a child category returned because of
+	 *         include_nested
+	 */
+	public boolean isCategory() {
+		return isCat;
+	}
+
+	@Override
+	public String toString() {
+		return "Feed [id=" + id + ", title=" + title + ", unread=" + unread + "]";
+	}
+}
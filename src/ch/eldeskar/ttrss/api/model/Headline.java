@@ -0,0 +1,380 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * A headline as returned by getHeadlines, or an article as returned by
+ * getArticle.
+ * 
+ * The content and the excerpt are kept in their escaped form as they arrived
+ * from the server and are only decoded when they are accessed for the first
+ * time. Headlines which are never displayed in full do not pay for decoding
+ * their content.
+ * 
+ * A headline shared by a {@link HeadlineCanonicalizer} is updated in place.
+ * Updates and getters synchronize on the headline, every getter returns a
+ * complete value, but two getters called one after the other may see
+ * different updates.
+ *
+ */
+public final class Headline {
+
+	private int id;
+	private String guid;
+	private boolean unread;
+	private boolean marked;
+	private boolean published;
+	private long updated;
+	private boolean isUpdated;
+	private String title;
+	private String link;
+	private int feedId;
+	private String feedTitle;
+	private List<String> tags = Collections.emptyList();
+	private List<Label> labels = Collections.emptyList();
+	private List<Attachment> attachments = Collections.emptyList();
+	private String author;
+	private int score;
+	private String note;
+	private String lang;
+	private int commentsCount;
+	private String commentsLink;
+
+	private volatile String rawExcerpt;
+	private volatile String excerpt;
+	private volatile String rawContent;
+	private volatile String content;
+
+	private Headline() {
+	}
+
+	/**
+	 * @param JSONStreamReader reader positioned before the headline object
+	 * @return Headline
+	 * @throws IOException
+	 */
+	public static Headline read(JSONStreamReader reader) throws IOException {
+		Headline headline = new Headline();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				headline.id = reader.nextInt();
+				break;
+			case "guid":
+				headline.guid = reader.nextString();
+				break;
+			case "unread":
+				headline.unread = reader.nextBoolean();
+				break;
+			case "marked":
+				headline.marked = reader.nextBoolean();
+				break;
+			case "published":
+				headline.published = reader.nextBoolean();
+				break;
+			case "updated":
+				headline.updated = reader.nextLong();
+				break;
+			case "is_updated":
+				headline.isUpdated = reader.nextBoolean();
+				break;
+			case "title":
+				headline.title = reader.nextString();
+				break;
+			case "link":
+				headline.link = reader.nextString();
+				break;
+			case "feed_id":
+				headline.feedId = Model.nextIntOrZero(reader);
+				break;
+			case "feed_title":
+				headline.feedTitle = reader.nextString();
+				break;
+			case "tags":
+				headline.tags = Model.nextStringList(reader);
+				break;
+			case "labels":
+				headline.labels = readList(reader, Label::read);
+				break;
+			case "attachments":
+				headline.attachments = readList(reader, Attachment::read);
+				break;
+			case "author":
+				headline.author = reader.nextString();
+				break;
+			case "score":
+				headline.score = Model.nextIntOrZero(reader);
+				break;
+			case "note":
+				headline.note = reader.nextString();
+				break;
+			case "lang":
+				headline.lang = reader.nextString();
+				break;
+			case "comments_count":
+				headline.commentsCount = Model.nextIntOrZero(reader);
+				break;
+			case "comments_link":
+				headline.commentsLink = reader.nextString();
+				break;
+			case "excerpt":
+				headline.rawExcerpt = reader.nextRawString();
+				break;
+			case "content":
+				headline.rawContent = reader.nextRawString();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return headline;
+	}
+
+	private interface ElementReader<T> {
+		T read(JSONStreamReader reader) throws IOException;
+	}
+
+	private static <T> List<T> readList(JSONStreamReader reader, ElementReader<T> elementReader)
+			throws IOException {
+		if (reader.peek() != JSONStreamReader.Token.BEGIN_ARRAY) {
+			reader.skipValue();
+			return Collections.emptyList();
+		}
+		List<T> list = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			list.add(elementReader.read(reader));
+		}
+		reader.endArray();
+		return list.isEmpty() ? Collections.emptyList() : list;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public synchronized String getGuid() {
+		return guid;
+	}
+
+	public synchronized boolean isUnread() {
+		return unread;
+	}
+
+	/**
+	 * @return boolean true if the article is starred
+	 */
+	public synchronized boolean isMarked() {
+		return marked;
+	}
+
+	public synchronized boolean isPublished() {
+		return published;
+	}
+
+	/**
+	 * @return long unix timestamp in seconds
+	 */
+	public synchronized long getUpdated() {
+		return updated;
+	}
+
+	public synchronized boolean isUpdated() {
+		return isUpdated;
+	}
+
+	public synchronized String getTitle() {
+		return title;
+	}
+
+	public synchronized String getLink() {
+		return link;
+	}
+
+	public synchronized int getFeedId() {
+		return feedId;
+	}
+
+	public synchronized String getFeedTitle() {
+		return feedTitle;
+	}
+
+	/**
+	 * @return List of tags, unmodifiable
+	 */
+	public synchronized List<String> getTags() {
+		return Collections.unmodifiableList(tags);
+	}
+
+	/**
+	 * @return List of labels, unmodifiable
+	 */
+	public synchronized List<Label> getLabels() {
+		return Collections.unmodifiableList(labels);
+	}
+
+	/**
+	 * @return List of attachments, only filled by getArticle and by getHeadlines
+	 *         with include_attachments, unmodifiable
+	 */
+	public synchronized List<Attachment> getAttachments() {
+		return Collections.unmodifiableList(attachments);
+	}
+
+	public synchronized String getAuthor() {
+		return author;
+	}
+
+	public synchronized int getScore() {
+		return score;
+	}
+
+	public synchronized String getNote() {
+		return note;
+	}
+
+	public synchronized String getLang() {
+		return lang;
+	}
+
+	public synchronized int getCommentsCount() {
+		return commentsCount;
+	}
+
+	public synchronized String getCommentsLink() {
+		return commentsLink;
+	}
+
+	/**
+	 * @return String excerpt, only returned with show_excerpt
+	 */
+	public String getExcerpt() {
+		String decoded = excerpt;
+		if (decoded != null) {
+			return decoded;
+		}
+		synchronized (this) {
+			if (rawExcerpt != null) {
+				excerpt = JSONStreamReader.unescape(rawExcerpt);
+				rawExcerpt = null;
+			}
+			return excerpt;
+		}
+	}
+
+	/**
+	 * @return String full article text, only returned with show_content and by
+	 *         getArticle
+	 */
+	public String getContent() {
+		String decoded = content;
+		if (decoded != null) {
+			return decoded;
+		}
+		synchronized (this) {
+			if (rawContent != null) {
+				content = JSONStreamReader.unescape(rawContent);
+				rawContent = null;
+			}
+			return content;
+		}
+	}
+
+	/**
+	 * Returns a copy of the headline with other flags, e.g. for flags which
+	 * changed after the headline was stored.
+	 * 
+	 * @param boolean unread
+	 * @param boolean marked
+	 * @param boolean published
+	 * @return Headline copy
+	 */
+	public Headline withFlags(boolean unread, boolean marked, boolean published) {
+		Headline copy = new Headline();
+		copy.id = id;
+		copy.update(this);
+		copy.unread = unread;
+		copy.marked = marked;
+		copy.published = published;
+		return copy;
+	}
+
+	/**
+	 * Takes over the fields of a newer copy of the same article. Excerpt, content
+	 * and attachments are kept if the copy was loaded without them.
+	 * 
+	 * @param Headline other
+	 */
+	synchronized void update(Headline other) {
+		synchronized (other) {
+			guid = other.guid;
+			unread = other.unread;
+			marked = other.marked;
+			published = other.published;
+			updated = other.updated;
+			isUpdated = other.isUpdated;
+			title = other.title;
+			link = other.link;
+			feedId = other.feedId;
+			feedTitle = other.feedTitle;
+			tags = other.tags;
+			labels = other.labels;
+			author = other.author;
+			score = other.score;
+			note = other.note;
+			lang = other.lang;
+			commentsCount = other.commentsCount;
+			commentsLink = other.commentsLink;
+			if (!other.attachments.isEmpty()) {
+				attachments = other.attachments;
+			}
+			if (other.rawExcerpt != null || other.excerpt != null) {
+				rawExcerpt = other.rawExcerpt;
+				excerpt = other.excerpt;
+			}
+			if (other.rawContent != null || other.content != null) {
+				rawContent = other.rawContent;
+				content = other.content;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the strings and labels which repeat across headlines by the shared
+	 * instances of the canonicalizer.
+	 * 
+	 * @param HeadlineCanonicalizer canonicalizer
+	 */
+	synchronized void intern(HeadlineCanonicalizer canonicalizer) {
+		feedTitle = canonicalizer.intern(feedTitle);
+		author = canonicalizer.intern(author);
+		lang = canonicalizer.intern(lang);
+		if (!tags.isEmpty()) {
+			// a new list, the headline may already be shared
+			List<String> interned = new ArrayList<>(tags.size());
+			for (String tag : tags) {
+				interned.add(canonicalizer.intern(tag));
+			}
+			tags = interned;
+		}
+		if (!labels.isEmpty()) {
+			List<Label> interned = new ArrayList<>(labels.size());
+			for (Label label : labels) {
+				interned.add(canonicalizer.intern(label));
+			}
+			labels = interned;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "Headline [id=" + id + ", feedId=" + feedId + ", title=" + title + "]";
+	}
+}
@@ -0,0 +1,162 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Shares one {@link Headline} instance per article across all views. The same
+ * article arrives with its own feed, with -4 all articles, -3 fresh, -1 starred
+ * and with its labels, every response creates a new copy. The canonicalizer
+ * keeps the first copy it sees and takes the fields of later copies over into
+ * it, so every list holding the article sees its current state:
+ *
+ * <pre>
+ * HeadlineCanonicalizer canonicalizer = new HeadlineCanonicalizer();
+ * List&lt;Headline&gt; starred = new ArrayList&lt;&gt;();
+ * session.forEachHeadline(url, sid, ",\"feed_id\":-1", canonicalizer.canonicalizing(starred::add));
+ * </pre>
+ *
+ * Articles are only referenced weakly, they are forgotten when no view holds
+ * them anymore. Strings which repeat in every headline, like the feed title,
+ * the author, the language and the tags, as well as the labels are interned in
+ * tables of the canonicalizer. The string table is bounded, values arriving
+ * after it is full are kept as they are.
+ *
+ * Changes are written into the shared instance under its monitor, which its
+ * getters hold as well, so a view on another thread never sees a half written
+ * value. All methods are thread safe.
+ *
+ */
+public class HeadlineCanonicalizer {
+
+	private static final int DEFAULT_MAX_STRINGS = 16384;
+	private static final int MAX_STRING_LENGTH = 256;
+
+	private final Map<Integer, ArticleReference> articles = new HashMap<>();
+	private final ReferenceQueue<Headline> collected = new ReferenceQueue<>();
+	private final Map<String, String> strings = new HashMap<>();
+	private final Map<Integer, Label> labels = new HashMap<>();
+	private final int maxStrings;
+
+	public HeadlineCanonicalizer() {
+		this(DEFAULT_MAX_STRINGS);
+	}
+
+	/**
+	 * @param int maxStrings size of the string table
+	 */
+	public HeadlineCanonicalizer(int maxStrings) {
+		if (maxStrings < 0) {
+			throw new IllegalArgumentException("maxStrings must not be negative: " + maxStrings);
+		}
+		this.maxStrings = maxStrings;
+	}
+
+	/**
+	 * @param Headline headline freshly read from a response
+	 * @return Headline the shared instance of the article, updated with the
+	 *         fields of headline
+	 */
+	public synchronized Headline canonicalize(Headline headline) {
+		expunge();
+		headline.intern(this);
+		ArticleReference reference = articles.get(headline.getId());
+		Headline shared = reference == null ? null : reference.get();
+		if (shared == null) {
+			articles.put(headline.getId(), new ArticleReference(headline, collected));
+			return headline;
+		}
+		if (shared != headline) {
+			shared.update(headline);
+		}
+		return shared;
+	}
+
+	/**
+	 * @param Consumer<Headline> consumer
+	 * @return Consumer<Headline> passes the shared instances to consumer
+	 */
+	public Consumer<Headline> canonicalizing(Consumer<Headline> consumer) {
+		return headline -> consumer.accept(canonicalize(headline));
+	}
+
+	/**
+	 * @param int id article id
+	 * @return Headline the shared instance, null if the article is not held by
+	 *         any view
+	 */
+	public synchronized Headline get(int id) {
+		ArticleReference reference = articles.get(id);
+		return reference == null ? null : reference.get();
+	}
+
+	/**
+	 * @return int articles currently held by a view
+	 */
+	public synchronized int size() {
+		expunge();
+		return articles.size();
+	}
+
+	/**
+	 * Forgets all articles, strings and labels.
+	 */
+	public synchronized void clear() {
+		articles.clear();
+		strings.clear();
+		labels.clear();
+		while (collected.poll() != null) {
+		}
+	}
+
+	String intern(String value) {
+		if (value == null || value.length() > MAX_STRING_LENGTH) {
+			return value;
+		}
+		if (value.isEmpty()) {
+			return "";
+		}
+		String interned = strings.get(value);
+		if (interned != null) {
+			return interned;
+		}
+		if (strings.size() < maxStrings) {
+			strings.put(value, value);
+		}
+		return value;
+	}
+
+	Label intern(Label label) {
+		Label interned = labels.get(label.getId());
+		if (interned != null && interned.isChecked() == label.isChecked()
+				&& Objects.equals(interned.getCaption(), label.getCaption())
+				&& Objects.equals(interned.getFgColor(), label.getFgColor())
+				&& Objects.equals(interned.getBgColor(), label.getBgColor())) {
+			return interned;
+		}
+		labels.put(label.getId(), label);
+		return label;
+	}
+
+	private void expunge() {
+		ArticleReference reference;
+		while ((reference = (ArticleReference) collected.poll()) != null) {
+			// the article may have been loaded again since
+			articles.remove(reference.id, reference);
+		}
+	}
+
+	private static final class ArticleReference extends WeakReference<Headline> {
+
+		final int id;
+
+		ArticleReference(Headline headline, ReferenceQueue<Headline> queue) {
+			super(headline, queue);
+			this.id = headline.getId();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * A label as returned by getLabels, or one of the labels attached to a
+ * headline.
+ *
+ */
+public final class Label {
+
+	private int id;
+	private String caption;
+	private String fgColor;
+	private String bgColor;
+	private boolean checked;
+
+	private Label() {
+	}
+
+	/**
+	 * Reads a label from the reader. Accepts both the object returned by
+	 * getLabels and the [id, caption, fg_color, bg_color] array used in
+	 * headlines.
+	 * 
+	 * @param JSONStreamReader reader positioned before the label
+	 * @return Label
+	 * @throws IOException
+	 */
+	public static Label read(JSONStreamReader reader) throws IOException {
+		Label label = new Label();
+		if (reader.peek() == JSONStreamReader.Token.BEGIN_ARRAY) {
+			reader.beginArray();
+			label.id = reader.nextInt();
+			label.caption = reader.hasNext() ? reader.nextString() : null;
+			label.fgColor = reader.hasNext() ? reader.nextString() : null;
+			label.bgColor = reader.hasNext() ? reader.nextString() : null;
+			while (reader.hasNext()) {
+				reader.skipValue();
+			}
+			reader.endArray();
+			return label;
+		}
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+			case "id":
+				label.id = reader.nextInt();
+				break;
+			case "caption":
+				label.caption = reader.nextString();
+				break;
+			case "fg_color":
+				label.fgColor = reader.nextString();
+				break;
+			case "bg_color":
+				label.bgColor = reader.nextString();
+				break;
+			case "checked":
+				label.checked = reader.nextBoolean();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return label;
+	}
+
+	/**
+	 * Converts a label id to the id of the virtual feed which contains the
+	 * articles of the label. Before version:1.7.5 getLabels returned the database
+	 * id, newer versions already return the feed id.
+	 * 
+	 * @param int labelId
+	 * @return int feed id, always below -10
+	 */
+	public static int toFeedId(int labelId) {
+		return labelId < 0 ? labelId : -11 - labelId;
+	}
+
+	/**
+	 * @return int id as returned by the server, see {@link #getFeedId()}
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return int id of the virtual feed of this label
+	 */
+	public int getFeedId() {
+		return toFeedId(id);
+	}
+
+	public String getCaption() {
+		return caption;
+	}
+
+	public String getFgColor() {
+		return fgColor;
+	}
+
+	public String getBgColor() {
+		return bgColor;
+	}
+
+	/**
+	 * @return boolean true if the article passed to getLabels has this label
+	 */
+	public boolean isChecked() {
+		return checked;
+	}
+
+	@Override
+	public String toString() {
+		return "Label [id=" + id + ", caption=" + caption + "]";
+	}
+}
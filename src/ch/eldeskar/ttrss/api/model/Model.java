@@ -0,0 +1,53 @@
+package ch.eldeskar.ttrss.api.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+/**
+ * Decoding helpers shared by the model classes.
+ */
+final class Model {
+
+	private Model() {
+	}
+
+	/**
+	 * TT-RSS returns empty strings or null for some unset numbers, e.g. the
+	 * duration of an attachment.
+	 */
+	static int nextIntOrZero(JSONStreamReader reader) throws IOException {
+		if (reader.peek() == JSONStreamReader.Token.NUMBER) {
+			return reader.nextInt();
+		}
+		String value = reader.nextString();
+		if (value == null || value.isEmpty()) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	static List<String> nextStringList(JSONStreamReader reader) throws IOException {
+		if (reader.peek() != JSONStreamReader.Token.BEGIN_ARRAY) {
+			reader.skipValue();
+			return Collections.emptyList();
+		}
+		List<String> list = new ArrayList<>();
+		reader.beginArray();
+		while (reader.hasNext()) {
+			String value = reader.nextString();
+			if (value != null && !value.isEmpty()) {
+				list.add(value);
+			}
+		}
+		reader.endArray();
+		return list.isEmpty() ? Collections.emptyList() : list;
+	}
+}
@@ -0,0 +1,631 @@
+package ch.eldeskar.ttrss.api.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.APISession;
+import ch.eldeskar.ttrss.api.HeadlinePager;
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+import ch.eldeskar.ttrss.api.model.Headline;
+
+/**
+ * Local copy of the articles of an account, kept in a directory with two
+ * files:
+ * 
+ * articles.log is an append-only log of headlines as returned by
+ * getHeadlines. Every record starts with the article id, the feed id and the
+ * unread/starred/published flags, followed by the JSON of the headline. A
+ * changed article is appended again, the index always points to the newest
+ * record. A change of the unread flag only appends a flag record with the new
+ * flags and the offset of the headline record. The log is memory-mapped for
+ * reading.
+ * 
+ * articles.snapshot contains the index (article id to log offset), the
+ * high-water mark of every synchronized feed, i.e. the highest article id
+ * received so far, and the unread articles. It is written on
+ * {@link #snapshot()} and {@link #close()} and lets {@link #open(Path)} start
+ * without reading the whole log. Records appended after the last snapshot are
+ * indexed when the store is opened, an incomplete record at the end of the log
+ * is removed.
+ * 
+ * {@link #sync(APISession, URL, String, int)} only requests articles above the
+ * high-water mark of a feed with since_id, and refreshes the unread flags of
+ * the stored unread articles of the feed.
+ * 
+ * All methods are thread safe.
+ *
+ */
+public class ArticleStore implements Closeable {
+
+	private static final int MAGIC = 0x54545253;
+	private static final int VERSION = 2;
+	private static final int FILE_HEADER_SIZE = 8;
+	private static final int RECORD_HEADER_SIZE = 4 + 4 + 4 + 1;
+	private static final int FLAG_RECORD_SIZE = RECORD_HEADER_SIZE + 8;
+	private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+	private static final long SEGMENT_SIZE = 1L << 28;
+
+	private static final int FLAG_UNREAD = 1;
+	private static final int FLAG_MARKED = 2;
+	private static final int FLAG_PUBLISHED = 4;
+	/** the record only holds new flags and the offset of the headline record */
+	private static final int FLAG_UPDATE = 8;
+
+	private final Path snapshotFile;
+	private final FileChannel channel;
+	private final IntLongMap index;
+	private final Map<Integer, Integer> highWaterMarks;
+	/** feed id by article id of the articles flagged as unread */
+	private final IntLongMap unread;
+	private long logSize;
+	private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+	private long mappedSize;
+
+	private ArticleStore(Path snapshotFile, FileChannel channel, IntLongMap index,
+			Map<Integer, Integer> highWaterMarks, IntLongMap unread, long logSize) {
+		this.snapshotFile = snapshotFile;
+		this.channel = channel;
+		this.index = index;
+		this.highWaterMarks = highWaterMarks;
+		this.unread = unread;
+		this.logSize = logSize;
+	}
+
+	/**
+	 * Opens the store in the given directory, creating it if necessary.
+	 * 
+	 * @param Path directory
+	 * @return ArticleStore
+	 * @throws IOException
+	 */
+	public static ArticleStore open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Path logFile = directory.resolve("articles.log");
+		Path snapshotFile = directory.resolve("articles.snapshot");
+		FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			if (channel.size() == 0) {
+				ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+				header.flip();
+				writeFully(channel, header, 0);
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+				readFully(channel, header, 0);
+				if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+					throw new IOException("Not an article log: " + logFile);
+				}
+			}
+
+			IntLongMap index = null;
+			IntLongMap unread = null;
+			Map<Integer, Integer> highWaterMarks = new HashMap<>();
+			long indexed = FILE_HEADER_SIZE;
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(snapshotFile), 65536))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+					long logLength = in.readLong();
+					if (logLength <= channel.size()) {
+						int count = in.readInt();
+						IntLongMap snapshotIndex = new IntLongMap(count);
+						for (int i = 0; i < count; i++) {
+							snapshotIndex.put(in.readInt(), in.readLong());
+						}
+						int feeds = in.readInt();
+						for (int i = 0; i < feeds; i++) {
+							highWaterMarks.put(in.readInt(), in.readInt());
+						}
+						int unreadCount = in.readInt();
+						IntLongMap snapshotUnread = new IntLongMap(unreadCount);
+						for (int i = 0; i < unreadCount; i++) {
+							snapshotUnread.put(in.readInt(), in.readInt());
+						}
+						index = snapshotIndex;
+						unread = snapshotUnread;
+						indexed = logLength;
+					}
+				}
+			} catch (NoSuchFileException | EOFException e) {
+				highWaterMarks.clear();
+			}
+			if (index == null) {
+				index = new IntLongMap(1024);
+				unread = new IntLongMap(1024);
+			}
+			long logSize = recover(channel, index, unread, indexed);
+			return new ArticleStore(snapshotFile, channel, index, highWaterMarks, unread, logSize);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Indexes the records after the given offset and cuts off an incomplete
+	 * record at the end of the log.
+	 */
+	private static long recover(FileChannel channel, IntLongMap index, IntLongMap unread, long offset)
+			throws IOException {
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		while (offset + RECORD_HEADER_SIZE <= size) {
+			header.clear();
+			readFully(channel, header, offset);
+			int length = header.getInt(0);
+			if (length < RECORD_HEADER_SIZE - 4 || length > MAX_RECORD_SIZE || offset + 4 + length > size) {
+				break;
+			}
+			index.put(header.getInt(4), offset);
+			indexUnread(unread, header);
+			offset += 4 + length;
+		}
+		if (offset < size) {
+			channel.truncate(offset);
+		}
+		return offset;
+	}
+
+	/**
+	 * Stores a headline. If the article is already stored, the new version
+	 * replaces the old one.
+	 * 
+	 * @param JSONObject headline as returned by getHeadlines or getArticle
+	 * @throws IOException
+	 */
+	public synchronized void put(JSONObject headline) throws IOException {
+		byte[] payload = headline.toString().getBytes(StandardCharsets.UTF_8);
+		int flags = (headline.optBoolean("unread") ? FLAG_UNREAD : 0)
+				| (headline.optBoolean("marked") ? FLAG_MARKED : 0)
+				| (headline.optBoolean("published") ? FLAG_PUBLISHED : 0);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+		record.putInt(RECORD_HEADER_SIZE - 4 + payload.length).putInt(headline.getInt("id"))
+				.putInt(headline.optInt("feed_id")).put((byte) flags).put(payload).flip();
+		append(record);
+	}
+
+	private void append(ByteBuffer record) throws IOException {
+		writeFully(channel, record, logSize);
+		index.put(record.getInt(4), logSize);
+		indexUnread(unread, record);
+		logSize += record.limit();
+	}
+
+	private static void indexUnread(IntLongMap unread, ByteBuffer header) {
+		if ((header.get(12) & FLAG_UNREAD) != 0) {
+			unread.put(header.getInt(4), header.getInt(8));
+		} else {
+			unread.remove(header.getInt(4));
+		}
+	}
+
+	/**
+	 * Loads all articles of a feed which are newer than the high-water mark of
+	 * the feed, stores them and raises the high-water mark. The high-water mark
+	 * is only raised once all new articles have been received, a failed sync
+	 * requests the same articles again next time.
+	 * 
+	 * Afterwards the unread flags of the stored unread articles of the feed are
+	 * refreshed with a second pass over the unread articles of the server, using
+	 * the oldest stored unread article as since_id: stored articles which are
+	 * missing there are flagged as read, e.g. because they were read on another
+	 * client, stored articles which are returned are flagged as unread. Articles
+	 * older than the oldest stored unread one which are marked as unread again on
+	 * another client are not noticed. An article read on the server while this
+	 * pass runs may hide another one until the next sync. Feed -4 refreshes the
+	 * unread articles of all feeds, other special feeds do not refresh any.
+	 * 
+	 * @param APISession session
+	 * @param URL        url
+	 * @param String     session_id
+	 * @param int        feedId feed to synchronize, special feeds like -4 are
+	 *                   allowed
+	 * @return int amount of new articles
+	 * @throws IOException
+	 */
+	public int sync(APISession session, URL url, String session_id, int feedId) throws IOException {
+		int sinceId = getHighWaterMark(feedId);
+		int maxId = sinceId;
+		int count = 0;
+		String parameters = ",\"feed_id\":" + feedId + ",\"since_id\":" + sinceId
+				+ ",\"view_mode\":\"all_articles\",\"show_content\":true,\"include_attachments\":true";
+		try {
+			int pageSize = session.getPageSize(url, session_id);
+			try (HeadlinePager pager = session.getHeadlinePager(url, session_id, parameters, pageSize)) {
+				while (pager.hasNext()) {
+					JSONObject headline = pager.next();
+					put(headline);
+					maxId = Math.max(maxId, headline.getInt("id"));
+					count++;
+				}
+			}
+			synchronized (this) {
+				if (maxId > getHighWaterMark(feedId)) {
+					highWaterMarks.put(feedId, maxId);
+				}
+			}
+			int[] stored;
+			if (feedId == -4) {
+				stored = getUnreadIds().values().stream().flatMapToInt(Arrays::stream).sorted().toArray();
+			} else {
+				stored = feedId >= 0 ? getUnreadIds(feedId) : new int[0];
+			}
+			if (stored.length > 0) {
+				Set<Integer> serverUnread = new HashSet<>();
+				try (HeadlinePager pager = session.getHeadlinePager(url, session_id, ",\"feed_id\":" + feedId
+						+ ",\"since_id\":" + (stored[0] - 1) + ",\"view_mode\":\"unread\"", pageSize)) {
+					while (pager.hasNext()) {
+						serverUnread.add(pager.next().getInt("id"));
+					}
+				}
+				refreshUnread(stored, serverUnread);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return count;
+	}
+
+	/**
+	 * Flags the stored unread articles which are not unread on the server as read
+	 * and the articles unread on the server as unread.
+	 */
+	private synchronized void refreshUnread(int[] stored, Set<Integer> serverUnread) throws IOException {
+		setUnread(Arrays.stream(stored).filter(id -> !serverUnread.contains(id)).toArray(), false);
+		setUnread(serverUnread.stream().mapToInt(Integer::intValue).toArray(), true);
+	}
+
+	/**
+	 * Changes the unread flag of a stored article. Only a flag record is
+	 * appended, {@link #get(int)} returns the article with the new flag as well.
+	 * 
+	 * @param int     articleId
+	 * @param boolean unread
+	 * @return boolean true if the article is stored and its flag changed
+	 * @throws IOException
+	 */
+	public synchronized boolean setUnread(int articleId, boolean unread) throws IOException {
+		return setUnread(new int[] { articleId }, unread) == 1;
+	}
+
+	/**
+	 * Same as {@link #setUnread(int, boolean)} for several articles, the flag
+	 * records are appended with one write.
+	 * 
+	 * @param int[]   articleIds
+	 * @param boolean unread
+	 * @return int amount of stored articles whose flag changed
+	 * @throws IOException
+	 */
+	public synchronized int setUnread(int[] articleIds, boolean unread) throws IOException {
+		ByteBuffer updates = ByteBuffer.allocate(articleIds.length * FLAG_RECORD_SIZE);
+		for (int articleId : Arrays.stream(articleIds).distinct().toArray()) {
+			long offset = index.get(articleId, -1);
+			if (offset == -1) {
+				continue;
+			}
+			ByteBuffer record = record(offset);
+			int flags = record.get(12);
+			if (((flags & FLAG_UNREAD) != 0) == unread) {
+				continue;
+			}
+			long headlineOffset = (flags & FLAG_UPDATE) != 0 ? record.getLong(RECORD_HEADER_SIZE) : offset;
+			updates.putInt(FLAG_RECORD_SIZE - 4).putInt(articleId).putInt(record.getInt(8))
+					.put((byte) (flags & ~FLAG_UNREAD | FLAG_UPDATE | (unread ? FLAG_UNREAD : 0)))
+					.putLong(headlineOffset);
+		}
+		updates.flip();
+		long start = logSize;
+		writeFully(channel, updates, start);
+		for (int position = 0; position < updates.limit(); position += FLAG_RECORD_SIZE) {
+			ByteBuffer update = updates.duplicate();
+			update.position(position).limit(position + FLAG_RECORD_SIZE);
+			update = update.slice();
+			index.put(update.getInt(4), start + position);
+			indexUnread(this.unread, update);
+		}
+		logSize += updates.limit();
+		return updates.limit() / FLAG_RECORD_SIZE;
+	}
+
+	/**
+	 * @param int feedId
+	 * @return int highest article id received for the feed, 0 if the feed has
+	 *         never been synchronized
+	 */
+	public synchronized int getHighWaterMark(int feedId) {
+		return highWaterMarks.getOrDefault(feedId, 0);
+	}
+
+	/**
+	 * @param int articleId
+	 * @return boolean true if the article is stored
+	 */
+	public synchronized boolean contains(int articleId) {
+		return index.get(articleId, -1) != -1;
+	}
+
+	/**
+	 * @return int amount of stored articles
+	 */
+	public synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * @param int articleId
+	 * @return Headline the stored article, or null
+	 * @throws IOException
+	 */
+	public synchronized Headline get(int articleId) throws IOException {
+		long offset = index.get(articleId, -1);
+		return offset == -1 ? null : decode(record(offset));
+	}
+
+	/**
+	 * @param int articleId
+	 * @return boolean true if the article is stored and was unread at the last
+	 *         sync of its feed
+	 * @throws IOException
+	 */
+	public synchronized boolean isUnread(int articleId) throws IOException {
+		long offset = index.get(articleId, -1);
+		return offset != -1 && (record(offset).get(12) & FLAG_UNREAD) != 0;
+	}
+
+	/**
+	 * @param int articleId
+	 * @return int feed id of the stored article, 0 if the article is not stored
+	 * @throws IOException
+	 */
+	public synchronized int getFeedId(int articleId) throws IOException {
+		long offset = index.get(articleId, -1);
+		return offset == -1 ? 0 : record(offset).getInt(8);
+	}
+
+	/**
+	 * Passes all stored articles of a feed to the consumer, in no particular
+	 * order. The consumer must not call other methods of the store.
+	 * 
+	 * @param int                feedId
+	 * @param Consumer<Headline> consumer
+	 * @throws IOException
+	 */
+	public synchronized void forEach(int feedId, Consumer<Headline> consumer) throws IOException {
+		for (long offset : offsets()) {
+			ByteBuffer record = record(offset);
+			if (record.getInt(8) == feedId) {
+				consumer.accept(decode(record));
+			}
+		}
+	}
+
+	/**
+	 * @param int feedId
+	 * @return int[] ids of the stored articles of the feed which were unread at
+	 *         the last sync, sorted
+	 * @throws IOException
+	 */
+	public synchronized int[] getUnreadIds(int feedId) throws IOException {
+		List<Integer> ids = new ArrayList<>();
+		unread.forEach((id, feed) -> {
+			if (feed == feedId) {
+				ids.add(id);
+			}
+		});
+		int[] result = ids.stream().mapToInt(Integer::intValue).toArray();
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Same as {@link #getUnreadIds(int)} for all feeds at once.
+	 * 
+	 * @return Map<Integer, int[]> sorted unread article ids by feed id, feeds
+	 *         without unread articles are missing
+	 * @throws IOException
+	 */
+	public synchronized Map<Integer, int[]> getUnreadIds() throws IOException {
+		Map<Integer, List<Integer>> ids = new HashMap<>();
+		unread.forEach((id, feed) -> ids.computeIfAbsent((int) feed, feedId -> new ArrayList<>()).add(id));
+		Map<Integer, int[]> result = new HashMap<>();
+		for (Map.Entry<Integer, List<Integer>> entry : ids.entrySet()) {
+			int[] sorted = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+			Arrays.sort(sorted);
+			result.put(entry.getKey(), sorted);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the index, the high-water marks and the unread articles to the
+	 * snapshot file.
+	 * 
+	 * @throws IOException
+	 */
+	public synchronized void snapshot() throws IOException {
+		channel.force(false);
+		Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp), 65536))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(logSize);
+			out.writeInt(index.size());
+			IOException[] error = new IOException[1];
+			index.forEach((id, offset) -> {
+				try {
+					out.writeInt(id);
+					out.writeLong(offset);
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			});
+			out.writeInt(highWaterMarks.size());
+			for (Map.Entry<Integer, Integer> entry : highWaterMarks.entrySet()) {
+				out.writeInt(entry.getKey());
+				out.writeInt(entry.getValue());
+			}
+			out.writeInt(unread.size());
+			unread.forEach((id, feedId) -> {
+				try {
+					out.writeInt(id);
+					out.writeInt((int) feedId);
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			});
+			if (error[0] != null) {
+				throw error[0];
+			}
+		}
+		Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes a snapshot and closes the log.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel.isOpen()) {
+			try {
+				snapshot();
+			} finally {
+				channel.close();
+				segments = new MappedByteBuffer[0];
+			}
+		}
+	}
+
+	private long[] offsets() {
+		long[] offsets = new long[index.size()];
+		int[] i = new int[1];
+		index.forEach((id, offset) -> offsets[i[0]++] = offset);
+		Arrays.sort(offsets);
+		return offsets;
+	}
+
+	/**
+	 * @return ByteBuffer containing the whole record at the offset, including
+	 *         the length, position 0
+	 */
+	private ByteBuffer record(long offset) throws IOException {
+		ByteBuffer length = slice(offset, 4);
+		return slice(offset, 4 + length.getInt(0));
+	}
+
+	private ByteBuffer slice(long offset, int length) throws IOException {
+		if (offset + length > mappedSize) {
+			map();
+		}
+		int segment = (int) (offset / SEGMENT_SIZE);
+		int start = (int) (offset - segment * SEGMENT_SIZE);
+		if (start + length <= segments[segment].capacity()) {
+			ByteBuffer slice = segments[segment].duplicate();
+			slice.position(start).limit(start + length);
+			return slice.slice();
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, buffer, offset);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Maps the log up to its current size. Full segments stay mapped, the last
+	 * segment is mapped again as it grows.
+	 */
+	private void map() throws IOException {
+		int count = (int) ((logSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		MappedByteBuffer[] newSegments = Arrays.copyOf(segments, count);
+		for (int i = Math.max(0, segments.length - 1); i < count; i++) {
+			long start = i * SEGMENT_SIZE;
+			newSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, logSize - start));
+		}
+		segments = newSegments;
+		mappedSize = logSize;
+	}
+
+	/**
+	 * Reads the headline of a record, following a flag record to the headline
+	 * record.
+	 */
+	private Headline decode(ByteBuffer record) throws IOException {
+		int flags = record.get(12);
+		boolean update = (flags & FLAG_UPDATE) != 0;
+		ByteBuffer payload = (update ? record(record.getLong(RECORD_HEADER_SIZE)) : record).duplicate();
+		payload.position(RECORD_HEADER_SIZE);
+		Headline headline;
+		try (JSONStreamReader reader = new JSONStreamReader(
+				new InputStreamReader(new ByteBufferInputStream(payload), StandardCharsets.UTF_8))) {
+			headline = Headline.read(reader);
+		}
+		return update ? headline.withFlags((flags & FLAG_UNREAD) != 0, (flags & FLAG_MARKED) != 0,
+				(flags & FLAG_PUBLISHED) != 0) : headline;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+	}
+}
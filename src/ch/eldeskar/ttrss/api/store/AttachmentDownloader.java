@@ -0,0 +1,628 @@
+package ch.eldeskar.ttrss.api.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+import ch.eldeskar.ttrss.api.model.Attachment;
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.transport.HttpStatusException;
+
+/**
+ * Downloads the attachments of headlines (getHeadlines with
+ * include_attachments, getArticle) into a directory. The bodies are written to
+ * a FileChannel buffer by buffer as they arrive, no file is held in memory.
+ *
+ * Up to maxPerHost downloads run at once per host, further downloads of the
+ * host wait in a queue. A download which is already running is not started
+ * again, the caller gets the result of the running one.
+ *
+ * Every file {name} is accompanied by {name}.meta with the url, the ETag, the
+ * Last-Modified date and the length sent by the server. While downloading the
+ * data is written to {name}.part, which is renamed to {name} when complete:
+ * <ul>
+ * <li>If {name} exists, it is requested with If-None-Match and skipped when the
+ * server answers 304. Without an ETag a HEAD request is sent and the file is
+ * skipped if it has the length the server reports.</li>
+ * <li>If {name}.part exists, the rest is requested with a Range request. With
+ * If-Range the server sends the whole file if it changed meanwhile.</li>
+ * </ul>
+ *
+ */
+public class AttachmentDownloader implements Closeable {
+
+	private static final int MAX_NAME_LENGTH = 100;
+
+	/**
+	 * What a download did.
+	 */
+	public enum Outcome {
+		/**
+		 * The file was downloaded completely.
+		 */
+		DOWNLOADED,
+		/**
+		 * A partial file was completed with a Range request.
+		 */
+		RESUMED,
+		/**
+		 * The file was already complete and unchanged.
+		 */
+		SKIPPED
+	}
+
+	private final HttpClient client;
+	private final Path directory;
+	private final int maxPerHost;
+	private final Map<String, Host> hosts = new HashMap<>();
+	private final Map<Path, CompletableFuture<Result>> inFlight = new HashMap<>();
+	private volatile Function<Attachment, String> fileNames = AttachmentDownloader::defaultFileName;
+	private boolean closed;
+
+	/**
+	 * Creates a downloader with its own HttpClient, which follows redirects.
+	 *
+	 * @param Path directory
+	 * @param int  maxPerHost concurrent downloads per host
+	 */
+	public AttachmentDownloader(Path directory, int maxPerHost) {
+		this(HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofSeconds(30)).build(), directory, maxPerHost);
+	}
+
+	/**
+	 * @param HttpClient client
+	 * @param Path       directory
+	 * @param int        maxPerHost concurrent downloads per host
+	 */
+	public AttachmentDownloader(HttpClient client, Path directory, int maxPerHost) {
+		if (maxPerHost <= 0) {
+			throw new IllegalArgumentException("maxPerHost must be positive: " + maxPerHost);
+		}
+		this.client = client;
+		this.directory = directory;
+		this.maxPerHost = maxPerHost;
+	}
+
+	/**
+	 * @param Function<Attachment, String> fileNames name of the file of an
+	 *                                     attachment within the directory, by
+	 *                                     default {post id}-{id}-{last path
+	 *                                     segment of the url}
+	 */
+	public void setFileNames(Function<Attachment, String> fileNames) {
+		this.fileNames = fileNames;
+	}
+
+	/**
+	 * @param Collection<Headline> headlines
+	 * @return List<CompletableFuture<Result>> one download per attachment
+	 */
+	public List<CompletableFuture<Result>> download(Collection<Headline> headlines) {
+		List<CompletableFuture<Result>> downloads = new ArrayList<>();
+		for (Headline headline : headlines) {
+			for (Attachment attachment : headline.getAttachments()) {
+				downloads.add(download(attachment));
+			}
+		}
+		return downloads;
+	}
+
+	/**
+	 * @param Attachment attachment
+	 * @return CompletableFuture<Result> completes when the file is complete,
+	 *         fails with an IOException or {@link HttpStatusException}, at once
+	 *         for urls other than http and https
+	 */
+	public CompletableFuture<Result> download(Attachment attachment) {
+		URI uri;
+		Path target;
+		try {
+			uri = new URI(attachment.getContentUrl());
+			target = directory.resolve(fileNames.apply(attachment));
+		} catch (URISyntaxException | RuntimeException e) {
+			return CompletableFuture.failedFuture(new IOException("Invalid attachment " + attachment, e));
+		}
+		if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())
+				|| uri.getHost() == null) {
+			return CompletableFuture.failedFuture(new IOException("Unsupported attachment url: " + uri));
+		}
+		if (!target.normalize().startsWith(directory.normalize())) {
+			return CompletableFuture.failedFuture(new IOException("File outside of the directory: " + target));
+		}
+		CompletableFuture<Result> result;
+		Host host;
+		synchronized (this) {
+			if (closed) {
+				return CompletableFuture.failedFuture(new IOException("AttachmentDownloader is closed"));
+			}
+			CompletableFuture<Result> running = inFlight.get(target);
+			if (running != null) {
+				return running.copy();
+			}
+			result = new CompletableFuture<>();
+			inFlight.put(target, result);
+			host = hosts.computeIfAbsent(uri.getHost() + ':' + uri.getPort(), key -> new Host());
+		}
+		host.submit(() -> run(attachment, uri, target, host, result));
+		return result.copy();
+	}
+
+	private void run(Attachment attachment, URI uri, Path target, Host host, CompletableFuture<Result> result) {
+		CompletableFuture<Result> download;
+		synchronized (this) {
+			download = closed ? CompletableFuture.failedFuture(new IOException("AttachmentDownloader is closed"))
+					: null;
+		}
+		if (download == null) {
+			download = start(attachment, uri, target);
+		}
+		download.whenComplete((downloaded, error) -> {
+			synchronized (this) {
+				inFlight.remove(target);
+			}
+			try {
+				host.finished();
+			} finally {
+				if (error != null) {
+					result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+							? error.getCause() : error);
+				} else {
+					result.complete(downloaded);
+				}
+			}
+		});
+	}
+
+	private CompletableFuture<Result> start(Attachment attachment, URI uri, Path target) {
+		try {
+			Files.createDirectories(target.toAbsolutePath().getParent());
+			Path part = sibling(target, ".part");
+			Path metaFile = sibling(target, ".meta");
+			Properties meta = readMeta(metaFile);
+			if (!uri.toString().equals(meta.getProperty("url"))) {
+				meta.clear();
+				Files.deleteIfExists(part);
+			}
+			String etag = meta.getProperty("etag");
+			if (Files.exists(target)) {
+				if (etag != null) {
+					return get(attachment, uri, target, 0, request(uri).header("If-None-Match", etag));
+				}
+				long size = Files.size(target);
+				return client.sendAsync(request(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build(),
+						HttpResponse.BodyHandlers.discarding()).thenCompose(head -> {
+							if (head.statusCode() / 100 == 2 && head.headers().firstValueAsLong("Content-Length")
+									.orElse(-1) == size) {
+								return CompletableFuture
+										.completedFuture(new Result(attachment, target, Outcome.SKIPPED, 0, size));
+							}
+							return get(attachment, uri, target, 0, request(uri));
+						});
+			}
+			long partSize = Files.exists(part) ? Files.size(part) : 0;
+			if (partSize == 0) {
+				return get(attachment, uri, target, 0, request(uri));
+			}
+			HttpRequest.Builder resume = request(uri).header("Range", "bytes=" + partSize + "-");
+			String validator = etag != null ? etag : meta.getProperty("lastModified");
+			if (validator != null) {
+				resume.header("If-Range", validator);
+			}
+			return get(attachment, uri, target, partSize, resume);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		} catch (RuntimeException e) {
+			// the slot of the host and the in-flight entry are released by run
+			return CompletableFuture.failedFuture(new IOException("Could not download " + uri, e));
+		}
+	}
+
+	private static HttpRequest.Builder request(URI uri) {
+		return HttpRequest.newBuilder(uri).header("Accept-Encoding", "identity");
+	}
+
+	private CompletableFuture<Result> get(Attachment attachment, URI uri, Path target, long partSize,
+			HttpRequest.Builder request) {
+		Path part = sibling(target, ".part");
+		return client.sendAsync(request.build(), info -> receive(info, uri, target, partSize))
+				.thenCompose(response -> {
+					Transfer transfer = response.body();
+					try {
+						if (transfer.outcome == Outcome.SKIPPED) {
+							return CompletableFuture.completedFuture(
+									new Result(attachment, target, Outcome.SKIPPED, 0, Files.size(target)));
+						}
+						if (transfer.outcome == null) {
+							// the part does not fit the file on the server anymore
+							Files.deleteIfExists(part);
+							return get(attachment, uri, target, 0, request(uri));
+						}
+						long size = Files.size(part);
+						if (transfer.length >= 0 && size != transfer.length) {
+							throw new IOException("Incomplete download of " + uri + ": " + size + " of "
+									+ transfer.length + " bytes, will be resumed");
+						}
+						try {
+							Files.move(part, target, StandardCopyOption.REPLACE_EXISTING,
+									StandardCopyOption.ATOMIC_MOVE);
+						} catch (AtomicMoveNotSupportedException e) {
+							Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+						}
+						return CompletableFuture.completedFuture(
+								new Result(attachment, target, transfer.outcome, transfer.bytes, size));
+					} catch (IOException e) {
+						return CompletableFuture.failedFuture(e);
+					}
+				});
+	}
+
+	/**
+	 * Decides from the status and the headers where the body goes.
+	 */
+	private BodySubscriber<Transfer> receive(ResponseInfo info, URI uri, Path target, long partSize) {
+		int status = info.statusCode();
+		if (status == 304) {
+			return BodySubscribers.replacing(new Transfer(Outcome.SKIPPED, 0, -1));
+		}
+		String contentRange = info.headers().firstValue("Content-Range").orElse("");
+		int slash = contentRange.lastIndexOf('/');
+		long total = slash >= 0 ? parseLong(contentRange.substring(slash + 1)) : -1;
+		if (status == 416) {
+			if (partSize > 0 && total == partSize) {
+				return BodySubscribers.replacing(new Transfer(Outcome.RESUMED, 0, partSize));
+			}
+			return BodySubscribers.replacing(new Transfer(null, 0, -1));
+		}
+		if (status == 206 && !contentRange.startsWith("bytes " + partSize + "-")) {
+			return BodySubscribers.replacing(new Transfer(null, 0, -1));
+		}
+		if (status != 200 && status != 206) {
+			HttpStatusException error;
+			try {
+				error = new HttpStatusException(uri.toURL(), status, null);
+			} catch (IOException | IllegalArgumentException e) {
+				return failing(new IOException("HTTP " + status + " for " + uri, e));
+			}
+			return failing(error);
+		}
+		boolean resumed = status == 206;
+		long length = resumed ? total : info.headers().firstValueAsLong("Content-Length").orElse(-1);
+		Properties meta = new Properties();
+		meta.setProperty("url", uri.toString());
+		info.headers().firstValue("ETag").ifPresent(etag -> meta.setProperty("etag", etag));
+		info.headers().firstValue("Last-Modified").ifPresent(date -> meta.setProperty("lastModified", date));
+		if (length >= 0) {
+			meta.setProperty("length", String.valueOf(length));
+		}
+		try {
+			writeMeta(sibling(target, ".meta"), meta);
+		} catch (IOException e) {
+			return failing(e);
+		}
+		return new FileSubscriber(sibling(target, ".part"), resumed ? partSize : 0,
+				resumed ? Outcome.RESUMED : Outcome.DOWNLOADED, length);
+	}
+
+	private static BodySubscriber<Transfer> failing(IOException error) {
+		return BodySubscribers.mapping(BodySubscribers.discarding(), ignored -> {
+			throw new CompletionException(error);
+		});
+	}
+
+	private static long parseLong(String value) {
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static Path sibling(Path file, String suffix) {
+		return file.resolveSibling(file.getFileName() + suffix);
+	}
+
+	private static Properties readMeta(Path file) throws IOException {
+		Properties meta = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			meta.load(in);
+		} catch (NoSuchFileException e) {
+			// first download
+		}
+		return meta;
+	}
+
+	private static void writeMeta(Path file, Properties meta) throws IOException {
+		Path temp = sibling(file, ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			meta.store(out, null);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @param Attachment attachment
+	 * @return String {post id}-{id}-{last path segment}, restricted to letters,
+	 *         digits, dot, minus and underscore
+	 */
+	public static String defaultFileName(Attachment attachment) {
+		String path;
+		try {
+			path = new URI(attachment.getContentUrl()).getPath();
+		} catch (URISyntaxException | NullPointerException e) {
+			path = null;
+		}
+		String name = path == null ? "" : path.substring(path.lastIndexOf('/') + 1);
+		name = name.replaceAll("[^A-Za-z0-9._-]", "_").replaceAll("^\\.+", "");
+		if (name.isEmpty()) {
+			name = "attachment";
+		}
+		if (name.length() > MAX_NAME_LENGTH) {
+			name = name.substring(name.length() - MAX_NAME_LENGTH);
+		}
+		return attachment.getPostId() + "-" + attachment.getId() + "-" + name;
+	}
+
+	/**
+	 * Fails the downloads waiting for their turn. Running downloads complete,
+	 * their part files are resumed by the next downloader.
+	 */
+	@Override
+	public void close() {
+		List<Host> closing;
+		synchronized (this) {
+			closed = true;
+			closing = new ArrayList<>(hosts.values());
+		}
+		for (Host host : closing) {
+			host.close();
+		}
+	}
+
+	/**
+	 * Result of a body, outcome null if the download has to start over.
+	 */
+	private static final class Transfer {
+
+		final Outcome outcome;
+		final long bytes;
+		final long length;
+
+		Transfer(Outcome outcome, long bytes, long length) {
+			this.outcome = outcome;
+			this.bytes = bytes;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Writes the buffers of the body to the part file as they arrive and asks
+	 * for the next ones only after they have been written.
+	 */
+	private static final class FileSubscriber implements BodySubscriber<Transfer> {
+
+		private final Path file;
+		private final long position;
+		private final Outcome outcome;
+		private final long length;
+		private final CompletableFuture<Transfer> result = new CompletableFuture<>();
+		private Flow.Subscription subscription;
+		private FileChannel channel;
+		private long written;
+
+		FileSubscriber(Path file, long position, Outcome outcome, long length) {
+			this.file = file;
+			this.position = position;
+			this.outcome = outcome;
+			this.length = length;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			try {
+				channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				channel.truncate(position);
+				channel.position(position);
+			} catch (IOException e) {
+				subscription.cancel();
+				fail(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			try {
+				for (ByteBuffer buffer : buffers) {
+					while (buffer.hasRemaining()) {
+						written += channel.write(buffer);
+					}
+				}
+			} catch (IOException e) {
+				subscription.cancel();
+				fail(e);
+				return;
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			fail(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			try {
+				channel.close();
+				result.complete(new Transfer(outcome, written, length));
+			} catch (IOException e) {
+				result.completeExceptionally(e);
+			}
+		}
+
+		private void fail(Throwable error) {
+			try {
+				if (channel != null) {
+					channel.close();
+				}
+			} catch (IOException e) {
+				error.addSuppressed(e);
+			}
+			result.completeExceptionally(error);
+		}
+
+		@Override
+		public CompletionStage<Transfer> getBody() {
+			return result;
+		}
+	}
+
+	/**
+	 * Queue of the downloads of one host. A download which fails synchronously
+	 * calls finished while it is started, so downloads are started by a loop in
+	 * one thread at a time instead of recursively.
+	 */
+	private final class Host {
+
+		private final Deque<Runnable> queue = new ArrayDeque<>();
+		private int running;
+		private boolean dispatching;
+		private boolean closed;
+
+		void submit(Runnable download) {
+			synchronized (this) {
+				queue.add(download);
+				if (dispatching) {
+					return;
+				}
+				dispatching = true;
+			}
+			dispatch();
+		}
+
+		void finished() {
+			synchronized (this) {
+				running--;
+				if (dispatching) {
+					// the dispatching thread starts the next one
+					return;
+				}
+				dispatching = true;
+			}
+			dispatch();
+		}
+
+		private void dispatch() {
+			while (true) {
+				Runnable next;
+				synchronized (this) {
+					// once closed the queued downloads fail at once, regardless of the limit
+					next = closed || running < maxPerHost ? queue.poll() : null;
+					if (next == null) {
+						dispatching = false;
+						return;
+					}
+					running++;
+				}
+				next.run();
+			}
+		}
+
+		void close() {
+			synchronized (this) {
+				closed = true;
+				if (dispatching) {
+					return;
+				}
+				dispatching = true;
+			}
+			dispatch();
+		}
+	}
+
+	/**
+	 * A completed download.
+	 */
+	public static final class Result {
+
+		private final Attachment attachment;
+		private final Path file;
+		private final Outcome outcome;
+		private final long transferred;
+		private final long size;
+
+		Result(Attachment attachment, Path file, Outcome outcome, long transferred, long size) {
+			this.attachment = attachment;
+			this.file = file;
+			this.outcome = outcome;
+			this.transferred = transferred;
+			this.size = size;
+		}
+
+		public Attachment getAttachment() {
+			return attachment;
+		}
+
+		public Path getFile() {
+			return file;
+		}
+
+		public Outcome getOutcome() {
+			return outcome;
+		}
+
+		/**
+		 * @return long bytes received by this download
+		 */
+		public long getTransferred() {
+			return transferred;
+		}
+
+		/**
+		 * @return long size of the file
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [file=" + file.getFileName() + ", outcome=" + outcome + ", transferred=" + transferred
+					+ ", size=" + size + "]";
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package ch.eldeskar.ttrss.api.store;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from int to long without boxing. Integer.MIN_VALUE
+ * cannot be used as a key.
+ */
+final class IntLongMap {
+
+	private static final int FREE = Integer.MIN_VALUE;
+
+	private int[] keys;
+	private long[] values;
+	private int size;
+
+	IntLongMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+		keys = new int[capacity];
+		values = new long[capacity];
+		Arrays.fill(keys, FREE);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the value of the key, or defaultValue if the key is not present
+	 */
+	long get(int key, long defaultValue) {
+		int mask = keys.length - 1;
+		for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+			int k = keys[i];
+			if (k == key) {
+				return values[i];
+			} else if (k == FREE) {
+				return defaultValue;
+			}
+		}
+	}
+
+	void put(int key, long value) {
+		if (key == FREE) {
+			throw new IllegalArgumentException("Invalid key " + key);
+		}
+		if ((size + 1) * 4 > keys.length * 3) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		for (int i = mix(key) & mask;; i = (i + 1) & mask) {
+			int k = keys[i];
+			if (k == key) {
+				values[i] = value;
+				return;
+			} else if (k == FREE) {
+				keys[i] = key;
+				values[i] = value;
+				size++;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return true if the key was present
+	 */
+	boolean remove(int key) {
+		int mask = keys.length - 1;
+		int i = mix(key) & mask;
+		while (keys[i] != key) {
+			if (keys[i] == FREE) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		// move later entries of the run into the gap unless that puts them before
+		// their own slot, so lookups never stop at a free slot too early
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			if (((j - (mix(keys[j]) & mask)) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+		keys[i] = FREE;
+		size--;
+		return true;
+	}
+
+		interface Visitor {
+		void visit(int key, long value);
+	}
+
+	void forEach(Visitor visitor) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				visitor.visit(keys[i], values[i]);
+			}
+		}
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new long[oldKeys.length * 2];
+		Arrays.fill(keys, FREE);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,16 @@
+package ch.eldeskar.ttrss.api.transport;
+
+/**
+ * Implemented by response streams of transports which can tell how long
+ * opening the connection took. {@link java.net.http.HttpClient} does not
+ * expose this, so only {@link URLConnectionTransport} reports it.
+ *
+ */
+public interface ConnectTiming {
+
+	/**
+	 * @return long nanoseconds spent connecting, 0 if a kept alive connection was
+	 *         reused
+	 */
+	long getConnectNanos();
+}
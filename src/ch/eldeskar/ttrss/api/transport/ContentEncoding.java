@@ -0,0 +1,180 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content encoding helpers shared by the transports. Responses are decoded
+ * while they are read, so the parser sees plain JSON without the whole body
+ * being buffered first.
+ *
+ */
+final class ContentEncoding {
+
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+	static final String CONTENT_TYPE = "application/json; charset=utf-8";
+	static final String ACCEPT = "application/json";
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private ContentEncoding() {
+	}
+
+	/**
+	 * Wraps the raw response body so it is decoded while it is read. When a
+	 * listener is given it is called with the byte counts once the returned
+	 * stream is closed.
+	 * 
+	 * @param InputStream      in raw response body
+	 * @param String           encoding value of the Content-Encoding header, may
+	 *                         be null
+	 * @param URL              url
+	 * @param long             sent size of the JSON request
+	 * @param long             sentEncoded size of the request on the wire
+	 * @param TransferListener listener may be null
+	 * @return InputStream decoded response body
+	 * @throws IOException if the encoding is not supported
+	 */
+	static InputStream decode(InputStream in, String encoding, URL url, long sent, long sentEncoded,
+			TransferListener listener) throws IOException {
+		CountingInputStream raw = listener == null ? null : new CountingInputStream(in, null);
+		InputStream decoded = decode(raw == null ? in : raw, encoding);
+		if (listener == null) {
+			return decoded;
+		}
+		return new CountingInputStream(decoded,
+				counted -> listener.transferred(url, sent, sentEncoded, counted, raw.count));
+	}
+
+	/**
+	 * Decodes a response body which was received as a whole.
+	 */
+	static byte[] decode(byte[] body, String encoding, URL url, long sent, long sentEncoded,
+			TransferListener listener) throws IOException {
+		byte[] decoded = isIdentity(encoding) ? body : decode(new ByteArrayInputStream(body), encoding).readAllBytes();
+		if (listener != null) {
+			listener.transferred(url, sent, sentEncoded, decoded.length, body.length);
+		}
+		return decoded;
+	}
+
+	/**
+	 * Compresses the request body if it is at least threshold bytes long. The
+	 * body itself is returned if it is smaller or compression does not pay off.
+	 */
+	static byte[] encode(byte[] body, int threshold) throws IOException {
+		if (threshold < 0 || body.length < threshold) {
+			return body;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+			gzip.write(body);
+		}
+		return out.size() < body.length ? out.toByteArray() : body;
+	}
+
+	private static InputStream decode(InputStream in, String encoding) throws IOException {
+		if (isIdentity(encoding)) {
+			return in;
+		}
+		switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+		case "gzip":
+		case "x-gzip":
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case "deflate":
+			return inflate(in);
+		default:
+			in.close();
+			throw new IOException("Unsupported Content-Encoding: " + encoding);
+		}
+	}
+
+	/**
+	 * "deflate" should be zlib wrapped, but some servers send raw deflate data.
+	 * The first two bytes tell which one it is.
+	 */
+	private static InputStream inflate(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+		buffered.mark(2);
+		int cmf = buffered.read();
+		int flg = buffered.read();
+		buffered.reset();
+		boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+		Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(buffered, inflater, BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				super.close();
+				inflater.end();
+			}
+		};
+	}
+
+	private static boolean isIdentity(String encoding) {
+		return encoding == null || encoding.isBlank() || encoding.trim().equalsIgnoreCase("identity");
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+
+		private final LongConsumer onClose;
+		private long count;
+		private boolean closed;
+
+		CountingInputStream(InputStream in, LongConsumer onClose) {
+			super(in);
+			this.onClose = onClose;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			super.close();
+			if (!closed) {
+				closed = true;
+				if (onClose != null) {
+					onClose.accept(count);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport based on the {@link HttpClient} of Java 11. The client keeps its
+ * connections alive and reuses them for later requests, with HTTP/2 servers
+ * all requests to the same host are multiplexed over a single connection.
+ * Asynchronous requests do not occupy a thread while they wait for the server.
+ * 
+ * Responses are requested gzip or deflate compressed and decoded while they
+ * are read. Compressing requests has to be enabled with
+ * {@link #setRequestCompressionThreshold(int)}, as it needs a web server which
+ * decodes compressed request bodies before they reach TT-RSS.
+ *
+ */
+public class HttpClientTransport implements Transport {
+
+	private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+	private final HttpClient client;
+	private final Duration requestTimeout;
+	private volatile boolean compressResponses = true;
+	private volatile int requestCompressionThreshold = -1;
+	private volatile TransferListener transferListener;
+
+	/**
+	 * Creates a transport with its own client, which prefers HTTP/2 and follows
+	 * redirects the same way a browser would.
+	 */
+	public HttpClientTransport() {
+		this(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(DEFAULT_CONNECT_TIMEOUT).build(), null);
+	}
+
+	/**
+	 * Creates a transport on top of an existing client. Use this to share one
+	 * connection pool between several sessions or to configure proxies, SSL or an
+	 * executor.
+	 * 
+	 * @param HttpClient client
+	 * @param Duration   requestTimeout maximum time to wait for a response, null
+	 *                   waits forever
+	 */
+	public HttpClientTransport(HttpClient client, Duration requestTimeout) {
+		this.client = client;
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * @param boolean compressResponses whether gzip and deflate encoded responses
+	 *                are accepted, true by default
+	 */
+	public void setCompressResponses(boolean compressResponses) {
+		this.compressResponses = compressResponses;
+	}
+
+	/**
+	 * Requests of at least this size are sent gzip compressed. If the server
+	 * answers 415 Unsupported Media Type the request is repeated uncompressed and
+	 * compression is switched off.
+	 * 
+	 * @param int threshold minimum size in bytes, negative disables request
+	 *            compression (default)
+	 */
+	public void setRequestCompressionThreshold(int threshold) {
+		this.requestCompressionThreshold = threshold;
+	}
+
+	/**
+	 * @param TransferListener listener called with the byte counts of each
+	 *                         request, null to remove it
+	 */
+	public void setTransferListener(TransferListener listener) {
+		this.transferListener = listener;
+	}
+
+	@Override
+	public InputStream post(URL url, byte[] body) throws IOException {
+		byte[] encoded = encodeBody(body);
+		HttpResponse<InputStream> response = send(url, body, encoded);
+		if (response.statusCode() == 415 && encoded != body) {
+			discard(response);
+			requestCompressionThreshold = -1;
+			encoded = body;
+			response = send(url, body, encoded);
+		}
+		if (response.statusCode() >= 400) {
+			discard(response);
+			throw statusException(url, response);
+		}
+		return ContentEncoding.decode(response.body(), contentEncoding(response), url, body.length, encoded.length,
+				transferListener);
+	}
+
+	@Override
+	public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+		byte[] encoded;
+		try {
+			encoded = encodeBody(body);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return sendAsync(url, body, encoded).thenCompose(response -> {
+			if (response.statusCode() == 415 && encoded != body) {
+				requestCompressionThreshold = -1;
+				return sendAsync(url, body, body).thenCompose(retry -> receive(url, retry, body.length, body.length));
+			}
+			return receive(url, response, body.length, encoded.length);
+		});
+	}
+
+	private CompletableFuture<byte[]> receive(URL url, HttpResponse<byte[]> response, int sent, int sentEncoded) {
+		if (response.statusCode() >= 400) {
+			return CompletableFuture.failedFuture(statusException(url, response));
+		}
+		try {
+			return CompletableFuture.completedFuture(ContentEncoding.decode(response.body(), contentEncoding(response),
+					url, sent, sentEncoded, transferListener));
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	private HttpResponse<InputStream> send(URL url, byte[] body, byte[] encoded) throws IOException {
+		try {
+			return client.send(createRequest(url, body, encoded), BodyHandlers.ofInputStream());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Request to " + url + " was interrupted");
+		}
+	}
+
+	/**
+	 * Reads the body to the end, the client closes the connection if the stream
+	 * is closed earlier.
+	 */
+	private static void discard(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream in = response.body()) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	private CompletableFuture<HttpResponse<byte[]>> sendAsync(URL url, byte[] body, byte[] encoded) {
+		HttpRequest request;
+		try {
+			request = createRequest(url, body, encoded);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		return client.sendAsync(request, BodyHandlers.ofByteArray());
+	}
+
+	private byte[] encodeBody(byte[] body) throws IOException {
+		return ContentEncoding.encode(body, requestCompressionThreshold);
+	}
+
+	private HttpRequest createRequest(URL url, byte[] body, byte[] encoded) throws IOException {
+		URI uri;
+		try {
+			uri = url.toURI();
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid api url " + url, e);
+		}
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(encoded))
+				.header("Content-Type", ContentEncoding.CONTENT_TYPE).header("Accept", ContentEncoding.ACCEPT);
+		if (encoded != body) {
+			builder.header("Content-Encoding", "gzip");
+		}
+		if (compressResponses) {
+			builder.header("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+		}
+		if (requestTimeout != null) {
+			builder.timeout(requestTimeout);
+		}
+		return builder.build();
+	}
+
+	private static String contentEncoding(HttpResponse<?> response) {
+		return response.headers().firstValue("Content-Encoding").orElse(null);
+	}
+
+	private static IOException statusException(URL url, HttpResponse<?> response) {
+		return new HttpStatusException(url, response.statusCode(),
+				HttpStatusException.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
+	}
+}
@@ -0,0 +1,56 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+
+/**
+ * Thrown by the transports when the server answered with an HTTP error status.
+ *
+ */
+public class HttpStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+	private final Duration retryAfter;
+
+	/**
+	 * @param URL      url
+	 * @param int      statusCode
+	 * @param Duration retryAfter value of the Retry-After header, null if there
+	 *                 was none
+	 */
+	public HttpStatusException(URL url, int statusCode, Duration retryAfter) {
+		super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+		this.statusCode = statusCode;
+		this.retryAfter = retryAfter;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return Duration the server asked to wait before the next request, or null
+	 */
+	public Duration getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Parses the delay-seconds form of a Retry-After header. The HTTP-date form is
+	 * ignored.
+	 */
+	static Duration parseRetryAfter(String value) {
+		if (value == null) {
+			return null;
+		}
+		try {
+			long seconds = Long.parseLong(value.trim());
+			return seconds >= 0 ? Duration.ofSeconds(seconds) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,465 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Transport decorator which limits the amount of concurrent requests per api
+ * url, so many threads sharing one session cannot exhaust the PHP workers of
+ * the server. Requests over the limit wait in a queue and fail with a
+ * {@link HttpTimeoutException} if they could not start within the maximum
+ * queue time.
+ * 
+ * The limit adapts to the server. It grows by one per round trip as long as
+ * the latency stays near the lowest latency seen (additive increase) and is
+ * cut when the latency doubles or the server is overloaded (multiplicative
+ * decrease). HTTP 429, 5xx answers and connection failures halve the limit
+ * and pause all requests to the url for an exponentially growing, randomized
+ * time, or as long as the server asked with Retry-After.
+ * 
+ * Answers 429 and 503 mean the server did not process the request, these are
+ * repeated up to {@link #setMaxRetries(int)} times.
+ *
+ */
+public class LimitingTransport implements Transport, Closeable {
+
+	private static final double LATENCY_TOLERANCE = 2.0;
+	private static final double LATENCY_DECREASE = 0.9;
+	private static final double OVERLOAD_DECREASE = 0.5;
+	private static final long MIN_BACKOFF = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos(30);
+
+	private final Transport delegate;
+	private final int initialLimit;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long maxQueueNanos;
+	private final ScheduledExecutorService scheduler;
+	private final boolean ownScheduler;
+	private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+	private volatile int maxRetries = 2;
+
+	/**
+	 * Creates a limiter starting with 4 concurrent requests per url, which adapts
+	 * between 1 and 64 and lets requests wait at most 30 seconds.
+	 * 
+	 * @param Transport delegate
+	 */
+	public LimitingTransport(Transport delegate) {
+		this(delegate, 4, 1, 64, Duration.ofSeconds(30));
+	}
+
+	/**
+	 * @param Transport delegate
+	 * @param int       initialLimit concurrent requests per url at the start
+	 * @param int       minLimit lower bound of the limit
+	 * @param int       maxLimit upper bound of the limit
+	 * @param Duration  maxQueueTime how long a request may wait for its turn
+	 */
+	public LimitingTransport(Transport delegate, int initialLimit, int minLimit, int maxLimit,
+			Duration maxQueueTime) {
+		this(delegate, initialLimit, minLimit, maxLimit, maxQueueTime, Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "LimitingTransport");
+			thread.setDaemon(true);
+			return thread;
+		}), true);
+	}
+
+	/**
+	 * Creates a limiter which schedules its timeouts on the given executor. The
+	 * executor is not shut down when the transport is closed.
+	 * 
+	 * @param Transport                delegate
+	 * @param int                      initialLimit concurrent requests per url at
+	 *                                 the start
+	 * @param int                      minLimit lower bound of the limit
+	 * @param int                      maxLimit upper bound of the limit
+	 * @param Duration                 maxQueueTime how long a request may wait
+	 *                                 for its turn
+	 * @param ScheduledExecutorService scheduler
+	 */
+	public LimitingTransport(Transport delegate, int initialLimit, int minLimit, int maxLimit, Duration maxQueueTime,
+			ScheduledExecutorService scheduler) {
+		this(delegate, initialLimit, minLimit, maxLimit, maxQueueTime, scheduler, false);
+	}
+
+	private LimitingTransport(Transport delegate, int initialLimit, int minLimit, int maxLimit, Duration maxQueueTime,
+			ScheduledExecutorService scheduler, boolean ownScheduler) {
+		if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+			throw new IllegalArgumentException(
+					"Limits must satisfy 0 < min <= initial <= max: " + minLimit + ", " + initialLimit + ", " + maxLimit);
+		}
+		this.delegate = delegate;
+		this.initialLimit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.maxQueueNanos = maxQueueTime.toNanos();
+		this.scheduler = scheduler;
+		this.ownScheduler = ownScheduler;
+	}
+
+	/**
+	 * @param int maxRetries how often a request answered with 429 or 503 is
+	 *            repeated, 2 by default
+	 */
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @param URL url
+	 * @return int current concurrency limit for the url
+	 */
+	public int getLimit(URL url) {
+		return limiter(url).currentLimit();
+	}
+
+	/**
+	 * @param URL url
+	 * @return int requests to the url which are running
+	 */
+	public int getInFlight(URL url) {
+		return limiter(url).inFlight();
+	}
+
+	/**
+	 * @param URL url
+	 * @return int requests to the url which wait for their turn
+	 */
+	public int getQueued(URL url) {
+		return limiter(url).queued();
+	}
+
+	@Override
+	public InputStream post(URL url, byte[] body) throws IOException {
+		Limiter limiter = limiter(url);
+		long deadline = System.nanoTime() + maxQueueNanos;
+		for (int attempt = 0;; attempt++) {
+			await(limiter, limiter.acquire(deadline));
+			long start = System.nanoTime();
+			InputStream in;
+			try {
+				in = delegate.post(url, body);
+			} catch (IOException | RuntimeException e) {
+				limiter.onFailure(e);
+				limiter.release();
+				if (isRetryable(e, attempt, deadline)) {
+					continue;
+				}
+				throw e;
+			}
+			limiter.onSuccess(System.nanoTime() - start);
+			// the server is busy until the whole body was sent, so the permit is held
+			// until the caller is done reading
+			return new FilterInputStream(in) {
+				private boolean released;
+
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						if (!released) {
+							released = true;
+							limiter.release();
+						}
+					}
+				}
+			};
+		}
+	}
+
+	@Override
+	public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+		return postAsync(limiter(url), url, body, System.nanoTime() + maxQueueNanos, 0);
+	}
+
+	private CompletableFuture<byte[]> postAsync(Limiter limiter, URL url, byte[] body, long deadline, int attempt) {
+		return limiter.acquire(deadline).thenCompose(ignored -> {
+			long start = System.nanoTime();
+			CompletableFuture<byte[]> future;
+			try {
+				future = delegate.postAsync(url, body);
+			} catch (RuntimeException e) {
+				future = CompletableFuture.failedFuture(e);
+			}
+			return future.handle((response, error) -> {
+				if (error == null) {
+					limiter.onSuccess(System.nanoTime() - start);
+					limiter.release();
+					return CompletableFuture.completedFuture(response);
+				}
+				Throwable cause = unwrap(error);
+				limiter.onFailure(cause);
+				limiter.release();
+				if (isRetryable(cause, attempt, deadline)) {
+					return postAsync(limiter, url, body, deadline, attempt + 1);
+				}
+				return CompletableFuture.<byte[]>failedFuture(cause);
+			}).thenCompose(Function.identity());
+		});
+	}
+
+	/**
+	 * Fails all waiting requests and stops the scheduler if it was created by
+	 * this transport.
+	 */
+	@Override
+	public void close() {
+		for (Limiter limiter : limiters.values()) {
+			limiter.shed();
+		}
+		if (ownScheduler) {
+			scheduler.shutdown();
+		}
+	}
+
+	private Limiter limiter(URL url) {
+		return limiters.computeIfAbsent(url.toExternalForm(), Limiter::new);
+	}
+
+	private boolean isRetryable(Throwable error, int attempt, long deadline) {
+		if (attempt >= maxRetries || System.nanoTime() - deadline >= 0 || !(error instanceof HttpStatusException)) {
+			return false;
+		}
+		int statusCode = ((HttpStatusException) error).getStatusCode();
+		return statusCode == 429 || statusCode == 503;
+	}
+
+	private static boolean isOverload(Throwable error) {
+		if (error instanceof HttpStatusException) {
+			int statusCode = ((HttpStatusException) error).getStatusCode();
+			return statusCode == 429 || statusCode >= 500;
+		}
+		return error instanceof HttpTimeoutException || error instanceof ConnectException;
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while ((error instanceof CompletionException || error instanceof ExecutionException
+				|| error instanceof UncheckedIOException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+	private static void await(Limiter limiter, CompletableFuture<Void> permit) throws IOException {
+		try {
+			permit.get();
+		} catch (InterruptedException e) {
+			if (!permit.cancel(false) && !permit.isCompletedExceptionally()) {
+				// the permit was granted meanwhile
+				limiter.release();
+			}
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a request slot");
+		} catch (ExecutionException e) {
+			Throwable cause = unwrap(e);
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Limit, queue and latency statistics of one url.
+	 */
+	private final class Limiter {
+
+		private final String url;
+		private final Deque<Waiter> queue = new ArrayDeque<>();
+		private double limit = initialLimit;
+		private int inFlight;
+		private long baselineRtt = -1;
+		private long lastDecrease;
+		private long backoffUntil;
+		private int consecutiveErrors;
+		private boolean dispatchScheduled;
+
+		Limiter(String url) {
+			this.url = url;
+			this.lastDecrease = System.nanoTime();
+			this.backoffUntil = lastDecrease;
+		}
+
+		synchronized int currentLimit() {
+			return (int) limit;
+		}
+
+		synchronized int inFlight() {
+			return inFlight;
+		}
+
+		synchronized int queued() {
+			return queue.size();
+		}
+
+		CompletableFuture<Void> acquire(long deadline) {
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (queue.isEmpty() && canStart(now)) {
+					inFlight++;
+					return CompletableFuture.completedFuture(null);
+				}
+				if (deadline - now <= 0) {
+					return CompletableFuture.failedFuture(shedException());
+				}
+				Waiter waiter = new Waiter(new CompletableFuture<>());
+				queue.addLast(waiter);
+				waiter.timeout = scheduler.schedule(() -> expire(waiter), deadline - now, TimeUnit.NANOSECONDS);
+				scheduleDispatch(now);
+				return waiter.permit;
+			}
+		}
+
+		void release() {
+			synchronized (this) {
+				inFlight--;
+			}
+			dispatch();
+		}
+
+		synchronized void onSuccess(long rtt) {
+			consecutiveErrors = 0;
+			if (baselineRtt < 0 || rtt < baselineRtt) {
+				baselineRtt = rtt;
+			} else {
+				// lets the baseline follow a server which got slower for good
+				baselineRtt += (rtt - baselineRtt) / 100;
+			}
+			if (rtt > baselineRtt * LATENCY_TOLERANCE) {
+				decrease(LATENCY_DECREASE, System.nanoTime());
+			} else if (inFlight >= (int) limit - 1) {
+				// only grow while the limit is actually used
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+		}
+
+		synchronized void onFailure(Throwable error) {
+			if (!isOverload(error)) {
+				return;
+			}
+			long now = System.nanoTime();
+			decrease(OVERLOAD_DECREASE, now);
+			consecutiveErrors++;
+			long max = Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(consecutiveErrors - 1, 16));
+			long delay = ThreadLocalRandom.current().nextLong(max / 2, max + 1);
+			if (error instanceof HttpStatusException && ((HttpStatusException) error).getRetryAfter() != null) {
+				delay = Math.max(delay, ((HttpStatusException) error).getRetryAfter().toNanos());
+			}
+			if (now + delay - backoffUntil > 0) {
+				backoffUntil = now + delay;
+			}
+		}
+
+		void shed() {
+			List<Waiter> shed;
+			synchronized (this) {
+				shed = new ArrayList<>(queue);
+				queue.clear();
+			}
+			for (Waiter waiter : shed) {
+				waiter.timeout.cancel(false);
+				waiter.permit.completeExceptionally(shedException());
+			}
+		}
+
+		/**
+		 * At most one decrease per round trip, the answers of requests which were
+		 * already running when the first problem showed up do not count again.
+		 */
+		private void decrease(double factor, long now) {
+			if (baselineRtt < 0 || now - lastDecrease >= baselineRtt) {
+				limit = Math.max(minLimit, limit * factor);
+				lastDecrease = now;
+			}
+		}
+
+		private boolean canStart(long now) {
+			return now - backoffUntil >= 0 && inFlight < (int) limit;
+		}
+
+		private void dispatch() {
+			List<Waiter> ready = new ArrayList<>();
+			synchronized (this) {
+				long now = System.nanoTime();
+				while (!queue.isEmpty() && canStart(now)) {
+					ready.add(queue.pollFirst());
+					inFlight++;
+				}
+				scheduleDispatch(now);
+			}
+			for (Waiter waiter : ready) {
+				waiter.timeout.cancel(false);
+				// completes outside the lock, the request itself starts here
+				if (!waiter.permit.complete(null)) {
+					release();
+				}
+			}
+		}
+
+		/**
+		 * Requests that wait for the end of a backoff are not started by a release,
+		 * so a dispatch is scheduled for that time.
+		 */
+		private void scheduleDispatch(long now) {
+			if (!queue.isEmpty() && !dispatchScheduled && backoffUntil - now > 0) {
+				dispatchScheduled = true;
+				scheduler.schedule(() -> {
+					synchronized (this) {
+						dispatchScheduled = false;
+					}
+					dispatch();
+				}, backoffUntil - now, TimeUnit.NANOSECONDS);
+			}
+		}
+
+		private void expire(Waiter waiter) {
+			boolean removed;
+			synchronized (this) {
+				removed = queue.remove(waiter);
+			}
+			if (removed) {
+				waiter.permit.completeExceptionally(shedException());
+			}
+		}
+
+		private IOException shedException() {
+			return new HttpTimeoutException(
+					"Request to " + url + " was dropped after waiting " + (maxQueueNanos / 1_000_000) + " ms");
+		}
+	}
+
+	private static final class Waiter {
+
+		final CompletableFuture<Void> permit;
+		ScheduledFuture<?> timeout;
+
+		Waiter(CompletableFuture<Void> permit) {
+			this.permit = permit;
+		}
+	}
+}
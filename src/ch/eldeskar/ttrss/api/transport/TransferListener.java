@@ -0,0 +1,26 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.net.URL;
+
+/**
+ * Receives the byte counts of every request a transport made. With compression
+ * the encoded counts are the bytes on the wire, the decoded counts the JSON the
+ * session wrote and read. Without compression both are equal.
+ * 
+ * For streamed responses the listener is called when the caller closes the
+ * response body, so it is called from whatever thread did the reading and has
+ * to be thread safe.
+ *
+ */
+@FunctionalInterface
+public interface TransferListener {
+
+	/**
+	 * @param URL  url of the request
+	 * @param long sentBytes size of the JSON request
+	 * @param long sentEncodedBytes size of the request body on the wire
+	 * @param long receivedBytes size of the JSON response
+	 * @param long receivedEncodedBytes size of the response body on the wire
+	 */
+	void transferred(URL url, long sentBytes, long sentEncodedBytes, long receivedBytes, long receivedEncodedBytes);
+}
@@ -0,0 +1,41 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transport moves an already encoded API request to a TT-RSS server and hands
+ * back the raw response body. {@link ch.eldeskar.ttrss.api.APISession} does the
+ * encoding and decoding, a transport only has to deal with HTTP.
+ * 
+ * Implementations have to be thread safe, one transport instance is normally
+ * shared by every thread that uses the same session object.
+ *
+ */
+public interface Transport {
+
+	/**
+	 * Posts the request body to the api endpoint and blocks until the response
+	 * headers have been received.
+	 * 
+	 * @param URL    url of the tt rss api endpoint
+	 * @param byte[] body UTF-8 encoded JSON request
+	 * @return InputStream response body, has to be closed by the caller
+	 * @throws IOException
+	 */
+	InputStream post(URL url, byte[] body) throws IOException;
+
+	/**
+	 * Posts the request body to the api endpoint without blocking the calling
+	 * thread. The returned future completes once the whole response body has been
+	 * received.
+	 * 
+	 * @param URL    url of the tt rss api endpoint
+	 * @param byte[] body UTF-8 encoded JSON request
+	 * @return CompletableFuture with the response body, completes exceptionally
+	 *         with an IOException if the request failed
+	 */
+	CompletableFuture<byte[]> postAsync(URL url, byte[] body);
+}
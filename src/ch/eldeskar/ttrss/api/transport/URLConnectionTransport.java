@@ -0,0 +1,161 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Transport based on {@link HttpURLConnection}. This is how the library talked
+ * to the server before transports were pluggable. Every request blocks a
+ * thread, asynchronous requests run on the given executor.
+ * 
+ * Compression works the same way as in {@link HttpClientTransport}.
+ *
+ */
+public class URLConnectionTransport implements Transport {
+
+	private final Executor executor;
+	private volatile boolean compressResponses = true;
+	private volatile int requestCompressionThreshold = -1;
+	private volatile TransferListener transferListener;
+
+	/**
+	 * Creates a transport which runs asynchronous requests on the common fork join
+	 * pool.
+	 */
+	public URLConnectionTransport() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param Executor executor used for asynchronous requests
+	 */
+	public URLConnectionTransport(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @param boolean compressResponses whether gzip and deflate encoded responses
+	 *                are accepted, true by default
+	 */
+	public void setCompressResponses(boolean compressResponses) {
+		this.compressResponses = compressResponses;
+	}
+
+	/**
+	 * @param int threshold minimum request size in bytes for gzip compressed
+	 *            requests, negative disables request compression (default)
+	 * @see HttpClientTransport#setRequestCompressionThreshold(int)
+	 */
+	public void setRequestCompressionThreshold(int threshold) {
+		this.requestCompressionThreshold = threshold;
+	}
+
+	/**
+	 * @param TransferListener listener called with the byte counts of each
+	 *                         request, null to remove it
+	 */
+	public void setTransferListener(TransferListener listener) {
+		this.transferListener = listener;
+	}
+
+	@Override
+	public InputStream post(URL url, byte[] body) throws IOException {
+		byte[] encoded = ContentEncoding.encode(body, requestCompressionThreshold);
+		HttpURLConnection connection = open(url, body, encoded);
+		long connectNanos = connect(connection);
+		send(connection, encoded);
+		if (encoded != body && connection.getResponseCode() == 415) {
+			discardError(connection);
+			requestCompressionThreshold = -1;
+			encoded = body;
+			connection = open(url, body, encoded);
+			connectNanos = connect(connection);
+			send(connection, encoded);
+		}
+		int statusCode = connection.getResponseCode();
+		if (statusCode >= 400) {
+			discardError(connection);
+			throw new HttpStatusException(url, statusCode,
+					HttpStatusException.parseRetryAfter(connection.getHeaderField("Retry-After")));
+		}
+		return new TimedInputStream(ContentEncoding.decode(connection.getInputStream(),
+				connection.getContentEncoding(), url, body.length, encoded.length, transferListener), connectNanos);
+	}
+
+	private HttpURLConnection open(URL url, byte[] body, byte[] encoded) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(encoded.length);
+		connection.setRequestProperty("Content-Type", ContentEncoding.CONTENT_TYPE);
+		connection.setRequestProperty("Accept", ContentEncoding.ACCEPT);
+		if (encoded != body) {
+			connection.setRequestProperty("Content-Encoding", "gzip");
+		}
+		if (compressResponses) {
+			connection.setRequestProperty("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+		}
+		return connection;
+	}
+
+	/**
+	 * Connects explicitly to measure it, a kept alive connection is taken from
+	 * the cache in no time.
+	 */
+	private static long connect(HttpURLConnection connection) throws IOException {
+		long start = System.nanoTime();
+		connection.connect();
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Reads the error body to the end, so the connection goes back to the
+	 * keep-alive cache instead of being closed.
+	 */
+	private static void discardError(HttpURLConnection connection) throws IOException {
+		try (InputStream error = connection.getErrorStream()) {
+			if (error != null) {
+				error.transferTo(OutputStream.nullOutputStream());
+			}
+		}
+	}
+
+	private static void send(HttpURLConnection connection, byte[] encoded) throws IOException {
+		try (OutputStream os = connection.getOutputStream()) {
+			os.write(encoded, 0, encoded.length);
+		}
+	}
+
+	@Override
+	public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+		return CompletableFuture.supplyAsync(() -> {
+			try (InputStream in = post(url, body)) {
+				return in.readAllBytes();
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+
+	private static class TimedInputStream extends FilterInputStream implements ConnectTiming {
+
+		private final long connectNanos;
+
+		TimedInputStream(InputStream in, long connectNanos) {
+			super(in);
+			this.connectNanos = connectNanos;
+		}
+
+		@Override
+		public long getConnectNanos() {
+			return connectNanos;
+		}
+	}
+}
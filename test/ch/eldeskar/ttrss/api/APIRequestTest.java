@@ -0,0 +1,79 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class APIRequestTest {
+
+	private static String body(APIRequest request) {
+		return new String(request.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void writesParametersInOrder() {
+		APIRequest request = APIRequest.create("getHeadlines", "abc").param("feed_id", 12).param("show_content", true)
+				.param("view_mode", (String) null);
+		assertEquals("getHeadlines", request.getOp());
+		assertEquals("{\"sid\":\"abc\",\"op\":\"getHeadlines\",\"feed_id\":12,\"show_content\":true,\"view_mode\":null}",
+				body(request));
+	}
+
+	@Test
+	void requestsWithoutSessionHaveNoSid() {
+		assertEquals("{\"op\":\"login\",\"user\":\"admin\"}", body(APIRequest.create("login", null).param("user", "admin")));
+	}
+
+	@Test
+	void escapesStrings() {
+		String value = "quote\" backslash\\ slash/ \n\r\t\b\f \u0001 \u001f";
+		String body = body(APIRequest.create("test", null).param("value", value));
+		assertEquals("{\"op\":\"test\",\"value\":\"quote\\\" backslash\\\\ slash/ \\n\\r\\t\\b\\f \\u0001 \\u001f\"}", body);
+		assertEquals(value, new JSONObject(body).getString("value"));
+	}
+
+	@Test
+	void encodesUtf8() {
+		String value = "\u00e4 \u20ac \ud83d\ude00";
+		byte[] body = APIRequest.create("test", null).param("value", value).toByteArray();
+		assertArrayEquals(("{\"op\":\"test\",\"value\":\"" + value + "\"}").getBytes(StandardCharsets.UTF_8), body);
+	}
+
+	@Test
+	void replacesLoneSurrogates() {
+		assertEquals("{\"op\":\"test\",\"value\":\"a?b?\"}",
+				body(APIRequest.create("test", null).param("value", "a\ud83db\ude00")));
+	}
+
+	@Test
+	void appendsRawFragments() {
+		assertEquals("{\"op\":\"getHeadlines\",\"feed_id\":12,\"limit\":10,\"title\":\"\u00e4\"}",
+				body(APIRequest.create("getHeadlines", null).raw(",\"feed_id\":12,\"limit\":10").raw(null)
+						.raw(",\"title\":\"\u00e4\"")));
+	}
+
+	@Test
+	void growsForLargeValues() {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 100_000; i++) {
+			value.append((char) ('a' + i % 26));
+		}
+		String body = body(APIRequest.create("test", null).param("value", value.toString()));
+		assertEquals(value.toString(), new JSONObject(body).getString("value"));
+		assertEquals("{\"op\":\"small\"}", body(APIRequest.create("small", null)));
+	}
+
+	@Test
+	void abandonedRequestDoesNotCorruptTheNext() {
+		APIRequest abandoned = APIRequest.create("abandoned", null).param("a", 1);
+		String body = body(APIRequest.create("next", null).param("b", 2));
+		assertEquals("{\"op\":\"next\",\"b\":2}", body);
+		assertTrue(body(abandoned.param("c", 3)).startsWith("{\"op\":\"abandoned\""));
+		assertEquals("{\"op\":\"last\"}", body(APIRequest.create("last", null)));
+	}
+}
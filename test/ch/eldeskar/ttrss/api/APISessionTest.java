@@ -0,0 +1,63 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class APISessionTest {
+
+	private final URL url;
+
+	APISessionTest() throws IOException {
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	@Test
+	void blockingAndAsyncCallsSendTheSameRequest() throws Exception {
+		StubTransport transport = new StubTransport(request -> StubTransport.ok("{\"unread\":\"992\"}"));
+		APISession session = new APISession(transport);
+
+		JSONObject blocking = session.getUnread(url, "abc");
+		JSONObject async = session.getUnreadAsync(url, "abc").get(10, TimeUnit.SECONDS);
+		assertEquals("992", blocking.getJSONObject("content").getString("unread"));
+		assertEquals(blocking.toString(), async.toString());
+
+		JSONObject request = transport.getRequests().get(0);
+		assertEquals("getUnread", request.getString("op"));
+		assertEquals("abc", request.getString("sid"));
+		assertEquals(request.toString(), transport.getRequests().get(1).toString());
+	}
+
+	@Test
+	void loginSendsNoSession() throws Exception {
+		StubTransport transport = new StubTransport(request -> StubTransport.ok("{\"session_id\":\"xyz\"}"));
+		APISession session = new APISession(transport);
+		session.login(url, "admin", "password");
+		JSONObject request = transport.getRequests().get(0);
+		assertEquals("login", request.getString("op"));
+		assertEquals("password", request.getString("password"));
+		assertEquals(false, request.has("sid"));
+	}
+
+	@Test
+	void transportErrorFailsTheCall() {
+		APISession session = new APISession(new StubTransport(request -> {
+			throw new UncheckedIOException(new IOException("Connection refused"));
+		}));
+		assertThrows(IOException.class, () -> session.getUnread(url, "abc"));
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> session.getUnreadAsync(url, "abc").get(10, TimeUnit.SECONDS));
+		assertInstanceOf(IOException.class, e.getCause());
+	}
+}
@@ -0,0 +1,60 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+
+class ArticleLoaderTest extends AbstractFakeServerTest {
+
+	private static final Duration WINDOW = Duration.ofMillis(20);
+
+	@Test
+	void loadAllSendsOneRequest() throws Exception {
+		try (ArticleLoader loader = new ArticleLoader(session, url, sid, WINDOW, 100)) {
+			List<Headline> articles = loader.loadAll(Arrays.asList(3, 1, 2)).get(10, TimeUnit.SECONDS);
+			assertEquals(1, server.getRequestCount("getArticle"));
+			assertEquals(3, articles.size());
+			assertEquals(3, articles.get(0).getId());
+			assertEquals(1, articles.get(1).getId());
+		}
+	}
+
+	@Test
+	void missingArticleCompletesWithNull() throws Exception {
+		try (ArticleLoader loader = new ArticleLoader(session, url, sid, WINDOW, 100)) {
+			assertNull(loader.load(1000).get(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void apiErrorIsUnwrapped() throws Exception {
+		server.setApiErrorRate(1.0, "API_DISABLED");
+		try (ArticleLoader loader = new ArticleLoader(session, url, sid, WINDOW, 100)) {
+			ExecutionException e = assertThrows(ExecutionException.class,
+					() -> loader.load(1).get(10, TimeUnit.SECONDS));
+			assertInstanceOf(APIException.class, e.getCause());
+		}
+	}
+
+	@Test
+	void loadAfterCloseFails() throws Exception {
+		ArticleLoader loader = new ArticleLoader(session, url, sid, WINDOW, 100);
+		loader.close();
+		ExecutionException e = assertThrows(ExecutionException.class, () -> loader.load(1).get(10, TimeUnit.SECONDS));
+		assertInstanceOf(IOException.class, e.getCause());
+		assertEquals(0, server.getRequestCount("getArticle"));
+	}
+}
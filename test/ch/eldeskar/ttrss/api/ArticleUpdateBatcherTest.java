@@ -0,0 +1,148 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+import ch.eldeskar.ttrss.api.transport.Transport;
+
+class ArticleUpdateBatcherTest extends AbstractFakeServerTest {
+
+	private static final Duration DELAY = Duration.ofSeconds(10);
+
+	@Test
+	void updatesAreSentWithOneRequest() throws Exception {
+		try (ArticleUpdateBatcher batcher = new ArticleUpdateBatcher(session, url, sid, 100, DELAY)) {
+			CompletableFuture<Integer> first = batcher.updateArticle(1, APISession.MODE_FALSE, APISession.FIELD_UNREAD);
+			CompletableFuture<Integer> second = batcher.updateArticle(2, APISession.MODE_FALSE,
+					APISession.FIELD_UNREAD);
+			CompletableFuture<Integer> third = batcher.updateArticle(4, APISession.MODE_FALSE,
+					APISession.FIELD_UNREAD);
+			batcher.flush().get(10, TimeUnit.SECONDS);
+			assertEquals(1, server.getRequestCount("updateArticle"));
+			// every caller receives the count of the whole request, article 3 was read already
+			assertEquals(3, first.get());
+			assertEquals(3, second.get());
+			assertEquals(3, third.get());
+		}
+	}
+
+	@Test
+	void apiErrorFailsAllCallers() throws Exception {
+		server.setApiErrorRate(1.0, "API_DISABLED");
+		try (ArticleUpdateBatcher batcher = new ArticleUpdateBatcher(session, url, sid, 100, DELAY)) {
+			CompletableFuture<Integer> first = batcher.updateArticle(1, APISession.MODE_TRUE,
+					APISession.FIELD_STARRED);
+			CompletableFuture<Integer> second = batcher.updateArticle(2, APISession.MODE_TRUE,
+					APISession.FIELD_STARRED);
+			batcher.flush();
+			for (CompletableFuture<Integer> caller : Arrays.asList(first, second)) {
+				ExecutionException e = assertThrows(ExecutionException.class, () -> caller.get(10, TimeUnit.SECONDS));
+				assertInstanceOf(APIException.class, e.getCause());
+				assertEquals("API_DISABLED", ((APIException) e.getCause()).getError());
+			}
+		}
+	}
+
+	@Test
+	void unexpectedContentFailsAllCallers() throws Exception {
+		HttpServer stub = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		stub.createContext("/", exchange -> {
+			byte[] body = "{\"seq\":0,\"status\":0,\"content\":[]}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		stub.start();
+		try (ArticleUpdateBatcher batcher = new ArticleUpdateBatcher(session,
+				new URL("http://localhost:" + stub.getAddress().getPort() + "/"), "sid", 100, DELAY)) {
+			CompletableFuture<Integer> caller = batcher.updateArticle(1, APISession.MODE_TRUE,
+					APISession.FIELD_STARRED);
+			batcher.flush();
+			ExecutionException e = assertThrows(ExecutionException.class, () -> caller.get(10, TimeUnit.SECONDS));
+			assertInstanceOf(IOException.class, e.getCause());
+		} finally {
+			stub.stop(0);
+		}
+	}
+
+	@Test
+	void flushWaitsForThePreviousFlush() throws Exception {
+		List<JSONObject> requests = new CopyOnWriteArrayList<>();
+		List<CompletableFuture<byte[]>> responses = new CopyOnWriteArrayList<>();
+		Transport transport = new Transport() {
+			@Override
+			public InputStream post(URL url, byte[] body) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+				requests.add(new JSONObject(new String(body, StandardCharsets.UTF_8)));
+				CompletableFuture<byte[]> response = new CompletableFuture<>();
+				responses.add(response);
+				return response;
+			}
+		};
+		byte[] ok = "{\"seq\":0,\"status\":0,\"content\":{\"status\":\"OK\",\"updated\":1}}"
+				.getBytes(StandardCharsets.UTF_8);
+		try (ArticleUpdateBatcher batcher = new ArticleUpdateBatcher(new APISession(transport), url, "sid", 100,
+				DELAY)) {
+			batcher.updateArticle(1, APISession.MODE_TRUE, APISession.FIELD_STARRED);
+			CompletableFuture<Void> first = batcher.flush();
+			CompletableFuture<Integer> second = batcher.updateArticle(1, APISession.MODE_FALSE,
+					APISession.FIELD_STARRED);
+			CompletableFuture<Void> flushed = batcher.flush();
+			assertEquals(1, requests.size());
+
+			responses.get(0).complete(ok);
+			assertTrue(first.isDone());
+			assertEquals(2, requests.size());
+			assertEquals(0, requests.get(1).getInt("mode"));
+			assertFalse(flushed.isDone());
+			// an empty flush waits for the one before it
+			assertFalse(batcher.flush().isDone());
+
+			responses.get(1).complete(ok);
+			assertEquals(1, second.get());
+			assertTrue(flushed.isDone());
+		}
+	}
+
+	@Test
+	void togglesCancellingOutAreNotSent() throws Exception {
+		try (ArticleUpdateBatcher batcher = new ArticleUpdateBatcher(session, url, sid, 100, DELAY)) {
+			CompletableFuture<Integer> first = batcher.updateArticle(1, APISession.MODE_TOGGLE,
+					APISession.FIELD_STARRED);
+			CompletableFuture<Integer> second = batcher.updateArticle(1, APISession.MODE_TOGGLE,
+					APISession.FIELD_STARRED);
+			assertEquals(0, first.get());
+			assertEquals(0, second.get());
+			assertEquals(0, batcher.getPendingCount());
+			batcher.flush().get(10, TimeUnit.SECONDS);
+			assertEquals(0, server.getRequestCount("updateArticle"));
+		}
+	}
+}
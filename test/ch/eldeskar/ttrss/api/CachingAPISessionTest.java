@@ -0,0 +1,240 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class CachingAPISessionTest {
+
+	private final URL url;
+	private final AtomicInteger numFeeds = new AtomicInteger(2);
+	private final AtomicBoolean failing = new AtomicBoolean();
+	private final StubTransport transport = new StubTransport(this::respond);
+
+	CachingAPISessionTest() throws IOException {
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	private String respond(JSONObject request) {
+		if (failing.get()) {
+			return StubTransport.error("NOT_LOGGED_IN");
+		}
+		switch (request.getString("op")) {
+		case "getConfig":
+			return StubTransport.ok("{\"num_feeds\":" + numFeeds.get() + "}");
+		case "subscribeToFeed":
+			return StubTransport.ok("{\"status\":{\"code\":1}}");
+		default:
+			return StubTransport.ok("[]");
+		}
+	}
+
+	@Test
+	void cachesUntilTheTimeToLiveExpires() throws Exception {
+		CachingAPISession session = new CachingAPISession(transport, 10);
+		JSONObject first = session.getFeeds(url, "abc", null);
+		assertSame(first, session.getFeeds(url, "abc", null));
+		assertSame(first, session.getFeedsAsync(url, "abc", null).get(10, TimeUnit.SECONDS));
+		assertEquals(1, transport.getRequestCount("getFeeds"));
+
+		session.getFeeds(url, "abc", ",\"cat_id\":1");
+		session.getFeeds(url, "other", null);
+		assertEquals(3, transport.getRequestCount("getFeeds"));
+
+		session.setTimeToLive("getFeeds", Duration.ofMillis(1));
+		session.getFeeds(url, "abc", ",\"cat_id\":2");
+		Thread.sleep(5);
+		session.getFeeds(url, "abc", ",\"cat_id\":2");
+		assertEquals(5, transport.getRequestCount("getFeeds"));
+
+		CachingAPISession.Statistics statistics = session.getStatistics();
+		assertEquals(2, statistics.getHits("getFeeds"));
+		assertEquals(5, statistics.getMisses("getFeeds"));
+		assertEquals(1, statistics.getExpirations("getFeeds"));
+	}
+
+	@Test
+	void evictsTheLeastRecentlyUsedResponse() throws Exception {
+		CachingAPISession session = new CachingAPISession(transport, 2);
+		session.getFeeds(url, "abc", null);
+		session.getCategories(url, "abc", null);
+		session.getFeeds(url, "abc", null);
+		session.getConfig(url, "abc", null);
+		assertEquals(1, session.getStatistics().getEvictions());
+
+		session.getFeeds(url, "abc", null);
+		session.getCategories(url, "abc", null);
+		assertEquals(1, transport.getRequestCount("getFeeds"));
+		assertEquals(2, transport.getRequestCount("getCategories"));
+	}
+
+	@Test
+	void errorResponsesAreNotCached() throws Exception {
+		CachingAPISession session = new CachingAPISession(transport, 10);
+		failing.set(true);
+		assertEquals(1, session.getFeeds(url, "abc", null).getInt("status"));
+		failing.set(false);
+		assertEquals(0, session.getFeeds(url, "abc", null).getInt("status"));
+		assertEquals(2, transport.getRequestCount("getFeeds"));
+	}
+
+	@Test
+	void subscribeDropsTheFeedListsOfTheSession() throws Exception {
+		CachingAPISession session = new CachingAPISession(transport, 10);
+		session.getFeeds(url, "abc", null);
+		session.getFeeds(url, "other", null);
+		session.getConfig(url, "abc", null);
+		session.subscribeToFeed(url, "abc", "http://example.com/feed", "0");
+		session.getFeeds(url, "abc", null);
+		session.getFeeds(url, "other", null);
+		session.getConfig(url, "abc", null);
+		assertEquals(3, transport.getRequestCount("getFeeds"));
+		assertEquals(1, transport.getRequestCount("getConfig"));
+		assertEquals(1, session.getStatistics().getInvalidations());
+	}
+
+	@Test
+	void changedFeedCountDropsTheFeedLists() throws Exception {
+		CachingAPISession session = new CachingAPISession(transport, 10);
+		session.setTimeToLive("getConfig", Duration.ZERO);
+		session.getConfig(url, "abc", null);
+		session.getFeeds(url, "abc", null);
+		session.getConfig(url, "abc", null);
+		session.getFeeds(url, "abc", null);
+		assertEquals(1, transport.getRequestCount("getFeeds"));
+
+		numFeeds.set(3);
+		session.getConfig(url, "abc", null);
+		session.getFeeds(url, "abc", null);
+		assertEquals(2, transport.getRequestCount("getFeeds"));
+	}
+
+	@Test
+	void responseSentBeforeAnInvalidationIsNotCached() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch sent = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		StubTransport slow = new StubTransport(request -> {
+			if (calls.incrementAndGet() == 1) {
+				sent.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new UncheckedIOException(new InterruptedIOException());
+				}
+			}
+			return StubTransport.ok("[]");
+		});
+		CachingAPISession session = new CachingAPISession(slow, 10);
+		CompletableFuture<JSONObject> first = session.getFeedsAsync(url, "abc", null);
+		assertTrue(sent.await(10, TimeUnit.SECONDS));
+		session.invalidateFeeds(url, "abc");
+		release.countDown();
+		first.get(10, TimeUnit.SECONDS);
+
+		session.getFeeds(url, "abc", null);
+		session.getFeeds(url, "abc", null);
+		assertEquals(2, slow.getRequestCount("getFeeds"));
+	}
+
+	@Test
+	void identicalRequestsShareOneResponse() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		StubTransport slow = new StubTransport(request -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new UncheckedIOException(new InterruptedIOException());
+			}
+			return StubTransport.ok("[]");
+		});
+		CachingAPISession session = new CachingAPISession(slow, 10);
+		CompletableFuture<JSONObject> first = session.getCountersAsync(url, "abc", null);
+		CompletableFuture<JSONObject> second = session.getCountersAsync(url, "abc", null);
+		CompletableFuture<JSONObject> blocking = CompletableFuture.supplyAsync(() -> {
+			try {
+				return session.getCounters(url, "abc", null);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		while (session.getStatistics().getCollapsed("getCounters") < 2) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+		JSONObject response = first.get(10, TimeUnit.SECONDS);
+		assertSame(response, second.get(10, TimeUnit.SECONDS));
+		assertSame(response, blocking.get(10, TimeUnit.SECONDS));
+		assertEquals(1, slow.getRequestCount("getCounters"));
+		assertEquals(1, session.getStatistics().getMisses("getCounters"));
+	}
+
+	@Test
+	void failedRequestFailsTheWaitingCalls() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		StubTransport slow = new StubTransport(request -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new UncheckedIOException(new InterruptedIOException());
+			}
+			throw new UncheckedIOException(new IOException("Connection reset"));
+		});
+		CachingAPISession session = new CachingAPISession(slow, 10);
+		CompletableFuture<JSONObject> first = session.getCountersAsync(url, "abc", null);
+		CompletableFuture<JSONObject> second = session.getCountersAsync(url, "abc", null);
+		release.countDown();
+		ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+		assertInstanceOf(IOException.class, e.getCause());
+		assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+		assertEquals(1, slow.getRequestCount("getCounters"));
+	}
+
+	@Test
+	void requestsAfterAnInvalidationDoNotWaitForOlderOnes() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch sent = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		StubTransport slow = new StubTransport(request -> {
+			if (calls.incrementAndGet() == 1) {
+				sent.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new UncheckedIOException(new InterruptedIOException());
+				}
+			}
+			return StubTransport.ok("[]");
+		});
+		CachingAPISession session = new CachingAPISession(slow, 10);
+		CompletableFuture<JSONObject> first = session.getFeedsAsync(url, "abc", null);
+		assertTrue(sent.await(10, TimeUnit.SECONDS));
+		session.invalidateFeeds(url, "abc");
+		JSONObject second = session.getFeeds(url, "abc", null);
+		assertEquals(0, second.getInt("status"));
+		assertEquals(2, slow.getRequestCount("getFeeds"));
+		assertEquals(0, session.getStatistics().getCollapsed("getFeeds"));
+		release.countDown();
+		first.get(10, TimeUnit.SECONDS);
+		assertSame(second, session.getFeeds(url, "abc", null));
+	}
+}
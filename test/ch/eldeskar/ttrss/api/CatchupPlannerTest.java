@@ -0,0 +1,134 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ch.eldeskar.ttrss.api.store.ArticleStore;
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+import ch.eldeskar.ttrss.api.testing.FakeServer;
+
+class CatchupPlannerTest extends AbstractFakeServerTest {
+
+	@TempDir
+	Path directory;
+
+	private ArticleStore store;
+	private FeedTreeIndex index;
+	private CatchupPlanner planner;
+	private SessionManager sessions;
+
+	@Override
+	protected FakeServer createServer() {
+		// feeds 1 and 2 in category 1, feeds 3 and 4 in category 2
+		FakeServer server = new FakeServer(2, 2, 10);
+		server.setContentSize(10);
+		return server;
+	}
+
+	@BeforeEach
+	void load() throws IOException {
+		store = ArticleStore.open(directory);
+		for (int feedId = 1; feedId <= 4; feedId++) {
+			store.sync(session, url, sid, feedId);
+		}
+		index = FeedTreeIndex.load(session, url, sid);
+		planner = new CatchupPlanner(store, index);
+		sessions = new SessionManager(session, url, "admin", "password", 1);
+	}
+
+	@AfterEach
+	void close() throws IOException {
+		sessions.close();
+		store.close();
+	}
+
+	private int[] unread(int... feedIds) throws IOException {
+		return Arrays.stream(feedIds).flatMap(feedId -> {
+			try {
+				return Arrays.stream(store.getUnreadIds(feedId));
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		}).toArray();
+	}
+
+	@Test
+	void categoryWithAllArticlesIsCaughtUpAtOnce() throws IOException {
+		CatchupPlanner.Plan plan = planner.plan(unread(1, 2));
+		List<CatchupPlanner.Step> steps = plan.getSteps();
+		assertEquals(1, steps.size());
+		assertEquals(CatchupPlanner.Step.Kind.CATCHUP_CATEGORY, steps.get(0).getKind());
+		assertEquals(1, steps.get(0).getId());
+		assertEquals(unread(1, 2).length, plan.getArticleCount());
+
+		long headlines = server.getRequestCount("getHeadlines");
+		plan.execute(sessions);
+		assertEquals(1, server.getRequestCount("catchupFeed"));
+		assertEquals(0, server.getRequestCount("updateArticle"));
+		// one page checks for unseen articles, the api level came with the login
+		assertEquals(headlines + 1, server.getRequestCount("getHeadlines"));
+		assertEquals(0, server.getRequestCount("getApiLevel"));
+		index.updateCounters(session, url, sid);
+		assertEquals(0, index.getCategory(1).getUnread());
+		assertTrue(index.getCategory(2).getUnread() > 0);
+		assertEquals(0, unread(1, 2).length);
+	}
+
+	@Test
+	void partlyReadFeedsAreMarkedByArticle() throws IOException {
+		int[] feed4 = unread(4);
+		int[] ids = IntStream.concat(Arrays.stream(unread(3)), Arrays.stream(feed4, 0, 2)).toArray();
+		CatchupPlanner.Plan plan = planner.plan(ids);
+		List<CatchupPlanner.Step> steps = plan.getSteps();
+		assertEquals(2, steps.size());
+		assertEquals(CatchupPlanner.Step.Kind.CATCHUP_FEED, steps.get(0).getKind());
+		assertEquals(3, steps.get(0).getId());
+		assertEquals(CatchupPlanner.Step.Kind.UPDATE_ARTICLES, steps.get(1).getKind());
+		assertArrayEquals(Arrays.copyOf(feed4, 2), steps.get(1).getArticleIds());
+
+		plan.execute(sessions);
+		index.updateCounters(session, url, sid);
+		assertEquals(0, index.getFeed(3).getUnread());
+		assertEquals(feed4.length - 2, index.getFeed(4).getUnread());
+		assertEquals(feed4.length - 2, unread(4).length);
+	}
+
+	@Test
+	void articlesTheStoreHasNotSeenStayUnread() throws IOException {
+		CatchupPlanner.Plan plan = planner.plan(unread(3));
+		assertEquals(CatchupPlanner.Step.Kind.CATCHUP_FEED, plan.getSteps().get(0).getKind());
+		int added = server.addArticles(3, 1);
+
+		plan.execute(sessions);
+		assertEquals(0, server.getRequestCount("catchupFeed"));
+		assertEquals(1, server.getRequestCount("updateArticle"));
+		index.updateCounters(session, url, sid);
+		assertEquals(1, index.getFeed(3).getUnread());
+		store.sync(session, url, sid, 3);
+		assertArrayEquals(new int[] { added }, unread(3));
+	}
+
+	@Test
+	void remainingArticlesAreSentInChunks() throws IOException {
+		planner.setChunkSize(3);
+		int[] ids = IntStream.concat(Arrays.stream(unread(1), 0, 4), Arrays.stream(unread(2), 0, 3)).toArray();
+		List<CatchupPlanner.Step> steps = planner.plan(ids).getSteps();
+		assertEquals(3, steps.size());
+		assertEquals(3, steps.get(0).getArticleCount());
+		assertEquals(1, steps.get(2).getArticleCount());
+		assertThrows(IllegalArgumentException.class, () -> planner.setChunkSize(0));
+	}
+}
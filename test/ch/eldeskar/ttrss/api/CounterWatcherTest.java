@@ -0,0 +1,210 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.model.Counter;
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class CounterWatcherTest {
+
+	private final AtomicReference<String> counters = new AtomicReference<>(
+			"[{\"id\":\"global-unread\",\"counter\":5},{\"id\":1,\"counter\":3},{\"id\":2,\"counter\":2},"
+					+ "{\"id\":1,\"kind\":\"cat\",\"counter\":5}]");
+	private final AtomicBoolean failing = new AtomicBoolean();
+	private volatile CountDownLatch release;
+	private final StubTransport transport = new StubTransport(request -> {
+		if ("login".equals(request.getString("op"))) {
+			return StubTransport.ok("{\"session_id\":\"abc\"}");
+		}
+		CountDownLatch latch = release;
+		if (latch != null) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				throw new UncheckedIOException(new InterruptedIOException());
+			}
+		}
+		if (failing.get()) {
+			throw new UncheckedIOException(new IOException("Connection refused"));
+		}
+		return StubTransport.ok(counters.get());
+	});
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+	private final SessionManager sessions;
+
+	CounterWatcherTest() throws IOException {
+		sessions = new SessionManager(new APISession(transport), new URL("http://localhost/tt-rss/api/"), "admin",
+				"password", 2);
+	}
+
+	@AfterEach
+	void shutdown() {
+		sessions.close();
+		scheduler.shutdownNow();
+	}
+
+	private CounterWatcher watcher() {
+		// long intervals, the tests poll themselves
+		return new CounterWatcher(sessions, Duration.ofSeconds(60), Duration.ofSeconds(600), scheduler);
+	}
+
+	private static class RecordingListener implements CounterWatcher.Listener {
+		final List<List<Counter>> changed = new CopyOnWriteArrayList<>();
+		final List<List<Counter>> removed = new CopyOnWriteArrayList<>();
+		final List<IOException> failures = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void countersChanged(List<Counter> counters) {
+			changed.add(counters);
+		}
+
+		@Override
+		public void countersRemoved(List<Counter> counters) {
+			removed.add(counters);
+		}
+
+		@Override
+		public void pollFailed(IOException error) {
+			failures.add(error);
+		}
+	}
+
+	@Test
+	void listenersReceiveTheChanges() throws Exception {
+		try (CounterWatcher watcher = watcher()) {
+			RecordingListener listener = new RecordingListener();
+			watcher.addListener(listener);
+			watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(1, listener.changed.size());
+			assertEquals(4, listener.changed.get(0).size());
+			assertEquals(5, watcher.getUnread());
+			assertEquals(5, watcher.getCounter(Counter.Kind.CATEGORY, 1).getCounter());
+			assertEquals(3, watcher.getCounter(Counter.Kind.FEED, 1).getCounter());
+
+			counters.set("[{\"id\":\"global-unread\",\"counter\":4},{\"id\":1,\"counter\":2},"
+					+ "{\"id\":1,\"kind\":\"cat\",\"counter\":2}]");
+			List<Counter> changed = watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(3, changed.size());
+			assertEquals(changed, listener.changed.get(1));
+			assertEquals(1, listener.removed.size());
+			assertEquals(2, listener.removed.get(0).get(0).getId());
+			assertEquals(4, watcher.getUnread());
+			assertEquals(3, watcher.getCounters().size());
+
+			assertTrue(watcher.poll().get(10, TimeUnit.SECONDS).isEmpty());
+			assertEquals(2, listener.changed.size());
+
+			RecordingListener late = new RecordingListener();
+			watcher.addListener(late);
+			assertEquals(3, late.changed.get(0).size());
+		}
+	}
+
+	@Test
+	void pollDoesNotUseTheSchedulerThread() throws Exception {
+		CountDownLatch busy = new CountDownLatch(1);
+		scheduler.execute(() -> {
+			try {
+				busy.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		try (CounterWatcher watcher = watcher()) {
+			assertEquals(4, watcher.poll().get(10, TimeUnit.SECONDS).size());
+		} finally {
+			busy.countDown();
+		}
+	}
+
+	@Test
+	void intervalAdaptsToTheChanges() throws Exception {
+		try (CounterWatcher watcher = watcher()) {
+			watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(Duration.ofSeconds(60), watcher.getInterval());
+			watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(Duration.ofSeconds(90), watcher.getInterval());
+			watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(Duration.ofSeconds(135), watcher.getInterval());
+
+			failing.set(true);
+			assertThrows(ExecutionException.class, () -> watcher.poll().get(10, TimeUnit.SECONDS));
+			assertEquals(Duration.ofSeconds(270), watcher.getInterval());
+
+			failing.set(false);
+			counters.set("[]");
+			watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(Duration.ofSeconds(60), watcher.getInterval());
+		}
+	}
+
+	@Test
+	void concurrentPollsShareOneRequest() throws Exception {
+		try (CounterWatcher watcher = watcher()) {
+			release = new CountDownLatch(1);
+			List<CompletableFuture<List<Counter>>> polls = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				polls.add(watcher.poll());
+			}
+			release.countDown();
+			for (CompletableFuture<List<Counter>> poll : polls) {
+				assertEquals(4, poll.get(10, TimeUnit.SECONDS).size());
+			}
+			assertEquals(1, transport.getRequestCount("getCounters"));
+		}
+	}
+
+	@Test
+	void failedPollIsReported() throws Exception {
+		try (CounterWatcher watcher = watcher()) {
+			RecordingListener listener = new RecordingListener();
+			failing.set(true);
+			watcher.addListener(new CounterWatcher.Listener() {
+				@Override
+				public void countersChanged(List<Counter> changed) {
+					throw new IllegalStateException("failing listener");
+				}
+			});
+			watcher.addListener(listener);
+			ExecutionException e = assertThrows(ExecutionException.class,
+					() -> watcher.poll().get(10, TimeUnit.SECONDS));
+			assertInstanceOf(IOException.class, e.getCause());
+			assertTrue(listener.failures.size() >= 1);
+
+			failing.set(false);
+			watcher.poll().get(10, TimeUnit.SECONDS);
+			assertEquals(1, listener.changed.size());
+		}
+	}
+
+	@Test
+	void closedWatcherDoesNotPoll() {
+		CounterWatcher watcher = watcher();
+		watcher.close();
+		assertThrows(ExecutionException.class, () -> watcher.poll().get(10, TimeUnit.SECONDS));
+		assertEquals(0, transport.getRequestCount("getCounters"));
+	}
+}
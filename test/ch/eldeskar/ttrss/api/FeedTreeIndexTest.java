@@ -0,0 +1,126 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+import ch.eldeskar.ttrss.api.model.Counter;
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class FeedTreeIndexTest {
+
+	private static final String TREE = "{\"categories\":{\"identifier\":\"id\",\"label\":\"name\",\"items\":["
+			+ "{\"id\":\"CAT:-1\",\"bare_id\":-1,\"name\":\"Special\",\"type\":\"category\",\"items\":["
+			+ "{\"id\":\"FEED:-4\",\"bare_id\":-4,\"name\":\"All articles\",\"unread\":12},"
+			+ "{\"id\":\"FEED:-1\",\"bare_id\":-1,\"name\":\"Starred articles\",\"unread\":2}]},"
+			+ "{\"id\":\"CAT:-2\",\"bare_id\":-2,\"name\":\"Labels\",\"type\":\"category\",\"items\":["
+			+ "{\"id\":\"FEED:-1025\",\"bare_id\":-1025,\"name\":\"Later\",\"unread\":1}]},"
+			+ "{\"id\":\"CAT:1\",\"bare_id\":1,\"name\":\"News\",\"type\":\"category\",\"items\":["
+			+ "{\"id\":\"FEED:1\",\"bare_id\":1,\"name\":\"Daily\",\"unread\":3},"
+			+ "{\"id\":\"CAT:2\",\"bare_id\":2,\"name\":\"Local\",\"type\":\"category\",\"unread\":99,\"items\":["
+			+ "{\"id\":\"FEED:2\",\"name\":\"Town\",\"unread\":4}]}]},"
+			+ "{\"id\":\"CAT:0\",\"bare_id\":0,\"name\":\"Uncategorized\",\"type\":\"category\",\"items\":["
+			+ "{\"id\":\"FEED:3\",\"bare_id\":3,\"name\":\"Blog\",\"unread\":5}]}]}}";
+
+	private static FeedTreeIndex index() throws APIException {
+		return FeedTreeIndex.of(new JSONObject(StubTransport.ok(TREE)));
+	}
+
+	private static List<Counter> counters(String json) throws IOException {
+		List<Counter> counters = new ArrayList<>();
+		JSONStreamReader reader = new JSONStreamReader(new StringReader(json));
+		reader.beginArray();
+		while (reader.hasNext()) {
+			counters.add(Counter.read(reader));
+		}
+		reader.endArray();
+		return counters;
+	}
+
+	@Test
+	void findsFeedsAndCategories() throws APIException {
+		FeedTreeIndex index = index();
+		assertEquals(4, index.getRoots().size());
+		assertEquals(-1, index.getRoots().get(0).getId());
+		assertEquals(6, index.getFeeds().size());
+		assertEquals(5, index.getCategories().size());
+
+		FeedTreeIndex.Node town = index.getFeed(2);
+		assertEquals("Town", town.getName());
+		assertFalse(town.isCategory());
+		assertSame(index.getCategory(2), town.getParent());
+		assertSame(index.getCategory(1), town.getParent().getParent());
+		assertNull(index.getCategory(1).getParent());
+		assertEquals(2, index.getCategory(1).getChildren().size());
+		assertTrue(town.getChildren().isEmpty());
+
+		assertTrue(index.getFeed(-4).isSpecial());
+		assertFalse(index.getFeed(-4).isLabel());
+		assertTrue(index.getLabelFeed(1014).isLabel());
+		assertSame(index.getFeed(-1025), index.getLabelFeed(1014));
+		assertFalse(index.getFeed(3).isSpecial());
+		assertNull(index.getFeed(42));
+	}
+
+	@Test
+	void categoriesSumTheirFeeds() throws APIException {
+		FeedTreeIndex index = index();
+		assertEquals(4, index.getCategory(2).getUnread());
+		assertEquals(7, index.getCategory(1).getUnread());
+		assertEquals(5, index.getCategory(0).getUnread());
+		assertEquals(1, index.getCategory(-2).getUnread());
+		// special feeds overlap the real feeds
+		assertEquals(0, index.getCategory(-1).getUnread());
+		assertEquals(12, index.getFeed(-4).getUnread());
+	}
+
+	@Test
+	void countersUpdateTheSums() throws IOException {
+		FeedTreeIndex index = index();
+		Set<FeedTreeIndex.Node> changed = index.applyCounters(counters("[{\"id\":2,\"counter\":1},{\"id\":1,\"counter\":3},"
+				+ "{\"id\":-4,\"counter\":9},{\"id\":-1025,\"counter\":0},{\"id\":1,\"kind\":\"cat\",\"counter\":50},"
+				+ "{\"id\":\"global-unread\",\"counter\":9},{\"id\":77,\"counter\":1}]"));
+		assertEquals(Set.of(index.getFeed(2), index.getCategory(2), index.getCategory(1), index.getFeed(-4),
+				index.getFeed(-1025), index.getCategory(-2)), changed);
+		assertEquals(1, index.getFeed(2).getUnread());
+		assertEquals(1, index.getCategory(2).getUnread());
+		assertEquals(4, index.getCategory(1).getUnread());
+		assertEquals(9, index.getFeed(-4).getUnread());
+		assertEquals(0, index.getCategory(-1).getUnread());
+		assertEquals(0, index.getCategory(-2).getUnread());
+
+		assertTrue(index.applyCounters(counters("[{\"id\":2,\"counter\":1}]")).isEmpty());
+	}
+
+	@Test
+	void updateCountersLoadsFeedAndLabelCounters() throws IOException {
+		StubTransport transport = new StubTransport(request -> "getFeedTree".equals(request.getString("op"))
+				? StubTransport.ok(TREE)
+				: StubTransport.ok("[{\"id\":3,\"counter\":0}]"));
+		APISession session = new APISession(transport);
+		URL url = new URL("http://localhost/tt-rss/api/");
+		FeedTreeIndex index = FeedTreeIndex.load(session, url, "abc");
+		assertEquals(Set.of(index.getFeed(3), index.getCategory(0)), index.updateCounters(session, url, "abc"));
+		assertEquals(0, index.getCategory(0).getUnread());
+		assertEquals("fl", transport.getRequests().get(1).getString("output_mode"));
+	}
+
+	@Test
+	void errorResponseFails() {
+		assertThrows(APIException.class, () -> FeedTreeIndex.of(new JSONObject(StubTransport.error("NOT_LOGGED_IN"))));
+	}
+}
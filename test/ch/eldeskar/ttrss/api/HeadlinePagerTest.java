@@ -0,0 +1,150 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class HeadlinePagerTest {
+
+	private final URL url;
+	/**
+	 * Article ids of the feed, newest first like getHeadlines returns them.
+	 */
+	private final List<Integer> articles = new ArrayList<>();
+	private int newArticlesBeforeSecondPage;
+	private int apiLevel = 15;
+
+	private final StubTransport transport = new StubTransport(this::respond);
+	private final APISession session = new APISession(transport);
+
+	HeadlinePagerTest() throws IOException {
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	private String respond(JSONObject request) {
+		if ("getApiLevel".equals(request.getString("op"))) {
+			return StubTransport.ok("{\"level\":" + apiLevel + "}");
+		}
+		if ("login".equals(request.getString("op"))) {
+			return StubTransport.ok("{\"session_id\":\"sid\",\"api_level\":" + apiLevel + "}");
+		}
+		int skip = request.getInt("skip");
+		int limit = request.getInt("limit");
+		if (skip > 0 && newArticlesBeforeSecondPage > 0) {
+			// new articles push the ones already returned onto the next page
+			for (int i = 0; i < newArticlesBeforeSecondPage; i++) {
+				articles.add(0, articles.get(0) + 1);
+			}
+			newArticlesBeforeSecondPage = 0;
+		}
+		StringBuilder page = new StringBuilder("[");
+		for (int i = skip; i < Math.min(articles.size(), skip + limit); i++) {
+			page.append(i == skip ? "" : ",").append("{\"id\":").append(articles.get(i)).append('}');
+		}
+		return StubTransport.ok(page.append(']').toString());
+	}
+
+	private void addArticles(int count) {
+		for (int id = count; id > 0; id--) {
+			articles.add(id);
+		}
+	}
+
+	private static List<Integer> ids(HeadlinePager pager) {
+		List<Integer> ids = new ArrayList<>();
+		pager.forEachRemaining(headline -> ids.add(headline.getInt("id")));
+		return ids;
+	}
+
+	@Test
+	void iteratesOverAllPages() {
+		addArticles(450);
+		List<Integer> ids = ids(session.getHeadlinePager(url, "sid", ",\"feed_id\":1", 200));
+		assertEquals(450, ids.size());
+		assertEquals(450, ids.get(0));
+		assertEquals(1, ids.get(449));
+		assertEquals(3, transport.getRequestCount("getHeadlines"));
+		JSONObject last = transport.getRequests().get(2);
+		assertEquals(1, last.getInt("feed_id"));
+		assertEquals(400, last.getInt("skip"));
+	}
+
+	@Test
+	void fullLastPageNeedsOneMoreRequest() {
+		addArticles(400);
+		assertEquals(400, ids(session.getHeadlinePager(url, "sid", "", 200)).size());
+		assertEquals(3, transport.getRequestCount("getHeadlines"));
+	}
+
+	@Test
+	void articlesMovedToTheNextPageAreReturnedOnce() {
+		addArticles(450);
+		newArticlesBeforeSecondPage = 5;
+		List<Integer> ids = ids(session.getHeadlinePager(url, "sid", "", 200));
+		assertEquals(450, ids.size());
+		assertEquals(450, ids.stream().distinct().count());
+		assertEquals(1, ids.get(449));
+	}
+
+	@Test
+	void pageSizeFollowsTheApiLevel() throws IOException {
+		apiLevel = 5;
+		addArticles(100);
+		assertEquals(100, ids(session.getHeadlinePager(url, "sid", "")).size());
+		assertEquals(1, transport.getRequestCount("getApiLevel"));
+		assertEquals(60, transport.getRequests().get(1).getInt("limit"));
+		assertEquals(60, HeadlinePager.pageSizeFor(5));
+		assertEquals(200, HeadlinePager.pageSizeFor(6));
+	}
+
+	@Test
+	void apiLevelIsRequestedOncePerServer() throws IOException {
+		apiLevel = 5;
+		addArticles(10);
+		ids(session.getHeadlinePager(url, "sid", ""));
+		ids(session.getHeadlinePager(url, "sid", ",\"feed_id\":1"));
+		assertEquals(1, transport.getRequestCount("getApiLevel"));
+		assertEquals(60, session.getPageSize(url, "sid"));
+		assertEquals(1, transport.getRequestCount("getApiLevel"));
+	}
+
+	@Test
+	void apiLevelIsTakenFromTheLogin() throws IOException {
+		apiLevel = 5;
+		session.login(url, "admin", "password");
+		assertEquals(60, session.getPageSize(url, "sid"));
+		assertEquals(0, transport.getRequestCount("getApiLevel"));
+	}
+
+	@Test
+	void errorResponseFailsTheIteration() {
+		HeadlinePager pager = new APISession(new StubTransport(request -> StubTransport.error("NOT_LOGGED_IN")))
+				.getHeadlinePager(url, "sid", "", 200);
+		UncheckedIOException e = assertThrows(UncheckedIOException.class, pager::hasNext);
+		assertInstanceOf(APIException.class, e.getCause());
+		assertEquals("NOT_LOGGED_IN", ((APIException) e.getCause()).getError());
+	}
+
+	@Test
+	void closedPagerEnds() {
+		addArticles(450);
+		HeadlinePager pager = session.getHeadlinePager(url, "sid", "", 200);
+		assertTrue(pager.hasNext());
+		pager.next();
+		pager.close();
+		assertFalse(pager.hasNext());
+	}
+}
@@ -0,0 +1,114 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+import ch.eldeskar.ttrss.api.testing.FakeServer;
+
+class SessionManagerTest extends AbstractFakeServerTest {
+
+	@Override
+	protected FakeServer createServer() {
+		return new FakeServer(1, 2, 250);
+	}
+
+	@Test
+	void executeLogsInAgainWhenTheSessionExpired() throws Exception {
+		try (SessionManager sessions = new SessionManager(session, url, "admin", "password", 2)) {
+			sessions.execute((api, u, sid) -> api.getUnread(u, sid));
+			// one login of the fixture, one of the manager
+			assertEquals(2, server.getRequestCount("login"));
+
+			server.expireSessions();
+			JSONObject response = sessions.execute((api, u, sid) -> api.getUnread(u, sid));
+			assertEquals(0, response.getInt("status"));
+			assertEquals(3, server.getRequestCount("login"));
+			assertEquals(1, sessions.getSessionCount());
+		}
+	}
+
+	@Test
+	void executeLogsInAgainWhenThePagerWrapsTheError() throws Exception {
+		try (SessionManager sessions = new SessionManager(session, url, "admin", "password", 1)) {
+			sessions.getApiLevel();
+			server.expireSessions();
+			long count = sessions.execute(
+					(api, u, sid) -> api.getHeadlinePager(u, sid, ",\"feed_id\":1", 200).stream().count());
+			assertEquals(250, count);
+			assertEquals(3, server.getRequestCount("login"));
+		}
+	}
+
+	@Test
+	void executeAsyncLogsInAgainWhenTheSessionExpired() throws Exception {
+		try (SessionManager sessions = new SessionManager(session, url, "admin", "password", 1)) {
+			sessions.executeAsync((api, u, sid) -> api.getApiLevelAsync(u, sid)).get(10, TimeUnit.SECONDS);
+			server.expireSessions();
+			JSONObject response = sessions.executeAsync((api, u, sid) -> api.getApiLevelAsync(u, sid)).get(10,
+					TimeUnit.SECONDS);
+			assertEquals(0, response.getInt("status"));
+			assertEquals(3, server.getRequestCount("login"));
+		}
+	}
+
+	@Test
+	void interruptedWaiterDoesNotLoseTheSession() throws Exception {
+		try (SessionManager sessions = new SessionManager(session, url, "admin", "password", 1)) {
+			CountDownLatch holding = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			CompletableFuture<Object> holder = CompletableFuture.supplyAsync(() -> {
+				try {
+					return sessions.execute((api, u, sid) -> {
+						holding.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+						return api.getUnread(u, sid);
+					});
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			assertTrue(holding.await(10, TimeUnit.SECONDS));
+
+			AtomicReference<Exception> error = new AtomicReference<>();
+			Thread waiter = new Thread(() -> {
+				try {
+					sessions.execute((api, u, sid) -> api.getUnread(u, sid));
+				} catch (Exception e) {
+					error.set(e);
+				}
+			});
+			waiter.start();
+			Thread.sleep(100);
+			waiter.interrupt();
+			waiter.join(10_000);
+			assertInstanceOf(InterruptedIOException.class, error.get());
+
+			release.countDown();
+			holder.get(10, TimeUnit.SECONDS);
+			CompletableFuture<JSONObject> next = CompletableFuture.supplyAsync(() -> {
+				try {
+					return sessions.execute((api, u, sid) -> api.getUnread(u, sid));
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			});
+			assertEquals(0, next.get(10, TimeUnit.SECONDS).getInt("status"));
+			assertEquals(1, sessions.getSessionCount());
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package ch.eldeskar.ttrss.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+import ch.eldeskar.ttrss.api.testing.FakeServer;
+
+class SyncEngineTest extends AbstractFakeServerTest {
+
+	private SessionManager sessions;
+
+	@Override
+	protected FakeServer createServer() {
+		// 12 feeds of 10 articles
+		return new FakeServer(3, 4, 10);
+	}
+
+	@BeforeEach
+	void createSessions() throws IOException {
+		sessions = new SessionManager(session, url, "admin", "password", 2);
+	}
+
+	@AfterEach
+	void closeSessions() throws IOException {
+		sessions.close();
+	}
+
+	@Test
+	void unchangedFeedsAreSkipped() throws IOException {
+		try (SyncEngine engine = new SyncEngine(sessions, 2)) {
+			Set<Integer> ids = new HashSet<>();
+			SyncEngine.SyncResult result = engine.sync(headline -> ids.add(headline.getId()));
+			assertEquals(12, result.getFeeds());
+			assertEquals(12, result.getSynced());
+			assertEquals(120, result.getHeadlines());
+			assertEquals(120, ids.size());
+
+			result = engine.sync(headline -> ids.add(headline.getId()));
+			assertEquals(12, result.getSkipped());
+			assertEquals(0, result.getHeadlines());
+
+			int newest = server.addArticles(5, 3);
+			result = engine.sync(headline -> ids.add(headline.getId()));
+			assertEquals(11, result.getSkipped());
+			assertEquals(3, result.getHeadlines());
+			assertTrue(ids.contains(newest));
+		}
+	}
+
+	@Test
+	void largeFeedsArePaged() throws IOException {
+		server.addArticles(1, 450);
+		try (SyncEngine engine = new SyncEngine(sessions, 2)) {
+			Set<Integer> ids = new HashSet<>();
+			engine.sync(headline -> ids.add(headline.getId()));
+			assertEquals(570, ids.size());
+			// three pages for feed 1, one for every other feed
+			assertEquals(3 + 11, server.getRequestCount("getHeadlines"));
+		}
+	}
+
+	@Test
+	void workersStayCloseToASlowConsumer() throws Exception {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try (SyncEngine engine = new SyncEngine(sessions, 2, executor)) {
+			Thread consumer = new Thread(() -> {
+				try {
+					engine.sync(headline -> {
+						blocked.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					});
+				} catch (IOException e) {
+					throw new AssertionError(e);
+				}
+			});
+			consumer.start();
+			assertTrue(blocked.await(10, TimeUnit.SECONDS));
+			Thread.sleep(300);
+			// the feed being consumed and at most 2 * maxInFlight feeds ahead of it
+			assertEquals(5, server.getRequestCount("getHeadlines"));
+			release.countDown();
+			consumer.join(10_000);
+			assertEquals(12, server.getRequestCount("getHeadlines"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void failingConsumerStopsTheSync() throws IOException {
+		try (SyncEngine engine = new SyncEngine(sessions, 2)) {
+			assertThrows(IllegalStateException.class, () -> engine.sync(headline -> {
+				throw new IllegalStateException("consumer failed");
+			}));
+			// nothing was received, the next sync loads every feed
+			Set<Headline> headlines = new HashSet<>();
+			assertEquals(12, engine.sync(headlines::add).getSynced());
+			assertEquals(120, headlines.size());
+		}
+	}
+}
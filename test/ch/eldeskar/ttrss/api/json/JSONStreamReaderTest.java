@@ -0,0 +1,133 @@
+package ch.eldeskar.ttrss.api.json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class JSONStreamReaderTest {
+
+	private static JSONStreamReader reader(String json) {
+		return new JSONStreamReader(new StringReader(json));
+	}
+
+	@Test
+	void readsTokensInOrder() throws IOException {
+		JSONStreamReader reader = reader("{\"seq\":0,\"status\":0,\"content\":[{\"id\":1,\"title\":\"a\"},null]}");
+		reader.beginObject();
+		assertEquals("seq", reader.nextName());
+		assertEquals(0, reader.nextInt());
+		assertEquals("status", reader.nextName());
+		assertEquals(JSONStreamReader.Token.NUMBER, reader.peek());
+		reader.skipValue();
+		assertEquals("content", reader.nextName());
+		reader.beginArray();
+		assertTrue(reader.hasNext());
+		reader.beginObject();
+		assertEquals("id", reader.nextName());
+		assertEquals(1, reader.nextInt());
+		assertEquals("title", reader.nextName());
+		assertEquals("a", reader.nextString());
+		assertFalse(reader.hasNext());
+		reader.endObject();
+		reader.nextNull();
+		reader.endArray();
+		reader.endObject();
+		assertEquals(JSONStreamReader.Token.END_DOCUMENT, reader.peek());
+	}
+
+	@Test
+	void acceptsNumbersAndBooleansAsStrings() throws IOException {
+		JSONStreamReader reader = reader("[\"992\",\"12.5\",\"true\",\"t\",\"1\",\"f\",1,0,null,true]");
+		reader.beginArray();
+		assertEquals(992, reader.nextInt());
+		assertEquals(12.5, reader.nextDouble());
+		assertTrue(reader.nextBoolean());
+		assertTrue(reader.nextBoolean());
+		assertTrue(reader.nextBoolean());
+		assertFalse(reader.nextBoolean());
+		assertTrue(reader.nextBoolean());
+		assertFalse(reader.nextBoolean());
+		assertFalse(reader.nextBoolean());
+		assertEquals("true", reader.nextString());
+		reader.endArray();
+	}
+
+	@Test
+	void decodesEscapes() throws IOException {
+		String json = "[\"a\\\"b\\\\c\\/d\\n\\t\\u00e4\\ud83d\\ude00\"]";
+		JSONStreamReader reader = reader(json);
+		reader.beginArray();
+		assertEquals("a\"b\\c/d\n\t\u00e4\ud83d\ude00", reader.nextString());
+		reader.endArray();
+
+		reader = reader(json);
+		reader.beginArray();
+		String raw = reader.nextRawString();
+		assertEquals("a\\\"b\\\\c\\/d\\n\\t\\u00e4\\ud83d\\ude00", raw);
+		assertEquals("a\"b\\c/d\n\t\u00e4\ud83d\ude00", JSONStreamReader.unescape(raw));
+		assertEquals("plain", JSONStreamReader.unescape("plain"));
+		assertNull(JSONStreamReader.unescape(null));
+	}
+
+	@Test
+	void skipsNestedValues() throws IOException {
+		JSONStreamReader reader = reader("{\"a\":{\"b\":[1,{\"c\":\"}\"}],\"d\":null},\"e\":2}");
+		reader.beginObject();
+		assertEquals("a", reader.nextName());
+		reader.skipValue();
+		assertEquals("e", reader.nextName());
+		assertEquals(2, reader.nextInt());
+		reader.endObject();
+	}
+
+	@Test
+	void readObjectMatchesOrgJson() throws IOException {
+		String json = "{\"id\":12,\"title\":\"T\\u00fctle\",\"score\":-1.5,\"big\":12345678901,\"flags\":[true,false,null],"
+				+ "\"nested\":{\"empty\":[],\"none\":{}}}";
+		assertTrue(new JSONObject(json).similar(reader(json).readObject()));
+	}
+
+	@Test
+	void largeDocumentsSpanSeveralBuffers() throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 5000; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"title\":\"Title ").append(i)
+					.append("\"}");
+		}
+		JSONStreamReader reader = reader(json.append(']').toString());
+		reader.beginArray();
+		int count = 0;
+		while (reader.hasNext()) {
+			assertEquals(count, reader.readObject().getInt("id"));
+			count++;
+		}
+		reader.endArray();
+		assertEquals(5000, count);
+	}
+
+	@Test
+	void syntaxErrorsAreJSONExceptions() {
+		assertThrows(JSONException.class, () -> reader("{\"a\" 1}").readObject());
+		assertThrows(JSONException.class, () -> reader("[1,]").readArray());
+		assertThrows(JSONException.class, () -> reader("{\"a\":\"unterminated").readObject());
+		assertThrows(JSONException.class, () -> {
+			JSONStreamReader reader = reader("[\"x\"]");
+			reader.beginArray();
+			reader.nextInt();
+		});
+		assertThrows(JSONException.class, () -> {
+			JSONStreamReader reader = reader("[12345678901]");
+			reader.beginArray();
+			reader.nextInt();
+		});
+	}
+}
@@ -0,0 +1,56 @@
+package ch.eldeskar.ttrss.api.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+	@Test
+	void emptyHistogram() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean());
+		assertEquals(0, histogram.getPercentile(0.99));
+	}
+
+	@Test
+	void smallValuesAreExact() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-1);
+		assertEquals(10, histogram.getCount());
+		assertEquals(10, histogram.getMax());
+		assertEquals(5, histogram.getMean());
+		assertEquals(5, histogram.getPercentile(0.5));
+		assertEquals(1, histogram.getPercentile(0));
+		assertEquals(10, histogram.getPercentile(1));
+	}
+
+	@Test
+	void percentilesAreWithinTheBucketWidth() {
+		Histogram histogram = new Histogram();
+		for (long i = 1; i <= 100_000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertPercentile(50_000_000, histogram.getPercentile(0.5));
+		assertPercentile(99_000_000, histogram.getPercentile(0.99));
+		assertPercentile(99_900_000, histogram.getPercentile(0.999));
+		assertEquals(100_000_000, histogram.getPercentile(1));
+		assertEquals(100_000_000, histogram.getMax());
+	}
+
+	private static void assertPercentile(long expected, long actual) {
+		assertTrue(actual >= expected && actual <= expected * 1.07, expected + " but was " + actual);
+	}
+
+	@Test
+	void largeValues() {
+		Histogram histogram = new Histogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getPercentile(0.5));
+	}
+}
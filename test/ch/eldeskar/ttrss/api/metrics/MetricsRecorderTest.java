@@ -0,0 +1,113 @@
+package ch.eldeskar.ttrss.api.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.APIException;
+import ch.eldeskar.ttrss.api.APISession;
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class MetricsRecorderTest {
+
+	private final URL url;
+
+	MetricsRecorderTest() throws IOException {
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	private static String respond(JSONObject request) {
+		switch (request.getString("op")) {
+		case "getUnread":
+			return StubTransport.ok("{\"unread\":\"3\"}");
+		case "getCategories":
+			return StubTransport.ok("[{\"id\":1,\"title\":\"News\",\"unread\":2}]");
+		case "getFeeds":
+			throw new UncheckedIOException(new IOException("Connection reset"));
+		default:
+			return StubTransport.error("NOT_LOGGED_IN");
+		}
+	}
+
+	@Test
+	void recordsEveryCall() throws Exception {
+		List<CallMetrics> calls = new CopyOnWriteArrayList<>();
+		MetricsRecorder recorder = new MetricsRecorder() {
+			@Override
+			public void onCall(CallMetrics metrics) {
+				calls.add(metrics);
+				super.onCall(metrics);
+			}
+		};
+		APISession session = new APISession(new StubTransport(MetricsRecorderTest::respond));
+		session.setMetricsListener(recorder);
+
+		session.getUnread(url, "abc");
+		session.getUnreadAsync(url, "abc").get(10, TimeUnit.SECONDS);
+		assertEquals(1, session.getCategoryList(url, "abc", null).size());
+		assertThrows(IOException.class, () -> session.getFeeds(url, "abc", null));
+		session.getLabels(url, "abc", null);
+		assertThrows(APIException.class, () -> session.getLabelList(url, "abc", null));
+
+		assertEquals(6, calls.size());
+		CallMetrics blocking = calls.get(0);
+		assertEquals("getUnread", blocking.getOp());
+		assertEquals(url, blocking.getUrl());
+		assertFalse(blocking.isAsync());
+		assertNull(blocking.getError());
+		assertEquals(-1, blocking.getConnectNanos());
+		assertTrue(blocking.getTimeToFirstByteNanos() >= 0);
+		assertTrue(blocking.getTotalNanos() >= blocking.getTimeToFirstByteNanos());
+		assertTrue(blocking.getRequestBytes() > 0);
+		assertTrue(blocking.getResponseBytes() > 0);
+
+		CallMetrics async = calls.get(1);
+		assertTrue(async.isAsync());
+		assertEquals(-1, async.getTimeToFirstByteNanos());
+		assertEquals(blocking.getResponseBytes(), async.getResponseBytes());
+
+		MetricsRecorder.OpMetrics unread = recorder.get("getUnread");
+		assertEquals(2, unread.getCount());
+		assertEquals(0, unread.getErrors());
+		assertEquals(2 * blocking.getRequestBytes(), unread.getRequestBytes());
+		assertEquals(2, unread.getHistogram(MetricsRecorder.Phase.TOTAL).getCount());
+		assertEquals(1, unread.getHistogram(MetricsRecorder.Phase.TIME_TO_FIRST_BYTE).getCount());
+		assertEquals(0, unread.getHistogram(MetricsRecorder.Phase.CONNECT).getCount());
+
+		assertEquals(Map.of("IOException", 1L), recorder.get("getFeeds").getErrorCounts());
+		assertEquals(Map.of("NOT_LOGGED_IN", 2L), recorder.get("getLabels").getErrorCounts());
+		assertEquals(1, recorder.get("getCategories").getCount());
+		assertTrue(recorder.toString().contains("getCategories"));
+
+		recorder.reset();
+		assertNull(recorder.get("getUnread"));
+		session.setMetricsListener(null);
+		session.getUnread(url, "abc");
+		assertTrue(recorder.getOps().isEmpty());
+	}
+
+	@Test
+	void asyncErrorsAreRecorded() throws Exception {
+		MetricsRecorder recorder = new MetricsRecorder();
+		APISession session = new APISession(new StubTransport(MetricsRecorderTest::respond));
+		session.setMetricsListener(recorder);
+		assertThrows(ExecutionException.class, () -> session.getFeedsAsync(url, "abc", null).get(10, TimeUnit.SECONDS));
+		session.getLabelsAsync(url, "abc", null).get(10, TimeUnit.SECONDS);
+		assertEquals(Map.of("IOException", 1L), recorder.get("getFeeds").getErrorCounts());
+		assertEquals(1, recorder.get("getLabels").getErrors());
+	}
+}
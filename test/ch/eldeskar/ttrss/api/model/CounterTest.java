@@ -0,0 +1,61 @@
+package ch.eldeskar.ttrss.api.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+class CounterTest {
+
+	private static Counter read(String json) throws IOException {
+		return Counter.read(new JSONStreamReader(new StringReader(json)));
+	}
+
+	@Test
+	void feedCounter() throws IOException {
+		Counter counter = read("{\"id\":12,\"counter\":3,\"has_img\":1,\"updated\":\"10:00\"}");
+		assertEquals(Counter.Kind.FEED, counter.getKind());
+		assertEquals(12, counter.getId());
+		assertNull(counter.getName());
+		assertEquals(3, counter.getCounter());
+	}
+
+	@Test
+	void specialFeedCounter() throws IOException {
+		Counter counter = read("{\"id\":-4,\"counter\":\"17\",\"auxcounter\":2,\"markedcounter\":1}");
+		assertEquals(Counter.Kind.FEED, counter.getKind());
+		assertEquals(-4, counter.getId());
+		assertEquals(17, counter.getCounter());
+		assertEquals(2, counter.getAuxCounter());
+		assertEquals(1, counter.getMarkedCounter());
+	}
+
+	@Test
+	void categoryCounter() throws IOException {
+		Counter counter = read("{\"id\":\"3\",\"kind\":\"cat\",\"counter\":5}");
+		assertEquals(Counter.Kind.CATEGORY, counter.getKind());
+		assertEquals(3, counter.getId());
+		assertEquals(5, counter.getCounter());
+	}
+
+	@Test
+	void labelCounter() throws IOException {
+		Counter counter = read("{\"id\":-1025,\"counter\":1,\"description\":\"Label\"}");
+		assertEquals(Counter.Kind.LABEL, counter.getKind());
+		assertEquals(-1025, counter.getId());
+	}
+
+	@Test
+	void globalCounter() throws IOException {
+		Counter counter = read("{\"id\":\"global-unread\",\"counter\":99}");
+		assertEquals(Counter.Kind.GLOBAL, counter.getKind());
+		assertEquals("global-unread", counter.getName());
+		assertEquals(0, counter.getId());
+		assertEquals(99, counter.getCounter());
+	}
+}
@@ -0,0 +1,109 @@
+package ch.eldeskar.ttrss.api.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+class HeadlineCanonicalizerTest {
+
+	private static Headline read(String json) throws IOException {
+		return Headline.read(new JSONStreamReader(new StringReader(json)));
+	}
+
+	private static Headline headline(int id, boolean unread, String content) throws IOException {
+		return read("{\"id\":" + id + ",\"unread\":" + unread + ",\"title\":\"Article " + id + "\","
+				+ "\"feed_title\":\"Feed\",\"author\":\"Me\",\"tags\":[\"a\"],"
+				+ "\"labels\":[[-1025,\"Later\",\"#000\",\"#fff\"]]"
+				+ (content == null ? "" : ",\"content\":\"" + content + "\"") + "}");
+	}
+
+	@Test
+	void laterCopiesUpdateTheSharedInstance() throws IOException {
+		HeadlineCanonicalizer canonicalizer = new HeadlineCanonicalizer();
+		Headline first = headline(1, true, "<p>text<\\/p>");
+		assertSame(first, canonicalizer.canonicalize(first));
+		assertSame(first, canonicalizer.canonicalize(first));
+
+		Headline copy = headline(1, false, null);
+		assertSame(first, canonicalizer.canonicalize(copy));
+		assertFalse(first.isUnread());
+		// loaded without content, the shared instance keeps it
+		assertEquals("<p>text</p>", first.getContent());
+
+		canonicalizer.canonicalize(headline(1, false, "new"));
+		assertEquals("new", first.getContent());
+		assertSame(first, canonicalizer.get(1));
+		assertNull(canonicalizer.get(2));
+	}
+
+	@Test
+	void viewsShareTheInstance() throws IOException {
+		HeadlineCanonicalizer canonicalizer = new HeadlineCanonicalizer();
+		List<Headline> feed = new ArrayList<>();
+		List<Headline> starred = new ArrayList<>();
+		for (int id = 1; id <= 3; id++) {
+			canonicalizer.canonicalizing(feed::add).accept(headline(id, true, null));
+		}
+		canonicalizer.canonicalizing(starred::add).accept(headline(2, false, null));
+		assertSame(feed.get(1), starred.get(0));
+		assertFalse(feed.get(1).isUnread());
+		assertEquals(3, canonicalizer.size());
+	}
+
+	@Test
+	void internsRepeatedStringsAndLabels() throws IOException {
+		HeadlineCanonicalizer canonicalizer = new HeadlineCanonicalizer();
+		Headline first = canonicalizer.canonicalize(headline(1, true, null));
+		Headline second = canonicalizer.canonicalize(headline(2, true, null));
+		assertSame(first.getFeedTitle(), second.getFeedTitle());
+		assertSame(first.getAuthor(), second.getAuthor());
+		assertSame(first.getTags().get(0), second.getTags().get(0));
+		assertSame(first.getLabels().get(0), second.getLabels().get(0));
+
+		Headline renamed = canonicalizer.canonicalize(read("{\"id\":3,\"labels\":[[-1025,\"Soon\",\"#000\",\"#fff\"]]}"));
+		assertEquals("Soon", renamed.getLabels().get(0).getCaption());
+		assertEquals("Later", first.getLabels().get(0).getCaption());
+	}
+
+	@Test
+	void fullStringTableKeepsNewValues() throws IOException {
+		HeadlineCanonicalizer canonicalizer = new HeadlineCanonicalizer(0);
+		Headline first = canonicalizer.canonicalize(headline(1, true, null));
+		Headline second = canonicalizer.canonicalize(headline(2, true, null));
+		assertEquals(first.getFeedTitle(), second.getFeedTitle());
+		assertNotSame(first.getFeedTitle(), second.getFeedTitle());
+		assertThrows(IllegalArgumentException.class, () -> new HeadlineCanonicalizer(-1));
+	}
+
+	@Test
+	void unreferencedArticlesAreForgotten() throws Exception {
+		HeadlineCanonicalizer canonicalizer = new HeadlineCanonicalizer();
+		Headline kept = canonicalizer.canonicalize(headline(1, true, null));
+		for (int id = 2; id <= 100; id++) {
+			canonicalizer.canonicalize(headline(id, true, null));
+		}
+		for (int i = 0; i < 50 && canonicalizer.size() > 1; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(1, canonicalizer.size());
+		assertSame(kept, canonicalizer.get(1));
+
+		canonicalizer.clear();
+		assertEquals(0, canonicalizer.size());
+		assertTrue(kept.isUnread());
+	}
+}
@@ -0,0 +1,74 @@
+package ch.eldeskar.ttrss.api.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+class HeadlineTest {
+
+	private static Headline read(String json) throws IOException {
+		return Headline.read(new JSONStreamReader(new StringReader(json)));
+	}
+
+	@Test
+	void readsAllFields() throws IOException {
+		Headline headline = read("{\"id\":42,\"guid\":\"g\",\"unread\":true,\"marked\":\"1\",\"published\":false,"
+				+ "\"updated\":1600000000,\"is_updated\":0,\"title\":\"Title\",\"link\":\"http://a/\",\"feed_id\":\"7\","
+				+ "\"feed_title\":\"Feed\",\"tags\":[\"a\",\"\",\"b\"],\"labels\":[[-1025,\"Label\",\"#000\",\"#fff\"]],"
+				+ "\"attachments\":[{\"id\":3,\"post_id\":42,\"content_url\":\"http://a/x.mp3\",\"duration\":\"\"}],"
+				+ "\"author\":\"Me\",\"score\":\"-5\",\"note\":null,\"lang\":\"en\",\"comments_count\":2,"
+				+ "\"comments_link\":\"http://a/c\",\"always_display_attachments\":false,\"unknown\":{\"x\":[1]}}");
+		assertEquals(42, headline.getId());
+		assertEquals("g", headline.getGuid());
+		assertTrue(headline.isUnread());
+		assertTrue(headline.isMarked());
+		assertFalse(headline.isPublished());
+		assertEquals(1600000000L, headline.getUpdated());
+		assertFalse(headline.isUpdated());
+		assertEquals("Title", headline.getTitle());
+		assertEquals("http://a/", headline.getLink());
+		assertEquals(7, headline.getFeedId());
+		assertEquals("Feed", headline.getFeedTitle());
+		assertEquals(Arrays.asList("a", "b"), headline.getTags());
+		assertEquals(1, headline.getLabels().size());
+		assertEquals(-1025, headline.getLabels().get(0).getId());
+		assertEquals("Label", headline.getLabels().get(0).getCaption());
+		assertEquals(1, headline.getAttachments().size());
+		assertEquals("http://a/x.mp3", headline.getAttachments().get(0).getContentUrl());
+		assertEquals(0, headline.getAttachments().get(0).getDuration());
+		assertEquals("Me", headline.getAuthor());
+		assertEquals(-5, headline.getScore());
+		assertNull(headline.getNote());
+		assertEquals("en", headline.getLang());
+		assertEquals(2, headline.getCommentsCount());
+		assertEquals("http://a/c", headline.getCommentsLink());
+	}
+
+	@Test
+	void decodesContentOnAccess() throws IOException {
+		Headline headline = read("{\"id\":1,\"excerpt\":\"a &amp; b\\u2026\","
+				+ "\"content\":\"<p class=\\\"x\\\">caf\\u00e9<\\/p>\\n\"}");
+		assertEquals("a &amp; b\u2026", headline.getExcerpt());
+		assertEquals("<p class=\"x\">caf\u00e9</p>\n", headline.getContent());
+		assertEquals("<p class=\"x\">caf\u00e9</p>\n", headline.getContent());
+	}
+
+	@Test
+	void missingFieldsHaveDefaults() throws IOException {
+		Headline headline = read("{\"id\":1,\"tags\":\"\",\"labels\":null}");
+		assertNull(headline.getContent());
+		assertNull(headline.getExcerpt());
+		assertTrue(headline.getTags().isEmpty());
+		assertTrue(headline.getLabels().isEmpty());
+		assertTrue(headline.getAttachments().isEmpty());
+	}
+}
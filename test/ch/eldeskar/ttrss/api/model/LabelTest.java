@@ -0,0 +1,43 @@
+package ch.eldeskar.ttrss.api.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+
+class LabelTest {
+
+	private static Label read(String json) throws IOException {
+		return Label.read(new JSONStreamReader(new StringReader(json)));
+	}
+
+	@Test
+	void readsObjectForm() throws IOException {
+		Label label = read("{\"id\":-1026,\"caption\":\"Later\",\"fg_color\":\"#000\",\"bg_color\":\"#fff\",\"checked\":true}");
+		assertEquals(-1026, label.getId());
+		assertEquals("Later", label.getCaption());
+		assertEquals("#000", label.getFgColor());
+		assertEquals("#fff", label.getBgColor());
+		assertTrue(label.isChecked());
+	}
+
+	@Test
+	void readsArrayForm() throws IOException {
+		Label label = read("[-1026,\"Later\",\"#000\",\"#fff\",\"extra\"]");
+		assertEquals(-1026, label.getId());
+		assertEquals("Later", label.getCaption());
+		assertEquals("#fff", label.getBgColor());
+	}
+
+	@Test
+	void convertsDatabaseIdsToFeedIds() {
+		assertEquals(-11, Label.toFeedId(0));
+		assertEquals(-1035, Label.toFeedId(1024));
+		assertEquals(-1035, Label.toFeedId(-1035));
+	}
+}
@@ -0,0 +1,235 @@
+package ch.eldeskar.ttrss.api.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ch.eldeskar.ttrss.api.APISession;
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+import ch.eldeskar.ttrss.api.testing.FakeServer;
+import ch.eldeskar.ttrss.api.transport.HttpClientTransport;
+import ch.eldeskar.ttrss.api.transport.Transport;
+
+class ArticleStoreTest extends AbstractFakeServerTest {
+
+	@TempDir
+	Path directory;
+
+	@Override
+	protected FakeServer createServer() {
+		FakeServer server = new FakeServer(1, 2, 300);
+		server.setContentSize(100);
+		return server;
+	}
+
+	@Test
+	void syncRequestsOnlyArticlesAboveTheHighWaterMark() throws IOException {
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			assertEquals(300, store.sync(session, url, sid, 1));
+			assertEquals(300, store.size());
+			int highWaterMark = store.getHighWaterMark(1);
+
+			int newest = server.addArticles(1, 5);
+			assertEquals(5, store.sync(session, url, sid, 1));
+			assertEquals(305, store.size());
+			assertEquals(newest, store.getHighWaterMark(1));
+			assertTrue(newest > highWaterMark);
+			assertEquals(0, store.sync(session, url, sid, 1));
+		}
+	}
+
+	@Test
+	void failedSyncKeepsTheHighWaterMark() throws IOException {
+		// the first page with the newest 200 articles arrives, the second one fails
+		APISession failing = new APISession(new FailingTransport(",\"skip\":200"));
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			assertThrows(IOException.class, () -> store.sync(failing, url, sid, 1));
+			assertEquals(200, store.size());
+			assertEquals(0, store.getHighWaterMark(1));
+
+			assertEquals(300, store.sync(session, url, sid, 1));
+			assertEquals(300, store.size());
+		}
+	}
+
+	@Test
+	void syncClearsTheUnreadFlagOfArticlesReadElsewhere() throws IOException {
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			int[] unread = store.getUnreadIds(1);
+			int read = unread[0];
+			session.updateArticle(url, sid, String.valueOf(read), APISession.MODE_FALSE, APISession.FIELD_UNREAD);
+			assertTrue(store.isUnread(read));
+
+			assertEquals(0, store.sync(session, url, sid, 1));
+			assertFalse(store.isUnread(read));
+			assertFalse(store.get(read).isUnread());
+			assertEquals(unread.length - 1, store.getUnreadIds(1).length);
+		}
+	}
+
+	@Test
+	void syncFlagsArticlesMarkedUnreadAgain() throws IOException {
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			int[] unread = store.getUnreadIds(1);
+			int id = unread[unread.length - 1];
+			session.updateArticle(url, sid, String.valueOf(id), APISession.MODE_FALSE, APISession.FIELD_UNREAD);
+			store.sync(session, url, sid, 1);
+			assertFalse(store.isUnread(id));
+
+			session.updateArticle(url, sid, String.valueOf(id), APISession.MODE_TRUE, APISession.FIELD_UNREAD);
+			store.sync(session, url, sid, 1);
+			assertTrue(store.isUnread(id));
+			assertTrue(store.get(id).isUnread());
+		}
+	}
+
+	@Test
+	void syncWithoutUnreadArticlesSendsOneRequest() throws IOException {
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			String ids = Arrays.stream(store.getUnreadIds(1)).mapToObj(String::valueOf)
+					.collect(Collectors.joining(","));
+			session.updateArticle(url, sid, ids, APISession.MODE_FALSE, APISession.FIELD_UNREAD);
+			store.sync(session, url, sid, 1);
+			assertEquals(0, store.getUnreadIds(1).length);
+
+			long requests = server.getRequestCount("getHeadlines");
+			assertEquals(0, store.sync(session, url, sid, 1));
+			assertEquals(requests + 1, server.getRequestCount("getHeadlines"));
+			// the api level came with the login
+			assertEquals(0, server.getRequestCount("getApiLevel"));
+		}
+	}
+
+	@Test
+	void setUnreadAppendsOnlyTheFlags() throws IOException {
+		Path log = directory.resolve("articles.log");
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			int id = store.getUnreadIds(1)[0];
+			Headline headline = store.get(id);
+			long size = Files.size(log);
+			assertTrue(store.setUnread(id, false));
+			assertTrue(store.setUnread(id, true));
+			assertTrue(Files.size(log) - size < 64);
+			assertTrue(store.get(id).isUnread());
+			assertEquals(headline.getTitle(), store.get(id).getTitle());
+			assertEquals(headline.getContent(), store.get(id).getContent());
+		}
+	}
+
+	@Test
+	void setUnreadOfSeveralArticles() throws IOException {
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			int[] unread = store.getUnreadIds(1);
+			int[] ids = { unread[0], unread[1], unread[1], -1 };
+			assertEquals(2, store.setUnread(ids, false));
+			assertEquals(0, store.setUnread(ids, false));
+			assertFalse(store.isUnread(unread[0]));
+			assertFalse(store.get(unread[1]).isUnread());
+			assertEquals(unread.length - 2, store.getUnreadIds(1).length);
+		}
+	}
+
+	@Test
+	void flagsAppendedAfterTheSnapshotAreRecovered(@TempDir Path copy) throws IOException {
+		int id;
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			store.snapshot();
+			id = store.getUnreadIds(1)[0];
+			store.setUnread(id, false);
+			// the state after a crash: the flag record is only in the log
+			for (String file : new String[] { "articles.log", "articles.snapshot" }) {
+				Files.copy(directory.resolve(file), copy.resolve(file));
+			}
+		}
+		try (ArticleStore store = ArticleStore.open(copy)) {
+			assertEquals(300, store.size());
+			assertFalse(store.isUnread(id));
+			assertFalse(store.get(id).isUnread());
+			assertFalse(Arrays.stream(store.getUnreadIds(1)).anyMatch(unread -> unread == id));
+		}
+	}
+
+	@Test
+	void setUnreadSurvivesReopening() throws IOException {
+		int id;
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 2);
+			id = store.getUnreadIds(2)[0];
+			assertTrue(store.setUnread(id, false));
+			assertFalse(store.setUnread(id, false));
+			assertFalse(store.setUnread(-1, false));
+			assertFalse(store.isUnread(id));
+		}
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			assertEquals(300, store.size());
+			assertFalse(store.isUnread(id));
+			assertFalse(store.get(id).isUnread());
+		}
+	}
+
+	@Test
+	void reopenedStoreKeepsArticlesAndHighWaterMarks() throws IOException {
+		int highWaterMark;
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			store.sync(session, url, sid, 1);
+			highWaterMark = store.getHighWaterMark(1);
+		}
+		try (ArticleStore store = ArticleStore.open(directory)) {
+			assertEquals(300, store.size());
+			assertEquals(highWaterMark, store.getHighWaterMark(1));
+			assertEquals(0, store.sync(session, url, sid, 1));
+		}
+	}
+
+	/**
+	 * Fails the requests whose body contains the given text.
+	 */
+	private static final class FailingTransport implements Transport {
+
+		private final Transport transport = new HttpClientTransport();
+		private final String failing;
+
+		FailingTransport(String failing) {
+			this.failing = failing;
+		}
+
+		@Override
+		public InputStream post(URL url, byte[] body) throws IOException {
+			if (fails(body)) {
+				throw new IOException("Request failed");
+			}
+			return transport.post(url, body);
+		}
+
+		@Override
+		public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+			return fails(body) ? CompletableFuture.failedFuture(new IOException("Request failed"))
+					: transport.postAsync(url, body);
+		}
+
+		private boolean fails(byte[] body) {
+			return new String(body, StandardCharsets.UTF_8).contains(failing);
+		}
+	}
+}
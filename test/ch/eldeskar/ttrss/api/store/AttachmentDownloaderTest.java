@@ -0,0 +1,160 @@
+package ch.eldeskar.ttrss.api.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+import ch.eldeskar.ttrss.api.json.JSONStreamReader;
+import ch.eldeskar.ttrss.api.model.Attachment;
+import ch.eldeskar.ttrss.api.model.Headline;
+import ch.eldeskar.ttrss.api.testing.AbstractFakeServerTest;
+import ch.eldeskar.ttrss.api.testing.FakeServer;
+
+class AttachmentDownloaderTest extends AbstractFakeServerTest {
+
+	private static final int SIZE = 200_000;
+
+	@TempDir
+	Path directory;
+
+	private Headline headline;
+	private AttachmentDownloader downloader;
+
+	@Override
+	protected FakeServer createServer() {
+		FakeServer server = new FakeServer(1, 2, 2);
+		server.setAttachmentSize(SIZE);
+		return server;
+	}
+
+	@BeforeEach
+	void loadHeadline() throws IOException {
+		headline = session.getHeadlineList(url, sid, ",\"feed_id\":-4,\"limit\":1,\"include_attachments\":true")
+				.get(0);
+		downloader = new AttachmentDownloader(directory, 2);
+	}
+
+	@AfterEach
+	void closeDownloader() {
+		downloader.close();
+	}
+
+	@Test
+	void unchangedFileIsSkipped() throws Exception {
+		AttachmentDownloader.Result first = download();
+		assertEquals(AttachmentDownloader.Outcome.DOWNLOADED, first.getOutcome());
+		assertEquals(SIZE, first.getTransferred());
+		verify(first.getFile());
+
+		AttachmentDownloader.Result second = download();
+		assertEquals(AttachmentDownloader.Outcome.SKIPPED, second.getOutcome());
+		assertEquals(0, second.getTransferred());
+		assertEquals(2, server.getRequestCount("file"));
+	}
+
+	@Test
+	void partialFileIsResumed() throws Exception {
+		Path file = download().getFile();
+		Path part = file.resolveSibling(file.getFileName() + ".part");
+		Files.move(file, part);
+		try (FileChannel channel = FileChannel.open(part, StandardOpenOption.WRITE)) {
+			channel.truncate(SIZE / 4);
+		}
+
+		AttachmentDownloader.Result resumed = download();
+		assertEquals(AttachmentDownloader.Outcome.RESUMED, resumed.getOutcome());
+		assertEquals(SIZE - SIZE / 4, resumed.getTransferred());
+		assertEquals(SIZE, Files.size(file));
+		assertTrue(Files.notExists(part));
+		verify(file);
+	}
+
+	@Test
+	void unsupportedSchemeFailsAtOnce() throws Exception {
+		Attachment attachment = Attachment.read(new JSONStreamReader(new StringReader(
+				"{\"id\":1,\"post_id\":1,\"content_url\":\"file:\\/etc\\/passwd\",\"content_type\":\"text\\/plain\"}")));
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> downloader.download(attachment).get(10, TimeUnit.SECONDS));
+		assertInstanceOf(IOException.class, e.getCause());
+		assertEquals(0, server.getRequestCount("file"));
+	}
+
+	@Test
+	void queuedFailuresDoNotRecurse() throws Exception {
+		// the first download waits for the server, the queued ones fail
+		// synchronously as their directory is a file
+		Files.createFile(directory.resolve("blocked"));
+		CountDownLatch answer = new CountDownLatch(1);
+		HttpServer slow = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		slow.createContext("/files/", exchange -> {
+			try {
+				answer.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+		});
+		slow.start();
+		List<CompletableFuture<AttachmentDownloader.Result>> downloads = new ArrayList<>();
+		try (AttachmentDownloader single = new AttachmentDownloader(directory, 1)) {
+			single.setFileNames(attachment -> attachment.getId() == 0 ? "first" : "blocked/" + attachment.getId());
+			for (int i = 0; i < 20_000; i++) {
+				downloads.add(single.download(
+						attachment(i, "http://127.0.0.1:" + slow.getAddress().getPort() + "/files/" + i)));
+			}
+			answer.countDown();
+			for (CompletableFuture<AttachmentDownloader.Result> download : downloads) {
+				ExecutionException e = assertThrows(ExecutionException.class,
+						() -> download.get(30, TimeUnit.SECONDS));
+				assertInstanceOf(IOException.class, e.getCause());
+			}
+		} finally {
+			slow.stop(0);
+		}
+	}
+
+	private static Attachment attachment(int id, String contentUrl) throws IOException {
+		return Attachment.read(new JSONStreamReader(new StringReader("{\"id\":" + id
+				+ ",\"post_id\":1,\"content_url\":\"" + contentUrl + "\",\"content_type\":\"text/plain\"}")));
+	}
+
+	private AttachmentDownloader.Result download() throws Exception {
+		List<CompletableFuture<AttachmentDownloader.Result>> downloads = downloader.download(List.of(headline));
+		assertEquals(1, downloads.size());
+		return downloads.get(0).get(30, TimeUnit.SECONDS);
+	}
+
+	private void verify(Path file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file);
+		assertEquals(SIZE, bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != FakeServer.attachmentByte(headline.getId(), i)) {
+				throw new AssertionError(file + " differs at " + i);
+			}
+		}
+	}
+}
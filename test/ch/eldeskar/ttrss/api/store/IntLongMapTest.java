@@ -0,0 +1,49 @@
+package ch.eldeskar.ttrss.api.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class IntLongMapTest {
+
+	@Test
+	void putGetAndRemove() {
+		IntLongMap map = new IntLongMap(4);
+		map.put(1, 10);
+		map.put(2, 20);
+		map.put(1, 11);
+		assertEquals(2, map.size());
+		assertEquals(11, map.get(1, -1));
+		assertTrue(map.remove(1));
+		assertFalse(map.remove(1));
+		assertEquals(-1, map.get(1, -1));
+		assertEquals(20, map.get(2, -1));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	void removeKeepsCollidingKeysReachable() {
+		IntLongMap map = new IntLongMap(16);
+		Map<Integer, Long> expected = new HashMap<>();
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			int key = random.nextInt(2000) - 1000;
+			if (random.nextBoolean()) {
+				map.put(key, i);
+				expected.put(key, (long) i);
+			} else {
+				assertEquals(expected.remove(key) != null, map.remove(key));
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (int key = -1000; key < 1000; key++) {
+			assertEquals(expected.getOrDefault(key, -1L), map.get(key, -1));
+		}
+	}
+}
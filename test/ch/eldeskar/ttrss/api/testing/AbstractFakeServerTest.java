@@ -0,0 +1,42 @@
+package ch.eldeskar.ttrss.api.testing;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import ch.eldeskar.ttrss.api.APISession;
+
+/**
+ * Base class of the tests which run against a {@link FakeServer}. Every test
+ * gets its own server, started and logged in as admin.
+ *
+ */
+public abstract class AbstractFakeServerTest {
+
+	protected final APISession session = new APISession();
+	protected FakeServer server;
+	protected URL url;
+	protected String sid;
+
+	/**
+	 * @return FakeServer the server of a test, configured but not started. One
+	 *         category with two feeds of ten articles by default.
+	 */
+	protected FakeServer createServer() {
+		return new FakeServer(1, 2, 10);
+	}
+
+	@BeforeEach
+	protected void startServer() throws IOException {
+		server = createServer();
+		url = server.start();
+		sid = session.login(url, "admin", "password").getJSONObject("content").getString("session_id");
+	}
+
+	@AfterEach
+	protected void stopServer() {
+		server.close();
+	}
+}
@@ -0,0 +1,929 @@
+package ch.eldeskar.ttrss.api.testing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A TT-RSS api endpoint running inside the JVM, for tests and load tests
+ * without a real installation. It serves synthetic categories, feeds and
+ * articles and implements the ops this library uses:
+ * login, logout, isLoggedIn, getApiLevel, getVersion, getConfig, getUnread,
+ * getCounters, getCategories, getFeeds, getFeedTree, getHeadlines, getArticle,
+ * updateArticle and catchupFeed. Labels are not simulated.
+ * 
+ * With {@link #setAttachmentSize(int)} every article gets an enclosure, which
+ * the server delivers under /files/ with ETag, HEAD, If-None-Match and Range
+ * support.
+ *
+ * <pre>
+ * try (FakeServer server = new FakeServer(5, 20, 100)) {
+ * 	URL url = server.start();
+ * 	APISession session = new APISession();
+ * 	String sid = session.login(url, "admin", "password").getJSONObject("content").getString("session_id");
+ * }
+ * </pre>
+ *
+ * The server has a fixed amount of worker threads like the PHP-FPM pool in
+ * front of a real installation. Latency and errors can be injected to
+ * reproduce slow or overloaded servers.
+ *
+ */
+public class FakeServer implements Closeable {
+
+	private static final int API_LEVEL = 15;
+	private static final int MAX_LIMIT = 200;
+	private static final long START_TIME = 1570000000L;
+
+	private final int categories;
+	private final List<Article> articles = new ArrayList<>();
+	private final List<List<Article>> feedArticles = new ArrayList<>();
+	private final int[] unreadByFeed;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+	private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+	private String user = "admin";
+	private String password = "password";
+	private int workers = 8;
+	private volatile String content;
+	private volatile long minLatencyNanos;
+	private volatile long maxLatencyNanos;
+	private volatile double httpErrorRate;
+	private volatile int httpErrorStatus = 503;
+	private volatile double apiErrorRate;
+	private volatile String apiError = "NOT_LOGGED_IN";
+	private volatile int attachmentSize;
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private URL url;
+
+	/**
+	 * Creates the synthetic data. Feed ids start at 1, feed f belongs to category
+	 * (f - 1) / feedsPerCategory + 1. Article ids start at 1 and grow with the
+	 * updated time, every third article is read, every tenth starred and every
+	 * 25th published.
+	 *
+	 * @param int categories
+	 * @param int feedsPerCategory
+	 * @param int articlesPerFeed
+	 */
+	public FakeServer(int categories, int feedsPerCategory, int articlesPerFeed) {
+		this.categories = categories;
+		int feeds = categories * feedsPerCategory;
+		this.unreadByFeed = new int[feeds + 1];
+		feedArticles.add(new ArrayList<>());
+		for (int feed = 1; feed <= feeds; feed++) {
+			feedArticles.add(new ArrayList<>(articlesPerFeed));
+		}
+		for (int i = 0; i < articlesPerFeed; i++) {
+			for (int feed = 1; feed <= feeds; feed++) {
+				newArticle(feed);
+			}
+		}
+		setContentSize(2000);
+	}
+
+	/**
+	 * @param String user
+	 * @param String password null accepts every password
+	 */
+	public void setCredentials(String user, String password) {
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * @param int workers threads handling requests, has to be set before
+	 *            {@link #start()}
+	 */
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * @param int bytes approximate size of the article content
+	 */
+	public void setContentSize(int bytes) {
+		StringBuilder builder = new StringBuilder(bytes + 100);
+		while (builder.length() < bytes) {
+			builder.append("<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.</p>");
+		}
+		content = builder.toString().replace("/", "\\/");
+	}
+
+	/**
+	 * Gives every article one enclosure of the given size. The bytes depend on
+	 * the article id and the size only, the ETag changes with the size.
+	 *
+	 * @param int bytes size of the enclosures, 0 for none
+	 */
+	public void setAttachmentSize(int bytes) {
+		this.attachmentSize = bytes;
+	}
+
+	/**
+	 * Every request waits a random time between min and max before it is
+	 * handled, occupying its worker thread meanwhile.
+	 *
+	 * @param Duration min
+	 * @param Duration max
+	 */
+	public void setLatency(Duration min, Duration max) {
+		this.minLatencyNanos = min.toNanos();
+		this.maxLatencyNanos = Math.max(min.toNanos(), max.toNanos());
+	}
+
+	/**
+	 * @param double rate share of requests answered with the status code, 0 to
+	 *               1
+	 * @param int    statusCode e.g. 503
+	 */
+	public void setHttpErrorRate(double rate, int statusCode) {
+		this.httpErrorStatus = statusCode;
+		this.httpErrorRate = rate;
+	}
+
+	/**
+	 * @param double rate share of requests answered with an api error, 0 to 1
+	 * @param String error e.g. NOT_LOGGED_IN
+	 */
+	public void setApiErrorRate(double rate, String error) {
+		this.apiError = error;
+		this.apiErrorRate = rate;
+	}
+
+	/**
+	 * Starts the server on a free port of the loopback interface. Sets the system
+	 * property sun.net.httpserver.nodelay unless it is set already, small
+	 * responses would otherwise wait for the delayed ACK of the client and every
+	 * call would take 40 ms.
+	 *
+	 * @return URL api url
+	 * @throws IOException
+	 */
+	public URL start() throws IOException {
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		executor = Executors.newFixedThreadPool(workers, r -> {
+			Thread thread = new Thread(r, "FakeServer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/tt-rss/api/", this::handle);
+		server.createContext("/files/", this::file);
+		server.start();
+		url = new URL("http://localhost:" + server.getAddress().getPort() + "/tt-rss/api/");
+		return url;
+	}
+
+	public URL getUrl() {
+		return url;
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Adds new articles to a feed, as if the feed had been updated.
+	 *
+	 * @param int feedId
+	 * @param int count
+	 * @return int id of the last new article
+	 */
+	public int addArticles(int feedId, int count) {
+		lock.writeLock().lock();
+		try {
+			Article article = null;
+			for (int i = 0; i < count; i++) {
+				article = newArticle(feedId);
+			}
+			return article == null ? 0 : article.id;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Ends all sessions, the next request of every client fails with
+	 * NOT_LOGGED_IN.
+	 */
+	public void expireSessions() {
+		sessions.clear();
+	}
+
+	/**
+	 * @return int amount of feeds
+	 */
+	public int getFeedCount() {
+		return feedArticles.size() - 1;
+	}
+
+	/**
+	 * @return int highest article id
+	 */
+	public int getMaxArticleId() {
+		lock.readLock().lock();
+		try {
+			return articles.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param String op
+	 * @return long requests received for the op
+	 */
+	public long getRequestCount(String op) {
+		AtomicLong count = requestCounts.get(op);
+		return count == null ? 0 : count.get();
+	}
+
+	private Article newArticle(int feedId) {
+		Article article = new Article(articles.size() + 1, feedId);
+		articles.add(article);
+		feedArticles.get(feedId).add(article);
+		if (article.unread) {
+			unreadByFeed[feedId]++;
+		}
+		return article;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream in = exchange.getRequestBody()) {
+			JSONObject request = new JSONObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			long latency = minLatencyNanos
+					+ (maxLatencyNanos > minLatencyNanos ? random.nextLong(maxLatencyNanos - minLatencyNanos) : 0);
+			if (latency > 0) {
+				Thread.sleep(latency / 1_000_000, (int) (latency % 1_000_000));
+			}
+			if (httpErrorRate > 0 && random.nextDouble() < httpErrorRate) {
+				exchange.sendResponseHeaders(httpErrorStatus, -1);
+				return;
+			}
+			String op = request.optString("op");
+			requestCounts.computeIfAbsent(op, key -> new AtomicLong()).incrementAndGet();
+			StringBuilder response = new StringBuilder(256);
+			response.append("{\"seq\":").append(request.optInt("seq")).append(",\"status\":");
+			int mark = response.length();
+			response.append("0,\"content\":");
+			String error;
+			if (apiErrorRate > 0 && random.nextDouble() < apiErrorRate) {
+				error = apiError;
+			} else if (!"login".equals(op) && !"isLoggedIn".equals(op)
+					&& !sessions.contains(request.optString("sid"))) {
+				error = "NOT_LOGGED_IN";
+			} else {
+				error = dispatch(op, request, response);
+			}
+			if (error != null) {
+				response.setLength(mark);
+				response.append("1,\"content\":{\"error\":").append(JSONObject.quote(error)).append('}');
+			}
+			response.append('}');
+			byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/json; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Delivers the enclosure /files/{article id}.mp3, counted as op "file".
+	 */
+	private void file(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			int size = attachmentSize;
+			int id;
+			try {
+				id = Integer.parseInt(path.substring("/files/".length(), path.length() - ".mp3".length()));
+			} catch (RuntimeException e) {
+				id = 0;
+			}
+			if (size <= 0 || id < 1 || id > getMaxArticleId() || !path.endsWith(".mp3")) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			requestCounts.computeIfAbsent("file", key -> new AtomicLong()).incrementAndGet();
+			String etag = "\"" + id + "-" + size + "\"";
+			Headers request = exchange.getRequestHeaders();
+			Headers response = exchange.getResponseHeaders();
+			response.set("ETag", etag);
+			response.set("Accept-Ranges", "bytes");
+			response.set("Content-Type", "audio/mpeg");
+			if (etag.equals(request.getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			long from = 0;
+			long to = size - 1;
+			String range = request.getFirst("Range");
+			String ifRange = request.getFirst("If-Range");
+			if (range != null && range.startsWith("bytes=") && (ifRange == null || etag.equals(ifRange))) {
+				String[] bounds = range.substring("bytes=".length()).split("-", -1);
+				from = Long.parseLong(bounds[0]);
+				if (!bounds[1].isEmpty()) {
+					to = Math.min(to, Long.parseLong(bounds[1]));
+				}
+				if (from > to) {
+					response.set("Content-Range", "bytes */" + size);
+					exchange.sendResponseHeaders(416, -1);
+					return;
+				}
+				response.set("Content-Range", "bytes " + from + "-" + to + "/" + size);
+			}
+			int status = response.containsKey("Content-Range") ? 206 : 200;
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				response.set("Content-Length", String.valueOf(to - from + 1));
+				exchange.sendResponseHeaders(status, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(status, to - from + 1);
+			try (OutputStream out = exchange.getResponseBody()) {
+				byte[] buffer = new byte[65536];
+				for (long position = from; position <= to;) {
+					int length = (int) Math.min(buffer.length, to - position + 1);
+					for (int i = 0; i < length; i++) {
+						buffer[i] = attachmentByte(id, position + i);
+					}
+					out.write(buffer, 0, length);
+					position += length;
+				}
+			}
+		} catch (RuntimeException e) {
+			exchange.sendResponseHeaders(500, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @param int  articleId
+	 * @param long position
+	 * @return byte the byte at position of the enclosure of the article
+	 */
+	public static byte attachmentByte(int articleId, long position) {
+		return (byte) (articleId * 31 + position * 7 + (position >>> 8));
+	}
+
+	private void attachments(StringBuilder out, int id) {
+		out.append(",\"attachments\":[");
+		if (attachmentSize > 0) {
+			out.append("{\"id\":").append(id).append(",\"content_url\":\"http:\\/\\/localhost:")
+					.append(server.getAddress().getPort()).append("\\/files\\/").append(id)
+					.append(".mp3\",\"content_type\":\"audio\\/mpeg\",\"post_id\":").append(id)
+					.append(",\"title\":\"\",\"duration\":\"\",\"width\":0,\"height\":0}");
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Appends the content of the response.
+	 *
+	 * @return String error code, null if the op succeeded
+	 */
+	private String dispatch(String op, JSONObject request, StringBuilder out) {
+		switch (op) {
+		case "login":
+			return login(request, out);
+		case "logout":
+			sessions.remove(request.optString("sid"));
+			out.append("{\"status\":\"OK\"}");
+			return null;
+		case "isLoggedIn":
+			out.append("{\"status\":").append(sessions.contains(request.optString("sid"))).append('}');
+			return null;
+		case "getApiLevel":
+			out.append("{\"level\":").append(API_LEVEL).append('}');
+			return null;
+		case "getVersion":
+			out.append("{\"version\":\"19.8\"}");
+			return null;
+		case "getConfig":
+			out.append("{\"icons_dir\":\"feed-icons\",\"icons_url\":\"feed-icons\",\"daemon_is_running\":true,\"num_feeds\":")
+					.append(getFeedCount()).append('}');
+			return null;
+		case "getUnread":
+			out.append("{\"unread\":\"").append(totalUnread()).append("\"}");
+			return null;
+		case "getCounters":
+			getCounters(request, out);
+			return null;
+		case "getCategories":
+			getCategories(out);
+			return null;
+		case "getFeeds":
+			getFeeds(request, out);
+			return null;
+		case "getFeedTree":
+			getFeedTree(out);
+			return null;
+		case "getHeadlines":
+			return getHeadlines(request, out);
+		case "getArticle":
+			return getArticle(request, out);
+		case "updateArticle":
+			return updateArticle(request, out);
+		case "catchupFeed":
+			return catchupFeed(request, out);
+		default:
+			return "UNKNOWN_METHOD";
+		}
+	}
+
+	private String login(JSONObject request, StringBuilder out) {
+		if (!user.equals(request.optString("user"))
+				|| (password != null && !password.equals(request.optString("password")))) {
+			return "LOGIN_ERROR";
+		}
+		String session_id = UUID.randomUUID().toString().replace("-", "");
+		sessions.add(session_id);
+		out.append("{\"session_id\":\"").append(session_id).append("\",\"api_level\":").append(API_LEVEL).append('}');
+		return null;
+	}
+
+	private void getCounters(JSONObject request, StringBuilder out) {
+		String mode = request.optString("output_mode", "flc");
+		lock.readLock().lock();
+		try {
+			out.append('[');
+			int length = out.length();
+			if (mode.indexOf('f') >= 0) {
+				for (int feed = 1; feed < feedArticles.size(); feed++) {
+					separator(out, length);
+					out.append("{\"id\":").append(feed).append(",\"updated\":\"").append(lastUpdated(feed))
+							.append("\",\"counter\":")
+							.append(unreadByFeed[feed]).append(",\"has_img\":0}");
+				}
+				int starred = 0;
+				int published = 0;
+				for (Article article : articles) {
+					starred += article.marked && article.unread ? 1 : 0;
+					published += article.published && article.unread ? 1 : 0;
+				}
+				separator(out, length);
+				out.append("{\"id\":-1,\"counter\":").append(starred).append('}');
+				out.append(",{\"id\":-2,\"counter\":").append(published).append('}');
+				out.append(",{\"id\":-3,\"counter\":0}");
+				out.append(",{\"id\":-4,\"counter\":").append(totalUnread()).append('}');
+			}
+			if (mode.indexOf('c') >= 0) {
+				for (int cat = 1; cat <= categories; cat++) {
+					separator(out, length);
+					out.append("{\"id\":").append(cat).append(",\"kind\":\"cat\",\"counter\":")
+							.append(categoryUnread(cat)).append('}');
+				}
+			}
+			separator(out, length);
+			out.append("{\"id\":\"global-unread\",\"counter\":").append(totalUnread()).append('}');
+			out.append(",{\"id\":\"subscribed-feeds\",\"counter\":").append(getFeedCount()).append('}');
+			out.append(']');
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void getCategories(StringBuilder out) {
+		lock.readLock().lock();
+		try {
+			out.append('[');
+			for (int cat = 1; cat <= categories; cat++) {
+				if (cat > 1) {
+					out.append(',');
+				}
+				out.append("{\"id\":\"").append(cat).append("\",\"title\":\"Category ").append(cat)
+						.append("\",\"unread\":").append(categoryUnread(cat)).append(",\"order_id\":").append(cat)
+						.append('}');
+			}
+			out.append(']');
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void getFeeds(JSONObject request, StringBuilder out) {
+		int catId = request.optInt("cat_id", -3);
+		boolean unreadOnly = bool(request, "unread_only");
+		int limit = request.optInt("limit", 0);
+		int offset = request.optInt("offset", 0);
+		lock.readLock().lock();
+		try {
+			out.append('[');
+			int length = out.length();
+			int skipped = 0;
+			int written = 0;
+			for (int feed = 1; feed < feedArticles.size(); feed++) {
+				if ((catId > 0 && categoryOf(feed) != catId) || (unreadOnly && unreadByFeed[feed] == 0)
+						|| catId == 0 || catId == -1 || catId == -2) {
+					continue;
+				}
+				if (skipped++ < offset) {
+					continue;
+				}
+				if (limit > 0 && written == limit) {
+					break;
+				}
+				separator(out, length);
+				feed(out, feed);
+				written++;
+			}
+			out.append(']');
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void feed(StringBuilder out, int feed) {
+		out.append("{\"feed_url\":\"https:\\/\\/feed").append(feed).append(".example.com\\/rss\",\"title\":\"Feed ")
+				.append(feed).append("\",\"id\":").append(feed).append(",\"unread\":").append(unreadByFeed[feed])
+				.append(",\"has_icon\":false,\"cat_id\":").append(categoryOf(feed))
+				.append(",\"last_updated\":").append(lastUpdated(feed)).append(",\"order_id\":0}");
+	}
+
+	private void getFeedTree(StringBuilder out) {
+		lock.readLock().lock();
+		try {
+			out.append("{\"categories\":{\"identifier\":\"id\",\"label\":\"name\",\"items\":[");
+			out.append("{\"id\":\"CAT:-1\",\"items\":[");
+			String[] special = { "-4:All articles", "-3:Fresh articles", "-1:Starred articles",
+					"-2:Published articles", "0:Archived articles", "-6:Recently read" };
+			for (int i = 0; i < special.length; i++) {
+				int colon = special[i].indexOf(':');
+				String id = special[i].substring(0, colon);
+				if (i > 0) {
+					out.append(',');
+				}
+				out.append("{\"id\":\"FEED:").append(id).append("\",\"name\":\"").append(special[i].substring(colon + 1))
+						.append("\",\"unread\":").append("-4".equals(id) ? totalUnread() : 0)
+						.append(",\"type\":\"feed\",\"error\":\"\",\"updated\":\"\",\"icon\":\"images\\/folder.png\",\"bare_id\":")
+						.append(id).append(",\"auxcounter\":0}");
+			}
+			out.append("],\"name\":\"Special\",\"type\":\"category\",\"unread\":0,\"bare_id\":-1}");
+			for (int cat = 1; cat <= categories; cat++) {
+				out.append(",{\"id\":\"CAT:").append(cat).append("\",\"bare_id\":").append(cat)
+						.append(",\"auxcounter\":0,\"name\":\"Category ").append(cat).append("\",\"items\":[");
+				int length = out.length();
+				int feeds = 0;
+				for (int feed = 1; feed < feedArticles.size(); feed++) {
+					if (categoryOf(feed) == cat) {
+						separator(out, length);
+						out.append("{\"id\":\"FEED:").append(feed).append("\",\"bare_id\":").append(feed)
+								.append(",\"auxcounter\":0,\"name\":\"Feed ").append(feed)
+								.append("\",\"checkbox\":false,\"unread\":").append(unreadByFeed[feed])
+								.append(",\"error\":\"\",\"icon\":false,\"param\":\"12:00\"}");
+						feeds++;
+					}
+				}
+				out.append("],\"checkbox\":false,\"type\":\"category\",\"unread\":").append(categoryUnread(cat))
+						.append(",\"child_unread\":0,\"param\":\"(").append(feeds).append(" feeds)\"}");
+			}
+			out.append("]}}");
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private String getHeadlines(JSONObject request, StringBuilder out) {
+		if (!request.has("feed_id")) {
+			return "INCORRECT_USAGE";
+		}
+		int feedId = request.optInt("feed_id");
+		boolean isCat = bool(request, "is_cat");
+		int limit = request.optInt("limit", MAX_LIMIT);
+		if (limit <= 0 || limit > MAX_LIMIT) {
+			limit = MAX_LIMIT;
+		}
+		int skip = request.optInt("skip", 0);
+		int sinceId = request.optInt("since_id", 0);
+		String viewMode = request.optString("view_mode", "all_articles");
+		boolean reverse = "date_reverse".equals(request.optString("order_by"));
+		boolean showContent = bool(request, "show_content");
+		boolean showExcerpt = bool(request, "show_excerpt");
+		boolean includeAttachments = bool(request, "include_attachments");
+		boolean includeHeader = bool(request, "include_header");
+		lock.readLock().lock();
+		try {
+			List<Article> source = isCat || feedId <= 0 || feedId >= feedArticles.size() ? articles
+					: feedArticles.get(feedId);
+			if (includeHeader) {
+				out.append("[{\"id\":").append(feedId).append(",\"first_id\":0,\"is_cat\":").append(isCat)
+						.append("},");
+			}
+			out.append('[');
+			int length = out.length();
+			int skipped = 0;
+			int written = 0;
+			int size = source.size();
+			for (int i = 0; i < size && written < limit; i++) {
+				Article article = source.get(reverse ? i : size - 1 - i);
+				if (article.id <= sinceId || !matches(article, feedId, isCat, viewMode)) {
+					continue;
+				}
+				if (skipped < skip) {
+					skipped++;
+					continue;
+				}
+				separator(out, length);
+				headline(out, article, showContent, showExcerpt, includeAttachments);
+				written++;
+			}
+			out.append(']');
+			if (includeHeader) {
+				out.append(']');
+			}
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private boolean matches(Article article, int feedId, boolean isCat, String viewMode) {
+		if (isCat) {
+			if (categoryOf(article.feedId) != feedId) {
+				return false;
+			}
+		} else if (feedId > 0) {
+			if (article.feedId != feedId) {
+				return false;
+			}
+		} else if (feedId == -1) {
+			if (!article.marked) {
+				return false;
+			}
+		} else if (feedId == -2) {
+			if (!article.published) {
+				return false;
+			}
+		} else if (feedId == -3) {
+			if (!article.unread || article.id < articles.size() - 100) {
+				return false;
+			}
+		} else if (feedId != -4) {
+			return false;
+		}
+		switch (viewMode) {
+		case "unread":
+			return article.unread;
+		case "marked":
+			return article.marked;
+		case "published":
+			return article.published;
+		case "has_note":
+			return article.note != null;
+		default:
+			return true;
+		}
+	}
+
+	private void headline(StringBuilder out, Article article, boolean showContent, boolean showExcerpt,
+			boolean includeAttachments) {
+		int id = article.id;
+		out.append("{\"id\":").append(id).append(",\"guid\":\"SHA1:fake").append(id).append("\",\"unread\":")
+				.append(article.unread).append(",\"marked\":").append(article.marked).append(",\"published\":")
+				.append(article.published).append(",\"updated\":").append(article.updated)
+				.append(",\"is_updated\":false,\"title\":\"Article ").append(id)
+				.append("\",\"link\":\"https:\\/\\/feed").append(article.feedId).append(".example.com\\/")
+				.append(id).append("\",\"feed_id\":\"").append(article.feedId)
+				.append("\",\"tags\":[\"\"],\"labels\":[],\"feed_title\":\"Feed ").append(article.feedId)
+				.append("\",\"comments_count\":0,\"comments_link\":\"\",\"always_display_attachments\":false")
+				.append(",\"author\":\"Author ").append(article.feedId % 7).append("\",\"score\":0,\"note\":")
+				.append(article.note == null ? "null" : JSONObject.quote(article.note)).append(",\"lang\":\"en\"");
+		if (showExcerpt) {
+			out.append(",\"excerpt\":\"Lorem ipsum dolor sit amet &hellip;\"");
+		}
+		if (showContent) {
+			out.append(",\"content\":\"<h1>Article ").append(id).append("<\\/h1>")
+					.append(content).append('"');
+		}
+		if (includeAttachments) {
+			attachments(out, id);
+		}
+		out.append('}');
+	}
+
+	private String getArticle(JSONObject request, StringBuilder out) {
+		String ids = request.optString("article_id");
+		if (ids.isEmpty()) {
+			return "INCORRECT_USAGE";
+		}
+		lock.readLock().lock();
+		try {
+			out.append('[');
+			int length = out.length();
+			for (int id : parseIds(ids)) {
+				if (id >= 1 && id <= articles.size()) {
+					Article article = articles.get(id - 1);
+					separator(out, length);
+					out.append("{\"id\":\"").append(id).append("\",\"guid\":\"SHA1:fake").append(id)
+							.append("\",\"title\":\"Article ").append(id).append("\",\"link\":\"https:\\/\\/feed")
+							.append(article.feedId).append(".example.com\\/").append(id)
+							.append("\",\"labels\":[],\"unread\":").append(article.unread).append(",\"marked\":")
+							.append(article.marked).append(",\"published\":").append(article.published)
+							.append(",\"comments\":\"\",\"author\":\"Author ").append(article.feedId % 7)
+							.append("\",\"updated\":").append(article.updated).append(",\"feed_id\":\"")
+							.append(article.feedId).append('"');
+					attachments(out, id);
+					out.append(",\"score\":0,\"feed_title\":\"Feed ").append(article.feedId).append("\",\"note\":")
+							.append(article.note == null ? "null" : JSONObject.quote(article.note))
+							.append(",\"lang\":\"en\",\"content\":\"<h1>Article ").append(id).append("<\\/h1>")
+							.append(content).append("\"}");
+				}
+			}
+			out.append(']');
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private String updateArticle(JSONObject request, StringBuilder out) {
+		String ids = request.optString("article_ids");
+		int mode = request.optInt("mode", 0);
+		int field = request.optInt("field", 0);
+		if (ids.isEmpty() || field < 0 || field > 3) {
+			return "INCORRECT_USAGE";
+		}
+		String data = request.optString("data", null);
+		int updated = 0;
+		lock.writeLock().lock();
+		try {
+			for (int id : parseIds(ids)) {
+				if (id < 1 || id > articles.size()) {
+					continue;
+				}
+				Article article = articles.get(id - 1);
+				if (field == 3) {
+					article.note = data;
+					updated++;
+					continue;
+				}
+				boolean current = field == 0 ? article.marked : field == 1 ? article.published : article.unread;
+				boolean value = mode == 2 ? !current : mode == 1;
+				if (value == current) {
+					continue;
+				}
+				if (field == 0) {
+					article.marked = value;
+				} else if (field == 1) {
+					article.published = value;
+				} else {
+					setUnread(article, value);
+				}
+				updated++;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		out.append("{\"status\":\"OK\",\"updated\":").append(updated).append('}');
+		return null;
+	}
+
+	private String catchupFeed(JSONObject request, StringBuilder out) {
+		if (!request.has("feed_id")) {
+			return "INCORRECT_USAGE";
+		}
+		int feedId = request.optInt("feed_id");
+		boolean isCat = bool(request, "is_cat");
+		lock.writeLock().lock();
+		try {
+			List<Article> source = !isCat && feedId > 0 && feedId < feedArticles.size() ? feedArticles.get(feedId)
+					: articles;
+			for (Article article : source) {
+				if (article.unread && matches(article, feedId, isCat, "all_articles")) {
+					setUnread(article, false);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		out.append("{\"status\":\"OK\"}");
+		return null;
+	}
+
+	private void setUnread(Article article, boolean unread) {
+		article.unread = unread;
+		unreadByFeed[article.feedId] += unread ? 1 : -1;
+	}
+
+	private int categoryOf(int feed) {
+		int feedsPerCategory = (feedArticles.size() - 1) / categories;
+		return (feed - 1) / feedsPerCategory + 1;
+	}
+
+	private int categoryUnread(int cat) {
+		int unread = 0;
+		for (int feed = 1; feed < feedArticles.size(); feed++) {
+			if (categoryOf(feed) == cat) {
+				unread += unreadByFeed[feed];
+			}
+		}
+		return unread;
+	}
+
+	private int totalUnread() {
+		int unread = 0;
+		for (int count : unreadByFeed) {
+			unread += count;
+		}
+		return unread;
+	}
+
+	private long lastUpdated(int feed) {
+		List<Article> list = feedArticles.get(feed);
+		return list.isEmpty() ? START_TIME : list.get(list.size() - 1).updated;
+	}
+
+	private static void separator(StringBuilder out, int length) {
+		if (out.length() > length) {
+			out.append(',');
+		}
+	}
+
+	private static Set<Integer> parseIds(String ids) {
+		Set<Integer> result = new HashSet<>();
+		for (String id : ids.split(",")) {
+			try {
+				result.add(Integer.parseInt(id.trim()));
+			} catch (NumberFormatException e) {
+				// ignored like TT-RSS does
+			}
+		}
+		return result;
+	}
+
+	private static boolean bool(JSONObject request, String key) {
+		Object value = request.opt(key);
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).intValue() != 0;
+		}
+		return value != null && ("true".equalsIgnoreCase(value.toString()) || "1".equals(value.toString()));
+	}
+
+	private static final class Article {
+
+		final int id;
+		final int feedId;
+		final long updated;
+		boolean unread;
+		boolean marked;
+		boolean published;
+		String note;
+
+		Article(int id, int feedId) {
+			this.id = id;
+			this.feedId = feedId;
+			this.updated = START_TIME + id * 60L;
+			this.unread = id % 3 != 0;
+			this.marked = id % 10 == 0;
+			this.published = id % 25 == 0;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package ch.eldeskar.ttrss.api.testing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.APISession;
+
+class FakeServerTest extends AbstractFakeServerTest {
+
+	private JSONArray headlines(String parameters) throws IOException {
+		JSONObject response = session.getHeadlines(url, sid, parameters);
+		assertEquals(0, response.getInt("status"), response::toString);
+		return response.getJSONArray("content");
+	}
+
+	@Test
+	void loginChecksTheCredentials() throws IOException {
+		JSONObject response = session.login(url, "admin", "wrong");
+		assertEquals(1, response.getInt("status"));
+		assertEquals("LOGIN_ERROR", response.getJSONObject("content").getString("error"));
+		assertEquals(15, session.getApiLevel(url, sid).getJSONObject("content").getInt("level"));
+	}
+
+	@Test
+	void headlinesArePagedNewestFirst() throws IOException {
+		// 2 feeds with 10 articles each, the ids alternate between the feeds
+		JSONArray first = headlines(",\"feed_id\":1,\"limit\":4");
+		assertEquals(4, first.length());
+		assertTrue(first.getJSONObject(0).getInt("id") > first.getJSONObject(1).getInt("id"));
+		JSONArray rest = headlines(",\"feed_id\":1,\"limit\":200,\"skip\":4");
+		assertEquals(6, rest.length());
+		assertTrue(first.getJSONObject(3).getInt("id") > rest.getJSONObject(0).getInt("id"));
+		assertEquals(20, headlines(",\"feed_id\":-4").length());
+
+		int newest = first.getJSONObject(0).getInt("id");
+		assertEquals(0, headlines(",\"feed_id\":1,\"since_id\":" + newest).length());
+		int added = server.addArticles(1, 2);
+		JSONArray since = headlines(",\"feed_id\":1,\"since_id\":" + newest);
+		assertEquals(2, since.length());
+		assertEquals(added, since.getJSONObject(0).getInt("id"));
+		assertEquals(added, server.getMaxArticleId());
+	}
+
+	@Test
+	void updateArticleChangesTheUnreadView() throws IOException {
+		JSONArray unread = headlines(",\"feed_id\":1,\"view_mode\":\"unread\"");
+		// every third article is read
+		assertTrue(unread.length() < 10);
+		int id = unread.getJSONObject(0).getInt("id");
+		session.updateArticle(url, sid, String.valueOf(id), APISession.MODE_FALSE, APISession.FIELD_UNREAD);
+		JSONArray after = headlines(",\"feed_id\":1,\"view_mode\":\"unread\"");
+		assertEquals(unread.length() - 1, after.length());
+		assertFalse(after.toString().contains("\"id\":" + id + ","));
+	}
+
+	@Test
+	void expiredSessionsAreRejected() throws IOException {
+		server.expireSessions();
+		JSONObject response = session.getUnread(url, sid);
+		assertEquals("NOT_LOGGED_IN", response.getJSONObject("content").getString("error"));
+		assertEquals(1, server.getRequestCount("login"));
+		assertEquals(1, server.getRequestCount("getUnread"));
+	}
+
+	@Test
+	void injectedErrors() throws IOException {
+		server.setApiErrorRate(1, "API_DISABLED");
+		assertEquals("API_DISABLED", session.getUnread(url, sid).getJSONObject("content").getString("error"));
+		server.setApiErrorRate(0, null);
+		server.setHttpErrorRate(1, 503);
+		assertThrows(IOException.class, () -> session.getUnread(url, sid));
+		server.setHttpErrorRate(0, 503);
+		assertEquals(0, session.getUnread(url, sid).getInt("status"));
+	}
+}
@@ -0,0 +1,105 @@
+package ch.eldeskar.ttrss.api.testing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import org.json.JSONObject;
+
+import ch.eldeskar.ttrss.api.transport.Transport;
+
+/**
+ * Transport which answers every request with the response body built by a
+ * function, for tests of single classes without a server. The function may
+ * throw an UncheckedIOException to fail the request with its cause.
+ * Asynchronous requests are answered on the common pool.
+ *
+ */
+public class StubTransport implements Transport {
+
+	private final Function<JSONObject, String> responder;
+	private final List<JSONObject> requests = new ArrayList<>();
+
+	/**
+	 * @param Function<JSONObject, String> responder receives the decoded request
+	 *                                     and returns the response body
+	 */
+	public StubTransport(Function<JSONObject, String> responder) {
+		this.responder = responder;
+	}
+
+	/**
+	 * @param String content JSON of the content
+	 * @return String a successful response with the content
+	 */
+	public static String ok(String content) {
+		return "{\"seq\":0,\"status\":0,\"content\":" + content + "}";
+	}
+
+	/**
+	 * @param String error e.g. NOT_LOGGED_IN
+	 * @return String an error response
+	 */
+	public static String error(String error) {
+		return "{\"seq\":0,\"status\":1,\"content\":{\"error\":\"" + error + "\"}}";
+	}
+
+	@Override
+	public InputStream post(URL url, byte[] body) throws IOException {
+		try {
+			return new ByteArrayInputStream(respond(body));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Override
+	public CompletableFuture<byte[]> postAsync(URL url, byte[] body) {
+		CompletableFuture<byte[]> response = new CompletableFuture<>();
+		ForkJoinPool.commonPool().execute(() -> {
+			try {
+				response.complete(respond(body));
+			} catch (UncheckedIOException e) {
+				response.completeExceptionally(e.getCause());
+			} catch (RuntimeException e) {
+				response.completeExceptionally(e);
+			}
+		});
+		return response;
+	}
+
+	private byte[] respond(byte[] body) {
+		JSONObject request = new JSONObject(new String(body, StandardCharsets.UTF_8));
+		synchronized (requests) {
+			requests.add(request);
+		}
+		return responder.apply(request).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return List<JSONObject> the requests received so far
+	 */
+	public List<JSONObject> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+
+	/**
+	 * @param String op
+	 * @return int requests of the op received so far
+	 */
+	public int getRequestCount(String op) {
+		synchronized (requests) {
+			return (int) requests.stream().filter(request -> op.equals(request.optString("op"))).count();
+		}
+	}
+}
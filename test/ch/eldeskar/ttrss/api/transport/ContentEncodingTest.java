@@ -0,0 +1,200 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.sun.net.httpserver.HttpServer;
+
+class ContentEncodingTest {
+
+	private static final byte[] JSON = json();
+	private final URL url;
+
+	ContentEncodingTest() throws IOException {
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	private static byte[] json() {
+		StringBuilder json = new StringBuilder("{\"seq\":0,\"status\":0,\"content\":[");
+		for (int i = 0; i < 500; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"title\":\"Title \u00e4\"}");
+		}
+		return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] body) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(body);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] deflate(byte[] body, boolean nowrap) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION,
+				nowrap))) {
+			deflate.write(body);
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] decode(byte[] body, String encoding) throws IOException {
+		try (InputStream in = ContentEncoding.decode(new ByteArrayInputStream(body), encoding, url, 0, 0, null)) {
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	void decodesGzip() throws IOException {
+		assertArrayEquals(JSON, decode(gzip(JSON), "gzip"));
+		assertArrayEquals(JSON, decode(gzip(JSON), " X-GZIP "));
+	}
+
+	@Test
+	void decodesZlibAndRawDeflate() throws IOException {
+		assertArrayEquals(JSON, decode(deflate(JSON, false), "deflate"));
+		assertArrayEquals(JSON, decode(deflate(JSON, true), "deflate"));
+	}
+
+	@Test
+	void identityIsPassedThrough() throws IOException {
+		assertArrayEquals(JSON, decode(JSON, null));
+		assertArrayEquals(JSON, decode(JSON, "identity"));
+		assertSame(JSON, ContentEncoding.decode(JSON, "", url, 0, 0, null));
+	}
+
+	@Test
+	void unsupportedEncodingFails() {
+		assertThrows(IOException.class, () -> decode(JSON, "br"));
+	}
+
+	@Test
+	void encodesOnlyAboveTheThreshold() throws IOException {
+		assertSame(JSON, ContentEncoding.encode(JSON, -1));
+		assertSame(JSON, ContentEncoding.encode(JSON, JSON.length + 1));
+		byte[] encoded = ContentEncoding.encode(JSON, JSON.length);
+		assertTrue(encoded.length < JSON.length);
+		assertArrayEquals(JSON, new GZIPInputStream(new ByteArrayInputStream(encoded)).readAllBytes());
+
+		byte[] incompressible = { 1, 2, 3 };
+		assertSame(incompressible, ContentEncoding.encode(incompressible, 0));
+	}
+
+	@Test
+	void listenerGetsTheCountsOnClose() throws IOException {
+		byte[] gzipped = gzip(JSON);
+		AtomicLong[] counts = { new AtomicLong(), new AtomicLong(), new AtomicLong(), new AtomicLong() };
+		TransferListener listener = (target, sent, sentEncoded, received, receivedEncoded) -> {
+			assertEquals(url, target);
+			counts[0].set(sent);
+			counts[1].set(sentEncoded);
+			counts[2].set(received);
+			counts[3].set(receivedEncoded);
+		};
+		InputStream in = ContentEncoding.decode(new ByteArrayInputStream(gzipped), "gzip", url, 100, 40, listener);
+		in.readAllBytes();
+		assertEquals(0, counts[2].get());
+		in.close();
+		in.close();
+		assertEquals(100, counts[0].get());
+		assertEquals(40, counts[1].get());
+		assertEquals(JSON.length, counts[2].get());
+		assertEquals(gzipped.length, counts[3].get());
+
+		ContentEncoding.decode(gzipped, "gzip", url, 1, 2, listener);
+		assertEquals(JSON.length, counts[2].get());
+		assertEquals(gzipped.length, counts[3].get());
+	}
+
+	static Stream<String> transports() {
+		return Stream.of("HttpClientTransport", "URLConnectionTransport");
+	}
+
+	/**
+	 * Server which gzips its responses when the client accepts it and, like a
+	 * plain TT-RSS, refuses compressed request bodies with 415.
+	 */
+	@ParameterizedTest
+	@MethodSource("transports")
+	void transportsNegotiateCompression(String name) throws Exception {
+		List<String> requestEncodings = new CopyOnWriteArrayList<>();
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/api/", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+			requestEncodings.add(String.valueOf(encoding));
+			if (encoding != null) {
+				exchange.sendResponseHeaders(415, -1);
+			} else {
+				String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				byte[] body = accept != null && accept.contains("gzip") ? gzip(JSON) : JSON;
+				if (body != JSON) {
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		server.start();
+		try {
+			URL api = new URL("http://localhost:" + server.getAddress().getPort() + "/api/");
+			List<long[]> transfers = new CopyOnWriteArrayList<>();
+			TransferListener listener = (target, sent, sentEncoded, received, receivedEncoded) -> transfers
+					.add(new long[] { sent, sentEncoded, received, receivedEncoded });
+			Transport transport;
+			if (name.equals("HttpClientTransport")) {
+				HttpClientTransport httpClient = new HttpClientTransport();
+				httpClient.setRequestCompressionThreshold(0);
+				httpClient.setTransferListener(listener);
+				transport = httpClient;
+			} else {
+				URLConnectionTransport urlConnection = new URLConnectionTransport();
+				urlConnection.setRequestCompressionThreshold(0);
+				urlConnection.setTransferListener(listener);
+				transport = urlConnection;
+			}
+
+			try (InputStream in = transport.post(api, JSON)) {
+				assertArrayEquals(JSON, in.readAllBytes());
+			}
+			assertEquals(List.of("gzip", "null"), requestEncodings);
+			assertArrayEquals(JSON, transport.postAsync(api, JSON).get(10, TimeUnit.SECONDS));
+			assertEquals(List.of("gzip", "null", "null"), requestEncodings);
+
+			long[] last = transfers.get(transfers.size() - 1);
+			assertEquals(JSON.length, last[0]);
+			assertEquals(JSON.length, last[1]);
+			assertEquals(JSON.length, last[2]);
+			assertTrue(last[3] < JSON.length);
+		} finally {
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import ch.eldeskar.ttrss.api.testing.StubTransport;
+
+class LimitingTransportTest {
+
+	private static final byte[] BODY = "{\"op\":\"getUnread\"}".getBytes(StandardCharsets.UTF_8);
+
+	private final URL url;
+	private final AtomicLong latency = new AtomicLong(2);
+	private final AtomicInteger failures = new AtomicInteger();
+	private final StubTransport stub = new StubTransport(request -> {
+		if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+			throw new UncheckedIOException(new HttpStatusException(url(), 503, null));
+		}
+		try {
+			Thread.sleep(latency.get());
+		} catch (InterruptedException e) {
+			throw new UncheckedIOException(new InterruptedIOException());
+		}
+		return StubTransport.ok("0");
+	});
+
+	LimitingTransportTest() throws IOException {
+		url = new URL("http://localhost/tt-rss/api/");
+	}
+
+	private URL url() {
+		return url;
+	}
+
+	private static void post(Transport transport, URL url) throws IOException {
+		try (InputStream in = transport.post(url, BODY)) {
+			in.readAllBytes();
+		}
+	}
+
+	@Test
+	void limitGrowsWhileTheLatencyIsStable() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 2, 1, 8, Duration.ofSeconds(30))) {
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int i = 0; i < 8; i++) {
+					futures.add(executor.submit(() -> {
+						for (int j = 0; j < 20; j++) {
+							post(transport, url);
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get(30, TimeUnit.SECONDS);
+				}
+			} finally {
+				executor.shutdown();
+			}
+			assertTrue(transport.getLimit(url) > 2, "limit " + transport.getLimit(url));
+			assertTrue(transport.getLimit(url) <= 8);
+			assertEquals(0, transport.getInFlight(url));
+		}
+	}
+
+	@Test
+	void limitShrinksWhenTheLatencyGrows() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 8, 1, 8, Duration.ofSeconds(30))) {
+			post(transport, url);
+			latency.set(50);
+			post(transport, url);
+			assertEquals(7, transport.getLimit(url));
+		}
+	}
+
+	@Test
+	void overloadHalvesTheLimitAndRetries() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 8, 1, 8, Duration.ofSeconds(30))) {
+			failures.set(1);
+			post(transport, url);
+			assertEquals(2, stub.getRequestCount("getUnread"));
+			assertEquals(4, transport.getLimit(url));
+
+			failures.set(1);
+			byte[] response = transport.postAsync(url, BODY).get(10, TimeUnit.SECONDS);
+			assertEquals(0, new JSONObject(new String(response, StandardCharsets.UTF_8)).getInt("status"));
+			assertEquals(4, stub.getRequestCount("getUnread"));
+		}
+	}
+
+	@Test
+	void overloadAfterTheLastRetryFails() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 2, 2, 4, Duration.ofSeconds(30))) {
+			transport.setMaxRetries(0);
+			failures.set(1);
+			HttpStatusException e = assertThrows(HttpStatusException.class, () -> post(transport, url));
+			assertEquals(503, e.getStatusCode());
+			assertEquals(1, stub.getRequestCount("getUnread"));
+			assertEquals(2, transport.getLimit(url));
+		}
+	}
+
+	@Test
+	void requestsWhichWaitTooLongAreDropped() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 1, 1, 1, Duration.ofMillis(100))) {
+			InputStream held = transport.post(url, BODY);
+			assertEquals(1, transport.getInFlight(url));
+			assertThrows(HttpTimeoutException.class, () -> post(transport, url));
+			ExecutionException e = assertThrows(ExecutionException.class,
+					() -> transport.postAsync(url, BODY).get(10, TimeUnit.SECONDS));
+			assertInstanceOf(HttpTimeoutException.class, e.getCause());
+			assertEquals(0, transport.getQueued(url));
+
+			held.close();
+			held.close();
+			assertEquals(0, transport.getInFlight(url));
+			post(transport, url);
+		}
+	}
+
+	@Test
+	void waitingRequestStartsWhenAPermitIsReleased() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 1, 1, 1, Duration.ofSeconds(30))) {
+			InputStream held = transport.post(url, BODY);
+			CompletableFuture<byte[]> waiting = transport.postAsync(url, BODY);
+			assertEquals(1, transport.getQueued(url));
+			held.close();
+			waiting.get(10, TimeUnit.SECONDS);
+			assertEquals(2, stub.getRequestCount("getUnread"));
+		}
+	}
+
+	@Test
+	void interruptedRequestKeepsNoPermit() throws Exception {
+		try (LimitingTransport transport = new LimitingTransport(stub, 1, 1, 1, Duration.ofSeconds(30))) {
+			for (int i = 0; i < 200; i++) {
+				InputStream held = transport.post(url, BODY);
+				Thread waiting = new Thread(() -> {
+					try {
+						post(transport, url);
+					} catch (IOException e) {
+						// interrupted while waiting or while running
+					}
+				});
+				waiting.start();
+				while (transport.getQueued(url) == 0) {
+					Thread.yield();
+				}
+				// the permit may be granted just before the interrupt arrives
+				held.close();
+				waiting.interrupt();
+				waiting.join(10_000);
+				assertEquals(0, transport.getInFlight(url));
+			}
+		}
+	}
+
+	@Test
+	void closeFailsTheWaitingRequests() throws Exception {
+		LimitingTransport transport = new LimitingTransport(stub, 1, 1, 1, Duration.ofSeconds(30));
+		InputStream held = transport.post(url, BODY);
+		CompletableFuture<byte[]> waiting = transport.postAsync(url, BODY);
+		transport.close();
+		ExecutionException e = assertThrows(ExecutionException.class, () -> waiting.get(10, TimeUnit.SECONDS));
+		assertInstanceOf(HttpTimeoutException.class, e.getCause());
+		held.close();
+	}
+}
@@ -0,0 +1,117 @@
+package ch.eldeskar.ttrss.api.transport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.sun.net.httpserver.HttpServer;
+
+class TransportTest {
+
+	private HttpServer server;
+	private URL url;
+	private final List<InetSocketAddress> clients = new CopyOnWriteArrayList<>();
+
+	static Stream<Transport> transports() {
+		return Stream.of(new HttpClientTransport(), new URLConnectionTransport());
+	}
+
+	@BeforeEach
+	void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		// answers with the request body
+		server.createContext("/api/", exchange -> {
+			byte[] body = exchange.getRequestBody().readAllBytes();
+			clients.add(exchange.getRemoteAddress());
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.createContext("/busy/", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			clients.add(exchange.getRemoteAddress());
+			byte[] body = "Service Unavailable".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(503, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+		url = new URL("http://localhost:" + server.getAddress().getPort() + "/api/");
+	}
+
+	@AfterEach
+	void stop() {
+		server.stop(0);
+	}
+
+	@ParameterizedTest
+	@MethodSource("transports")
+	void postReturnsTheResponseBody(Transport transport) throws IOException {
+		byte[] body = "{\"op\":\"getUnread\",\"text\":\"\u00e4\u20ac\"}".getBytes(StandardCharsets.UTF_8);
+		try (InputStream in = transport.post(url, body)) {
+			assertArrayEquals(body, in.readAllBytes());
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("transports")
+	void postAsyncReturnsTheResponseBody(Transport transport) throws Exception {
+		byte[] body = "{\"op\":\"getUnread\"}".getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(body, transport.postAsync(url, body).get(10, TimeUnit.SECONDS));
+	}
+
+	@ParameterizedTest
+	@MethodSource("transports")
+	void errorStatusFailsTheRequest(Transport transport) throws Exception {
+		URL busy = new URL(url, "/busy/");
+		byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+		assertThrows(IOException.class, () -> transport.post(busy, body).close());
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> transport.postAsync(busy, body).get(10, TimeUnit.SECONDS));
+		assertInstanceOf(IOException.class, e.getCause());
+	}
+
+	@ParameterizedTest
+	@MethodSource("transports")
+	void errorStatusKeepsTheConnection(Transport transport) throws Exception {
+		byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+		try (InputStream in = transport.post(url, body)) {
+			in.readAllBytes();
+		}
+		assertThrows(IOException.class, () -> transport.post(new URL(url, "/busy/"), body).close());
+		try (InputStream in = transport.post(url, body)) {
+			in.readAllBytes();
+		}
+		assertEquals(3, clients.size());
+		assertEquals(1, Set.copyOf(clients).size(), clients::toString);
+	}
+
+	@ParameterizedTest
+	@MethodSource("transports")
+	void requestsReuseTheTransport(Transport transport) throws Exception {
+		for (int i = 0; i < 20; i++) {
+			byte[] body = ("{\"seq\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+			assertEquals(new String(body, StandardCharsets.UTF_8),
+					new String(transport.postAsync(url, body).get(10, TimeUnit.SECONDS), StandardCharsets.UTF_8));
+		}
+	}
+}